@@ -0,0 +1,181 @@
+package com.github.ivanmarban.movies.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Compares a JMH JSON result against the saved baseline and prints, for every benchmark, the change in score and in
+ * bytes allocated per operation.
+ * <p>
+ * Usage: {@code BaselineComparison <baseline.json> <result.json> [threshold]}, where {@code threshold} is the relative
+ * increase, beyond the error of both runs, reported as a regression, {@code 0.10} by default. Exits with status 1 if
+ * any benchmark regressed, and with status 2 if there is no baseline or it was measured with other fork, warmup or
+ * measurement settings, whose errors are not comparable.
+ * <p>
+ * The baseline keeps, for every benchmark, its name, parameters, mode, run settings, score and allocation per operation
+ * with their errors only, without the raw samples nor the JVM it ran on. {@code BaselineComparison --save <result.json>
+ * <baseline.json>} writes it from a JMH JSON result.
+ */
+public final class BaselineComparison {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private static final String[] SETTINGS = {"forks", "warmupIterations", "warmupTime", "measurementIterations",
+        "measurementTime"};
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && "--save".equals(args[0])) {
+            OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(args[2]), read(new File(args[1])).values());
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <result.json> [threshold]");
+            System.err.println("       BaselineComparison --save <result.json> <baseline.json>");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        if (!new File(args[0]).exists()) {
+            System.err.println("No baseline at " + args[0] + ", save one with mvn -Pjmh exec:exec@jmh-save-baseline");
+            System.exit(2);
+        }
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> current = read(new File(args[1]));
+
+        int regressions = 0;
+        int stale = 0;
+        System.out.printf("%-50s %24s %24s %8s %12s %12s %8s%n", "Benchmark", "Baseline", "Current", "Change", "B/op before",
+            "B/op after", "Change");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            JsonNode after = entry.getValue();
+            String unit = after.get("scoreUnit").asText();
+            if (before == null) {
+                System.out.printf("%-50s %24s %24s %8s %12s %12.0f %8s%n", entry.getKey(), "-", format(after, unit), "new", "-",
+                    after.path("allocation").asDouble(Double.NaN), "new");
+                continue;
+            }
+            if (!sameSettings(before, after)) {
+                stale++;
+                System.out.printf("%-50s %24s %24s %8s%n", entry.getKey(), format(before, unit), format(after, unit), "stale");
+                continue;
+            }
+            boolean regressed = regressed(before, after, "score", threshold) || regressed(before, after, "allocation", threshold);
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-50s %24s %24s %+7.1f%% %12.0f %12.0f %+7.1f%%%s%n", entry.getKey(), format(before, unit),
+                format(after, unit), change(before, after, "score") * 100, before.path("allocation").asDouble(Double.NaN),
+                after.path("allocation").asDouble(Double.NaN), change(before, after, "allocation") * 100,
+                regressed ? "  REGRESSION" : "");
+        }
+        System.out.printf("%d of %d benchmarks regressed by more than %.0f%%%n", regressions, current.size(), threshold * 100);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+        if (stale > 0) {
+            System.out.printf("%d baselines were measured with other run settings, save a new baseline%n", stale);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Reads a JMH JSON result or a saved baseline as trimmed results keyed by benchmark and parameters.
+     */
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : OBJECT_MAPPER.readTree(file)) {
+            results.put(key(result), result.has("primaryMetric") ? trim(result) : result);
+        }
+        return results;
+    }
+
+    private static JsonNode trim(JsonNode result) {
+        ObjectNode trimmed = OBJECT_MAPPER.createObjectNode();
+        trimmed.set("benchmark", result.get("benchmark"));
+        if (result.has("params")) {
+            trimmed.set("params", result.get("params"));
+        }
+        trimmed.set("mode", result.get("mode"));
+        for (String setting : SETTINGS) {
+            trimmed.set(setting, result.get(setting));
+        }
+        JsonNode primary = result.get("primaryMetric");
+        trimmed.set("score", primary.get("score"));
+        trimmed.set("scoreError", primary.get("scoreError"));
+        trimmed.set("scoreUnit", primary.get("scoreUnit"));
+        JsonNode allocation = allocation(result);
+        if (allocation != null) {
+            trimmed.set("allocation", allocation.get("score"));
+            trimmed.set("allocationError", allocation.get("scoreError"));
+        }
+        return trimmed;
+    }
+
+    private static String key(JsonNode result) {
+        String benchmark = result.get("benchmark").asText();
+        StringJoiner params = new StringJoiner(",", "(", ")").setEmptyValue("");
+        result.path("params").fields().forEachRemaining(param -> params.add(param.getKey() + "=" + param.getValue().asText()));
+        return benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1) + params;
+    }
+
+    private static boolean sameSettings(JsonNode before, JsonNode after) {
+        for (String setting : SETTINGS) {
+            if (!before.path(setting).equals(after.path(setting))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JsonNode allocation(JsonNode result) {
+        Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+        while (metrics.hasNext()) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            if (metric.getKey().endsWith(ALLOCATION)) {
+                return metric.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether {@code metric} grew by more than {@code threshold} of its baseline beyond the error of both measurements,
+     * so that a change within the noise of either run is not reported.
+     */
+    static boolean regressed(JsonNode before, JsonNode after, String metric, double threshold) {
+        double baseline = before.path(metric).asDouble(Double.NaN);
+        double current = after.path(metric).asDouble(Double.NaN);
+        if (Double.isNaN(baseline) || Double.isNaN(current)) {
+            return false;
+        }
+        return current - error(after, metric) - (baseline + error(before, metric)) > threshold * baseline;
+    }
+
+    private static double error(JsonNode result, String metric) {
+        double error = result.path(metric + "Error").asDouble(Double.NaN);
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static double change(JsonNode before, JsonNode after, String metric) {
+        double baseline = before.path(metric).asDouble(Double.NaN);
+        return baseline == 0 ? 0 : (after.path(metric).asDouble(Double.NaN) - baseline) / baseline;
+    }
+
+    private static String format(JsonNode result, String unit) {
+        return String.format("%.3f ± %.3f %s", result.get("score").asDouble(), error(result, "score"), unit);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.github.ivanmarban.movies.benchmark;
+
+import com.github.ivanmarban.movies.model.Movie;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic movies shaped like the catalog, shared by the benchmarks.
+ */
+final class BenchmarkMovies {
+
+    private static final String[] WORDS = {"the", "space", "odyssey", "shining", "night", "return", "king", "lost", "city",
+        "dark", "star", "love", "war", "dead", "man", "woman", "last", "blue", "house", "river", "ghost", "storm"};
+
+    private static final String[] GENRES = {"Action", "Comedy", "Drama", "Horror", "Mystery", "Sci-Fi", "Thriller", "War"};
+
+    private static final String[] DIRECTORS = {"Stanley Kubrick", "Mel Brooks", "Akira Kurosawa", "Agnes Varda", "Sofia Coppola"};
+
+    private static final String[] RATINGS = {"G", "PG", "PG-13", "R"};
+
+    private BenchmarkMovies() {
+    }
+
+    static Movie movie() {
+        return movies(1).get(0);
+    }
+
+    static List<Movie> movies(int size) {
+        Random random = new Random(42);
+        List<Movie> movies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 1 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                title.append(w == 0 ? "" : " ").append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            }
+            List<String> genres = new ArrayList<>();
+            for (int g = 1 + random.nextInt(3); g > 0; g--) {
+                genres.add(GENRES[random.nextInt(GENRES.length)]);
+            }
+            movies.add(Movie.builder().id(new ObjectId().toHexString()).title(title.toString()).year(1920 + random.nextInt(100))
+                .rated(RATINGS[random.nextInt(RATINGS.length)]).runtimeMinutes(80 + random.nextInt(100)).genres(genres)
+                .director(DIRECTORS[random.nextInt(DIRECTORS.length)]).build());
+        }
+        return movies;
+    }
+
+}
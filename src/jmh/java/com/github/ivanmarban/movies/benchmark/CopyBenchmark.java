@@ -0,0 +1,41 @@
+package com.github.ivanmarban.movies.benchmark;
+
+import com.github.ivanmarban.movies.model.Movie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The copies made of a request body by {@code createMovie}, without an id, and by {@code updateMovie}, under the id of
+ * the stored movie.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 3)
+@Fork(5)
+@State(Scope.Benchmark)
+public class CopyBenchmark {
+
+    private Movie movie;
+
+    private String id;
+
+    @Setup
+    public void setUp() {
+        movie = BenchmarkMovies.movie();
+        id = movie.getId();
+        movie.setId(null);
+    }
+
+    @Benchmark
+    public Movie createCopy() {
+        return movie.copyWithId(null);
+    }
+
+    @Benchmark
+    public Movie updateCopy() {
+        return movie.copyWithId(id);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.github.ivanmarban.movies.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.ivanmarban.movies.config.JacksonConfig;
+import com.github.ivanmarban.movies.model.Movie;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writing and reading a page of movies in every format the list endpoint negotiates, through the message converters
+ * and object mapper configuration of the servlet stack. The payload size of the page, as is and gzipped, is printed
+ * when the trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 3)
+@Fork(5)
+public class FormatBenchmark {
+
+    private static final Type PAGE = new ParameterizedTypeReference<List<Movie>>() {
+    }.getType();
+
+    @State(Scope.Benchmark)
+    public static class Page {
+
+        @Param({"json", "smile", "cbor"})
+        String format;
+
+        @Param({"10", "100", "1000"})
+        int size;
+
+        AbstractJackson2HttpMessageConverter converter;
+
+        MediaType mediaType;
+
+        List<Movie> movies;
+
+        byte[] payload;
+
+        @Setup
+        public void setUp() throws IOException {
+            Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+            new JacksonConfig().movieFieldsCustomizer().customize(builder);
+            switch (format) {
+                case "smile":
+                    converter = new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+                    break;
+                case "cbor":
+                    converter = new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+                    break;
+                default:
+                    converter = new MappingJackson2HttpMessageConverter(builder.<ObjectMapper>build());
+            }
+            mediaType = converter.getSupportedMediaTypes().get(0);
+            movies = BenchmarkMovies.movies(size);
+            payload = encode(this);
+            System.out.printf("%n%s page of %d movies: %d bytes, %d bytes gzipped%n", format, size, payload.length, gzip(payload));
+        }
+
+    }
+
+    @Benchmark
+    public byte[] write(Page state) throws IOException {
+        return encode(state);
+    }
+
+    @Benchmark
+    public Object read(Page state) throws IOException {
+        MockHttpInputMessage message = new MockHttpInputMessage(state.payload);
+        message.getHeaders().setContentType(state.mediaType);
+        return state.converter.read(PAGE, null, message);
+    }
+
+    private static byte[] encode(Page state) throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        state.converter.write(state.movies, PAGE, state.mediaType, message);
+        return message.getBodyAsBytes();
+    }
+
+    private static int gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(payload);
+        }
+        return compressed.size();
+    }
+
+}
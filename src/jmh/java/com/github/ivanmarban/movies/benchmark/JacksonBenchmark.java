@@ -0,0 +1,95 @@
+package com.github.ivanmarban.movies.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.ivanmarban.movies.model.Movie;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of a movie, as in the single movie endpoints, and of a page of movies, as in the list
+ * endpoint, with the object mapper configuration Spring Boot applies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 3)
+@Fork(5)
+public class JacksonBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Single {
+
+        ObjectWriter writer;
+
+        ObjectReader reader;
+
+        Movie movie;
+
+        byte[] json;
+
+        @Setup
+        public void setUp() throws IOException {
+            ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+            writer = objectMapper.writerFor(Movie.class);
+            reader = objectMapper.readerFor(Movie.class);
+            movie = BenchmarkMovies.movie();
+            json = writer.writeValueAsBytes(movie);
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class Page {
+
+        @Param({"10", "100", "1000"})
+        int size;
+
+        ObjectWriter writer;
+
+        ObjectReader reader;
+
+        List<Movie> movies;
+
+        byte[] json;
+
+        @Setup
+        public void setUp() throws IOException {
+            ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+            writer = objectMapper.writerFor(new TypeReference<List<Movie>>() {
+            });
+            reader = objectMapper.readerFor(new TypeReference<List<Movie>>() {
+            });
+            movies = BenchmarkMovies.movies(size);
+            json = writer.writeValueAsBytes(movies);
+        }
+
+    }
+
+    @Benchmark
+    public byte[] writeMovie(Single state) throws IOException {
+        return state.writer.writeValueAsBytes(state.movie);
+    }
+
+    @Benchmark
+    public Movie readMovie(Single state) throws IOException {
+        return state.reader.readValue(state.json);
+    }
+
+    @Benchmark
+    public byte[] writePage(Page state) throws IOException {
+        return state.writer.writeValueAsBytes(state.movies);
+    }
+
+    @Benchmark
+    public List<Movie> readPage(Page state) throws IOException {
+        return state.reader.readValue(state.json);
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.github.ivanmarban.movies.benchmark;
+
+import com.github.ivanmarban.movies.model.Movie;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring Data mapping of movies to and from BSON documents, as done on every write and for every document read from a
+ * cursor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 3)
+@Fork(5)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    @Param({"1", "100", "1000"})
+    int size;
+
+    private MappingMongoConverter converter;
+
+    private List<Movie> movies;
+
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(Movie.class));
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        movies = BenchmarkMovies.movies(size);
+        documents = write();
+    }
+
+    @Benchmark
+    public List<Document> write() {
+        List<Document> written = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            Document document = new Document();
+            converter.write(movie, document);
+            written.add(document);
+        }
+        return written;
+    }
+
+    @Benchmark
+    public List<Movie> read() {
+        List<Movie> read = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            read.add(converter.read(Movie.class, document));
+        }
+        return read;
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.github.ivanmarban.movies.benchmark;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.search.SimilarityIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The most similar movies found by the {@link SimilarityIndex} against the number of indexed movies and of movies
+ * asked for, cycling through the indexed movies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class SimilarityIndexBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"10", "100"})
+    int k;
+
+    private SimilarityIndex index;
+
+    private String[] ids;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        index = new SimilarityIndex(null, null, new MoviesProperties());
+        List<Movie> movies = BenchmarkMovies.movies(size);
+        ids = new String[movies.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = movies.get(i).getId();
+            index.onMovieSaved(new MovieSavedEvent(movies.get(i)));
+        }
+    }
+
+    @Benchmark
+    public Optional<List<String>> similar() {
+        next = (next + 7919) % ids.length;
+        return index.similar(ids[next], k);
+    }
+
+}
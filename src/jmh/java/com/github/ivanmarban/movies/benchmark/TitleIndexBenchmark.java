@@ -0,0 +1,45 @@
+package com.github.ivanmarban.movies.benchmark;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.search.TitleIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title search of the {@link TitleIndex} against the number of indexed movies, for a common word, a prefix of two
+ * words, two rarer words, a text matching nothing and a text too short to have a trigram.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TitleIndexBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"the", "space od", "dark storm", "xyz", "ma"})
+    String query;
+
+    private TitleIndex index;
+
+    @Setup
+    public void setUp() {
+        index = new TitleIndex(null, null, new MoviesProperties());
+        for (Movie movie : BenchmarkMovies.movies(size)) {
+            index.onMovieSaved(new MovieSavedEvent(movie));
+        }
+    }
+
+    @Benchmark
+    public List<String> search() {
+        return index.search(query, null, 100);
+    }
+
+}
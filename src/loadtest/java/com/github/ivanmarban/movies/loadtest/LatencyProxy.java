@@ -0,0 +1,104 @@
+package com.github.ivanmarban.movies.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TCP proxy in front of the in-memory MongoDB stand-in that holds every chunk sent by the application for a set
+ * latency, so that the application waits on the database as it would on a remote one and holds its request threads
+ * and connections meanwhile. A connection of the blocking driver carries one operation at a time, so an operation is
+ * delayed once unless its message spans several reads.
+ * <p>
+ * Every connection is pumped by two threads of the proxy, which is meant for the few hundred connections of a pool.
+ */
+final class LatencyProxy implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ServerSocket serverSocket;
+
+    private final InetSocketAddress target;
+
+    private volatile long latencyNanos;
+
+    LatencyProxy(InetSocketAddress target) throws IOException {
+        this.target = target;
+        this.serverSocket = new ServerSocket(0, 1000, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "latency-proxy");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    InetSocketAddress getAddress() {
+        return new InetSocketAddress(serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort());
+    }
+
+    /**
+     * Sets the latency added from now on, seeding is quicker without.
+     */
+    void setLatency(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                Socket server = new Socket(target.getAddress(), target.getPort());
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                pump(client, server, true);
+                pump(server, client, false);
+            } catch (IOException e) {
+                // Closed, or the stand-in refused the connection, which the application sees as a closed connection.
+            }
+        }
+    }
+
+    private void pump(Socket from, Socket to, boolean delayed) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    long latency = latencyNanos;
+                    if (delayed && latency > 0) {
+                        TimeUnit.NANOSECONDS.sleep(latency);
+                    }
+                    out.write(buffer, 0, read);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The other side closed the connection.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeQuietly(from);
+                closeQuietly(to);
+            }
+        }, "latency-proxy-" + from.getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+    }
+
+}
@@ -0,0 +1,326 @@
+package com.github.ivanmarban.movies.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.ivanmarban.movies.Application;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Macro load test of the REST API. Boots the {@link Application} jar in a JVM of its own against an in-memory MongoDB
+ * stand-in held by this JVM, behind a {@link LatencyProxy} when {@code --mongo-latency} is set, or the database given by
+ * {@code --mongo-uri}, seeds it with movies through the bulk endpoint and drives the mix of
+ * {@link Operation operations} at a fixed rate with an {@link OpenLoopDriver}. A warmup run lets the JIT compile the
+ * hot paths and the caches and in-memory indexes fill before the recorded run.
+ * <p>
+ * The results hold the throughput, the latency percentiles recorded by HdrHistogram and the response statuses of every
+ * operation, along with the settings, the commit and the JVM, and are written as JSON for {@link LoadTestComparison}.
+ * The load generator and the stand-in share the machine with the application: compare runs made on the same machine
+ * only.
+ * <p>
+ * Usage: {@code LoadTest [--name=value...]}, see {@link LoadTestOptions} for the settings.
+ */
+public final class LoadTest {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long APPLICATION_TIMEOUT_SECONDS = 120;
+
+    private static final String[] APPLICATION_METRICS = {"jvm.memory.used", "jvm.threads.live", "jvm.threads.peak",
+        "jvm.gc.pause"};
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        quietLogging();
+        run(LoadTestOptions.parse(args));
+    }
+
+    /**
+     * Keeps the stand-in and the HTTP client from logging every exchange.
+     */
+    static void quietLogging() {
+        LoggingSystem loggingSystem = LoggingSystem.get(LoadTest.class.getClassLoader());
+        loggingSystem.beforeInitialize();
+        loggingSystem.setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+    }
+
+    /**
+     * Runs a load test and writes its results, which are returned as well.
+     */
+    static Map<String, Object> run(LoadTestOptions options) throws Exception {
+        MongoServer mongoServer = null;
+        LatencyProxy proxy = null;
+        String mongoUri = options.mongoUri;
+        if (mongoUri == null) {
+            mongoServer = new MongoServer(new MemoryBackend());
+            InetSocketAddress address = mongoServer.bind();
+            if (!options.mongoLatency.isZero()) {
+                proxy = new LatencyProxy(address);
+                address = proxy.getAddress();
+            }
+            mongoUri = "mongodb://" + address.getHostString() + ":" + address.getPort() + "/movies";
+        }
+        int port = freePort();
+        Process application = start(options, mongoUri, port);
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(options.timeout).build();
+            awaitReady(client, port, application);
+            MovieRequests requests = new MovieRequests(URI.create("http://localhost:" + port), options.timeout);
+            clear(client, port);
+
+            long seedStart = System.nanoTime();
+            requests.seed(client, options.movies);
+            System.out.printf("Seeded %d movies in %d ms.%n", options.movies,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+            if (proxy != null) {
+                System.out.printf("Adding %d ms to every database request.%n", options.mongoLatency.toMillis());
+                proxy.setLatency(options.mongoLatency);
+            }
+
+            OpenLoopDriver driver = new OpenLoopDriver(client, requests, options.mix, options.rate);
+            System.out.printf("Warming up for %d s at %d requests/s.%n", options.warmup.getSeconds(), options.rate);
+            driver.run(options.warmup);
+            System.out.printf("Running for %d s at %d requests/s.%n", options.duration.getSeconds(), options.rate);
+            OpenLoopDriver.Run run = driver.run(options.duration);
+
+            Map<String, Object> results = results(options, run);
+            Map<String, Object> metrics = applicationMetrics(client, port);
+            metrics.putAll(residentMemory(application));
+            results.put("application", metrics);
+            File file = new File(options.result);
+            if (file.getAbsoluteFile().getParentFile() != null) {
+                file.getAbsoluteFile().getParentFile().mkdirs();
+            }
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, results);
+            print(run);
+            System.out.printf("Results written to %s.%n", file.getAbsolutePath());
+            return results;
+        } finally {
+            application.destroy();
+            if (!application.waitFor(APPLICATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                application.destroyForcibly();
+            }
+            if (proxy != null) {
+                proxy.close();
+            }
+            if (mongoServer != null) {
+                mongoServer.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Starts the application jar in its own JVM, so that the load generator neither shares its heap nor its garbage
+     * collections, with its output in {@code loadtest-application.log} next to the results.
+     */
+    private static Process start(LoadTestOptions options, String mongoUri, int port) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(options.javaHome, "bin", "java").toString());
+        command.addAll(options.jvmArgs);
+        command.add("-jar");
+        command.add(options.applicationJar);
+        command.add("--server.port=" + port);
+        command.add("--spring.data.mongodb.uri=" + mongoUri);
+        if (!options.profiles.isEmpty()) {
+            command.add("--spring.profiles.active=" + options.profiles);
+        }
+        command.add("--management.endpoints.web.exposure.include=health,metrics");
+        command.addAll(options.applicationArgs);
+        File log = new File(new File(options.result).getAbsoluteFile().getParentFile(), "loadtest-application.log");
+        log.getParentFile().mkdirs();
+        System.out.printf("Starting %s%n", String.join(" ", command));
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    private static void awaitReady(HttpClient client, int port, Process application) throws IOException, InterruptedException {
+        HttpRequest health = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health")).build();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(APPLICATION_TIMEOUT_SECONDS);
+        while (System.nanoTime() < deadline) {
+            if (!application.isAlive()) {
+                throw new IllegalStateException("The application exited with status " + application.exitValue());
+            }
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet.
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("The application did not start in " + APPLICATION_TIMEOUT_SECONDS + " s");
+    }
+
+    /**
+     * Reads a few gauges of the application after the run, to compare the footprint of runs as well.
+     */
+    private static Map<String, Object> applicationMetrics(HttpClient client, int port) throws IOException, InterruptedException {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (String metric : APPLICATION_METRICS) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/metrics/" + metric)).build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                Map<String, Double> measurements = new LinkedHashMap<>();
+                new ObjectMapper().readTree(response.body()).path("measurements").forEach(measurement ->
+                    measurements.put(measurement.path("statistic").asText().toLowerCase(Locale.ROOT), measurement.path("value").asDouble()));
+                metrics.put(metric, measurements);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Reads the current and the peak resident memory of the application from {@code /proc}, which unlike the JVM
+     * gauges include the native memory such as the stacks of the platform threads. Empty where there is no
+     * {@code /proc}.
+     */
+    private static Map<String, Object> residentMemory(Process application) throws IOException {
+        Path status = Path.of("/proc", String.valueOf(application.pid()), "status");
+        Map<String, Object> memory = new LinkedHashMap<>();
+        if (!Files.isReadable(status)) {
+            return memory;
+        }
+        for (String line : Files.readAllLines(status)) {
+            String[] field = line.split(":\\s+");
+            if (field[0].equals("VmRSS") || field[0].equals("VmHWM")) {
+                long bytes = Long.parseLong(field[1].replace(" kB", "").trim()) * 1024;
+                memory.put(field[0].equals("VmRSS") ? "process.memory.resident" : "process.memory.resident.peak", Map.of("value", bytes));
+            }
+        }
+        return memory;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void clear(HttpClient client, int port) throws IOException, InterruptedException {
+        client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/movies")).DELETE().build(),
+            HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static Map<String, Object> results(LoadTestOptions options, OpenLoopDriver.Run run) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("timestamp", Instant.now().toString());
+        results.put("commit", commit());
+        results.put("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        results.put("processors", Runtime.getRuntime().availableProcessors());
+        results.put("settings", options.describe());
+        results.put("elapsedSeconds", run.elapsedNanos / 1e9);
+        results.put("sendingSeconds", run.sendingNanos / 1e9);
+        results.put("skipped", run.skipped.sum());
+        Histogram all = new Histogram(3);
+        long errors = 0;
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            Histogram latencies = run.latencies.get(operation);
+            if (latencies.getTotalCount() > 0) {
+                all.add(latencies);
+                errors += run.errors(operation);
+                Map<String, Object> result = summary(latencies, run.errors(operation), run);
+                result.put("statuses", run.statusCounts(operation));
+                operations.put(operation.getName(), result);
+            }
+        }
+        results.put("all", summary(all, errors, run));
+        results.put("operations", operations);
+        return results;
+    }
+
+    /**
+     * Summarizes the latencies of a set of requests, whose throughput only counts the requests served without an
+     * error while their latencies include the failed ones.
+     */
+    private static Map<String, Object> summary(Histogram latencies, long errors, OpenLoopDriver.Run run) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", latencies.getTotalCount());
+        summary.put("errors", errors);
+        summary.put("throughput", (latencies.getTotalCount() - errors) * 1e9 / run.elapsedNanos);
+        Map<String, Object> millis = new LinkedHashMap<>();
+        millis.put("mean", latencies.getMean() / NANOS_PER_MILLI);
+        for (double percentile : PERCENTILES) {
+            millis.put("p" + (percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                latencies.getValueAtPercentile(percentile) / NANOS_PER_MILLI);
+        }
+        millis.put("max", latencies.getMaxValue() / NANOS_PER_MILLI);
+        summary.put("latencyMillis", millis);
+        return summary;
+    }
+
+    private static void print(OpenLoopDriver.Run run) {
+        System.out.printf("%-8s %8s %10s %10s %10s %10s %10s  %s%n", "", "count", "req/s", "p50 (ms)", "p99 (ms)", "p99.9 (ms)",
+            "max (ms)", "statuses");
+        for (Operation operation : Operation.values()) {
+            Histogram latencies = run.latencies.get(operation);
+            if (latencies.getTotalCount() > 0) {
+                System.out.printf("%-8s %8d %10.1f %10.2f %10.2f %10.2f %10.2f  %s%n", operation.getName(), latencies.getTotalCount(),
+                    (latencies.getTotalCount() - run.errors(operation)) * 1e9 / run.elapsedNanos,
+                    latencies.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    latencies.getValueAtPercentile(99) / NANOS_PER_MILLI, latencies.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                    latencies.getMaxValue() / NANOS_PER_MILLI, run.statusCounts(operation));
+            }
+        }
+    }
+
+    /**
+     * Returns the commit of the working tree, marked when it has local changes, or {@code unknown} outside of git.
+     */
+    private static String commit() {
+        try {
+            String commit = git("rev-parse", "HEAD");
+            return git("status", "--porcelain", "--untracked-files=no").isEmpty() ? commit : commit + "-dirty";
+        } catch (IOException e) {
+            return "unknown";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+
+    private static String git(String... args) throws IOException, InterruptedException {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            reader.lines().forEach(line -> output.append(line).append('\n'));
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("git " + String.join(" ", args) + " failed: " + output);
+        }
+        return output.toString().trim();
+    }
+
+}
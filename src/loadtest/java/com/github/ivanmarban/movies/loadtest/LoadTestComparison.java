@@ -0,0 +1,118 @@
+package com.github.ivanmarban.movies.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two {@link LoadTest} results and prints, for all the requests and for every operation, the change in
+ * throughput and in latency percentiles, then the change in the memory, threads and garbage collection time of the
+ * application.
+ * <p>
+ * Usage: {@code LoadTestComparison <baseline.json> <result.json> [threshold]}, where {@code threshold} is the relative
+ * increase of the p99 latency, or decrease of the throughput, reported as a regression, {@code 0.10} by default. Exits
+ * with status 1 if anything regressed.
+ */
+public final class LoadTestComparison {
+
+    private static final String[] PERCENTILES = {"p50", "p99", "p99.9"};
+
+    private static final double MEGABYTE = 1024 * 1024;
+
+    /**
+     * Application metrics compared, with the statistic read and the label, the memory ones shown in megabytes.
+     */
+    private static final String[][] APPLICATION_METRICS = {
+        {"jvm.memory.used", "value", "jvm mem (MB)"},
+        {"process.memory.resident", "value", "rss (MB)"},
+        {"process.memory.resident.peak", "value", "peak rss (MB)"},
+        {"jvm.threads.peak", "value", "threads"},
+        {"jvm.gc.pause", "total_time", "gc pauses (s)"}};
+
+    private LoadTestComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LoadTestComparison <baseline.json> <result.json> [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode baseline = objectMapper.readTree(new File(args[0]));
+        JsonNode current = objectMapper.readTree(new File(args[1]));
+        System.out.printf("Baseline %s, current %s%n", baseline.path("commit").asText(), current.path("commit").asText());
+        if (!baseline.path("settings").equals(current.path("settings"))) {
+            System.out.println("WARNING: the runs have different settings, see the settings of both files.");
+        }
+        if (compare(baseline, current, threshold) > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints the changes from {@code baseline} to {@code current} and returns the number of operations that regressed
+     * by more than {@code threshold}.
+     */
+    static int compare(JsonNode baseline, JsonNode current, double threshold) {
+        int regressions = 0;
+        System.out.printf("%-8s %-14s %12s %12s %8s%n", "", "", "Baseline", "Current", "Change");
+        for (Map.Entry<String, JsonNode> entry : results(current).entrySet()) {
+            JsonNode before = results(baseline).get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-8s new%n", entry.getKey());
+                continue;
+            }
+            JsonNode after = entry.getValue();
+            double throughputChange = change(before.path("throughput").asDouble(), after.path("throughput").asDouble());
+            boolean regressed = -throughputChange > threshold;
+            print(entry.getKey(), "req/s", before.path("throughput").asDouble(), after.path("throughput").asDouble(),
+                regressed);
+            for (String percentile : PERCENTILES) {
+                double latencyBefore = before.path("latencyMillis").path(percentile).asDouble();
+                double latencyAfter = after.path("latencyMillis").path(percentile).asDouble();
+                boolean latencyRegressed = percentile.equals("p99") && change(latencyBefore, latencyAfter) > threshold;
+                regressed |= latencyRegressed;
+                print("", percentile + " (ms)", latencyBefore, latencyAfter, latencyRegressed);
+            }
+            if (regressed) {
+                regressions++;
+            }
+        }
+        for (String[] metric : APPLICATION_METRICS) {
+            JsonNode before = baseline.path("application").path(metric[0]).path(metric[1]);
+            JsonNode after = current.path("application").path(metric[0]).path(metric[1]);
+            if (!before.isMissingNode() && !after.isMissingNode()) {
+                double scale = metric[2].endsWith("(MB)") ? MEGABYTE : 1;
+                print("app", metric[2], before.asDouble() / scale, after.asDouble() / scale, false);
+            }
+        }
+        System.out.printf("%d operations regressed by more than %.0f%%%n", regressions, threshold * 100);
+        return regressions;
+    }
+
+    private static Map<String, JsonNode> results(JsonNode result) {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        results.put("all", result.path("all"));
+        for (Iterator<Map.Entry<String, JsonNode>> operations = result.path("operations").fields(); operations.hasNext(); ) {
+            Map.Entry<String, JsonNode> operation = operations.next();
+            results.put(operation.getKey(), operation.getValue());
+        }
+        return results;
+    }
+
+    private static void print(String name, String metric, double before, double after, boolean regressed) {
+        System.out.printf("%-8s %-14s %12.2f %12.2f %+7.1f%%%s%n", name, metric, before, after, change(before, after) * 100,
+            regressed ? "  REGRESSION" : "");
+    }
+
+    private static double change(double before, double after) {
+        return before == 0 ? 0 : (after - before) / before;
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.github.ivanmarban.movies.loadtest;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of a load test, parsed from {@code --name=value} arguments; blank values keep the default.
+ * <ul>
+ *     <li>{@code movies}: movies seeded before the test, {@code 10000} by default.</li>
+ *     <li>{@code rate}: requests sent per second, {@code 500} by default.</li>
+ *     <li>{@code warmup}: seconds of load not recorded, {@code 10} by default.</li>
+ *     <li>{@code duration}: seconds of recorded load, {@code 30} by default.</li>
+ *     <li>{@code mix}: relative weight of every {@link Operation}, {@code get=50,search=15,list=10,create=10,update=10,delete=5}
+ *     by default.</li>
+ *     <li>{@code profiles}: Spring profiles of the application, such as {@code reactive}, none by default.</li>
+ *     <li>{@code mongo-uri}: MongoDB database to test against instead of the in-memory stand-in.</li>
+ *     <li>{@code mongo-latency}: milliseconds added to every request to the in-memory stand-in once it is seeded, to
+ *     stand for a remote database, {@code 0} by default.</li>
+ *     <li>{@code java}: Java home of the application JVM, the one of the load test by default.</li>
+ *     <li>{@code jar}: application jar to test, {@code target/movies-app-backend-0.0.1-SNAPSHOT.jar} by default.</li>
+ *     <li>{@code jvm-args}: space separated options of the application JVM, such as {@code -Xmx512m}.</li>
+ *     <li>{@code app-args}: space separated arguments of the application, such as {@code --movies.search.index-enabled=false}.</li>
+ *     <li>{@code timeout}: seconds before a request fails, {@code 10} by default.</li>
+ *     <li>{@code result}: JSON file the results are written to, {@code target/loadtest-result.json} by default.</li>
+ * </ul>
+ */
+final class LoadTestOptions {
+
+    private static final String DEFAULT_MIX = "get=50,search=15,list=10,create=10,update=10,delete=5";
+
+    final int movies;
+
+    final int rate;
+
+    final Duration warmup;
+
+    final Duration duration;
+
+    final Map<Operation, Integer> mix;
+
+    final String profiles;
+
+    final String mongoUri;
+
+    final Duration mongoLatency;
+
+    final String javaHome;
+
+    final String applicationJar;
+
+    final List<String> jvmArgs;
+
+    final List<String> applicationArgs;
+
+    final Duration timeout;
+
+    final String result;
+
+    private final Map<String, String> values;
+
+    private LoadTestOptions(Map<String, String> values) {
+        this.values = values;
+        this.movies = Integer.parseInt(values.getOrDefault("movies", "10000"));
+        this.rate = Integer.parseInt(values.getOrDefault("rate", "500"));
+        this.warmup = Duration.ofSeconds(Long.parseLong(values.getOrDefault("warmup", "10")));
+        this.duration = Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration", "30")));
+        this.mix = parseMix(values.getOrDefault("mix", DEFAULT_MIX));
+        this.profiles = values.getOrDefault("profiles", "");
+        this.mongoUri = values.get("mongo-uri");
+        this.mongoLatency = Duration.ofMillis(Long.parseLong(values.getOrDefault("mongo-latency", "0")));
+        this.javaHome = values.getOrDefault("java", System.getProperty("java.home"));
+        this.applicationJar = values.getOrDefault("jar", "target/movies-app-backend-0.0.1-SNAPSHOT.jar");
+        this.jvmArgs = split(values.get("jvm-args"));
+        this.applicationArgs = split(values.get("app-args"));
+        this.timeout = Duration.ofSeconds(Long.parseLong(values.getOrDefault("timeout", "10")));
+        this.result = values.getOrDefault("result", "target/loadtest-result.json");
+        if (rate < 1 || duration.isZero() || duration.isNegative() || mix.isEmpty()) {
+            throw new IllegalArgumentException("The rate, the duration and the mix must be positive");
+        }
+        if (mongoUri != null && !mongoLatency.isZero()) {
+            throw new IllegalArgumentException("The latency can only be added to the in-memory stand-in");
+        }
+    }
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String value = arg.substring(separator + 1).trim();
+            if (!value.isEmpty()) {
+                values.put(arg.substring(2, separator), value);
+            }
+        }
+        return new LoadTestOptions(values);
+    }
+
+    /**
+     * Returns a setting that is not a load test one, such as a setting of a benchmark made of several load tests.
+     */
+    String value(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * Returns these settings with some of them replaced, given by name as in the arguments.
+     */
+    LoadTestOptions with(Map<String, String> overrides) {
+        Map<String, String> merged = new HashMap<>(values);
+        merged.putAll(overrides);
+        return new LoadTestOptions(merged);
+    }
+
+    /**
+     * Returns the settings as written to the results, so that runs made with different ones are not compared blindly.
+     */
+    Map<String, Object> describe() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("movies", movies);
+        settings.put("rate", rate);
+        settings.put("warmupSeconds", warmup.getSeconds());
+        settings.put("durationSeconds", duration.getSeconds());
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        mix.forEach((operation, weight) -> weights.put(operation.getName(), weight));
+        settings.put("mix", weights);
+        settings.put("profiles", profiles);
+        settings.put("mongo", mongoUri == null ? "in-memory" : "external");
+        settings.put("mongoLatencyMillis", mongoLatency.toMillis());
+        settings.put("java", javaHome);
+        settings.put("jvmArgs", jvmArgs);
+        settings.put("applicationArgs", applicationArgs);
+        return settings;
+    }
+
+    private static List<String> split(String value) {
+        return value == null ? List.of() : List.of(value.trim().split("\\s+"));
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.trim().split("=");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight but got " + entry);
+            }
+            int value = Integer.parseInt(weight[1].trim());
+            if (value > 0) {
+                weights.put(Operation.of(weight[0].trim()), value);
+            }
+        }
+        return weights;
+    }
+
+}
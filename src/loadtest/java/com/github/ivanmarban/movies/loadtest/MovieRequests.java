@@ -0,0 +1,184 @@
+package com.github.ivanmarban.movies.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.StringJoiner;
+
+/**
+ * Builds the requests of every {@link Operation} from deterministic random movies and keeps the ids of the movies in
+ * the catalog, so that reads, updates and deletes target existing movies. Deleted movies are taken out of the ids when
+ * the request is built, created ones added when it completes.
+ * <p>
+ * Requests are built by a single thread; the ids are shared with the threads completing them.
+ */
+final class MovieRequests {
+
+    private static final String[] WORDS = {"the", "space", "odyssey", "shining", "night", "return", "king", "lost", "city",
+        "dark", "star", "love", "war", "dead", "man", "woman", "last", "blue", "house", "river", "ghost", "storm"};
+
+    private static final String[] GENRES = {"Action", "Comedy", "Drama", "Horror", "Mystery", "Sci-Fi", "Thriller", "War"};
+
+    private static final String[] DIRECTORS = {"Stanley Kubrick", "Mel Brooks", "Akira Kurosawa", "Agnes Varda", "Sofia Coppola"};
+
+    private static final String[] RATINGS = {"G", "PG", "PG-13", "R"};
+
+    private static final int PAGE_SIZE = 20;
+
+    private static final int SEED_BATCH = 5000;
+
+    private static final String JSON = "application/json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Random random = new Random(42);
+
+    private final List<String> ids = new ArrayList<>();
+
+    private final URI movies;
+
+    private final Duration timeout;
+
+    MovieRequests(URI baseUri, Duration timeout) {
+        this.movies = baseUri.resolve("/api/movies");
+        this.timeout = timeout;
+    }
+
+    /**
+     * Inserts {@code count} movies through the bulk endpoint and keeps their ids.
+     */
+    void seed(HttpClient client, int count) throws IOException, InterruptedException {
+        for (int from = 0; from < count; from += SEED_BATCH) {
+            StringBuilder body = new StringBuilder();
+            for (int i = from; i < Math.min(count, from + SEED_BATCH); i++) {
+                body.append(objectMapper.writeValueAsString(movie())).append('\n');
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(movies + "/_bulk"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            JsonNode result = objectMapper.readTree(response.body());
+            if (response.statusCode() != 200 || result.path("failed").asInt() > 0) {
+                throw new IllegalStateException("Seeding failed with status " + response.statusCode() + ": " + response.body());
+            }
+            synchronized (ids) {
+                result.path("items").forEach(item -> ids.add(item.get("id").asText()));
+            }
+        }
+    }
+
+    /**
+     * Returns the request of {@code operation}, or {@code null} if there is no movie left to read, update or delete.
+     */
+    HttpRequest next(Operation operation) {
+        switch (operation) {
+            case GET:
+                return existing(operation).map(id -> request(URI.create(movies + "/" + id)).GET().build()).orElse(null);
+            case SEARCH:
+                return request(URI.create(movies + "?limit=" + PAGE_SIZE + "&title=" + WORDS[random.nextInt(WORDS.length)])).GET().build();
+            case LIST:
+                return request(URI.create(movies + "?limit=" + PAGE_SIZE)).GET().build();
+            case CREATE:
+                return request(movies).header("Content-Type", JSON).POST(body(movie())).build();
+            case UPDATE:
+                Map<String, Object> patch = Map.of("rated", RATINGS[random.nextInt(RATINGS.length)]);
+                return existing(operation)
+                    .map(id -> request(URI.create(movies + "/" + id)).header("Content-Type", JSON).method("PATCH", body(patch)).build())
+                    .orElse(null);
+            case DELETE:
+                return existing(operation).map(id -> request(URI.create(movies + "/" + id)).DELETE().build()).orElse(null);
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    /**
+     * Keeps the id of a created movie.
+     */
+    void completed(Operation operation, HttpResponse<String> response) {
+        if (operation == Operation.CREATE && response.statusCode() == 201) {
+            try {
+                String id = objectMapper.readTree(response.body()).path("id").asText();
+                synchronized (ids) {
+                    ids.add(id);
+                }
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    int size() {
+        synchronized (ids) {
+            return ids.size();
+        }
+    }
+
+    private Optional<String> existing(Operation operation) {
+        synchronized (ids) {
+            if (ids.isEmpty()) {
+                return Optional.empty();
+            }
+            int index = random.nextInt(ids.size());
+            if (operation != Operation.DELETE) {
+                return Optional.of(ids.get(index));
+            }
+            String id = ids.get(index);
+            ids.set(index, ids.get(ids.size() - 1));
+            ids.remove(ids.size() - 1);
+            return Optional.of(id);
+        }
+    }
+
+    private HttpRequest.Builder request(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(timeout).header("Accept", JSON);
+    }
+
+    private HttpRequest.BodyPublisher body(Object value) {
+        try {
+            return HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(value));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a movie in the API format, where the genres are a comma separated string and the runtime is in minutes.
+     */
+    private Map<String, Object> movie() {
+        StringBuilder title = new StringBuilder();
+        int words = 1 + random.nextInt(4);
+        for (int w = 0; w < words; w++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            title.append(w == 0 ? "" : " ").append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        StringJoiner genres = new StringJoiner(", ");
+        for (int g = 1 + random.nextInt(3); g > 0; g--) {
+            genres.add(GENRES[random.nextInt(GENRES.length)]);
+        }
+        Map<String, Object> movie = new LinkedHashMap<>();
+        movie.put("title", title.toString());
+        movie.put("year", String.valueOf(1920 + random.nextInt(100)));
+        movie.put("rated", RATINGS[random.nextInt(RATINGS.length)]);
+        movie.put("runtime", (80 + random.nextInt(100)) + " min");
+        movie.put("genre", genres.toString());
+        movie.put("director", DIRECTORS[random.nextInt(DIRECTORS.length)]);
+        return movie;
+    }
+
+}
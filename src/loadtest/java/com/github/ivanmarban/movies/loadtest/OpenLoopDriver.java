@@ -0,0 +1,135 @@
+package com.github.ivanmarban.movies.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests at a fixed rate, open loop: every request has a due time set by the rate alone and is sent then,
+ * whether or not the previous ones completed. Its latency is measured from the due time rather than from when it was
+ * actually sent, so a server or client stall is charged to every request it delayed instead of silently lowering the
+ * load, which is the coordinated omission of closed loop load generators.
+ */
+final class OpenLoopDriver {
+
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+
+    private final HttpClient client;
+
+    private final MovieRequests requests;
+
+    private final Operation[] mix;
+
+    private final int rate;
+
+    private final Random random = new Random(7);
+
+    OpenLoopDriver(HttpClient client, MovieRequests requests, Map<Operation, Integer> weights, int rate) {
+        this.client = client;
+        this.requests = requests;
+        this.mix = weights.entrySet().stream()
+            .flatMap(weight -> Collections.nCopies(weight.getValue(), weight.getKey()).stream())
+            .toArray(Operation[]::new);
+        this.rate = rate;
+    }
+
+    /**
+     * Drives the load for {@code duration} and waits for the requests in flight.
+     */
+    Run run(Duration duration) throws InterruptedException {
+        Run run = new Run();
+        long start = System.nanoTime();
+        long requestsToSend = duration.getSeconds() * rate;
+        for (long sent = 0; sent < requestsToSend; sent++) {
+            long due = start + sent * TimeUnit.SECONDS.toNanos(1) / rate;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = mix[random.nextInt(mix.length)];
+            HttpRequest request = requests.next(operation);
+            if (request == null) {
+                run.skipped.increment();
+                continue;
+            }
+            run.inFlight.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+                run.record(operation, System.nanoTime() - due, response == null ? 0 : response.statusCode());
+                if (response != null) {
+                    requests.completed(operation, response);
+                }
+                run.inFlight.decrementAndGet();
+            });
+        }
+        run.sendingNanos = System.nanoTime() - start;
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (run.inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        run.elapsedNanos = System.nanoTime() - start;
+        return run;
+    }
+
+    /**
+     * Latencies and response statuses of a run, by operation. A status of {@code 0} stands for a request that failed
+     * without a response, such as a timeout.
+     */
+    static final class Run {
+
+        final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+
+        final Map<Operation, Map<Integer, LongAdder>> statuses = new EnumMap<>(Operation.class);
+
+        final LongAdder skipped = new LongAdder();
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        long sendingNanos;
+
+        long elapsedNanos;
+
+        private Run() {
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new ConcurrentHistogram(3));
+                statuses.put(operation, new ConcurrentHashMap<>());
+            }
+        }
+
+        Map<Integer, Long> statusCounts(Operation operation) {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statuses.get(operation).forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+
+        /**
+         * Returns the requests of {@code operation} that failed without a response or with a server error.
+         */
+        long errors(Operation operation) {
+            return statusCounts(operation).entrySet().stream()
+                .filter(status -> status.getKey() == 0 || status.getKey() >= 500)
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+        }
+
+        private void record(Operation operation, long latencyNanos, int status) {
+            latencies.get(operation).recordValue(latencyNanos);
+            statuses.get(operation).computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.github.ivanmarban.movies.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Requests of the load test mix.
+ */
+enum Operation {
+
+    GET("get"),
+    SEARCH("search"),
+    LIST("list"),
+    CREATE("create"),
+    UPDATE("update"),
+    DELETE("delete");
+
+    private final String name;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    static Operation of(String name) {
+        return Arrays.stream(values())
+            .filter(operation -> operation.name.equals(name))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Unknown operation " + name));
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.github.ivanmarban.movies.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Compares the request execution modes of the servlet stack at high concurrency: two {@link LoadTest load tests} with
+ * the same settings, the first on the bounded pool of platform threads of Tomcat, the second with the
+ * {@code virtual-threads} profile, then the throughput, latency and memory changes between them.
+ * <p>
+ * The database is made remote by a latency on the in-memory stand-in, {@code 100} ms by default, so that the
+ * requests in flight are the rate times the latency. Both runs use a connection pool larger than the platform
+ * threads and no concurrency limits, leaving the threads, or the pool, as the limit. Besides the {@link LoadTestOptions
+ * load test settings}:
+ * <ul>
+ *     <li>{@code pool}: size of the connection pool of both runs, {@code 1000} by default.</li>
+ *     <li>{@code platform-threads}: Tomcat threads of the first run, {@code 200} by default.</li>
+ * </ul>
+ * The application JVM, {@code --java}, must be Java 21 or later. The results are written next to {@code --result}, as
+ * {@code loadtest-platform-threads.json} and {@code loadtest-virtual-threads.json}.
+ */
+public final class VirtualThreadsBenchmark {
+
+    private VirtualThreadsBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTest.quietLogging();
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        File directory = new File(options.result).getAbsoluteFile().getParentFile();
+        String applicationArgs = String.join(" ", options.applicationArgs)
+            + " --movies.concurrency.enabled=false"
+            + " --movies.mongo-pool.max-size=" + options.value("pool", "1000");
+        String mongoLatency = options.value("mongo-latency", "100");
+
+        System.out.println("Platform threads");
+        LoadTest.run(options.with(Map.of(
+            "mongo-latency", mongoLatency,
+            "app-args", applicationArgs + " --server.tomcat.threads.max=" + options.value("platform-threads", "200"),
+            "result", new File(directory, "loadtest-platform-threads.json").getPath())));
+
+        System.out.println("Virtual threads");
+        LoadTest.run(options.with(Map.of(
+            "mongo-latency", mongoLatency,
+            "app-args", applicationArgs,
+            "profiles", options.profiles.isEmpty() ? "virtual-threads" : options.profiles + ",virtual-threads",
+            "result", new File(directory, "loadtest-virtual-threads.json").getPath())));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode platform = objectMapper.readTree(new File(directory, "loadtest-platform-threads.json"));
+        JsonNode virtual = objectMapper.readTree(new File(directory, "loadtest-virtual-threads.json"));
+        System.out.println("Platform threads (baseline) against virtual threads");
+        LoadTestComparison.compare(platform, virtual, 0.10);
+    }
+
+}
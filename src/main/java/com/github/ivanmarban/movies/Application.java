@@ -1,13 +1,39 @@
 package com.github.ivanmarban.movies;
 
+import com.github.ivanmarban.movies.config.MoviesProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.env.Profiles;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
 
 @SpringBootApplication
+@EnableConfigurationProperties(MoviesProperties.class)
 public class Application {
 
+    /**
+     * Startup steps kept for the {@code startup} actuator endpoint, enough for a full context refresh.
+     */
+    private static final int STARTUP_STEPS = 8192;
+
     public static void main(String[] args) {
-        SpringApplication.run(Application.class, args);
+        SpringApplication application = new SpringApplication(Application.class);
+        if (isFaststart(args)) {
+            application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+        }
+        application.run(args);
+    }
+
+    /**
+     * Whether the {@code faststart} profile is activated by the command line, a system property or an environment
+     * variable, the only sources known before the application starts.
+     */
+    private static boolean isFaststart(String[] args) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        return environment.acceptsProfiles(Profiles.of("faststart"));
     }
 
 }
@@ -0,0 +1,106 @@
+package com.github.ivanmarban.movies.config;
+
+import com.github.ivanmarban.movies.limit.ConcurrencyLimitInterceptor;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimitWebFilter;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimiter;
+import com.github.ivanmarban.movies.limit.StoreLatencyInterceptor;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import com.github.ivanmarban.movies.repository.ReactiveMoviesRepository;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.env.Environment;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Puts the handler methods annotated with {@link com.github.ivanmarban.movies.limit.ConcurrencyLimit} behind the
+ * {@link ConcurrencyLimiter}, with an interceptor on the servlet stack and a web filter on the reactive one, and times
+ * the calls to the movie stores that drive the limits.
+ */
+@Configuration
+public class ConcurrencyLimitConfig {
+
+    /**
+     * Adds the {@link StoreLatencyInterceptor} in front of the movie stores, unless {@code movies.concurrency.enabled}
+     * is unset. Runs before the cache proxies are created, so that lookups served from the cache are not timed, and is
+     * bound from the environment as post-processors are created before the configuration properties.
+     */
+    @Bean
+    public static BeanPostProcessor storeLatencyPostProcessor(Environment environment) {
+        boolean enabled = Binder.get(environment).bind("movies.concurrency.enabled", Boolean.class).orElse(true);
+        return new StoreLatencyPostProcessor(enabled);
+    }
+
+    static class StoreLatencyPostProcessor implements BeanPostProcessor, PriorityOrdered {
+
+        private final boolean enabled;
+
+        StoreLatencyPostProcessor(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Repositories are proxies already, whose last interceptors call the implementation without proceeding, so the
+         * timing goes first.
+         */
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!enabled || !(bean instanceof MovieStore || bean instanceof ReactiveMoviesRepository)) {
+                return bean;
+            }
+            if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+                ((Advised) bean).addAdvice(0, new StoreLatencyInterceptor());
+                return bean;
+            }
+            ProxyFactory proxyFactory = new ProxyFactory(bean);
+            proxyFactory.addAdvice(new StoreLatencyInterceptor());
+            return proxyFactory.getProxy();
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+
+    }
+
+    @Configuration
+    @Profile("!reactive")
+    static class ServletInterceptor implements WebMvcConfigurer {
+
+        private final ConcurrencyLimiter limiter;
+
+        ServletInterceptor(ConcurrencyLimiter limiter) {
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void addInterceptors(InterceptorRegistry registry) {
+            registry.addInterceptor(new ConcurrencyLimitInterceptor(limiter));
+        }
+
+    }
+
+    @Configuration
+    @Profile("reactive")
+    static class ReactiveFilter {
+
+        @Bean
+        public ConcurrencyLimitWebFilter concurrencyLimitWebFilter(
+            ConcurrencyLimiter limiter,
+            @Qualifier("requestMappingHandlerMapping") RequestMappingHandlerMapping handlerMapping) {
+            return new ConcurrencyLimitWebFilter(limiter, handlerMapping);
+        }
+
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.github.ivanmarban.movies.config;
+
+import com.github.ivanmarban.movies.embedded.EmbeddedMovieStore;
+import com.github.ivanmarban.movies.embedded.MovieLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Serves the movies from the embedded memory-mapped log instead of MongoDB, whose auto-configuration the
+ * {@code embedded} profile excludes. Only the servlet stack is supported, there is no reactive store.
+ */
+@Slf4j
+@Configuration
+@Profile("embedded")
+public class EmbeddedStorageConfig {
+
+    private final TaskScheduler taskScheduler;
+
+    private final MoviesProperties.Embedded properties;
+
+    public EmbeddedStorageConfig(TaskScheduler taskScheduler, MoviesProperties properties) {
+        this.taskScheduler = taskScheduler;
+        this.properties = properties.getEmbedded();
+    }
+
+    @Bean
+    public MovieLog movieLog() throws IOException {
+        return MovieLog.open(Path.of(properties.getPath()), (int) properties.getSegmentSize().toBytes(), properties.isSyncWrites());
+    }
+
+    @Bean
+    public EmbeddedMovieStore movieStore(MovieLog movieLog) {
+        return new EmbeddedMovieStore(movieLog);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleCompaction() throws IOException {
+        MovieLog movieLog = movieLog();
+        taskScheduler.scheduleWithFixedDelay(() -> {
+            int compacted = movieLog.compact(properties.getCompactionThreshold());
+            if (compacted > 0) {
+                log.info("Compacted {} movie log segments.", compacted);
+            }
+        }, properties.getCompactionInterval());
+    }
+
+}
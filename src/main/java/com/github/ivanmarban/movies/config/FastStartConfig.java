@@ -0,0 +1,42 @@
+package com.github.ivanmarban.movies.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * Startup optimized mode used when instances are added on traffic spikes. The {@code faststart} profile initializes
+ * beans lazily, and as in every profile the indexes are left to
+ * {@link com.github.ivanmarban.movies.repository.MovieIndexes}, so the first request is served without waiting for
+ * MongoDB. The {@code faststart} Maven profile packages the application with a class data sharing archive recorded by
+ * a training run that exits once the application is ready.
+ */
+@Slf4j
+@Configuration
+@Profile("faststart")
+public class FastStartConfig {
+
+    private final MoviesProperties.Startup properties;
+
+    public FastStartConfig(MoviesProperties properties) {
+        this.properties = properties.getStartup();
+    }
+
+    /**
+     * Runs before the other listeners, so the training run does not start the background loads.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void exitOnReady(ApplicationReadyEvent event) {
+        if (properties.isExitOnReady()) {
+            log.info("Application ready, exiting.");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.github.ivanmarban.movies.config;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFields;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Serializes movies as JSON, CBOR ({@code application/cbor}) or Smile ({@code application/x-jackson-smile}) as
+ * negotiated with the {@code Accept} and {@code Content-Type} headers. The binary formats are written by object mappers
+ * built like the JSON one, so they honor the same configuration and the {@code fields} parameter. The negotiated
+ * responses carry {@code Vary: Accept}, for the caches to keep the formats apart.
+ */
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * The movie endpoints, whose responses are negotiated but for the export and the bulk load, which have a single
+     * format.
+     */
+    static final String[] NEGOTIATED = {"/api/movies", "/api/movies/**"};
+
+    static final String[] SINGLE_FORMAT = {"/api/movies/export", "/api/movies/_bulk"};
+
+    /**
+     * Puts movies behind the {@link MovieFields#FILTER} property filter, writing every property unless a response asks
+     * for fewer.
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer movieFieldsCustomizer() {
+        return builder -> builder
+            .mixIn(Movie.class, MovieFieldsMixin.class)
+            .filters(new SimpleFilterProvider().addFilter(MovieFields.FILTER, SimpleBeanPropertyFilter.serializeAll()));
+    }
+
+    @JsonFilter(MovieFields.FILTER)
+    abstract static class MovieFieldsMixin {
+
+    }
+
+    /**
+     * Take the place of the binary converters Spring MVC adds by default, whose object mappers miss the configuration.
+     */
+    @Configuration
+    @Profile("!reactive")
+    static class ServletConverters implements WebMvcConfigurer {
+
+        @Bean
+        public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+            return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+        }
+
+        @Bean
+        public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+            return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+        }
+
+        @Override
+        public void addInterceptors(InterceptorRegistry registry) {
+            registry.addInterceptor(new HandlerInterceptor() {
+                @Override
+                public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                    response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                    return true;
+                }
+            }).addPathPatterns(NEGOTIATED).excludePathPatterns(SINGLE_FORMAT);
+        }
+
+    }
+
+    @Configuration
+    @Profile("reactive")
+    static class ReactiveCodecs implements WebFluxConfigurer {
+
+        private final ObjectMapper objectMapper;
+
+        private final ObjectMapper cborMapper;
+
+        private final ObjectMapper smileMapper;
+
+        ReactiveCodecs(ObjectMapper objectMapper, ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+            this.objectMapper = objectMapper;
+            this.cborMapper = builders.getObject().factory(new CBORFactory()).build();
+            this.smileMapper = builders.getObject().factory(new SmileFactory()).build();
+        }
+
+        /**
+         * WebFlux has no default CBOR codec, and custom codecs take precedence over the default ones. The JSON encoder
+         * is registered as a custom codec first as well, so that JSON remains the format of requests accepting any.
+         */
+        @Override
+        public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+            MovieFieldsCodecs.JsonEncoder jsonEncoder = new MovieFieldsCodecs.JsonEncoder(objectMapper);
+            configurer.defaultCodecs().jackson2JsonEncoder(jsonEncoder);
+            configurer.defaultCodecs().jackson2SmileEncoder(new MovieFieldsCodecs.SmileEncoder(smileMapper));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper, MovieFieldsCodecs.SMILE_MIME_TYPES));
+            configurer.customCodecs().register(jsonEncoder);
+            configurer.customCodecs().register(new MovieFieldsCodecs.CborEncoder(cborMapper));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cborMapper, MediaType.APPLICATION_CBOR));
+        }
+
+        @Bean
+        public WebFilter varyAcceptWebFilter() {
+            List<PathPattern> negotiated = parse(NEGOTIATED);
+            List<PathPattern> singleFormat = parse(SINGLE_FORMAT);
+            return (exchange, chain) -> {
+                PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+                if (negotiated.stream().anyMatch(pattern -> pattern.matches(path))
+                    && singleFormat.stream().noneMatch(pattern -> pattern.matches(path))) {
+                    exchange.getResponse().getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                }
+                return chain.filter(exchange);
+            };
+        }
+
+        private static List<PathPattern> parse(String[] patterns) {
+            return Arrays.stream(patterns).map(PathPatternParser.defaultInstance::parse).collect(Collectors.toList());
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.github.ivanmarban.movies.config;
+
+import com.github.ivanmarban.movies.metrics.ConnectionPoolWaitListener;
+import com.github.ivanmarban.movies.metrics.SlowQueryListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Command latencies and pool gauges are registered by Spring Boot, add the pool wait time and the slow query log to
+     * the blocking and the reactive clients alike.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoDiagnosticsCustomizer(MeterRegistry meterRegistry, MoviesProperties properties) {
+        Duration threshold = properties.getMetrics().getSlowQueryThreshold();
+        return builder -> {
+            builder.applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(new ConnectionPoolWaitListener(meterRegistry)));
+            if (threshold != null && !threshold.isZero() && !threshold.isNegative()) {
+                builder.addCommandListener(new SlowQueryListener(threshold));
+            }
+        };
+    }
+
+}
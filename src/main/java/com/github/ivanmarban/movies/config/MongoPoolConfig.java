@@ -0,0 +1,43 @@
+package com.github.ivanmarban.movies.config;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.connection.ConnectionPoolSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the connection pool of the blocking and the reactive clients alike with the {@code movies.mongo-pool}
+ * settings. Only the settings configured apply, and none over a pool option of the connection string, so that by
+ * default the pool is the one of the URI and of the driver. The {@code virtual-threads} profile, where the request
+ * threads no longer bound the concurrent database operations, makes the pool their explicit limit: an operation that
+ * cannot get a connection within the wait time fails rather than piling up.
+ */
+@Configuration
+public class MongoPoolConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoPoolCustomizer(MoviesProperties properties, ObjectProvider<MongoProperties> mongoProperties) {
+        MoviesProperties.MongoPool pool = properties.getMongoPool();
+        String uri = mongoProperties.getIfAvailable(MongoProperties::new).getUri();
+        ConnectionString connectionString = uri == null ? null : new ConnectionString(uri);
+        return builder -> builder.applyToConnectionPoolSettings(settings -> apply(pool, connectionString, settings));
+    }
+
+    static void apply(MoviesProperties.MongoPool pool, ConnectionString uri, ConnectionPoolSettings.Builder settings) {
+        if (pool.getMaxSize() != null && (uri == null || uri.getMaxConnectionPoolSize() == null)) {
+            settings.maxSize(pool.getMaxSize());
+        }
+        if (pool.getMinSize() != null && (uri == null || uri.getMinConnectionPoolSize() == null)) {
+            settings.minSize(pool.getMinSize());
+        }
+        if (pool.getMaxWaitTime() != null && (uri == null || uri.getMaxWaitTime() == null)) {
+            settings.maxWaitTime(pool.getMaxWaitTime().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.github.ivanmarban.movies.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.github.ivanmarban.movies.model.MovieFields;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Jackson encoders of the reactive stack applying the {@code fields} parameter of the request. WebFlux has no response
+ * body advice, the encoders read the parameter through their hints instead.
+ */
+final class MovieFieldsCodecs {
+
+    /**
+     * Smile types as handled by default, which the constructors taking an object mapper would replace with JSON ones.
+     */
+    static final MimeType[] SMILE_MIME_TYPES = {new MimeType("application", "x-jackson-smile"),
+        new MimeType("application", "*+x-jackson-smile")};
+
+    private static final String FILTERS_HINT = MovieFieldsCodecs.class.getName() + ".filters";
+
+    private MovieFieldsCodecs() {
+    }
+
+    private static Map<String, Object> withFilters(Map<String, Object> hints, ServerHttpRequest request) {
+        MovieFields fields;
+        try {
+            fields = MovieFields.of(request.getQueryParams().getFirst(MovieFields.PARAMETER));
+        } catch (IllegalArgumentException e) {
+            return hints;
+        }
+        if (fields == null) {
+            return hints;
+        }
+        Map<String, Object> withFilters = new HashMap<>(hints);
+        withFilters.put(FILTERS_HINT, fields.getFilters());
+        return withFilters;
+    }
+
+    private static ObjectWriter withFilters(ObjectWriter writer, Map<String, Object> hints) {
+        FilterProvider filters = hints == null ? null : (FilterProvider) hints.get(FILTERS_HINT);
+        return filters == null ? writer : writer.with(filters);
+    }
+
+    static class JsonEncoder extends Jackson2JsonEncoder {
+
+        JsonEncoder(ObjectMapper objectMapper) {
+            super(objectMapper);
+        }
+
+        @Override
+        public Map<String, Object> getEncodeHints(ResolvableType actualType, ResolvableType elementType, MediaType mediaType,
+                                                  ServerHttpRequest request, ServerHttpResponse response) {
+            return withFilters(super.getEncodeHints(actualType, elementType, mediaType, request, response), request);
+        }
+
+        @Override
+        protected ObjectWriter customizeWriter(ObjectWriter writer, MimeType mimeType, ResolvableType elementType,
+                                               Map<String, Object> hints) {
+            return withFilters(super.customizeWriter(writer, mimeType, elementType, hints), hints);
+        }
+
+    }
+
+    static class SmileEncoder extends Jackson2SmileEncoder {
+
+        SmileEncoder(ObjectMapper objectMapper) {
+            super(objectMapper, SMILE_MIME_TYPES);
+        }
+
+        @Override
+        public Map<String, Object> getEncodeHints(ResolvableType actualType, ResolvableType elementType, MediaType mediaType,
+                                                  ServerHttpRequest request, ServerHttpResponse response) {
+            return withFilters(super.getEncodeHints(actualType, elementType, mediaType, request, response), request);
+        }
+
+        @Override
+        protected ObjectWriter customizeWriter(ObjectWriter writer, MimeType mimeType, ResolvableType elementType,
+                                               Map<String, Object> hints) {
+            return withFilters(super.customizeWriter(writer, mimeType, elementType, hints), hints);
+        }
+
+    }
+
+    static class CborEncoder extends Jackson2CborEncoder {
+
+        CborEncoder(ObjectMapper objectMapper) {
+            super(objectMapper, MediaType.APPLICATION_CBOR);
+        }
+
+        /**
+         * Encodes single values, which the base class only supports through {@link #encodeValue}, as response bodies
+         * are written through this method. Streams of values remain unsupported.
+         */
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                       MimeType mimeType, Map<String, Object> hints) {
+            if (inputStream instanceof Mono) {
+                return Mono.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints)).flux();
+            }
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+
+        @Override
+        public Map<String, Object> getEncodeHints(ResolvableType actualType, ResolvableType elementType, MediaType mediaType,
+                                                  ServerHttpRequest request, ServerHttpResponse response) {
+            return withFilters(super.getEncodeHints(actualType, elementType, mediaType, request, response), request);
+        }
+
+        @Override
+        protected ObjectWriter customizeWriter(ObjectWriter writer, MimeType mimeType, ResolvableType elementType,
+                                               Map<String, Object> hints) {
+            return withFilters(super.customizeWriter(writer, mimeType, elementType, hints), hints);
+        }
+
+    }
+
+}
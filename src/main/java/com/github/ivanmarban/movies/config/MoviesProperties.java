@@ -0,0 +1,417 @@
+package com.github.ivanmarban.movies.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "movies")
+public class MoviesProperties {
+
+    private final Pagination pagination = new Pagination();
+
+    private final Export export = new Export();
+
+    private final Bulk bulk = new Bulk();
+
+    private final MultiGet multiGet = new MultiGet();
+
+    private final Write write = new Write();
+
+    private final Concurrency concurrency = new Concurrency();
+
+    private final Search search = new Search();
+
+    private final Similar similar = new Similar();
+
+    private final Migration migration = new Migration();
+
+    private final Indexes indexes = new Indexes();
+
+    private final QueryGuard queryGuard = new QueryGuard();
+
+    private final Facets facets = new Facets();
+
+    private final Metrics metrics = new Metrics();
+
+    private final MongoPool mongoPool = new MongoPool();
+
+    private final Watermark watermark = new Watermark();
+
+    private final Embedded embedded = new Embedded();
+
+    private final Startup startup = new Startup();
+
+    @Data
+    public static class Pagination {
+
+        /**
+         * Page size used when a request does not ask for a specific limit.
+         */
+        private int defaultLimit = 100;
+
+        /**
+         * Largest page size a client may request, bigger limits are capped to this value.
+         */
+        private int maxLimit = 1000;
+
+    }
+
+    @Data
+    public static class Export {
+
+        /**
+         * Documents fetched per cursor round trip, the response is flushed after each batch.
+         */
+        private int batchSize = 500;
+
+    }
+
+    @Data
+    public static class Bulk {
+
+        /**
+         * Documents written per unordered bulk insert.
+         */
+        private int batchSize = 1000;
+
+    }
+
+    @Data
+    public static class MultiGet {
+
+        /**
+         * Largest number of ids a single multi get may request.
+         */
+        private int maxIds = 1000;
+
+    }
+
+    @Data
+    public static class Write {
+
+        /**
+         * Whether movies created one at a time are queued and inserted in batches by a single writer thread instead of
+         * with one round trip each.
+         */
+        private boolean coalescingEnabled = false;
+
+        /**
+         * Largest number of movies written per coalesced insert.
+         */
+        private int maxBatchSize = 100;
+
+        /**
+         * Longest time the first movie of a batch waits for more movies before the batch is written.
+         */
+        private Duration maxDelay = Duration.ofMillis(2);
+
+        /**
+         * Movies that may wait for insertion, further creations are rejected until the queue drains.
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * Longest time a coalesced insert may take, the creations still waiting {@code max-delay} plus this long are
+         * answered with 503.
+         */
+        private Duration storeTimeout = Duration.ofSeconds(10);
+
+    }
+
+    @Data
+    public static class Concurrency {
+
+        /**
+         * Whether requests are admitted under adaptive concurrency limits, the requests over the limit being answered
+         * with 503.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Factor applied to a limit when the store calls of the requests it admits get slower than its latency threshold
+         * or fail.
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * Delay clients are asked to wait before retrying a rejected request.
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        /**
+         * Limit of the lookups by id.
+         */
+        private final Limit read = new Limit(100, 8, 200, Duration.ofMillis(250));
+
+        /**
+         * Limit of the creations, updates and deletions of a single movie.
+         */
+        private final Limit write = new Limit(50, 4, 100, Duration.ofMillis(500));
+
+        /**
+         * Limit of the filtered pages, facet counts and deletions of every movie.
+         */
+        private final Limit expensive = new Limit(8, 1, 32, Duration.ofSeconds(2));
+
+        /**
+         * Limit of the bulk loads, fixed by default since their duration follows the size of the upload.
+         */
+        private final Limit bulk = new Limit(2, 2, 2, Duration.ofMinutes(10));
+
+        /**
+         * Limit of the catalog exports, fixed by default since their duration follows the size of the catalog.
+         */
+        private final Limit export = new Limit(4, 4, 4, Duration.ofMinutes(30));
+
+    }
+
+    @Data
+    public static class Limit {
+
+        /**
+         * Concurrent requests admitted at startup.
+         */
+        private int initialLimit;
+
+        /**
+         * Lowest limit the backoff may reach.
+         */
+        private int minLimit;
+
+        /**
+         * Highest limit the additive increase may reach.
+         */
+        private int maxLimit;
+
+        /**
+         * Requests whose store calls take longer than this in total decrease the limit.
+         */
+        private Duration latencyThreshold;
+
+        public Limit(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.latencyThreshold = latencyThreshold;
+        }
+
+    }
+
+    @Data
+    public static class Search {
+
+        /**
+         * Whether title searches are answered by the in-memory trigram index instead of a regular expression query.
+         */
+        private boolean indexEnabled = true;
+
+        /**
+         * Documents fetched per cursor round trip while loading or reconciling the index.
+         */
+        private int loadBatchSize = 1000;
+
+        /**
+         * Delay between two reconciliations of the index with the database, picking up the writes of other instances.
+         * Unless set the index is only loaded once.
+         */
+        private Duration reconcileInterval;
+
+    }
+
+    @Data
+    public static class Similar {
+
+        /**
+         * Whether similar movies are served by the in-memory similarity index, otherwise the endpoint is unavailable.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Number of similar movies returned when the request does not specify {@code k}.
+         */
+        private int defaultK = 10;
+
+        /**
+         * Upper bound for the number of similar movies returned by a single request.
+         */
+        private int maxK = 100;
+
+        /**
+         * Number of indexed movies from which a request scores them in parallel on the common fork join pool.
+         */
+        private int parallelThreshold = 50_000;
+
+        /**
+         * Documents fetched per cursor round trip while loading or reconciling the index.
+         */
+        private int loadBatchSize = 1000;
+
+        /**
+         * Delay between two reconciliations of the index with the database, picking up the writes of other instances.
+         * Unless set the index is only loaded once.
+         */
+        private Duration reconcileInterval;
+
+    }
+
+    @Data
+    public static class Migration {
+
+        /**
+         * Whether legacy movie documents are converted to the typed schema in the background at startup.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Documents converted per bulk update.
+         */
+        private int batchSize = 500;
+
+    }
+
+    @Data
+    public static class Indexes {
+
+        /**
+         * Whether the indexes declared on the movies are created, or verified, in the background once the application
+         * is ready.
+         */
+        private boolean enabled = true;
+
+    }
+
+    @Data
+    public static class QueryGuard {
+
+        /**
+         * What to do with the filtered queries MongoDB plans as a collection scan, found by explaining every filtered
+         * query first. Meant for development and test environments.
+         */
+        private Mode mode = Mode.NONE;
+
+        public enum Mode {
+
+            /**
+             * Queries are not explained.
+             */
+            NONE,
+
+            /**
+             * Collection scans are logged as errors.
+             */
+            LOG,
+
+            /**
+             * Collection scans fail with an exception instead of running.
+             */
+            FAIL
+
+        }
+
+    }
+
+    @Data
+    public static class Facets {
+
+        /**
+         * Whether unfiltered facet requests are answered by in-memory counters instead of an aggregation.
+         */
+        private boolean countersEnabled = true;
+
+        /**
+         * Delay between two recomputations of the counters from the database, correcting the drift left by writes
+         * racing a recomputation or made by other instances.
+         */
+        private Duration reconcileInterval = Duration.ofHours(6);
+
+    }
+
+    @Data
+    public static class Metrics {
+
+        /**
+         * MongoDB commands taking at least this long are logged with their query, zero disables the log.
+         */
+        private Duration slowQueryThreshold = Duration.ofMillis(100);
+
+    }
+
+    @Data
+    public static class MongoPool {
+
+        /**
+         * Connections opened to every server at most, which bounds the concurrent database operations of the instance
+         * whatever the number of request threads. Unset, the connection string or the driver decides, 100 by default.
+         */
+        private Integer maxSize;
+
+        /**
+         * Connections kept open to every server even when idle. Unset, the connection string or the driver decides.
+         */
+        private Integer minSize;
+
+        /**
+         * Longest wait for a connection once all of them are checked out, after which the operation fails instead of
+         * queueing behind a saturated pool. Unset, the connection string or the driver decides, 2 minutes by default.
+         */
+        private Duration maxWaitTime;
+
+    }
+
+    @Data
+    public static class Watermark {
+
+        /**
+         * Whether list, search and facet requests are validated against the collection watermark, which only sees the
+         * writes made through this instance and so must stay off when several instances share the database.
+         */
+        private boolean enabled;
+
+    }
+
+    @Data
+    public static class Embedded {
+
+        /**
+         * Directory holding the segments of the movie log used by the {@code embedded} profile.
+         */
+        private String path = "data/movies";
+
+        /**
+         * Size of every segment file, which is mapped in memory whole.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Whether every write is forced to the storage device before it returns, otherwise only an operating system
+         * crash may lose the latest writes.
+         */
+        private boolean syncWrites = false;
+
+        /**
+         * Delay between two compactions of the sealed segments.
+         */
+        private Duration compactionInterval = Duration.ofMinutes(1);
+
+        /**
+         * Sealed segments holding less than this share of live bytes are rewritten by the compaction.
+         */
+        private double compactionThreshold = 0.5;
+
+    }
+
+    @Data
+    public static class Startup {
+
+        /**
+         * Whether to exit as soon as the application is ready, used by the training run that records the class data
+         * sharing archive.
+         */
+        private boolean exitOnReady = false;
+
+    }
+
+}
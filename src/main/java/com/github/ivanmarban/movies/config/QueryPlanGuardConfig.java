@@ -0,0 +1,39 @@
+package com.github.ivanmarban.movies.config;
+
+import com.github.ivanmarban.movies.repository.QueryPlanGuard;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+@Configuration
+public class QueryPlanGuardConfig {
+
+    /**
+     * Puts the {@link QueryPlanGuard} in front of the template the repositories query through, unless
+     * {@code movies.query-guard.mode} is {@code none}. Bound from the environment as post-processors are created before
+     * the configuration properties.
+     */
+    @Bean
+    public static BeanPostProcessor queryPlanGuardPostProcessor(Environment environment) {
+        MoviesProperties.QueryGuard.Mode mode = Binder.get(environment)
+            .bind("movies.query-guard.mode", MoviesProperties.QueryGuard.Mode.class)
+            .orElse(MoviesProperties.QueryGuard.Mode.NONE);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (mode == MoviesProperties.QueryGuard.Mode.NONE || !(bean instanceof MongoTemplate)) {
+                    return bean;
+                }
+                ProxyFactory proxyFactory = new ProxyFactory(bean);
+                proxyFactory.setProxyTargetClass(true);
+                proxyFactory.addAdvice(new QueryPlanGuard((MongoTemplate) bean, mode));
+                return proxyFactory.getProxy();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.model.BulkItemResult;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the documents of a bulk request into unordered batch inserts and streams the result of every item as soon as
+ * its batch has been written, so neither the request nor the response is ever held in memory. A batch holds at most
+ * {@code batchSize} items, rejected ones included, so that a run of invalid documents is streamed back as well.
+ */
+@Slf4j
+final class BulkLoad {
+
+    private final MovieStore movieStore;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final JsonGenerator out;
+
+    private final int batchSize;
+
+    private final List<Movie> batch;
+
+    private final List<BulkItemResult> pending;
+
+    private int inserted;
+
+    private int failed;
+
+    BulkLoad(MovieStore movieStore, ApplicationEventPublisher eventPublisher, JsonGenerator out, int batchSize) {
+        this.movieStore = movieStore;
+        this.eventPublisher = eventPublisher;
+        this.out = out;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+        this.pending = new ArrayList<>(batchSize);
+    }
+
+    void start() throws IOException {
+        out.writeStartObject();
+        out.writeArrayFieldStart("items");
+    }
+
+    void add(int index, Movie movie) throws IOException {
+        movie.setId(new ObjectId().toHexString());
+        batch.add(movie);
+        pending.add(new BulkItemResult(index, movie.getId(), HttpStatus.CREATED.value(), null));
+        if (pending.size() == batchSize) {
+            flush();
+        }
+    }
+
+    void reject(int index, String error) throws IOException {
+        pending.add(new BulkItemResult(index, null, HttpStatus.BAD_REQUEST.value(), error));
+        if (pending.size() == batchSize) {
+            flush();
+        }
+    }
+
+    void finish() throws IOException {
+        flush();
+        out.writeEndArray();
+        out.writeNumberField("inserted", inserted);
+        out.writeNumberField("failed", failed);
+        out.writeEndObject();
+    }
+
+    private void flush() throws IOException {
+        Map<Integer, String> failures = insertBatch();
+        int position = 0;
+        for (BulkItemResult item : pending) {
+            if (item.getId() != null) {
+                String error = failures.get(position);
+                if (error == null) {
+                    eventPublisher.publishEvent(new MovieSavedEvent(batch.get(position)));
+                } else {
+                    item.setId(null);
+                    item.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+                    item.setError(error);
+                }
+                position++;
+            }
+            if (item.getError() == null) {
+                inserted++;
+            } else {
+                failed++;
+            }
+            out.writeObject(item);
+        }
+        out.flush();
+        batch.clear();
+        pending.clear();
+    }
+
+    private Map<Integer, String> insertBatch() {
+        if (batch.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            return movieStore.insertUnordered(batch);
+        } catch (Exception e) {
+            log.error("Error inserting batch of {} movies.", batch.size(), e);
+            Map<Integer, String> failures = new HashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                failures.put(i, e.getMessage());
+            }
+            return failures;
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.github.ivanmarban.movies.controller;
+
+import org.bson.types.ObjectId;
+
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination token. It wraps the {@code _id} of the last movie of a page, so the next page is a range
+ * query over the {@code _id} index instead of a skip over the whole collection.
+ */
+final class MovieCursor {
+
+    private MovieCursor() {
+    }
+
+    static String encode(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(new ObjectId(id).toByteArray());
+    }
+
+    static ObjectId decode(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != 12) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        return new ObjectId(bytes);
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.watermark.MoviesWatermark;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Entity tags of the movies and of the collection. The tag of a movie is strong, its quoted version, movies stored
+ * before versioning having version {@code 0}. As the JSON, CBOR and Smile representations of a movie differ, the
+ * tags of the binary ones end with their format, {@code "3+cbor"} or {@code "3+smile"}; an {@code If-Match} header
+ * may list the tags of any representation.
+ */
+final class MovieETag {
+
+    private static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+
+    private MovieETag() {
+    }
+
+    static String of(Movie movie, String format) {
+        return "\"" + (movie.getVersion() == null ? 0 : movie.getVersion()) + format + "\"";
+    }
+
+    static String of(MoviesWatermark.Mark mark, String format) {
+        String tag = mark.getETag();
+        return tag.substring(0, tag.length() - 1) + format + "\"";
+    }
+
+    /**
+     * Returns the suffix of the tags of the representation negotiated for the {@code Accept} header: none for JSON,
+     * which requests accepting any format get, {@code +cbor} or {@code +smile} for the binary formats.
+     */
+    static String format(String accept) {
+        if (accept == null) {
+            return "";
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return "";
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType mediaType : accepted) {
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return "";
+            }
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                return "+cbor";
+            }
+            if (mediaType.isCompatibleWith(SMILE)) {
+                return "+smile";
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Whether an {@code If-Match} header matches any current representation, {@code *}, which a missing movie fails.
+     */
+    static boolean isAny(String header) {
+        return header != null && header.trim().equals("*");
+    }
+
+    /**
+     * Returns the versions an {@code If-Match} header accepts, one per tag of its list, or {@code null} when any version
+     * matches, the header being absent or {@code *}. The tags that cannot match any version, weak or foreign, are left
+     * out.
+     *
+     * @throws IllegalArgumentException if none of the tags can match a version
+     */
+    static Set<Long> ifMatch(String header) {
+        if (header == null || isAny(header)) {
+            return null;
+        }
+        Set<Long> versions = new HashSet<>();
+        int start = 0;
+        boolean quoted = false;
+        for (int i = 0; i <= header.length(); i++) {
+            if (i == header.length() || !quoted && header.charAt(i) == ',') {
+                Long version = version(header.substring(start, i).trim());
+                if (version != null) {
+                    versions.add(version);
+                }
+                start = i + 1;
+            } else if (header.charAt(i) == '"') {
+                quoted = !quoted;
+            }
+        }
+        if (versions.isEmpty()) {
+            throw new IllegalArgumentException("Unsupported entity tag: " + header);
+        }
+        return versions;
+    }
+
+    private static Long version(String tag) {
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return null;
+        }
+        String opaque = tag.substring(1, tag.length() - 1);
+        if (opaque.endsWith("+cbor") || opaque.endsWith("+smile")) {
+            opaque = opaque.substring(0, opaque.indexOf('+'));
+        }
+        try {
+            return Long.valueOf(opaque);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.github.ivanmarban.movies.model.MovieFields;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+
+/**
+ * Writes only the movie properties listed in the {@code fields} parameter of the request. The controller validates the
+ * parameter and reads only those properties, this leaves the others out of the response.
+ */
+@ControllerAdvice(assignableTypes = MoviesController.class)
+@Profile("!reactive")
+public class MovieFieldsAdvice extends AbstractMappingJacksonResponseBodyAdvice {
+
+    @Override
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType, MethodParameter returnType,
+                                           ServerHttpRequest request, ServerHttpResponse response) {
+        MovieFields fields;
+        try {
+            fields = MovieFields.of(((ServletServerHttpRequest) request).getServletRequest().getParameter(MovieFields.PARAMETER));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        if (fields != null) {
+            bodyContainer.setFilters(fields.getFilters());
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.model.FacetCount;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import com.github.ivanmarban.movies.model.MultiGetResult;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The parameter validation and response shaping shared by {@link MoviesController} and
+ * {@link ReactiveMoviesController}, so that both stacks answer the same requests the same way.
+ */
+final class MovieRequests {
+
+    private MovieRequests() {
+    }
+
+    /**
+     * Returns the size of the page requested with {@code limit}, bounded by {@code movies.pagination.max-limit}.
+     *
+     * @throws IllegalArgumentException if {@code limit} is not positive
+     */
+    static int pageSize(Integer limit, MoviesProperties.Pagination pagination) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+        return Math.min(limit == null ? pagination.getDefaultLimit() : limit, pagination.getMaxLimit());
+    }
+
+    /**
+     * Returns the {@code Link} header value pointing at the page following the one ending with {@code lastId}.
+     */
+    static String nextLink(UriComponentsBuilder request, int pageSize, String lastId) {
+        String next = request
+            .replaceQueryParam("limit", pageSize)
+            .replaceQueryParam("after", MovieCursor.encode(lastId))
+            .toUriString();
+        return "<" + next + ">; rel=\"next\"";
+    }
+
+    /**
+     * Returns the number of similar movies requested with {@code k}, bounded by {@code movies.similar.max-k}.
+     *
+     * @throws IllegalArgumentException if {@code k} is not positive
+     */
+    static int similarK(Integer k, MoviesProperties.Similar similar) {
+        if (k != null && k < 1) {
+            throw new IllegalArgumentException("Invalid k: " + k);
+        }
+        return Math.min(k == null ? similar.getDefaultK() : k, similar.getMaxK());
+    }
+
+    static boolean isValidMultiGet(List<String> ids, MoviesProperties.MultiGet multiGet) {
+        return ids != null && !ids.isEmpty() && ids.size() <= multiGet.getMaxIds() && !ids.contains(null);
+    }
+
+    /**
+     * Splits the result of a multi get, in the order of its ids, into the movies found and the ids missing.
+     */
+    static MultiGetResult multiGetResult(Map<String, Optional<Movie>> movies) {
+        MultiGetResult result = new MultiGetResult();
+        movies.forEach((id, movie) -> {
+            if (movie.isPresent()) {
+                result.getMovies().add(movie.get());
+            } else {
+                result.getMissing().add(id);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the movies {@code found} in the order of {@code ids}, leaving out the ids not found.
+     */
+    static List<Movie> inOrder(List<String> ids, Map<String, Movie> found) {
+        return ids.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * Lists the values of every facet by decreasing count, then by value.
+     */
+    static Map<String, List<FacetCount>> facets(Map<MovieFacet, Map<String, Long>> counts) {
+        Map<String, List<FacetCount>> facets = new LinkedHashMap<>();
+        for (MovieFacet facet : MovieFacet.values()) {
+            facets.put(facet.getName(), counts.getOrDefault(facet, Map.of()).entrySet().stream()
+                .map(count -> new FacetCount(count.getKey(), count.getValue()))
+                .sorted(Comparator.comparingLong(FacetCount::getCount).reversed().thenComparing(FacetCount::getValue))
+                .collect(Collectors.toList()));
+        }
+        return facets;
+    }
+
+    /**
+     * Reads a patch into the update of the properties it lists.
+     *
+     * @throws IllegalArgumentException if the patch is not a JSON object
+     */
+    static MovieUpdate toUpdate(JsonNode patch, ObjectMapper objectMapper) throws JsonProcessingException {
+        if (!patch.isObject()) {
+            throw new IllegalArgumentException("A patch must be a JSON object");
+        }
+        List<String> properties = new ArrayList<>();
+        patch.fieldNames().forEachRemaining(properties::add);
+        return MovieUpdate.patch(objectMapper.treeToValue(patch, Movie.class), properties);
+    }
+
+    /**
+     * The answer to a request that may succeed if retried a second later.
+     */
+    static <T> ResponseEntity<T> retryLater() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+}
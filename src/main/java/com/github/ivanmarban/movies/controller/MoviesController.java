@@ -1,86 +1,437 @@
 package com.github.ivanmarban.movies.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimit;
+import com.github.ivanmarban.movies.limit.Workload;
+import com.github.ivanmarban.movies.model.FacetCount;
 import com.github.ivanmarban.movies.model.Movie;
-import com.github.ivanmarban.movies.repository.MoviesRepository;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import com.github.ivanmarban.movies.model.MultiGetRequest;
+import com.github.ivanmarban.movies.model.MultiGetResult;
+import com.github.ivanmarban.movies.repository.MovieBatchLookup;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import com.github.ivanmarban.movies.repository.MovieWriteCoalescer;
+import com.github.ivanmarban.movies.search.MovieSearch;
+import com.github.ivanmarban.movies.search.SimilarityIndex;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api")
+@Profile("!reactive")
 @Slf4j
 public class MoviesController {
 
-    private final MoviesRepository moviesRepository;
+    private final MovieStore movieStore;
 
-    public MoviesController(MoviesRepository moviesRepository) {
-        this.moviesRepository = moviesRepository;
+    private final MovieBatchLookup movieBatchLookup;
+
+    private final MovieWriteCoalescer writeCoalescer;
+
+    private final MovieSearch movieSearch;
+
+    private final SimilarityIndex similarityIndex;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectWriter exportWriter;
+
+    private final MoviesProperties.Pagination pagination;
+
+    private final MoviesProperties.Export export;
+
+    private final MoviesProperties.Bulk bulk;
+
+    private final MoviesProperties.MultiGet multiGet;
+
+    private final MoviesProperties.Similar similar;
+
+    public MoviesController(MovieStore movieStore, MovieBatchLookup movieBatchLookup, MovieWriteCoalescer writeCoalescer,
+                            MovieSearch movieSearch, SimilarityIndex similarityIndex,
+                            ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper, MoviesProperties properties) {
+        this.movieStore = movieStore;
+        this.movieBatchLookup = movieBatchLookup;
+        this.writeCoalescer = writeCoalescer;
+        this.movieSearch = movieSearch;
+        this.similarityIndex = similarityIndex;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.exportWriter = objectMapper.writerFor(Movie.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.pagination = properties.getPagination();
+        this.export = properties.getExport();
+        this.bulk = properties.getBulk();
+        this.multiGet = properties.getMultiGet();
+        this.similar = properties.getSimilar();
     }
 
     @GetMapping("/movies")
-    public ResponseEntity<List<Movie>> getMovies(@RequestParam(required = false) String title) {
+    @ConcurrencyLimit(Workload.EXPENSIVE)
+    public ResponseEntity<List<Movie>> getMovies(MovieFilter filter,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 @RequestParam(required = false) String after,
+                                                 @RequestParam(required = false) MovieFields fields,
+                                                 WebRequest request) {
+        int pageSize;
+        ObjectId afterId;
         try {
-            List<Movie> movies = new ArrayList<>();
-            if (title == null) {
-                movies.addAll(moviesRepository.findAll());
-            } else {
-                movies.addAll(moviesRepository.findByTitleContaining(title));
-            }
-            if (movies.isEmpty()) {
+            pageSize = MovieRequests.pageSize(limit, pagination);
+            afterId = after == null ? null : MovieCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid page request: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (isCollectionNotModified(request)) {
+            return new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
+        }
+        try {
+            Pageable pageable = PageRequest.of(0, pageSize, Sort.by("id"));
+            Slice<Movie> movies = movieSearch.findMovies(filter, afterId, pageable, fields);
+            if (!movies.hasContent()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
-            return new ResponseEntity<>(movies, HttpStatus.OK);
+            HttpHeaders headers = new HttpHeaders();
+            if (movies.hasNext()) {
+                String lastId = movies.getContent().get(movies.getNumberOfElements() - 1).getId();
+                headers.add(HttpHeaders.LINK,
+                    MovieRequests.nextLink(ServletUriComponentsBuilder.fromCurrentRequest(), pageSize, lastId));
+            }
+            return new ResponseEntity<>(movies.getContent(), headers, HttpStatus.OK);
         } catch (Exception e) {
             log.error("Error getting movies.", e);
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Validates the conditional headers against the collection watermark, answering unchanged collections without a
+     * query. On a match the response already carries the {@code 304} status and the validators.
+     */
+    private boolean isCollectionNotModified(WebRequest request) {
+        return movieSearch.watermark()
+            .map(mark -> request.checkNotModified(MovieETag.of(mark, formatOf(request)), mark.getLastModified().toEpochMilli()))
+            .orElse(false);
+    }
+
+    private static String formatOf(WebRequest request) {
+        String[] accept = request.getHeaderValues(HttpHeaders.ACCEPT);
+        return MovieETag.format(accept == null ? null : String.join(",", accept));
+    }
+
+    @GetMapping(value = "/movies/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ConcurrencyLimit(Workload.EXPORT)
+    public ResponseEntity<StreamingResponseBody> exportMovies(
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        int batchSize = export.getBatchSize();
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 8192, true) : out;
+            try (Stream<Movie> movies = movieStore.streamAll(batchSize, null);
+                 JsonGenerator generator = exportWriter.createGenerator(target)) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                int written = 0;
+                for (Iterator<Movie> iterator = movies.iterator(); iterator.hasNext(); ) {
+                    exportWriter.writeValue(generator, iterator.next());
+                    if (++written % batchSize == 0) {
+                        generator.flush();
+                    }
+                }
+                if (written > 0) {
+                    generator.writeRaw('\n');
+                }
+            }
+        };
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Whether {@code acceptEncoding} accepts the {@code gzip} coding, named or through {@code *}, with a non-zero
+     * quality value. A coding named explicitly overrides {@code *}, and a quality value that cannot be parsed refuses the
+     * coding.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean gzip = null;
+        boolean any = false;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim();
+            boolean accepted = quality(parts) > 0;
+            if (coding.equalsIgnoreCase("gzip")) {
+                gzip = accepted;
+            } else if (coding.equals("*")) {
+                any = accepted;
+            }
+        }
+        return gzip != null ? gzip : any;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 1 && Character.toLowerCase(parameter.charAt(0)) == 'q' && parameter.charAt(1) == '=') {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    @GetMapping("/movies/facets")
+    @ConcurrencyLimit(Workload.EXPENSIVE)
+    public ResponseEntity<Map<String, List<FacetCount>>> getFacets(MovieFilter filter, WebRequest request) {
+        if (isCollectionNotModified(request)) {
+            return new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
+        }
+        try {
+            return new ResponseEntity<>(MovieRequests.facets(movieSearch.countFacets(filter)), HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("Error getting facets.", e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Reads the whole movie through the id cache, as its version makes the entity tag, leaving the properties not
+     * listed in {@code fields} out of the response only.
+     */
     @GetMapping("/movies/{id}")
-    public ResponseEntity<Movie> getMovieById(@PathVariable("id") String id) {
-        Optional<Movie> movieData = moviesRepository.findById(id);
-        return movieData.map(movie -> new ResponseEntity<>(movie, HttpStatus.OK)).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    @ConcurrencyLimit(Workload.READ)
+    public ResponseEntity<Movie> getMovieById(@PathVariable("id") String id, @RequestParam(required = false) MovieFields fields,
+                                              WebRequest request) {
+        Optional<Movie> movieData = movieStore.findById(id);
+        return movieData.map(movie -> request.checkNotModified(MovieETag.of(movie, formatOf(request)))
+                ? new ResponseEntity<Movie>(HttpStatus.NOT_MODIFIED) : new ResponseEntity<>(movie, HttpStatus.OK))
+            .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Ranks the movies by what they have in common with the movie {@code id} in the similarity index, then reads them
+     * through the id cache. Until the index has been loaded the endpoint is unavailable.
+     */
+    @GetMapping("/movies/{id}/similar")
+    @ConcurrencyLimit(Workload.READ)
+    public ResponseEntity<List<Movie>> getSimilarMovies(@PathVariable("id") String id,
+                                                        @RequestParam(required = false) Integer k,
+                                                        @RequestParam(required = false) MovieFields fields) {
+        int count;
+        try {
+            count = MovieRequests.similarK(k, similar);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (!similarityIndex.isAvailable()) {
+            return MovieRequests.retryLater();
+        }
+        try {
+            Optional<List<String>> ids = similarityIndex.similar(id, count);
+            if (ids.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            if (ids.get().isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            List<Movie> movies = new ArrayList<>(ids.get().size());
+            movieBatchLookup.findAll(ids.get(), fields).values().forEach(movie -> movie.ifPresent(movies::add));
+            return new ResponseEntity<>(movies, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("Error getting similar movies.", e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Resolves many ids at once, from the id cache first and with a single query for the rest.
+     */
+    @PostMapping("/movies/_mget")
+    @ConcurrencyLimit(Workload.READ)
+    public ResponseEntity<MultiGetResult> getMoviesByIds(@RequestBody MultiGetRequest request,
+                                                         @RequestParam(required = false) MovieFields fields) {
+        List<String> ids = request.getIds();
+        if (!MovieRequests.isValidMultiGet(ids, multiGet)) {
+            log.warn("Invalid multi get of {} ids.", ids == null ? null : ids.size());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            return new ResponseEntity<>(MovieRequests.multiGetResult(movieBatchLookup.findAll(new LinkedHashSet<>(ids), fields)),
+                HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("Error getting movies by ids.", e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
     }
 
     @PostMapping("/movies")
+    @ConcurrencyLimit(Workload.WRITE)
     public ResponseEntity<Movie> createMovie(@RequestBody Movie movie) {
         try {
-            Movie m = moviesRepository.save(Movie.builder().title(movie.getTitle()).year(movie.getYear()).genre(movie.getGenre())
-                .director(movie.getDirector()).rated(movie.getRated()).rated(movie.getRated()).runtime(movie.getRuntime()).build());
+            Movie m = writeCoalescer.isEnabled() ? writeCoalescer.insert(movie.copyWithId(null)).join()
+                : movieStore.save(movie.copyWithId(null));
+            eventPublisher.publishEvent(new MovieSavedEvent(m));
             return new ResponseEntity<>(m, HttpStatus.CREATED);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                log.warn("Movie write queue is full.");
+                return MovieRequests.retryLater();
+            }
+            if (e.getCause() instanceof TimeoutException) {
+                log.warn("Movie was not written in time.");
+                return MovieRequests.retryLater();
+            }
+            log.error("Error creating movie.", e.getCause());
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         } catch (Exception e) {
             log.error("Error creating movie.", e);
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    @PostMapping(value = "/movies/_bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @ConcurrencyLimit(Workload.BULK)
+    public void bulkInsertMovies(InputStream body, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator out = objectMapper.createGenerator(response.getOutputStream())) {
+            BulkLoad load = new BulkLoad(movieStore, eventPublisher, out, bulk.getBatchSize());
+            load.start();
+            int index = 0;
+            try (MappingIterator<JsonNode> documents = objectMapper.readerFor(JsonNode.class).readValues(body)) {
+                while (documents.hasNextValue()) {
+                    JsonNode document = documents.nextValue();
+                    try {
+                        load.add(index, objectMapper.treeToValue(document, Movie.class));
+                    } catch (JsonProcessingException e) {
+                        load.reject(index, e.getOriginalMessage());
+                    }
+                    index++;
+                }
+            } catch (JsonProcessingException e) {
+                log.warn("Malformed bulk payload at item {}.", index);
+                load.reject(index, e.getOriginalMessage());
+            }
+            load.finish();
+        }
+    }
+
     @PutMapping("/movies/{id}")
-    public ResponseEntity<Movie> updateMovie(@RequestBody Movie movie, @PathVariable("id") String id) {
-        Optional<Movie> movieData = moviesRepository.findById(id);
-        if (movieData.isPresent()) {
-            Movie m = movieData.get();
-            m.setRated(movie.getRated());
-            m.setGenre(movie.getGenre());
-            m.setDirector(movie.getDirector());
-            m.setRuntime(movie.getRuntime());
-            m.setTitle(movie.getTitle());
-            m.setYear(movie.getYear());
-            return new ResponseEntity<>(moviesRepository.save(m), HttpStatus.OK);
-        } else {
-            log.warn("Movie {} not found.", movie);
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    @ConcurrencyLimit(Workload.WRITE)
+    public ResponseEntity<Movie> updateMovie(@RequestBody Movie movie, @PathVariable("id") String id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return modifyMovie(id, MovieUpdate.replace(movie), ifMatch, accept);
+    }
+
+    @PatchMapping("/movies/{id}")
+    @ConcurrencyLimit(Workload.WRITE)
+    public ResponseEntity<Movie> patchMovie(@RequestBody JsonNode patch, @PathVariable("id") String id,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        MovieUpdate update;
+        try {
+            update = MovieRequests.toUpdate(patch, objectMapper);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            log.warn("Invalid patch of movie {}: {}", id, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return modifyMovie(id, update, ifMatch, accept);
+    }
+
+    /**
+     * Updates the movie in a single round trip. The previous movie is returned by the database and the updated one
+     * derived from it, only a failed conditional update costs a second round trip to tell a conflict from a missing id.
+     */
+    private ResponseEntity<Movie> modifyMovie(String id, MovieUpdate update, String ifMatch, String accept) {
+        Set<Long> expectedVersions;
+        try {
+            expectedVersions = MovieETag.ifMatch(ifMatch);
+        } catch (IllegalArgumentException e) {
+            log.warn("Movie {} cannot match {}.", id, ifMatch);
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
+        try {
+            Optional<Movie> previous = movieStore.modify(id, update, expectedVersions);
+            if (previous.isEmpty()) {
+                if (expectedVersions != null && movieStore.existsById(id)) {
+                    log.warn("Movie {} is no longer at one of the versions {}.", id, expectedVersions);
+                    return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+                }
+                if (MovieETag.isAny(ifMatch)) {
+                    log.warn("Movie {} not found, it cannot match *.", id);
+                    return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+                }
+                log.warn("Movie {} not found.", id);
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            Movie updated = update.applyTo(previous.get());
+            eventPublisher.publishEvent(new MovieSavedEvent(updated, previous.get()));
+            return ResponseEntity.ok().eTag(MovieETag.of(updated, MovieETag.format(accept))).body(updated);
+        } catch (Exception e) {
+            log.error("Error updating movie.", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     @DeleteMapping("/movies/{id}")
+    @ConcurrencyLimit(Workload.WRITE)
     public ResponseEntity<HttpStatus> deleteMovie(@PathVariable("id") String id) {
         try {
-            moviesRepository.deleteById(id);
+            movieStore.removeById(id).ifPresent(movie -> eventPublisher.publishEvent(new MovieDeletedEvent(id, movie)));
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (Exception e) {
             log.error("Error deleting movie.", e);
@@ -89,9 +440,11 @@ public class MoviesController {
     }
 
     @DeleteMapping("/movies")
+    @ConcurrencyLimit(Workload.EXPENSIVE)
     public ResponseEntity<HttpStatus> deleteAllMovies() {
         try {
-            moviesRepository.deleteAll();
+            movieStore.deleteAll();
+            eventPublisher.publishEvent(new MoviesDeletedEvent());
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (Exception e) {
             log.error("Error deleting all movies.", e);
@@ -0,0 +1,131 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.model.BulkItemResult;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.repository.ReactiveMoviesRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reactive counterpart of {@link BulkLoad}: groups the decoded documents of a bulk request into unordered batch
+ * inserts and emits the result of every item once its batch has been written. Documents are only requested from the
+ * request body as fast as the batches are written.
+ */
+@Slf4j
+final class ReactiveBulkLoad {
+
+    private final ReactiveMoviesRepository moviesRepository;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ObjectMapper objectMapper;
+
+    private final int batchSize;
+
+    ReactiveBulkLoad(ReactiveMoviesRepository moviesRepository, ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                     int batchSize) {
+        this.moviesRepository = moviesRepository;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    Flux<BulkItemResult> load(Flux<JsonNode> documents) {
+        return Flux.defer(() -> {
+            AtomicInteger index = new AtomicInteger();
+            return documents
+                .map(document -> parse(index.getAndIncrement(), document))
+                .onErrorResume(ReactiveBulkLoad::isMalformed, e -> {
+                    log.warn("Malformed bulk payload at item {}.", index.get());
+                    JsonProcessingException cause = (JsonProcessingException) NestedExceptionUtils.getMostSpecificCause(e);
+                    BulkItemResult rejected = new BulkItemResult(index.get(), null, HttpStatus.BAD_REQUEST.value(), cause.getOriginalMessage());
+                    return Mono.just(new Item(rejected, null));
+                })
+                .buffer(batchSize)
+                .concatMap(this::write);
+        });
+    }
+
+    /**
+     * Whether the request body could not be tokenized, which ends the body early.
+     */
+    private static boolean isMalformed(Throwable e) {
+        return (e instanceof DecodingException || e instanceof ServerWebInputException)
+            && NestedExceptionUtils.getMostSpecificCause(e) instanceof JsonProcessingException;
+    }
+
+    private Item parse(int index, JsonNode document) {
+        try {
+            Movie movie = objectMapper.treeToValue(document, Movie.class);
+            movie.setId(new ObjectId().toHexString());
+            return new Item(new BulkItemResult(index, movie.getId(), HttpStatus.CREATED.value(), null), movie);
+        } catch (JsonProcessingException e) {
+            return new Item(new BulkItemResult(index, null, HttpStatus.BAD_REQUEST.value(), e.getOriginalMessage()), null);
+        }
+    }
+
+    private Flux<BulkItemResult> write(List<Item> items) {
+        List<Movie> batch = new ArrayList<>(items.size());
+        items.stream().filter(item -> item.movie != null).forEach(item -> batch.add(item.movie));
+        Mono<Map<Integer, String>> failures = batch.isEmpty() ? Mono.just(Map.of()) : moviesRepository.insertUnordered(batch)
+            .onErrorResume(e -> {
+                log.error("Error inserting batch of {} movies.", batch.size(), e);
+                Map<Integer, String> all = new HashMap<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    all.put(i, e.getMessage());
+                }
+                return Mono.just(all);
+            });
+        // The listeners of the saved events wait for the locks of the indexes, which the event loop may not do.
+        return failures.publishOn(Schedulers.boundedElastic()).flatMapIterable(errors -> {
+            List<BulkItemResult> results = new ArrayList<>(items.size());
+            int position = 0;
+            for (Item item : items) {
+                if (item.movie != null) {
+                    String error = errors.get(position++);
+                    if (error == null) {
+                        eventPublisher.publishEvent(new MovieSavedEvent(item.movie));
+                    } else {
+                        item.result.setId(null);
+                        item.result.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+                        item.result.setError(error);
+                    }
+                }
+                results.add(item.result);
+            }
+            return results;
+        });
+    }
+
+    private static final class Item {
+
+        private final BulkItemResult result;
+
+        private final Movie movie;
+
+        private Item(BulkItemResult result, Movie movie) {
+            this.result = result;
+            this.movie = movie;
+        }
+
+    }
+
+}
@@ -0,0 +1,444 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.facet.FacetCounters;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimit;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimiter;
+import com.github.ivanmarban.movies.limit.Workload;
+import com.github.ivanmarban.movies.metrics.MovieQueryMetrics;
+import com.github.ivanmarban.movies.model.BulkItemResult;
+import com.github.ivanmarban.movies.model.FacetCount;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import com.github.ivanmarban.movies.model.MultiGetRequest;
+import com.github.ivanmarban.movies.model.MultiGetResult;
+import com.github.ivanmarban.movies.repository.MovieWriteCoalescer;
+import com.github.ivanmarban.movies.repository.ReactiveMoviesRepository;
+import com.github.ivanmarban.movies.search.SimilarityIndex;
+import com.github.ivanmarban.movies.search.TitleIndex;
+import com.github.ivanmarban.movies.watermark.MoviesWatermark;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking counterpart of {@link MoviesController} serving the same routes with the same status codes when the
+ * {@code reactive} profile is active. The catalog export and the bulk insert stream with backpressure, pages are
+ * bounded by {@code movies.pagination.max-limit} and collected before the response starts, as the {@code Link} header
+ * depends on whether another page follows. The in-memory indexes and counters are read on the bounded elastic
+ * scheduler, as they may wait for a lock held by their reconciliation.
+ */
+@RestController
+@RequestMapping("/api")
+@Profile("reactive")
+@Slf4j
+public class ReactiveMoviesController {
+
+    private final ReactiveMoviesRepository moviesRepository;
+
+    private final MovieWriteCoalescer writeCoalescer;
+
+    private final TitleIndex titleIndex;
+
+    private final SimilarityIndex similarityIndex;
+
+    private final FacetCounters facetCounters;
+
+    private final MovieQueryMetrics queryMetrics;
+
+    private final MoviesWatermark watermark;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ObjectMapper objectMapper;
+
+    private final MoviesProperties.Pagination pagination;
+
+    private final MoviesProperties.Export export;
+
+    private final MoviesProperties.Bulk bulk;
+
+    private final MoviesProperties.MultiGet multiGet;
+
+    private final MoviesProperties.Similar similar;
+
+    public ReactiveMoviesController(ReactiveMoviesRepository moviesRepository, MovieWriteCoalescer writeCoalescer,
+                                    TitleIndex titleIndex, SimilarityIndex similarityIndex, FacetCounters facetCounters,
+                                    MovieQueryMetrics queryMetrics, MoviesWatermark watermark,
+                                    ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                                    MoviesProperties properties) {
+        this.moviesRepository = moviesRepository;
+        this.writeCoalescer = writeCoalescer;
+        this.titleIndex = titleIndex;
+        this.similarityIndex = similarityIndex;
+        this.facetCounters = facetCounters;
+        this.queryMetrics = queryMetrics;
+        this.watermark = watermark;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.pagination = properties.getPagination();
+        this.export = properties.getExport();
+        this.bulk = properties.getBulk();
+        this.multiGet = properties.getMultiGet();
+        this.similar = properties.getSimilar();
+    }
+
+    @GetMapping("/movies")
+    @ConcurrencyLimit(Workload.EXPENSIVE)
+    public Mono<ResponseEntity<List<Movie>>> getMovies(MovieFilter filter,
+                                                       @RequestParam(required = false) Integer limit,
+                                                       @RequestParam(required = false) String after,
+                                                       @RequestParam(required = false) MovieFields fields,
+                                                       ServerWebExchange exchange) {
+        int pageSize;
+        ObjectId afterId;
+        try {
+            pageSize = MovieRequests.pageSize(limit, pagination);
+            afterId = after == null ? null : MovieCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid page request: {}", e.getMessage());
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        if (isCollectionNotModified(exchange)) {
+            return Mono.just(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+        }
+        Pageable pageable = PageRequest.of(0, pageSize, Sort.by("id"));
+        boolean indexed = filter.isTitleOnly() && titleIndex.isAvailable();
+        Flux<Movie> movies = indexed
+            ? searchTitleIndex(filter.getTitle(), afterId, pageable, fields)
+            : moviesRepository.findMovies(filter, afterId, pageable, fields);
+        return movies.collectList()
+            .map(page -> {
+                queryMetrics.recordResults(filter, indexed, Math.min(page.size(), pageSize));
+                if (page.isEmpty()) {
+                    return new ResponseEntity<List<Movie>>(HttpStatus.NO_CONTENT);
+                }
+                HttpHeaders headers = new HttpHeaders();
+                if (page.size() > pageSize) {
+                    page = page.subList(0, pageSize);
+                    UriComponentsBuilder request = UriComponentsBuilder.fromUri(exchange.getRequest().getURI());
+                    headers.add(HttpHeaders.LINK, MovieRequests.nextLink(request, pageSize, page.get(pageSize - 1).getId()));
+                }
+                return new ResponseEntity<>(page, headers, HttpStatus.OK);
+            })
+            .onErrorResume(e -> {
+                log.error("Error getting movies.", e);
+                return Mono.just(new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR));
+            });
+    }
+
+    /**
+     * Validates the conditional headers against the collection watermark, answering unchanged collections without a
+     * query. On a match the response already carries the {@code 304} status and the validators.
+     */
+    private boolean isCollectionNotModified(ServerWebExchange exchange) {
+        return watermark.current()
+            .map(mark -> exchange.checkNotModified(MovieETag.of(mark, formatOf(exchange)), mark.getLastModified()))
+            .orElse(false);
+    }
+
+    private static String formatOf(ServerWebExchange exchange) {
+        List<String> accept = exchange.getRequest().getHeaders().get(HttpHeaders.ACCEPT);
+        return MovieETag.format(accept == null ? null : String.join(",", accept));
+    }
+
+    private Flux<Movie> searchTitleIndex(String title, ObjectId afterId, Pageable pageable, MovieFields fields) {
+        String after = afterId == null ? null : afterId.toHexString();
+        return Mono.fromCallable(() -> titleIndex.search(title, after, pageable.getPageSize() + 1))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMapMany(ids -> moviesRepository.findAllById(ids, fields)
+                .collectMap(Movie::getId)
+                .flatMapIterable(found -> MovieRequests.inOrder(ids, found)));
+    }
+
+    @GetMapping(value = "/movies/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ConcurrencyLimit(Workload.EXPORT)
+    public Flux<Movie> exportMovies() {
+        return moviesRepository.streamAll(export.getBatchSize());
+    }
+
+    @GetMapping("/movies/facets")
+    @ConcurrencyLimit(Workload.EXPENSIVE)
+    public Mono<ResponseEntity<Map<String, List<FacetCount>>>> getFacets(MovieFilter filter, ServerWebExchange exchange) {
+        if (isCollectionNotModified(exchange)) {
+            return Mono.just(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+        }
+        Mono<Map<MovieFacet, Map<String, Long>>> counts = filter.isEmpty() && facetCounters.isAvailable()
+            ? Mono.fromSupplier(facetCounters::counts).subscribeOn(Schedulers.boundedElastic())
+            : moviesRepository.countFacets(filter);
+        return counts
+            .map(found -> new ResponseEntity<>(MovieRequests.facets(found), HttpStatus.OK))
+            .onErrorResume(e -> {
+                log.error("Error getting facets.", e);
+                return Mono.just(new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR));
+            });
+    }
+
+    /**
+     * Reads the whole movie, as its version makes the entity tag, leaving the properties not listed in {@code fields}
+     * out of the response only.
+     */
+    @GetMapping("/movies/{id}")
+    @ConcurrencyLimit(Workload.READ)
+    public Mono<ResponseEntity<Movie>> getMovieById(@PathVariable("id") String id, @RequestParam(required = false) MovieFields fields,
+                                                    ServerWebExchange exchange) {
+        return moviesRepository.findById(id)
+            .map(movie -> exchange.checkNotModified(MovieETag.of(movie, formatOf(exchange)))
+                ? new ResponseEntity<Movie>(HttpStatus.NOT_MODIFIED) : new ResponseEntity<>(movie, HttpStatus.OK))
+            .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Ranks the movies by what they have in common with the movie {@code id} in the similarity index, then reads them
+     * with a single query. Until the index has been loaded the endpoint is unavailable.
+     */
+    @GetMapping("/movies/{id}/similar")
+    @ConcurrencyLimit(Workload.READ)
+    public Mono<ResponseEntity<List<Movie>>> getSimilarMovies(@PathVariable("id") String id,
+                                                              @RequestParam(required = false) Integer k,
+                                                              @RequestParam(required = false) MovieFields fields) {
+        int count;
+        try {
+            count = MovieRequests.similarK(k, similar);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        if (!similarityIndex.isAvailable()) {
+            return Mono.just(MovieRequests.retryLater());
+        }
+        return Mono.fromCallable(() -> similarityIndex.similar(id, count))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(ids -> {
+                if (ids.isEmpty()) {
+                    return Mono.just(new ResponseEntity<List<Movie>>(HttpStatus.NOT_FOUND));
+                }
+                if (ids.get().isEmpty()) {
+                    return Mono.just(new ResponseEntity<List<Movie>>(HttpStatus.NO_CONTENT));
+                }
+                return moviesRepository.findAllById(ids.get(), fields)
+                    .collectMap(Movie::getId)
+                    .map(found -> new ResponseEntity<>(MovieRequests.inOrder(ids.get(), found), HttpStatus.OK));
+            })
+            .onErrorResume(e -> {
+                log.error("Error getting similar movies.", e);
+                return Mono.just(new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR));
+            });
+    }
+
+    @PostMapping("/movies/_mget")
+    @ConcurrencyLimit(Workload.READ)
+    public Mono<ResponseEntity<MultiGetResult>> getMoviesByIds(@RequestBody MultiGetRequest request,
+                                                               @RequestParam(required = false) MovieFields fields) {
+        List<String> ids = request.getIds();
+        if (!MovieRequests.isValidMultiGet(ids, multiGet)) {
+            log.warn("Invalid multi get of {} ids.", ids == null ? null : ids.size());
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        Set<String> distinct = new LinkedHashSet<>(ids);
+        return moviesRepository.findAllById(distinct, fields)
+            .collectMap(Movie::getId)
+            .map(found -> {
+                Map<String, Optional<Movie>> movies = new LinkedHashMap<>();
+                distinct.forEach(id -> movies.put(id, Optional.ofNullable(found.get(id))));
+                return new ResponseEntity<>(MovieRequests.multiGetResult(movies), HttpStatus.OK);
+            })
+            .onErrorResume(e -> {
+                log.error("Error getting movies by ids.", e);
+                return Mono.just(new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR));
+            });
+    }
+
+    @PostMapping("/movies")
+    @ConcurrencyLimit(Workload.WRITE)
+    public Mono<ResponseEntity<Movie>> createMovie(@RequestBody Movie movie) {
+        Mono<Movie> saved = writeCoalescer.isEnabled() ? insertCoalesced(movie.copyWithId(null))
+            : moviesRepository.save(movie.copyWithId(null));
+        // The listeners of the events wait for the locks of the indexes, which neither the event loop nor the writer
+        // thread completing a coalesced insert may do.
+        return saved
+            .publishOn(Schedulers.boundedElastic())
+            .map(m -> {
+                eventPublisher.publishEvent(new MovieSavedEvent(m));
+                return new ResponseEntity<>(m, HttpStatus.CREATED);
+            })
+            .onErrorResume(RejectedExecutionException.class, e -> {
+                log.warn("Movie write queue is full.");
+                return Mono.just(MovieRequests.retryLater());
+            })
+            .onErrorResume(TimeoutException.class, e -> {
+                log.warn("Movie was not written in time.");
+                return Mono.just(MovieRequests.retryLater());
+            })
+            .onErrorResume(e -> {
+                log.error("Error creating movie.", e);
+                return Mono.just(new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR));
+            });
+    }
+
+    /**
+     * Queues {@code movie} for the write coalescer, which measures its insert on the permit of the request.
+     */
+    private Mono<Movie> insertCoalesced(Movie movie) {
+        return Mono.deferContextual(context -> {
+            Optional<ConcurrencyLimiter.Permit> permit = context.getOrEmpty(ConcurrencyLimiter.Permit.class);
+            return Mono.fromFuture(() -> writeCoalescer.insert(movie, permit.orElse(null)));
+        });
+    }
+
+    @PostMapping(value = "/movies/_bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @ConcurrencyLimit(Workload.BULK)
+    public Mono<Void> bulkInsertMovies(@RequestBody Flux<JsonNode> body, ServerHttpResponse response) {
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBufferFactory buffers = response.bufferFactory();
+        AtomicInteger inserted = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Flux<DataBuffer> items = new ReactiveBulkLoad(moviesRepository, eventPublisher, objectMapper, bulk.getBatchSize())
+            .load(body)
+            .index()
+            .map(item -> {
+                BulkItemResult result = item.getT2();
+                (result.getError() == null ? inserted : failed).incrementAndGet();
+                return json(buffers, (item.getT1() == 0 ? "" : ",") + write(result));
+            });
+        return response.writeWith(Flux.concat(
+            Mono.fromSupplier(() -> json(buffers, "{\"items\":[")),
+            items,
+            Mono.fromSupplier(() -> json(buffers, "],\"inserted\":" + inserted.get() + ",\"failed\":" + failed.get() + "}"))));
+    }
+
+    private String write(BulkItemResult result) {
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static DataBuffer json(DataBufferFactory buffers, String json) {
+        return buffers.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @PutMapping("/movies/{id}")
+    @ConcurrencyLimit(Workload.WRITE)
+    public Mono<ResponseEntity<Movie>> updateMovie(@RequestBody Movie movie, @PathVariable("id") String id,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return modifyMovie(id, MovieUpdate.replace(movie), ifMatch, accept);
+    }
+
+    @PatchMapping("/movies/{id}")
+    @ConcurrencyLimit(Workload.WRITE)
+    public Mono<ResponseEntity<Movie>> patchMovie(@RequestBody JsonNode patch, @PathVariable("id") String id,
+                                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                  @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        MovieUpdate update;
+        try {
+            update = MovieRequests.toUpdate(patch, objectMapper);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            log.warn("Invalid patch of movie {}: {}", id, e.getMessage());
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return modifyMovie(id, update, ifMatch, accept);
+    }
+
+    private Mono<ResponseEntity<Movie>> modifyMovie(String id, MovieUpdate update, String ifMatch, String accept) {
+        Set<Long> expectedVersions;
+        try {
+            expectedVersions = MovieETag.ifMatch(ifMatch);
+        } catch (IllegalArgumentException e) {
+            log.warn("Movie {} cannot match {}.", id, ifMatch);
+            return Mono.just(new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED));
+        }
+        boolean matchAny = MovieETag.isAny(ifMatch);
+        return moviesRepository.modify(id, update, expectedVersions)
+            .publishOn(Schedulers.boundedElastic())
+            .map(previous -> {
+                Movie updated = update.applyTo(previous);
+                eventPublisher.publishEvent(new MovieSavedEvent(updated, previous));
+                return ResponseEntity.ok().eTag(MovieETag.of(updated, MovieETag.format(accept))).body(updated);
+            })
+            .switchIfEmpty(Mono.defer(() -> expectedVersions == null ? Mono.just(false) : moviesRepository.existsById(id))
+                .map(exists -> {
+                    if (exists) {
+                        log.warn("Movie {} is no longer at one of the versions {}.", id, expectedVersions);
+                        return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+                    }
+                    if (matchAny) {
+                        log.warn("Movie {} not found, it cannot match *.", id);
+                        return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+                    }
+                    log.warn("Movie {} not found.", id);
+                    return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                }))
+            .onErrorResume(e -> {
+                log.error("Error updating movie.", e);
+                return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+            });
+    }
+
+    @DeleteMapping("/movies/{id}")
+    @ConcurrencyLimit(Workload.WRITE)
+    public Mono<ResponseEntity<HttpStatus>> deleteMovie(@PathVariable("id") String id) {
+        return moviesRepository.removeById(id)
+            .publishOn(Schedulers.boundedElastic())
+            .doOnNext(movie -> eventPublisher.publishEvent(new MovieDeletedEvent(id, movie)))
+            .then(Mono.just(new ResponseEntity<HttpStatus>(HttpStatus.NO_CONTENT)))
+            .onErrorResume(e -> {
+                log.error("Error deleting movie.", e);
+                return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+            });
+    }
+
+    @DeleteMapping("/movies")
+    @ConcurrencyLimit(Workload.EXPENSIVE)
+    public Mono<ResponseEntity<HttpStatus>> deleteAllMovies() {
+        return moviesRepository.deleteAll()
+            .then(Mono.fromSupplier(() -> {
+                eventPublisher.publishEvent(new MoviesDeletedEvent());
+                return new ResponseEntity<HttpStatus>(HttpStatus.NO_CONTENT);
+            }).subscribeOn(Schedulers.boundedElastic()))
+            .onErrorResume(e -> {
+                log.error("Error deleting all movies.", e);
+                return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+            });
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.github.ivanmarban.movies.embedded;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link MovieStore} keeping the movies in a {@link MovieLog} instead of MongoDB, used by the {@code embedded} profile.
+ * Lookups by id go through the off-heap index; filters, pages and facet counts scan every movie, which suits the
+ * catalog sizes of edge deployments and tests. Movies are read whole, projections are left to the response.
+ * <p>
+ * Ids must be ObjectIds.
+ */
+public class EmbeddedMovieStore implements MovieStore {
+
+    private static final Comparator<Movie> BY_ID = Comparator.comparing(movie -> new ObjectId(movie.getId()));
+
+    private final MovieLog movieLog;
+
+    public EmbeddedMovieStore(MovieLog movieLog) {
+        this.movieLog = movieLog;
+    }
+
+    @Override
+    public Optional<Movie> findById(String id) {
+        return Optional.ofNullable(movieLog.get(id));
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return movieLog.get(id) != null;
+    }
+
+    @Override
+    public <S extends Movie> S save(S movie) {
+        if (movie.getId() == null) {
+            movie.setId(new ObjectId().toHexString());
+        }
+        Long version = movie.getVersion();
+        movieLog.update(movie.getId(), current -> {
+            if (version == null) {
+                if (current != null) {
+                    throw new DuplicateKeyException("Movie " + movie.getId() + " already exists");
+                }
+                movie.setVersion(0L);
+            } else {
+                if (current == null || !version.equals(current.getVersion())) {
+                    throw new OptimisticLockingFailureException("Movie " + movie.getId() + " is not at version " + version);
+                }
+                movie.setVersion(version + 1);
+            }
+            return movie;
+        });
+        return movie;
+    }
+
+    private void insert(Movie movie) {
+        if (movie.getId() == null) {
+            movie.setId(new ObjectId().toHexString());
+        }
+        movieLog.update(movie.getId(), current -> {
+            if (current != null) {
+                throw new DuplicateKeyException("Movie " + movie.getId() + " already exists");
+            }
+            return movie;
+        });
+    }
+
+    @Override
+    public Map<Integer, String> insertUnordered(List<Movie> movies) {
+        Map<Integer, String> failures = new HashMap<>();
+        for (int i = 0; i < movies.size(); i++) {
+            try {
+                movies.get(i).setVersion(0L);
+                insert(movies.get(i));
+            } catch (RuntimeException e) {
+                failures.put(i, e.getMessage());
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public List<Movie> findAllById(Collection<String> ids, MovieFields fields) {
+        return ids.stream().distinct().map(movieLog::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    @Override
+    public Slice<Movie> findMovies(MovieFilter filter, ObjectId after, Pageable pageable, MovieFields fields) {
+        int limit = pageable.getPageSize() + 1;
+        PriorityQueue<Movie> first = new PriorityQueue<>(limit, BY_ID.reversed());
+        movieLog.forEach(movie -> {
+            if ((after == null || new ObjectId(movie.getId()).compareTo(after) > 0) && matches(filter, movie)) {
+                first.add(movie);
+                if (first.size() > limit) {
+                    first.poll();
+                }
+            }
+        });
+        List<Movie> movies = new ArrayList<>(first);
+        movies.sort(BY_ID);
+        boolean hasNext = movies.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? movies.subList(0, pageable.getPageSize()) : movies, pageable, hasNext);
+    }
+
+    /**
+     * Streams the movies in id order from a snapshot of the ids, reading each movie as the stream is consumed.
+     */
+    @Override
+    public Stream<Movie> streamAll(int batchSize, MovieFields fields) {
+        return movieLog.ids().stream().map(movieLog::get).filter(Objects::nonNull);
+    }
+
+    @Override
+    public Map<MovieFacet, Map<String, Long>> countFacets(MovieFilter filter) {
+        Map<MovieFacet, Map<String, Long>> counts = new EnumMap<>(MovieFacet.class);
+        for (MovieFacet facet : MovieFacet.values()) {
+            counts.put(facet, new HashMap<>());
+        }
+        movieLog.forEach(movie -> {
+            if (matches(filter, movie)) {
+                counts.forEach((facet, values) -> facet.valuesOf(movie).forEach(value -> values.merge(value, 1L, Long::sum)));
+            }
+        });
+        return counts;
+    }
+
+    @Override
+    public Optional<Movie> removeById(String id) {
+        if (!ObjectId.isValid(id)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(movieLog.update(id, current -> null));
+    }
+
+    @Override
+    public void deleteAll() {
+        movieLog.clear();
+    }
+
+    @Override
+    public Optional<Movie> modify(String id, MovieUpdate update, Set<Long> expectedVersions) {
+        if (!ObjectId.isValid(id)) {
+            return Optional.empty();
+        }
+        AtomicBoolean modified = new AtomicBoolean();
+        Movie previous = movieLog.update(id, current -> {
+            if (current == null || expectedVersions != null && !expectedVersions.contains(version(current))) {
+                return current;
+            }
+            modified.set(true);
+            return update.applyTo(current);
+        });
+        return modified.get() ? Optional.of(previous) : Optional.empty();
+    }
+
+    /**
+     * Returns the version of {@code movie}, movies without one having version {@code 0}.
+     */
+    private static long version(Movie movie) {
+        return movie.getVersion() == null ? 0 : movie.getVersion();
+    }
+
+    private static boolean matches(MovieFilter filter, Movie movie) {
+        if (filter.getTitle() != null && (movie.getTitle() == null
+            || !movie.getTitle().toLowerCase(Locale.ROOT).contains(filter.getTitle().toLowerCase(Locale.ROOT)))) {
+            return false;
+        }
+        if ((filter.getYearFrom() != null || filter.getYearTo() != null) && (movie.getYear() == null
+            || filter.getYearFrom() != null && movie.getYear() < filter.getYearFrom()
+            || filter.getYearTo() != null && movie.getYear() > filter.getYearTo())) {
+            return false;
+        }
+        if (filter.getGenre() != null && (movie.getGenres() == null || !movie.getGenres().contains(filter.getGenre()))) {
+            return false;
+        }
+        if (filter.getMaxRuntime() != null && (movie.getRuntimeMinutes() == null || movie.getRuntimeMinutes() > filter.getMaxRuntime())) {
+            return false;
+        }
+        return filter.getDirector() == null || filter.getDirector().equals(movie.getDirector());
+    }
+
+}
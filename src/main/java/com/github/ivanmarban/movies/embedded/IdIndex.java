@@ -0,0 +1,183 @@
+package com.github.ivanmarban.movies.embedded;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * Open addressing hash table from movie id to log address, held in a direct buffer so that millions of entries cost
+ * no heap objects and no garbage collection work. Every slot holds the 12 bytes of an id followed by its 8 bytes
+ * address; an address of {@code 0} marks a free slot and {@code -1} a removed entry, which probing skips. Collisions
+ * are resolved by linear probing and the table doubles once more than {@value #MAX_LOAD_PERCENT}% of the slots are
+ * taken.
+ * <p>
+ * Not thread-safe, callers synchronize.
+ */
+final class IdIndex {
+
+    static final long NONE = 0;
+
+    private static final long REMOVED = -1;
+
+    private static final int SLOT = MovieRecords.ID_LENGTH + 8;
+
+    private static final int MAX_LOAD_PERCENT = 60;
+
+    private ByteBuffer slots;
+
+    private int capacity;
+
+    private int size;
+
+    private int used;
+
+    IdIndex(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity) * 2 - 1));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the address of {@code id}, or {@link #NONE} if it is not indexed.
+     */
+    long get(byte[] id) {
+        long high = high(id);
+        int low = low(id);
+        for (int slot = start(high, low); ; slot = next(slot)) {
+            long address = address(slot);
+            if (address == NONE) {
+                return NONE;
+            }
+            if (address != REMOVED && matches(slot, high, low)) {
+                return address;
+            }
+        }
+    }
+
+    /**
+     * Maps {@code id} to {@code address}, returning its previous address or {@link #NONE}.
+     */
+    long put(byte[] id, long address) {
+        long high = high(id);
+        int low = low(id);
+        int free = -1;
+        for (int slot = start(high, low); ; slot = next(slot)) {
+            long current = address(slot);
+            if (current == NONE) {
+                if (free < 0) {
+                    free = slot;
+                    used++;
+                }
+                break;
+            }
+            if (current == REMOVED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (matches(slot, high, low)) {
+                slots.putLong(slot * SLOT + MovieRecords.ID_LENGTH, address);
+                return current;
+            }
+        }
+        write(free, high, low, address);
+        size++;
+        if (used * 100L > capacity * (long) MAX_LOAD_PERCENT) {
+            resize();
+        }
+        return NONE;
+    }
+
+    /**
+     * Removes {@code id}, returning its address or {@link #NONE} if it was not indexed.
+     */
+    long remove(byte[] id) {
+        long high = high(id);
+        int low = low(id);
+        for (int slot = start(high, low); ; slot = next(slot)) {
+            long address = address(slot);
+            if (address == NONE) {
+                return NONE;
+            }
+            if (address != REMOVED && matches(slot, high, low)) {
+                slots.putLong(slot * SLOT + MovieRecords.ID_LENGTH, REMOVED);
+                size--;
+                return address;
+            }
+        }
+    }
+
+    void clear() {
+        allocate(16);
+    }
+
+    void forEach(LongConsumer action) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long address = address(slot);
+            if (address != NONE && address != REMOVED) {
+                action.accept(address);
+            }
+        }
+    }
+
+    private void resize() {
+        ByteBuffer previous = slots;
+        int previousCapacity = capacity;
+        allocate(Integer.highestOneBit(Math.max(16, size * 4) - 1));
+        for (int slot = 0; slot < previousCapacity; slot++) {
+            long address = previous.getLong(slot * SLOT + MovieRecords.ID_LENGTH);
+            if (address != NONE && address != REMOVED) {
+                long high = previous.getLong(slot * SLOT);
+                int low = previous.getInt(slot * SLOT + 8);
+                int target = start(high, low);
+                while (address(target) != NONE) {
+                    target = next(target);
+                }
+                write(target, high, low, address);
+                size++;
+                used++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT);
+        this.size = 0;
+        this.used = 0;
+    }
+
+    private void write(int slot, long high, int low, long address) {
+        int offset = slot * SLOT;
+        slots.putLong(offset, high);
+        slots.putInt(offset + 8, low);
+        slots.putLong(offset + MovieRecords.ID_LENGTH, address);
+    }
+
+    private long address(int slot) {
+        return slots.getLong(slot * SLOT + MovieRecords.ID_LENGTH);
+    }
+
+    private boolean matches(int slot, long high, int low) {
+        return slots.getLong(slot * SLOT) == high && slots.getInt(slot * SLOT + 8) == low;
+    }
+
+    private int start(long high, int low) {
+        long hash = high * 0x9E3779B97F4A7C15L ^ low * 0xC2B2AE3D27D4EB4FL;
+        hash ^= hash >>> 31;
+        return (int) hash & (capacity - 1);
+    }
+
+    private int next(int slot) {
+        return (slot + 1) & (capacity - 1);
+    }
+
+    private static long high(byte[] id) {
+        return ByteBuffer.wrap(id).getLong();
+    }
+
+    private static int low(byte[] id) {
+        return ByteBuffer.wrap(id).getInt(8);
+    }
+
+}
@@ -0,0 +1,480 @@
+package com.github.ivanmarban.movies.embedded;
+
+import com.github.ivanmarban.movies.model.Movie;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of movie records stored in memory-mapped segment files, with an off-heap {@link IdIndex} from
+ * every live id to the address of its latest record. Saving a movie appends its new record, deleting it appends a
+ * tombstone, and reads decode the record straight from the mapped segment.
+ * <p>
+ * Every record is framed by its length and a CRC32 of its content. On opening, the segments are replayed in order to
+ * rebuild the index; replay stops at the first record whose frame does not check out, the tail a crash left half
+ * written, and appending resumes there.
+ * <p>
+ * A segment is sealed once the next record does not fit. {@link #compact(double)} rewrites the live records of the sealed
+ * segments whose share of live bytes fell below a threshold at the head of the log, forces the copies to the storage
+ * device whatever {@code syncWrites}, and deletes them. Tombstones are carried along while an older segment remains
+ * that may hold a record they delete.
+ */
+@Slf4j
+public class MovieLog implements Closeable {
+
+    static final String SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x4D4F5631;
+
+    private static final int HEADER = 8;
+
+    private static final int FRAME = 8;
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte CLEAR = 3;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final boolean syncWrites;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    private final IdIndex index = new IdIndex(1024);
+
+    private Segment active;
+
+    private MovieLog(Path directory, int segmentSize, boolean syncWrites) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncWrites = syncWrites;
+    }
+
+    /**
+     * Opens the log stored in {@code directory}, creating it if needed, and replays it. New segments are
+     * {@code segmentSize} bytes long; with {@code syncWrites} every write is forced to the storage device before it
+     * returns, otherwise only the operating system crashing may lose the latest writes.
+     */
+    public static MovieLog open(Path directory, int segmentSize, boolean syncWrites) throws IOException {
+        MovieLog movieLog = new MovieLog(directory, segmentSize, syncWrites);
+        movieLog.recover();
+        return movieLog;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the movie with the given id, or {@code null} if there is none or {@code id} is not an ObjectId.
+     */
+    public Movie get(String id) {
+        if (!ObjectId.isValid(id)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            long address = index.get(MovieRecords.id(id));
+            return address == IdIndex.NONE ? null : read(address);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the movie with the given id, atomically, by the one {@code update} returns for it, given {@code null}
+     * if there is none. Returning {@code null} deletes the movie and returning the given instance leaves it unchanged.
+     * Returns the movie before the update.
+     *
+     * @throws IllegalArgumentException if {@code id} is not an ObjectId
+     */
+    public Movie update(String id, UnaryOperator<Movie> update) {
+        byte[] key = MovieRecords.id(id);
+        lock.writeLock().lock();
+        try {
+            long address = index.get(key);
+            Movie current = address == IdIndex.NONE ? null : read(address);
+            Movie updated = update.apply(current);
+            if (updated == current) {
+                return current;
+            }
+            if (updated == null) {
+                append(DELETE, key);
+                release(index.remove(key));
+            } else {
+                if (!id.equals(updated.getId())) {
+                    throw new IllegalArgumentException("Movie " + updated.getId() + " cannot replace movie " + id);
+                }
+                byte[] record = MovieRecords.encode(updated);
+                long written = append(PUT, record);
+                release(index.put(key, written));
+                segment(written).live += FRAME + 1 + record.length;
+            }
+            return current;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes every movie. The segments written so far are deleted once a fresh segment records the deletion.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            roll();
+            append(CLEAR, new byte[0]);
+            index.clear();
+            for (Segment segment : new ArrayList<>(segments.headMap(active.id).values())) {
+                delete(segment);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Passes every movie to {@code action} in no particular order, while holding off writers.
+     */
+    public void forEach(Consumer<Movie> action) {
+        lock.readLock().lock();
+        try {
+            index.forEach(address -> action.accept(read(address)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of all movies in ascending order.
+     */
+    public List<String> ids() {
+        List<ObjectId> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            index.forEach(address -> ids.add(readId(address)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids.stream().sorted().map(ObjectId::toHexString).collect(Collectors.toList());
+    }
+
+    /**
+     * Rewrites the sealed segments holding less than {@code threshold} live bytes per written byte, oldest first,
+     * returning how many were reclaimed. Writers are held off while a segment is rewritten, readers wait as well.
+     */
+    public int compact(double threshold) {
+        List<Segment> candidates;
+        lock.readLock().lock();
+        try {
+            candidates = segments.headMap(active.id).values().stream()
+                .filter(segment -> segment.live == 0 || segment.live < threshold * (segment.position - HEADER))
+                .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+        int compacted = 0;
+        for (Segment segment : candidates) {
+            lock.writeLock().lock();
+            try {
+                if (segments.get(segment.id) == segment && rewrite(segment)) {
+                    compacted++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return compacted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Segment segment = map(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())), file, 0);
+            segments.put(segment.id, segment);
+        }
+        for (Segment segment : segments.values()) {
+            replay(segment, segment.id == segments.lastKey());
+        }
+        if (segments.isEmpty()) {
+            active = create(1);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        log.info("Movie log loaded {} movies from {} segments in {} ms.", index.size(), segments.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void replay(Segment segment, boolean last) {
+        ByteBuffer buffer = segment.buffer;
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) {
+            log.warn("Ignoring segment {} without a valid header.", segment.id);
+            segment.position = buffer.capacity();
+            return;
+        }
+        int position = HEADER;
+        while (position + FRAME < buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            byte[] content = length < 1 || position + FRAME + length > buffer.capacity() ? null : new byte[length];
+            if (content != null) {
+                buffer.get(position + FRAME, content);
+            }
+            if (content == null || checksum(content) != buffer.getInt(position + 4)) {
+                log.warn("Discarding the tail of segment {} from offset {}, its record is incomplete.", segment.id, position);
+                if (last) {
+                    buffer.put(position, new byte[buffer.capacity() - position]);
+                }
+                break;
+            }
+            long address = address(segment.id, position);
+            byte[] payload = new byte[length - 1];
+            System.arraycopy(content, 1, payload, 0, payload.length);
+            switch (content[0]) {
+                case PUT:
+                    release(index.put(idOf(payload), address));
+                    segment.live += FRAME + length;
+                    break;
+                case DELETE:
+                    release(index.remove(payload));
+                    break;
+                case CLEAR:
+                    index.clear();
+                    segments.headMap(segment.id).values().forEach(older -> older.live = 0);
+                    break;
+                default:
+                    log.warn("Skipping record of unknown type {} in segment {}.", content[0], segment.id);
+            }
+            position += FRAME + length;
+        }
+        segment.position = position;
+    }
+
+    /**
+     * Appends the live records and the tombstones still needed of {@code segment} to the head of the log and deletes
+     * it. A segment starting with the deletion of every movie is only deleted once it is the oldest.
+     */
+    private boolean rewrite(Segment segment) {
+        boolean oldest = segment.id == segments.firstKey();
+        Segment target = active;
+        int from = active.position;
+        ByteBuffer buffer = segment.buffer;
+        for (int position = HEADER; position < segment.position; ) {
+            int length = buffer.getInt(position);
+            byte type = buffer.get(position + FRAME);
+            byte[] payload = new byte[length - 1];
+            buffer.get(position + FRAME + 1, payload);
+            if (type == CLEAR && !oldest) {
+                return false;
+            }
+            if (type == PUT) {
+                byte[] key = idOf(payload);
+                if (index.get(key) == address(segment.id, position)) {
+                    long written = append(PUT, payload);
+                    index.put(key, written);
+                    segment(written).live += FRAME + length;
+                }
+            } else if (type == DELETE && !oldest && index.get(payload) == IdIndex.NONE) {
+                append(DELETE, payload);
+            }
+            position += FRAME + length;
+        }
+        // The records copied may have been durable for long, they must be on the storage device before their
+        // segment goes. A segment the copies filled was forced when the log rolled over.
+        if (!syncWrites) {
+            int start = active == target ? from : HEADER;
+            active.buffer.force(start, active.position - start);
+        }
+        delete(segment);
+        return true;
+    }
+
+    private long append(byte type, byte[] payload) {
+        int length = 1 + payload.length;
+        if (HEADER + FRAME + length > segmentSize) {
+            throw new IllegalArgumentException("Record of " + length + " bytes does not fit in a segment");
+        }
+        if (active.position + FRAME + length > active.buffer.capacity()) {
+            roll();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        int position = active.position;
+        MappedByteBuffer buffer = active.buffer;
+        buffer.put(position + FRAME, type);
+        buffer.put(position + FRAME + 1, payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, length);
+        active.position = position + FRAME + length;
+        if (syncWrites) {
+            buffer.force(position, FRAME + length);
+        }
+        return address(active.id, position);
+    }
+
+    private void roll() {
+        active.buffer.force();
+        try {
+            active = create(active.id + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Segment create(int id) throws IOException {
+        Segment segment = map(id, directory.resolve(String.format("%08d%s", id, SUFFIX)), segmentSize);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.force(0, HEADER);
+        segment.position = HEADER;
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment map(int id, Path file, int size) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long length = Math.max(size, channel.size());
+            return new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.id);
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Accounts for the record at {@code address} no longer being live.
+     */
+    private void release(long address) {
+        if (address != IdIndex.NONE) {
+            Segment segment = segment(address);
+            if (segment != null) {
+                segment.live -= FRAME + segment.buffer.getInt(position(address));
+            }
+        }
+    }
+
+    private Movie read(long address) {
+        Segment segment = segment(address);
+        int position = position(address);
+        ByteBuffer record = segment.buffer.slice(position + FRAME + 1, segment.buffer.getInt(position) - 1);
+        return MovieRecords.decode(record);
+    }
+
+    private ObjectId readId(long address) {
+        byte[] id = new byte[MovieRecords.ID_LENGTH];
+        segment(address).buffer.get(position(address) + FRAME + 1, id);
+        return new ObjectId(id);
+    }
+
+    private Segment segment(long address) {
+        return segments.get((int) (address >>> 32));
+    }
+
+    private static long address(int segment, int position) {
+        return (long) segment << 32 | position;
+    }
+
+    private static int position(long address) {
+        return (int) address;
+    }
+
+    private static byte[] idOf(byte[] payload) {
+        byte[] id = new byte[MovieRecords.ID_LENGTH];
+        System.arraycopy(payload, 0, id, 0, id.length);
+        return id;
+    }
+
+    private static int checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+
+        private final int id;
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private int position;
+
+        private long live;
+
+        private Segment(int id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.github.ivanmarban.movies.embedded;
+
+import com.github.ivanmarban.movies.model.Movie;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary layout of the movies stored in the log. Fields are written in a fixed order without names:
+ * <pre>
+ * id           12 bytes, the ObjectId
+ * version      8 bytes, Long.MIN_VALUE when absent
+ * year         4 bytes, Integer.MIN_VALUE when absent
+ * runtime      4 bytes, Integer.MIN_VALUE when absent
+ * title        string
+ * rated        string
+ * director     string
+ * genres       2 bytes count, 0xFFFF when absent, followed by as many strings
+ * </pre>
+ * Strings are written as a 2 bytes length, {@code 0xFFFF} when absent, followed by their UTF-8 bytes.
+ */
+final class MovieRecords {
+
+    static final int ID_LENGTH = 12;
+
+    private static final int ABSENT = 0xFFFF;
+
+    private MovieRecords() {
+    }
+
+    static byte[] encode(Movie movie) {
+        byte[] title = bytes(movie.getTitle());
+        byte[] rated = bytes(movie.getRated());
+        byte[] director = bytes(movie.getDirector());
+        List<byte[]> genres = new ArrayList<>();
+        if (movie.getGenres() != null) {
+            movie.getGenres().forEach(genre -> genres.add(bytes(genre)));
+        }
+        int length = ID_LENGTH + 8 + 4 + 4 + size(title) + size(rated) + size(director) + 2;
+        for (byte[] genre : genres) {
+            length += size(genre);
+        }
+        if (genres.size() >= ABSENT) {
+            throw new IllegalArgumentException("Too many genres: " + genres.size());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(id(movie.getId()));
+        buffer.putLong(movie.getVersion() == null ? Long.MIN_VALUE : movie.getVersion());
+        buffer.putInt(movie.getYear() == null ? Integer.MIN_VALUE : movie.getYear());
+        buffer.putInt(movie.getRuntimeMinutes() == null ? Integer.MIN_VALUE : movie.getRuntimeMinutes());
+        put(buffer, title);
+        put(buffer, rated);
+        put(buffer, director);
+        if (movie.getGenres() == null) {
+            buffer.putShort((short) ABSENT);
+        } else {
+            buffer.putShort((short) genres.size());
+            genres.forEach(genre -> put(buffer, genre));
+        }
+        return buffer.array();
+    }
+
+    static Movie decode(ByteBuffer buffer) {
+        byte[] id = new byte[ID_LENGTH];
+        buffer.get(id);
+        long version = buffer.getLong();
+        int year = buffer.getInt();
+        int runtime = buffer.getInt();
+        Movie movie = Movie.builder()
+            .id(new ObjectId(id).toHexString())
+            .version(version == Long.MIN_VALUE ? null : version)
+            .year(year == Integer.MIN_VALUE ? null : year)
+            .runtimeMinutes(runtime == Integer.MIN_VALUE ? null : runtime)
+            .title(string(buffer))
+            .rated(string(buffer))
+            .director(string(buffer))
+            .build();
+        int count = Short.toUnsignedInt(buffer.getShort());
+        if (count != ABSENT) {
+            List<String> genres = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                genres.add(string(buffer));
+            }
+            movie.setGenres(genres);
+        }
+        return movie;
+    }
+
+    /**
+     * Returns the bytes of {@code id}, which must be the hexadecimal form of an ObjectId.
+     *
+     * @throws IllegalArgumentException if it is not
+     */
+    static byte[] id(String id) {
+        if (id == null || !ObjectId.isValid(id)) {
+            throw new IllegalArgumentException("Invalid movie id " + id);
+        }
+        return new ObjectId(id).toByteArray();
+    }
+
+    private static byte[] bytes(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= ABSENT) {
+            throw new IllegalArgumentException("Text too long: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static int size(byte[] bytes) {
+        return 2 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void put(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) ABSENT);
+        } else {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length == ABSENT) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
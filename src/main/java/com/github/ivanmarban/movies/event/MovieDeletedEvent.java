@@ -0,0 +1,16 @@
+package com.github.ivanmarban.movies.event;
+
+import com.github.ivanmarban.movies.model.Movie;
+import lombok.Value;
+
+/**
+ * Published once a movie has been deleted, along with its last state.
+ */
+@Value
+public class MovieDeletedEvent {
+
+    String id;
+
+    Movie movie;
+
+}
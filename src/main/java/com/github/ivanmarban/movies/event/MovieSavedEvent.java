@@ -0,0 +1,22 @@
+package com.github.ivanmarban.movies.event;
+
+import com.github.ivanmarban.movies.model.Movie;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * Published once a movie has been created or updated. The previous state is {@code null} for a created movie.
+ */
+@Value
+@AllArgsConstructor
+public class MovieSavedEvent {
+
+    Movie movie;
+
+    Movie previous;
+
+    public MovieSavedEvent(Movie movie) {
+        this(movie, null);
+    }
+
+}
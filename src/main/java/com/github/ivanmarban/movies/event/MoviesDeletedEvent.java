@@ -0,0 +1,11 @@
+package com.github.ivanmarban.movies.event;
+
+import lombok.Value;
+
+/**
+ * Published once every movie has been deleted.
+ */
+@Value
+public class MoviesDeletedEvent {
+
+}
@@ -0,0 +1,229 @@
+package com.github.ivanmarban.movies.facet;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory count of movies by facet value, kept up to date by the movie change events and recomputed every
+ * {@code movies.facets.reconcile-interval}, answering the unfiltered facet requests.
+ * <p>
+ * An unfiltered facet request then costs time in the number of facet values rather than in the size of the collection.
+ * The recomputation catches the writes made through other instances, which the events do not see. Until the first one
+ * completes {@link #isAvailable()} returns {@code false}.
+ */
+@Slf4j
+@Component
+public class FacetCounters {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final Duration LOAD_RETRY_DELAY = Duration.ofSeconds(30);
+
+    private final MovieStore movieStore;
+
+    private final TaskScheduler taskScheduler;
+
+    private final MoviesProperties.Facets properties;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<MovieFacet, Map<String, Long>> counts = new EnumMap<>(MovieFacet.class);
+
+    private long generation;
+
+    private volatile boolean loaded;
+
+    public FacetCounters(MovieStore movieStore, TaskScheduler taskScheduler, MoviesProperties properties) {
+        this.movieStore = movieStore;
+        this.taskScheduler = taskScheduler;
+        this.properties = properties.getFacets();
+        for (MovieFacet facet : MovieFacet.values()) {
+            counts.put(facet, new HashMap<>());
+        }
+    }
+
+    public boolean isAvailable() {
+        return properties.isCountersEnabled() && loaded;
+    }
+
+    /**
+     * Returns a copy of the number of movies by value of every facet.
+     */
+    public Map<MovieFacet, Map<String, Long>> counts() {
+        Map<MovieFacet, Map<String, Long>> copy = new EnumMap<>(MovieFacet.class);
+        lock.readLock().lock();
+        try {
+            counts.forEach((facet, values) -> copy.put(facet, new HashMap<>(values)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return copy;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (properties.isCountersEnabled()) {
+            taskScheduler.scheduleWithFixedDelay(this::reconcile, properties.getReconcileInterval());
+        }
+    }
+
+    @EventListener
+    public void onMovieSaved(MovieSavedEvent event) {
+        if (!properties.isCountersEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            add(event.getPrevious(), -1);
+            add(event.getMovie(), 1);
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onMovieDeleted(MovieDeletedEvent event) {
+        if (!properties.isCountersEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            add(event.getMovie(), -1);
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onMoviesDeleted(MoviesDeletedEvent event) {
+        if (!properties.isCountersEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            counts.values().forEach(Map::clear);
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recomputes the counts from the database. A change counted by an event while the aggregation runs may or may not
+     * be part of its result, so such a pass is discarded and run again, up to {@value #MAX_ATTEMPTS} times, after which
+     * the counts kept by the events stay as they are until the next reconciliation.
+     */
+    void reconcile() {
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                long startGeneration = generation();
+                Map<MovieFacet, Map<String, Long>> computed = movieStore.countFacets(new MovieFilter());
+                int corrected = replace(computed, startGeneration);
+                if (corrected < 0) {
+                    continue;
+                }
+                if (!loaded) {
+                    loaded = true;
+                    log.info("Facet counts loaded in {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } else if (corrected > 0) {
+                    log.info("Facet counts reconciled, {} values corrected.", corrected);
+                }
+                return;
+            }
+            if (loaded) {
+                log.info("Facet counts not reconciled, movies kept changing while they were computed.");
+            } else {
+                log.warn("Facet counts not loaded, movies kept changing while they were computed, retrying in {}.",
+                    LOAD_RETRY_DELAY);
+                taskScheduler.schedule(this::reconcile, Instant.now().plus(LOAD_RETRY_DELAY));
+            }
+        } catch (Exception e) {
+            log.error("Error computing facet counts.", e);
+        }
+    }
+
+    private long generation() {
+        lock.readLock().lock();
+        try {
+            return generation;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the counts with {@code computed} unless they changed since {@code startGeneration}, returning the number
+     * of values corrected, or -1 if they changed.
+     */
+    private int replace(Map<MovieFacet, Map<String, Long>> computed, long startGeneration) {
+        lock.writeLock().lock();
+        try {
+            if (generation != startGeneration) {
+                return -1;
+            }
+            int corrected = 0;
+            for (MovieFacet facet : MovieFacet.values()) {
+                Map<String, Long> values = counts.get(facet);
+                Map<String, Long> fresh = computed.getOrDefault(facet, Map.of());
+                corrected += differences(values, fresh);
+                values.clear();
+                values.putAll(fresh);
+            }
+            return corrected;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Movie movie, long delta) {
+        if (movie == null) {
+            return;
+        }
+        for (MovieFacet facet : MovieFacet.values()) {
+            Map<String, Long> values = counts.get(facet);
+            for (String value : facet.valuesOf(movie)) {
+                add(values, value, delta);
+            }
+        }
+    }
+
+    private static void add(Map<String, Long> values, String value, long delta) {
+        values.compute(value, (key, count) -> {
+            long updated = (count == null ? 0 : count) + delta;
+            return updated > 0 ? updated : null;
+        });
+    }
+
+    private static int differences(Map<String, Long> current, Map<String, Long> fresh) {
+        Set<String> keys = new HashSet<>(current.keySet());
+        keys.addAll(fresh.keySet());
+        return (int) keys.stream().filter(key -> !Objects.equals(current.get(key), fresh.get(key))).count();
+    }
+
+}
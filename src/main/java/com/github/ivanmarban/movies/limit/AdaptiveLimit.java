@@ -0,0 +1,83 @@
+package com.github.ivanmarban.movies.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit adjusted with additive increase and multiplicative decrease from the store latency of the requests
+ * it admits. A request slower than the latency threshold, or failed, multiplies the limit by the backoff ratio; only
+ * once per round trip though, requests started before the previous decrease do not decrease it again. Every other
+ * request adds {@code 1 / limit}, about one per limit's worth of requests, as long as at least half the limit is in
+ * use, so an idle service does not grow a limit it never tested.
+ */
+final class AdaptiveLimit {
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyThresholdNanos;
+
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    private long lastDecrease;
+
+    AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.lastDecrease = System.nanoTime();
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    boolean tryAcquire() {
+        for (; ; ) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a request started at {@code startNanos} and completed at {@code endNanos} that waited
+     * {@code latencyNanos} on the store, adjusting the limit.
+     */
+    void release(long startNanos, long endNanos, long latencyNanos, boolean failed) {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (failed || latencyNanos > latencyThresholdNanos) {
+                if (startNanos - lastDecrease > 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = endNanos;
+                }
+            } else if (current * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    /**
+     * Releases a request that was cancelled before completing, or never reached the store, leaving the limit as it
+     * is.
+     */
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+}
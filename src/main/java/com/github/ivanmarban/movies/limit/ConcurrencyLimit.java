@@ -0,0 +1,20 @@
+package com.github.ivanmarban.movies.limit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Admits the requests to the annotated handler method under the adaptive limit of a {@link Workload}, answering the
+ * requests over the limit with {@code 503 Service Unavailable} and a {@code Retry-After} header.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ConcurrencyLimit {
+
+    Workload value();
+
+}
@@ -0,0 +1,69 @@
+package com.github.ivanmarban.movies.limit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Optional;
+
+/**
+ * Applies the {@link ConcurrencyLimit} of the Spring MVC handler methods: a request over the limit is answered with
+ * {@code 503} before it takes a connection, an admitted one has its permit bound to the handler thread, for the
+ * {@link StoreLatencyInterceptor} to record its store calls, and releases it once the response is complete.
+ */
+public class ConcurrencyLimitInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT = ConcurrencyLimitInterceptor.class.getName() + ".permit";
+
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitInterceptor(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod) || request.getDispatcherType() != DispatcherType.REQUEST
+            || !limiter.isEnabled()) {
+            return true;
+        }
+        ConcurrencyLimit limit = ((HandlerMethod) handler).getMethodAnnotation(ConcurrencyLimit.class);
+        if (limit == null) {
+            return true;
+        }
+        Optional<ConcurrencyLimiter.Permit> permit = limiter.tryAcquire(limit.value());
+        if (permit.isEmpty()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, limiter.getRetryAfter());
+            return false;
+        }
+        request.setAttribute(PERMIT, permit.get());
+        StoreLatencyInterceptor.bind(permit.get());
+        return true;
+    }
+
+    /**
+     * The response of an asynchronous handler completes on another thread, which calls {@link #afterCompletion} then.
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        StoreLatencyInterceptor.unbind();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        StoreLatencyInterceptor.unbind();
+        Object permit = request.getAttribute(PERMIT);
+        if (permit != null) {
+            request.removeAttribute(PERMIT);
+            ((ConcurrencyLimiter.Permit) permit).release();
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.github.ivanmarban.movies.limit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+import java.util.Optional;
+
+/**
+ * Applies the {@link ConcurrencyLimit} of the WebFlux handler methods, the reactive counterpart of
+ * {@link ConcurrencyLimitInterceptor}. A request holds its permit until the response completes, with the permit in the
+ * subscriber context for the {@link StoreLatencyInterceptor} to record its store calls; a cancelled one releases it
+ * without counting its latency.
+ */
+public class ConcurrencyLimitWebFilter implements WebFilter {
+
+    private final ConcurrencyLimiter limiter;
+
+    private final RequestMappingHandlerMapping handlerMapping;
+
+    public ConcurrencyLimitWebFilter(ConcurrencyLimiter limiter, RequestMappingHandlerMapping handlerMapping) {
+        this.limiter = limiter;
+        this.handlerMapping = handlerMapping;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!limiter.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        return handlerMapping.getHandler(exchange)
+            .ofType(HandlerMethod.class)
+            .map(handler -> Optional.ofNullable(handler.getMethodAnnotation(ConcurrencyLimit.class)))
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(limit -> limit.isPresent()
+                ? filter(exchange, chain, limit.get().value())
+                : chain.filter(exchange));
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain, Workload workload) {
+        Optional<ConcurrencyLimiter.Permit> permit = limiter.tryAcquire(workload);
+        if (permit.isEmpty()) {
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, limiter.getRetryAfter());
+            return exchange.getResponse().setComplete();
+        }
+        return chain.filter(exchange)
+            .contextWrite(Context.of(ConcurrencyLimiter.Permit.class, permit.get()))
+            .doFinally(signal -> {
+                if (signal == SignalType.CANCEL) {
+                    permit.get().cancel();
+                } else {
+                    permit.get().release();
+                }
+            });
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.github.ivanmarban.movies.limit;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Limits the concurrent requests of every {@link Workload} with an {@link AdaptiveLimit} that follows the latency of
+ * their store calls, rejecting the requests over the limit.
+ * <p>
+ * Rejecting at once, rather than letting requests wait for a thread or a connection, keeps the admitted ones within
+ * their deadline when the database slows down; the limits grow back once its latency recovers. A request answered
+ * without calling the store, from a cache or with an error of its own, leaves its limit unchanged.
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    static final String LIMIT = "movies.concurrency.limit";
+
+    static final String IN_FLIGHT = "movies.concurrency.in.flight";
+
+    static final String REJECTED = "movies.concurrency.rejected";
+
+    private final MoviesProperties.Concurrency properties;
+
+    private final Map<Workload, AdaptiveLimit> limits = new EnumMap<>(Workload.class);
+
+    private final Map<Workload, Counter> rejected = new EnumMap<>(Workload.class);
+
+    public ConcurrencyLimiter(MeterRegistry meterRegistry, MoviesProperties properties) {
+        this.properties = properties.getConcurrency();
+        for (Workload workload : Workload.values()) {
+            MoviesProperties.Limit settings = settingsOf(workload);
+            AdaptiveLimit limit = new AdaptiveLimit(settings.getInitialLimit(), settings.getMinLimit(),
+                settings.getMaxLimit(), settings.getLatencyThreshold().toNanos(), this.properties.getBackoffRatio());
+            String tag = workload.name().toLowerCase(Locale.ROOT);
+            limits.put(workload, limit);
+            Gauge.builder(LIMIT, limit, AdaptiveLimit::getLimit)
+                .description("Concurrent requests admitted")
+                .tag("workload", tag)
+                .register(meterRegistry);
+            Gauge.builder(IN_FLIGHT, limit, AdaptiveLimit::getInFlight)
+                .description("Requests being served")
+                .tag("workload", tag)
+                .register(meterRegistry);
+            rejected.put(workload, Counter.builder(REJECTED)
+                .description("Requests rejected because the concurrency limit was reached")
+                .tag("workload", tag)
+                .register(meterRegistry));
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Value of the {@code Retry-After} header of the rejected requests, in seconds.
+     */
+    public String getRetryAfter() {
+        return String.valueOf(Math.max(1, properties.getRetryAfter().toSeconds()));
+    }
+
+    /**
+     * Admits a request of {@code workload} if its limit allows, the permit must then be released once the request
+     * completes.
+     */
+    public Optional<Permit> tryAcquire(Workload workload) {
+        AdaptiveLimit limit = limits.get(workload);
+        if (!limit.tryAcquire()) {
+            rejected.get(workload).increment();
+            return Optional.empty();
+        }
+        return Optional.of(new Permit(limit, System.nanoTime()));
+    }
+
+    private MoviesProperties.Limit settingsOf(Workload workload) {
+        switch (workload) {
+            case READ:
+                return properties.getRead();
+            case WRITE:
+                return properties.getWrite();
+            case BULK:
+                return properties.getBulk();
+            case EXPORT:
+                return properties.getExport();
+            default:
+                return properties.getExpensive();
+        }
+    }
+
+    /**
+     * Admission of a request, recording the calls it makes to the store until it is released.
+     */
+    public static final class Permit {
+
+        private final AdaptiveLimit limit;
+
+        private final long start;
+
+        private int storeCalls;
+
+        private long storeNanos;
+
+        private boolean storeFailed;
+
+        private Permit(AdaptiveLimit limit, long start) {
+            this.limit = limit;
+            this.start = start;
+        }
+
+        /**
+         * Records a store call that took {@code nanos}, {@code failed} if it timed out or the store could not serve it.
+         */
+        synchronized void recordStoreCall(long nanos, boolean failed) {
+            storeCalls++;
+            storeNanos += nanos;
+            storeFailed |= failed;
+        }
+
+        /**
+         * Releases the request once completed, adjusting the limit from its store calls, if it made any.
+         */
+        public synchronized void release() {
+            if (storeCalls == 0) {
+                limit.cancel();
+            } else {
+                limit.release(start, System.nanoTime(), storeNanos, storeFailed);
+            }
+        }
+
+        /**
+         * Releases a request whose client went away, which says nothing about the latency.
+         */
+        public void cancel() {
+            limit.cancel();
+        }
+
+    }
+
+}
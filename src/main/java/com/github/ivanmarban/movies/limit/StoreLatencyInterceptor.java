@@ -0,0 +1,114 @@
+package com.github.ivanmarban.movies.limit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Measures the calls to the movie store made while serving a request admitted by the {@link ConcurrencyLimiter}, so
+ * that the limits follow the latency of the store rather than of the whole handler. Servlet requests {@link #bind}
+ * their permit to the thread running the handler, reactive ones put it in the subscriber context, where the calls
+ * returning a {@link Mono} or a {@link Flux} are timed from subscription to completion.
+ * <p>
+ * A call fails when it times out or the store could not serve it. A rejected write, such as a duplicate key or a
+ * version conflict, says nothing about the load and is counted as a call only; calls made outside a request, by the
+ * background loaders, are not measured. The write coalescer inserts on its own thread and {@link #record records} the
+ * latency of each batch on the permits of the requests whose movies it holds.
+ */
+public class StoreLatencyInterceptor implements MethodInterceptor {
+
+    private static final ThreadLocal<ConcurrencyLimiter.Permit> PERMIT = new ThreadLocal<>();
+
+    /**
+     * Records the store calls of the current thread on {@code permit} until {@link #unbind()}.
+     */
+    public static void bind(ConcurrencyLimiter.Permit permit) {
+        PERMIT.set(permit);
+    }
+
+    public static void unbind() {
+        PERMIT.remove();
+    }
+
+    /**
+     * Returns the permit bound to the current thread, if any.
+     */
+    public static Optional<ConcurrencyLimiter.Permit> current() {
+        return Optional.ofNullable(PERMIT.get());
+    }
+
+    /**
+     * Records on {@code permit} a store call made on its behalf that took {@code nanos} and failed with {@code error},
+     * or succeeded when {@code error} is {@code null}.
+     */
+    public static void record(ConcurrencyLimiter.Permit permit, long nanos, Throwable error) {
+        permit.recordStoreCall(nanos, error != null && isFailure(error));
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Class<?> returnType = invocation.getMethod().getReturnType();
+        if (Mono.class.isAssignableFrom(returnType)) {
+            return timed((Mono<?>) invocation.proceed());
+        }
+        if (Flux.class.isAssignableFrom(returnType)) {
+            return timed((Flux<?>) invocation.proceed());
+        }
+        ConcurrencyLimiter.Permit permit = PERMIT.get();
+        if (permit == null) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            permit.recordStoreCall(System.nanoTime() - start, false);
+            return result;
+        } catch (Throwable e) {
+            permit.recordStoreCall(System.nanoTime() - start, isFailure(e));
+            throw e;
+        }
+    }
+
+    private static <T> Mono<T> timed(Mono<T> call) {
+        return Mono.deferContextual(context -> {
+            Optional<ConcurrencyLimiter.Permit> permit = context.getOrEmpty(ConcurrencyLimiter.Permit.class);
+            if (permit.isEmpty()) {
+                return call;
+            }
+            long start = System.nanoTime();
+            return call
+                .doOnSuccess(value -> permit.get().recordStoreCall(System.nanoTime() - start, false))
+                .doOnError(e -> permit.get().recordStoreCall(System.nanoTime() - start, isFailure(e)));
+        });
+    }
+
+    private static <T> Flux<T> timed(Flux<T> call) {
+        return Flux.deferContextual(context -> {
+            Optional<ConcurrencyLimiter.Permit> permit = context.getOrEmpty(ConcurrencyLimiter.Permit.class);
+            if (permit.isEmpty()) {
+                return call;
+            }
+            long start = System.nanoTime();
+            return call
+                .doOnComplete(() -> permit.get().recordStoreCall(System.nanoTime() - start, false))
+                .doOnError(e -> permit.get().recordStoreCall(System.nanoTime() - start, isFailure(e)));
+        });
+    }
+
+    /**
+     * Whether {@code e} tells of an overloaded or unreachable store: a timeout, a resource failure or an exception the
+     * store did not translate, as the driver and I/O errors.
+     */
+    static boolean isFailure(Throwable e) {
+        return !(e instanceof DataAccessException) || e instanceof DataAccessResourceFailureException
+            || e instanceof QueryTimeoutException || e instanceof TransientDataAccessResourceException;
+    }
+
+}
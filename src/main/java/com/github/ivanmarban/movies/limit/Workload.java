@@ -0,0 +1,35 @@
+package com.github.ivanmarban.movies.limit;
+
+/**
+ * Classes of requests admitted under separate concurrency limits, so that a burst of expensive queries cannot starve
+ * the lookups by id.
+ */
+public enum Workload {
+
+    /**
+     * Lookups of movies by id.
+     */
+    READ,
+
+    /**
+     * Creations, updates and deletions of a single movie.
+     */
+    WRITE,
+
+    /**
+     * Filtered pages and facet counts, which may scan the collection, and deleting every movie.
+     */
+    EXPENSIVE,
+
+    /**
+     * Bulk loads, which last as long as their upload whatever the load of the database, and so must not drive the
+     * limit of the expensive queries.
+     */
+    BULK,
+
+    /**
+     * Catalog exports, which read the whole collection and last as long as the client takes to download it.
+     */
+    EXPORT
+
+}
@@ -0,0 +1,100 @@
+package com.github.ivanmarban.movies.metrics;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times how long operations wait for a pooled connection, complementing the pool size, checked out and wait queue
+ * gauges registered by Spring Boot. As the pool bounds the concurrent database operations, its maximum size is
+ * published too, so that the checked out connections can be read as a utilization; failed check outs, mostly timeouts
+ * of a saturated pool, are timed apart.
+ * <p>
+ * The driver does not correlate the start and the end of a check out, so they are matched by thread. Synchronous
+ * check outs complete on the calling thread, asynchronous ones that had to queue complete on a driver thread and are
+ * not timed.
+ */
+public class ConnectionPoolWaitListener implements ConnectionPoolListener {
+
+    static final String WAIT = "mongodb.driver.pool.wait";
+
+    static final String MAX_SIZE = "mongodb.driver.pool.maxsize";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ThreadLocal<Long> started = new ThreadLocal<>();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<ServerId, Gauge> maxSizes = new ConcurrentHashMap<>();
+
+    public ConnectionPoolWaitListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        int maxSize = event.getSettings().getMaxSize();
+        maxSizes.put(event.getServerId(), Gauge.builder(MAX_SIZE, () -> maxSize)
+            .description("The maximum number of connections in the pool")
+            .tags(tags(event.getServerId()))
+            .register(meterRegistry));
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        Gauge gauge = maxSizes.remove(event.getServerId());
+        if (gauge != null) {
+            meterRegistry.remove(gauge);
+        }
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        started.set(System.nanoTime());
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        record(event.getConnectionId().getServerId(), "success");
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        record(event.getServerId(), "failure");
+    }
+
+    private void record(ServerId serverId, String outcome) {
+        Long start = started.get();
+        if (start == null) {
+            return;
+        }
+        started.remove();
+        String clusterId = serverId.getClusterId().getValue();
+        String address = serverId.getAddress().toString();
+        timers.computeIfAbsent(clusterId + ":" + address + ":" + outcome, key -> Timer.builder(WAIT)
+            .description("Time spent waiting to check out a pooled connection")
+            .tag("cluster.id", clusterId)
+            .tag("server.address", address)
+            .tag("outcome", outcome)
+            .register(meterRegistry))
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static Tags tags(ServerId serverId) {
+        return Tags.of("cluster.id", serverId.getClusterId().getValue(), "server.address", serverId.getAddress().toString());
+    }
+
+}
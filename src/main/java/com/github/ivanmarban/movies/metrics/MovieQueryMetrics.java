@@ -0,0 +1,40 @@
+package com.github.ivanmarban.movies.metrics;
+
+import com.github.ivanmarban.movies.model.MovieFilter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Distribution of the number of movies returned per page, by kind of query and by whether the page was resolved
+ * through the title index or by a database query.
+ */
+@Component
+public class MovieQueryMetrics {
+
+    static final String RESULTS = "movies.query.results";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public MovieQueryMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void recordResults(MovieFilter filter, boolean titleIndex, int results) {
+        String query = filter.isEmpty() ? "all" : filter.isTitleOnly() ? "title" : "filter";
+        String source = titleIndex ? "index" : "database";
+        summaries.computeIfAbsent(query + ":" + source, key -> DistributionSummary.builder(RESULTS)
+            .description("Movies returned per page")
+            .baseUnit("movies")
+            .tag("query", query)
+            .tag("source", source)
+            .register(meterRegistry))
+            .record(results);
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.github.ivanmarban.movies.metrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs MongoDB commands that take longer than a threshold, with their namespace and the shape of their query.
+ * <p>
+ * The command document is only readable while the started event is handled, so the fields of the filter or query and
+ * the stages of the pipeline are kept for every command until it completes, without their values, and described only
+ * for the slow ones.
+ */
+@Slf4j
+public class SlowQueryListener implements CommandListener {
+
+    private static final String[] QUERY_FIELDS = {"filter", "query"};
+
+    private static final String PIPELINE = "pipeline";
+
+    private final long thresholdNanos;
+
+    private final Map<Integer, Started> inFlight = new ConcurrentHashMap<>();
+
+    public SlowQueryListener(Duration threshold) {
+        this.thresholdNanos = threshold.toNanos();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        inFlight.put(event.getRequestId(), Started.of(event));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        Started command = inFlight.remove(event.getRequestId());
+        if (command != null && event.getElapsedTime(TimeUnit.NANOSECONDS) >= thresholdNanos) {
+            log.warn("Slow MongoDB command took {} ms on {}: {}", event.getElapsedTime(TimeUnit.MILLISECONDS),
+                event.getConnectionDescription().getServerAddress(), command.describe());
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        Started command = inFlight.remove(event.getRequestId());
+        if (command != null && event.getElapsedTime(TimeUnit.NANOSECONDS) >= thresholdNanos) {
+            log.warn("Slow MongoDB command failed after {} ms on {}: {}", event.getElapsedTime(TimeUnit.MILLISECONDS),
+                event.getConnectionDescription().getServerAddress(), command.describe());
+        }
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    static String describe(CommandStartedEvent event) {
+        return Started.of(event).describe();
+    }
+
+    private static final class Started {
+
+        private final String commandName;
+
+        private final String databaseName;
+
+        private final String collection;
+
+        private final String queryField;
+
+        private final List<String> shape;
+
+        private Started(String commandName, String databaseName, String collection, String queryField, List<String> shape) {
+            this.commandName = commandName;
+            this.databaseName = databaseName;
+            this.collection = collection;
+            this.queryField = queryField;
+            this.shape = shape;
+        }
+
+        /**
+         * Keeps the field names of the query or the stage names of the pipeline of {@code event}, never inserted
+         * documents nor values.
+         */
+        private static Started of(CommandStartedEvent event) {
+            BsonDocument command = event.getCommand();
+            BsonValue collection = command.get(event.getCommandName());
+            String collectionName = collection != null && collection.isString() ? collection.asString().getValue() : null;
+            for (String field : QUERY_FIELDS) {
+                BsonValue query = command.get(field);
+                if (query != null && query.isDocument()) {
+                    return new Started(event.getCommandName(), event.getDatabaseName(), collectionName, field,
+                        new ArrayList<>(query.asDocument().keySet()));
+                }
+            }
+            BsonValue pipeline = command.get(PIPELINE);
+            if (pipeline != null && pipeline.isArray()) {
+                List<String> stages = new ArrayList<>();
+                for (BsonValue stage : pipeline.asArray()) {
+                    if (stage.isDocument() && !stage.asDocument().isEmpty()) {
+                        stages.add(stage.asDocument().getFirstKey());
+                    }
+                }
+                return new Started(event.getCommandName(), event.getDatabaseName(), collectionName, PIPELINE, stages);
+            }
+            return new Started(event.getCommandName(), event.getDatabaseName(), collectionName, null, null);
+        }
+
+        private String describe() {
+            StringBuilder description = new StringBuilder(commandName).append(' ').append(databaseName);
+            if (collection != null) {
+                description.append('.').append(collection);
+            }
+            if (queryField != null) {
+                description.append(' ').append(queryField).append(' ').append(shape);
+            }
+            return description.toString();
+        }
+
+    }
+
+}
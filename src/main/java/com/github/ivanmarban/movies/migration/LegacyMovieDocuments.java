@@ -0,0 +1,139 @@
+package com.github.ivanmarban.movies.migration;
+
+import com.github.ivanmarban.movies.model.MovieFormats;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Field;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Knows the shape of movie documents written before the typed schema, where {@code year} was a string,
+ * {@code runtime} a text like {@code "160 min"} and {@code genre} a comma separated list. A year or a runtime that does
+ * not convert is moved to {@code legacyYear} or {@code legacyRuntime} as it was, until a client writes the field.
+ */
+public final class LegacyMovieDocuments {
+
+    static final String YEAR = "year";
+
+    static final String RUNTIME = "runtime";
+
+    static final String RUNTIME_MINUTES = "runtimeMinutes";
+
+    static final String LEGACY_YEAR = "legacyYear";
+
+    static final String LEGACY_RUNTIME = "legacyRuntime";
+
+    static final String GENRE = "genre";
+
+    static final String GENRES = "genres";
+
+    private LegacyMovieDocuments() {
+    }
+
+    public static Criteria legacy() {
+        return new Criteria().orOperator(
+            where(YEAR).type(JsonSchemaObject.Type.STRING),
+            where(RUNTIME).exists(true),
+            where(GENRE).exists(true));
+    }
+
+    public static boolean isLegacy(Document document) {
+        return document.get(YEAR) instanceof String || document.containsKey(RUNTIME) || document.containsKey(GENRE);
+    }
+
+    /**
+     * Rewrites the legacy fields of {@code document} in place into their typed counterparts.
+     */
+    public static void upgrade(Document document) {
+        Object year = document.get(YEAR);
+        if (year instanceof String) {
+            try {
+                document.put(YEAR, MovieFormats.parseYear((String) year));
+            } catch (IllegalArgumentException e) {
+                document.remove(YEAR);
+                document.put(LEGACY_YEAR, year);
+            }
+        }
+        Object runtime = document.remove(RUNTIME);
+        if (runtime instanceof String && !document.containsKey(RUNTIME_MINUTES)) {
+            try {
+                document.put(RUNTIME_MINUTES, MovieFormats.parseRuntime((String) runtime));
+            } catch (IllegalArgumentException e) {
+                document.put(LEGACY_RUNTIME, runtime);
+            }
+        }
+        Object genre = document.remove(GENRE);
+        if (genre instanceof String && !document.containsKey(GENRES)) {
+            document.put(GENRES, MovieFormats.parseGenres((String) genre));
+        }
+    }
+
+    /**
+     * Removes the legacy counterpart of every typed field written by {@code update}, which would otherwise be upgraded
+     * over a field the update removes.
+     */
+    public static Update supersede(Update update) {
+        Document set = update.getUpdateObject().get("$set", Document.class);
+        Document unset = update.getUpdateObject().get("$unset", Document.class);
+        if (contains(set, unset, YEAR)) {
+            update.unset(LEGACY_YEAR);
+        }
+        if (contains(set, unset, RUNTIME_MINUTES)) {
+            update.unset(RUNTIME).unset(LEGACY_RUNTIME);
+        }
+        if (contains(set, unset, GENRES)) {
+            update.unset(GENRE);
+        }
+        return update;
+    }
+
+    /**
+     * Includes the legacy counterpart of every typed field {@code fields} includes, which is upgraded into it when read.
+     */
+    public static Field project(Field fields) {
+        Document included = fields.getFieldsObject();
+        if (included.containsKey(YEAR)) {
+            fields.include(LEGACY_YEAR);
+        }
+        if (included.containsKey(RUNTIME_MINUTES)) {
+            fields.include(RUNTIME).include(LEGACY_RUNTIME);
+        }
+        if (included.containsKey(GENRES)) {
+            fields.include(GENRE);
+        }
+        return fields;
+    }
+
+    private static boolean contains(Document set, Document unset, String field) {
+        return set != null && set.containsKey(field) || unset != null && unset.containsKey(field);
+    }
+
+    /**
+     * Returns the update turning the stored legacy document into {@code upgraded}.
+     */
+    static Update toUpdate(Document upgraded) {
+        Update update = new Update().unset(RUNTIME).unset(GENRE);
+        if (upgraded.containsKey(YEAR)) {
+            update.set(YEAR, upgraded.get(YEAR));
+        } else {
+            update.unset(YEAR);
+        }
+        if (upgraded.containsKey(LEGACY_YEAR)) {
+            update.set(LEGACY_YEAR, upgraded.get(LEGACY_YEAR));
+        }
+        if (upgraded.containsKey(RUNTIME_MINUTES)) {
+            update.set(RUNTIME_MINUTES, upgraded.get(RUNTIME_MINUTES));
+        }
+        if (upgraded.containsKey(LEGACY_RUNTIME)) {
+            update.set(LEGACY_RUNTIME, upgraded.get(LEGACY_RUNTIME));
+        }
+        if (upgraded.containsKey(GENRES)) {
+            update.set(GENRES, upgraded.get(GENRES));
+        }
+        return update;
+    }
+
+}
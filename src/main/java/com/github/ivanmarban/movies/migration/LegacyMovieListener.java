@@ -0,0 +1,23 @@
+package com.github.ivanmarban.movies.migration;
+
+import com.github.ivanmarban.movies.model.Movie;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Upgrades documents the migration has not reached yet before they are mapped, so they are read like typed ones.
+ */
+@Component
+public class LegacyMovieListener extends AbstractMongoEventListener<Movie> {
+
+    @Override
+    public void onAfterLoad(AfterLoadEvent<Movie> event) {
+        Document document = event.getDocument();
+        if (document != null && LegacyMovieDocuments.isLegacy(document)) {
+            LegacyMovieDocuments.upgrade(document);
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.github.ivanmarban.movies.migration;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.repository.QueryPlanGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Converts the movie documents still stored with the legacy text fields to the typed schema in the background,
+ * resuming from its last checkpoint after a restart. Progress is reported by the {@code migration} actuator endpoint.
+ * <p>
+ * The collection is walked in {@code _id} order in batches of unordered updates, with a checkpoint after each batch. An
+ * update applies only while the document still has the version it was read at, so a write the application made in the
+ * meantime is never overwritten; that document is left to the next run.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "migration")
+@ConditionalOnProperty(prefix = "movies.migration", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class MovieSchemaMigration {
+
+    static final String NAME = "movie-typed-schema";
+
+    static final String CHECKPOINTS = "migrations";
+
+    private final MongoOperations mongoOperations;
+
+    private final TaskExecutor taskExecutor;
+
+    private final int batchSize;
+
+    private final String collection;
+
+    private final Cache cache;
+
+    private volatile String state = "idle";
+
+    private volatile long migrated;
+
+    private volatile ObjectId lastId;
+
+    private volatile Instant startedAt;
+
+    private volatile Instant completedAt;
+
+    public MovieSchemaMigration(MongoOperations mongoOperations, TaskExecutor taskExecutor, CacheManager cacheManager,
+                                MoviesProperties properties) {
+        this.mongoOperations = mongoOperations;
+        this.taskExecutor = taskExecutor;
+        this.batchSize = properties.getMigration().getBatchSize();
+        this.collection = mongoOperations.getCollectionName(Movie.class);
+        this.cache = cacheManager.getCache("movies");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskExecutor.execute(this::run);
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("name", NAME);
+        status.put("state", state);
+        status.put("migrated", migrated);
+        status.put("lastId", lastId == null ? null : lastId.toHexString());
+        status.put("startedAt", startedAt);
+        status.put("completedAt", completedAt);
+        return status;
+    }
+
+    void run() {
+        try {
+            Document checkpoint = mongoOperations.findById(NAME, Document.class, CHECKPOINTS);
+            if (checkpoint != null) {
+                lastId = checkpoint.getObjectId("lastId");
+                migrated = checkpoint.get("migrated", 0L);
+                if (checkpoint.containsKey("completedAt")) {
+                    // No index covers the legacy fields, the scan stops at the first legacy document if any.
+                    if (!QueryPlanGuard.allowingCollectionScans(() -> mongoOperations.exists(new Query(LegacyMovieDocuments.legacy()), collection))) {
+                        state = "completed";
+                        completedAt = checkpoint.getDate("completedAt").toInstant();
+                        return;
+                    }
+                    // Legacy documents written after the previous run completed, e.g. by an instance not yet upgraded.
+                    lastId = null;
+                }
+            }
+            state = "running";
+            startedAt = Instant.now();
+            log.info("Movie schema migration started after id {}, {} documents migrated so far.", lastId, migrated);
+            while (migrateBatch()) {
+                log.info("Movie schema migration: {} documents migrated, last id {}.", migrated, lastId);
+            }
+            completedAt = Instant.now();
+            mongoOperations.upsert(new Query(where("_id").is(NAME)), new Update()
+                .set("migrated", migrated)
+                .set("completedAt", Date.from(completedAt)), CHECKPOINTS);
+            state = "completed";
+            log.info("Movie schema migration completed, {} documents migrated.", migrated);
+        } catch (Exception e) {
+            state = "failed";
+            log.error("Movie schema migration failed after id {}, it will resume from there on the next start.", lastId, e);
+        }
+    }
+
+    private boolean migrateBatch() {
+        Query query = new Query(LegacyMovieDocuments.legacy()).with(Sort.by("_id")).limit(batchSize);
+        if (lastId != null) {
+            query.addCriteria(where("_id").gt(lastId));
+        }
+        List<Document> documents = mongoOperations.find(query, Document.class, collection);
+        if (documents.isEmpty()) {
+            return false;
+        }
+        migrated += upgrade(documents);
+        lastId = documents.get(documents.size() - 1).getObjectId("_id");
+        mongoOperations.upsert(new Query(where("_id").is(NAME)), new Update()
+            .set("lastId", lastId)
+            .set("migrated", migrated)
+            .set("updatedAt", new Date())
+            .unset("completedAt"), CHECKPOINTS);
+        return true;
+    }
+
+    /**
+     * Upgrades the stored {@code documents} that are still at the version they were read at and increments it, leaving
+     * those written meanwhile to the next run. Their cached movies are evicted. Returns how many were upgraded.
+     */
+    long upgrade(List<Document> documents) {
+        BulkOperations updates = mongoOperations.bulkOps(BulkMode.UNORDERED, collection);
+        for (Document document : documents) {
+            Document upgraded = new Document(document);
+            LegacyMovieDocuments.upgrade(upgraded);
+            Query unchanged = new Query(where("_id").is(document.get("_id")).and("version").is(document.get("version")));
+            updates.updateOne(unchanged, LegacyMovieDocuments.toUpdate(upgraded).inc("version", 1L));
+        }
+        long upgraded = updates.execute().getModifiedCount();
+        if (cache != null) {
+            documents.forEach(document -> cache.evict(document.getObjectId("_id").toHexString()));
+        }
+        return upgraded;
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.github.ivanmarban.movies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FacetCount {
+
+    private String value;
+    private long count;
+
+}
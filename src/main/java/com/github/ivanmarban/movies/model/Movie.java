@@ -1,26 +1,155 @@
 package com.github.ivanmarban.movies.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A movie. Every filter of the list has an index leading with its field, and the indexes end with {@code _id}, the
+ * order pages are read in, so that a page filtered by equality is read in index order without sorting.
+ */
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
 @Document(collection = "movies")
+@CompoundIndex(name = "title", def = "{'title': 1}", background = true)
+@CompoundIndex(name = "genres_id", def = "{'genres': 1, '_id': 1}", background = true)
+@CompoundIndex(name = "director_id", def = "{'director': 1, '_id': 1}", background = true)
+@CompoundIndex(name = "director_year_id", def = "{'director': 1, 'year': 1, '_id': 1}", background = true)
+@CompoundIndex(name = "year_runtimeMinutes_id", def = "{'year': 1, 'runtimeMinutes': 1, '_id': 1}", background = true)
+@CompoundIndex(name = "runtimeMinutes_id", def = "{'runtimeMinutes': 1, '_id': 1}", background = true)
 public class Movie {
 
     @Id
     private String id;
     private String title;
-    private String year;
+    /**
+     * Year, exposed by the REST API as four digits, e.g. {@code "1968"}.
+     */
+    @JsonSerialize(using = YearSerializer.class)
+    @JsonDeserialize(using = YearDeserializer.class)
+    private Integer year;
     private String rated;
-    private String runtime;
-    private String genre;
+    @JsonIgnore
+    private Integer runtimeMinutes;
+    @JsonIgnore
+    private List<String> genres;
     private String director;
+    /**
+     * Year of a document written before the typed schema that the migration could not convert, e.g.
+     * {@code "1999–2001"}, kept until the year is written.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String legacyYear;
+    /**
+     * Runtime of a document written before the typed schema that the migration could not convert, kept until the
+     * runtime is written.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String legacyRuntime;
+    /**
+     * Incremented by every update, exposed as the entity tag matched by {@code If-Match}. Absent from documents written
+     * before versioning, which are treated as version {@code 0}.
+     */
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    /**
+     * Runtime as exposed by the REST API, e.g. {@code "160 min"}.
+     *
+     * @throws IllegalArgumentException on writes of a text that is not a number of minutes
+     */
+    @Transient
+    public String getRuntime() {
+        return MovieFormats.formatRuntime(runtimeMinutes);
+    }
+
+    public void setRuntime(String runtime) {
+        this.runtimeMinutes = MovieFormats.parseRuntime(runtime);
+    }
+
+    /**
+     * Genres as exposed by the REST API, e.g. {@code "Mystery, Sci-Fi"}.
+     */
+    @Transient
+    public String getGenre() {
+        return MovieFormats.formatGenres(genres);
+    }
+
+    public void setGenre(String genre) {
+        this.genres = MovieFormats.parseGenres(genre);
+    }
+
+    /**
+     * Returns a new movie with the given id and the fields a client may write copied from this one, leaving this
+     * instance, which may be shared through the cache, untouched.
+     */
+    public Movie copyWithId(String id) {
+        return Movie.builder().id(id).title(title).year(year).rated(rated).runtimeMinutes(runtimeMinutes).genres(genres)
+            .director(director).build();
+    }
+
+    static final class YearSerializer extends StdSerializer<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        YearSerializer() {
+            super(Integer.class);
+        }
+
+        @Override
+        public void serialize(Integer year, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeString(MovieFormats.formatYear(year));
+        }
+
+    }
+
+    /**
+     * Reads the year from a string or a number, rejecting any other value than four digits.
+     */
+    static final class YearDeserializer extends StdDeserializer<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        YearDeserializer() {
+            super(Integer.class);
+        }
+
+        @Override
+        public Integer deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (!parser.hasToken(JsonToken.VALUE_STRING) && !parser.hasToken(JsonToken.VALUE_NUMBER_INT)) {
+                return (Integer) context.handleUnexpectedToken(Integer.class, parser);
+            }
+            String text = parser.getText();
+            try {
+                return MovieFormats.parseYear(text);
+            } catch (IllegalArgumentException e) {
+                return (Integer) context.handleWeirdStringValue(Integer.class, text, e.getMessage());
+            }
+        }
+
+    }
 
 }
@@ -0,0 +1,46 @@
+package com.github.ivanmarban.movies.model;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Dimensions movies are counted by in the facets endpoint. Every movie contributes one count to each of its values,
+ * movies without a value are not counted.
+ */
+public enum MovieFacet {
+
+    GENRE("genre", movie -> movie.getGenres() == null ? List.of() : movie.getGenres()),
+    DIRECTOR("director", movie -> single(movie.getDirector())),
+    DECADE("decade", movie -> movie.getYear() == null ? List.of() : List.of(String.valueOf(decade(movie.getYear())))),
+    RATED("rated", movie -> single(movie.getRated()));
+
+    private final String name;
+
+    private final Function<Movie, Collection<String>> values;
+
+    MovieFacet(String name, Function<Movie, Collection<String>> values) {
+        this.name = name;
+        this.values = values;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Collection<String> valuesOf(Movie movie) {
+        return values.apply(movie);
+    }
+
+    /**
+     * First year of the decade of {@code year}, truncating like the {@code $mod} aggregation operator does.
+     */
+    public static int decade(int year) {
+        return year - year % 10;
+    }
+
+    private static Collection<String> single(String value) {
+        return value == null ? List.of() : List.of(value);
+    }
+
+}
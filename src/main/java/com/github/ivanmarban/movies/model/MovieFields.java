@@ -0,0 +1,107 @@
+package com.github.ivanmarban.movies.model;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The movie properties a read request asks for with {@code fields=title,year}. They are read from Mongo with a
+ * projection and the {@link #FILTER} Jackson filter leaves every other property out of the response. The id is always
+ * included, as it keys the movie and the pagination cursor.
+ */
+public final class MovieFields {
+
+    /**
+     * The request parameter listing the properties.
+     */
+    public static final String PARAMETER = "fields";
+
+    /**
+     * The id of the Jackson property filter applied to movies.
+     */
+    public static final String FILTER = "movieFields";
+
+    /**
+     * Stored field of every readable property keyed by its name in the REST API.
+     */
+    private static final Map<String, String> STORED = Map.of(
+        "id", "id",
+        "title", "title",
+        "year", "year",
+        "rated", "rated",
+        "runtime", "runtimeMinutes",
+        "genre", "genres",
+        "director", "director",
+        "version", "version");
+
+    private final Set<String> names;
+
+    private MovieFields(Set<String> names) {
+        this.names = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Parses a comma separated list of REST API property names, returning {@code null}, for every property, when
+     * {@code fields} is {@code null}.
+     *
+     * @throws IllegalArgumentException if a property is unknown
+     */
+    public static MovieFields of(String fields) {
+        if (fields == null) {
+            return null;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        names.add("id");
+        for (String name : fields.split(",", -1)) {
+            String property = name.trim();
+            if (!STORED.containsKey(property)) {
+                throw new IllegalArgumentException("Unknown property " + property);
+            }
+            names.add(property);
+        }
+        return new MovieFields(names);
+    }
+
+    /**
+     * Returns the REST API names of the properties.
+     */
+    public Set<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Returns the stored fields holding the properties.
+     */
+    public Set<String> getStoredFields() {
+        return names.stream().map(STORED::get).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Returns the filters writing only these properties of a movie.
+     */
+    public FilterProvider getFilters() {
+        return new SimpleFilterProvider().addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(names));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MovieFields && names.equals(((MovieFields) o).names);
+    }
+
+    @Override
+    public int hashCode() {
+        return names.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", names);
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.github.ivanmarban.movies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MovieFilter {
+
+    private String title;
+    private Integer yearFrom;
+    private Integer yearTo;
+    private String genre;
+    private Integer maxRuntime;
+    private String director;
+
+    /**
+     * Whether the title is the only criterion, so the search can be answered by the title index alone.
+     */
+    public boolean isTitleOnly() {
+        return title != null && yearFrom == null && yearTo == null && genre == null && maxRuntime == null && director == null;
+    }
+
+    /**
+     * Whether no criterion is set, so every movie matches.
+     */
+    public boolean isEmpty() {
+        return title == null && yearFrom == null && yearTo == null && genre == null && maxRuntime == null && director == null;
+    }
+
+}
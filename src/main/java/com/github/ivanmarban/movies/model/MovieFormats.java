@@ -0,0 +1,76 @@
+package com.github.ivanmarban.movies.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Conversions between the typed movie fields and their legacy text representations, e.g. {@code "160 min"} or
+ * {@code "Mystery, Sci-Fi"}, which are still used by the REST API and by documents written before the typed schema.
+ * A text that does not convert exactly is rejected rather than read in part.
+ */
+public final class MovieFormats {
+
+    private static final Pattern YEAR = Pattern.compile("\\d{4}");
+
+    private static final Pattern RUNTIME = Pattern.compile("(\\d{1,9})\\s*(min)?");
+
+    private MovieFormats() {
+    }
+
+    /**
+     * Parses a year of four digits, e.g. {@code "1968"}.
+     *
+     * @throws IllegalArgumentException if {@code year} is not four digits
+     */
+    public static Integer parseYear(String year) {
+        if (year == null) {
+            return null;
+        }
+        if (!YEAR.matcher(year.trim()).matches()) {
+            throw new IllegalArgumentException("Year is not four digits: " + year);
+        }
+        return Integer.valueOf(year.trim());
+    }
+
+    public static String formatYear(Integer year) {
+        return year == null ? null : String.format("%04d", year);
+    }
+
+    /**
+     * Parses a runtime in minutes, e.g. {@code "160 min"} or {@code "160"}.
+     *
+     * @throws IllegalArgumentException if {@code runtime} is not a number of minutes
+     */
+    public static Integer parseRuntime(String runtime) {
+        if (runtime == null) {
+            return null;
+        }
+        Matcher matcher = RUNTIME.matcher(runtime.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Runtime is not a number of minutes: " + runtime);
+        }
+        return Integer.valueOf(matcher.group(1));
+    }
+
+    public static String formatRuntime(Integer runtimeMinutes) {
+        return runtimeMinutes == null ? null : runtimeMinutes + " min";
+    }
+
+    public static List<String> parseGenres(String genre) {
+        if (genre == null) {
+            return null;
+        }
+        return Arrays.stream(genre.split(","))
+            .map(String::trim)
+            .filter(value -> !value.isEmpty())
+            .collect(Collectors.toList());
+    }
+
+    public static String formatGenres(List<String> genres) {
+        return genres == null ? null : String.join(", ", genres);
+    }
+
+}
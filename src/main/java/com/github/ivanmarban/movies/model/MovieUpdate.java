@@ -0,0 +1,111 @@
+package com.github.ivanmarban.movies.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The stored fields a {@code PUT} or {@code PATCH} request writes, with their new values. A field whose new value is
+ * {@code null} is removed from the document.
+ */
+public final class MovieUpdate {
+
+    /**
+     * Writable stored fields keyed by their name in the REST API.
+     */
+    private static final Map<String, Field> FIELDS = Map.of(
+        "title", new Field("title", Movie::getTitle, (movie, source) -> movie.setTitle(source.getTitle())),
+        "year", new Field("year", Movie::getYear, (movie, source) -> {
+            movie.setYear(source.getYear());
+            movie.setLegacyYear(null);
+        }),
+        "rated", new Field("rated", Movie::getRated, (movie, source) -> movie.setRated(source.getRated())),
+        "runtime", new Field("runtimeMinutes", Movie::getRuntimeMinutes, (movie, source) -> {
+            movie.setRuntimeMinutes(source.getRuntimeMinutes());
+            movie.setLegacyRuntime(null);
+        }),
+        "genre", new Field("genres", Movie::getGenres, (movie, source) -> movie.setGenres(source.getGenres())),
+        "director", new Field("director", Movie::getDirector, (movie, source) -> movie.setDirector(source.getDirector())));
+
+    private final Movie values;
+
+    private final Set<Field> fields;
+
+    private MovieUpdate(Movie values, Set<Field> fields) {
+        this.values = values;
+        this.fields = fields;
+    }
+
+    /**
+     * Returns the update replacing every writable field with its value in {@code movie}.
+     */
+    public static MovieUpdate replace(Movie movie) {
+        return new MovieUpdate(movie, new LinkedHashSet<>(FIELDS.values()));
+    }
+
+    /**
+     * Returns the update writing only the REST API {@code properties} present in a request body, taking their values
+     * from {@code movie}, the body bound to a movie.
+     *
+     * @throws IllegalArgumentException if a property is not writable
+     */
+    public static MovieUpdate patch(Movie movie, Collection<String> properties) {
+        Set<Field> fields = new LinkedHashSet<>();
+        for (String property : properties) {
+            Field field = FIELDS.get(property);
+            if (field == null) {
+                throw new IllegalArgumentException("Property " + property + " cannot be updated");
+            }
+            fields.add(field);
+        }
+        return new MovieUpdate(movie, fields);
+    }
+
+    public boolean isEmpty() {
+        return fields.isEmpty();
+    }
+
+    /**
+     * Returns the new value of every written field keyed by its stored name, {@code null} for removed fields.
+     */
+    public Map<String, Object> values() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        fields.forEach(field -> values.put(field.name, field.getter.apply(this.values)));
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Returns what {@code previous} becomes once the update is applied, leaving it untouched. The legacy values of the
+     * fields written are dropped.
+     */
+    public Movie applyTo(Movie previous) {
+        Movie updated = previous.copyWithId(previous.getId());
+        updated.setLegacyYear(previous.getLegacyYear());
+        updated.setLegacyRuntime(previous.getLegacyRuntime());
+        fields.forEach(field -> field.copy.accept(updated, values));
+        updated.setVersion(previous.getVersion() == null ? 1 : previous.getVersion() + 1);
+        return updated;
+    }
+
+    private static final class Field {
+
+        private final String name;
+
+        private final Function<Movie, Object> getter;
+
+        private final BiConsumer<Movie, Movie> copy;
+
+        private Field(String name, Function<Movie, Object> getter, BiConsumer<Movie, Movie> copy) {
+            this.name = name;
+            this.getter = getter;
+            this.copy = copy;
+        }
+
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.github.ivanmarban.movies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MultiGetRequest {
+
+    private List<String> ids;
+
+}
@@ -0,0 +1,21 @@
+package com.github.ivanmarban.movies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The movies found for a multi get, in the order their ids were requested, and the requested ids no movie has.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MultiGetResult {
+
+    private List<Movie> movies = new ArrayList<>();
+    private List<String> missing = new ArrayList<>();
+
+}
@@ -0,0 +1,66 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFields;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Looks up many movies by id through the cache of {@link MovieStore#findById(String)}, so that only the ids
+ * missing from the cache are fetched, with a single {@code $in} query. What the query finds, and does not find, is
+ * cached in turn unless an entry was written meanwhile, with the same entries {@code findById} would have written.
+ * Movies read with a projection are not cached, only the ids it did not find.
+ */
+@Component
+public class MovieBatchLookup {
+
+    static final String CACHE = "movies";
+
+    private final MovieStore movieStore;
+
+    private final Cache cache;
+
+    public MovieBatchLookup(MovieStore movieStore, CacheManager cacheManager) {
+        this.movieStore = movieStore;
+        this.cache = cacheManager.getCache(CACHE);
+    }
+
+    /**
+     * Returns the movie of every id, empty for unknown ids, in the iteration order of {@code ids}. The movies not cached
+     * are read with only {@code fields}, or every field when it is {@code null}.
+     */
+    public Map<String, Optional<Movie>> findAll(Collection<String> ids, MovieFields fields) {
+        Map<String, Optional<Movie>> movies = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String id : ids) {
+            Cache.ValueWrapper cached = cache == null ? null : cache.get(id);
+            movies.put(id, cached == null ? null : Optional.ofNullable((Movie) cached.get()));
+            if (cached == null) {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<String, Movie> found = new HashMap<>();
+            movieStore.findAllById(misses, fields).forEach(movie -> found.put(movie.getId(), movie));
+            for (String id : misses) {
+                Movie movie = found.get(id);
+                if (cache != null && (movie == null || fields == null)) {
+                    // A movie cached meanwhile was read after the query, the query result must not replace it.
+                    cache.putIfAbsent(id, movie);
+                }
+                movies.put(id, Optional.ofNullable(movie));
+            }
+        }
+        return movies;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Creates the indexes declared on {@link Movie} in the background once the application is ready, instead of while the
+ * mapping context starts, which waits for the MongoDB server and for the index builds. Creating an index that already
+ * exists is a no-op, an index that exists with another definition is reported and left as it is, and so are the
+ * indexes of the collection the model does not declare.
+ * <p>
+ * Index creation is on unless {@code movies.indexes.enabled} is set to {@code false};
+ * {@code spring.data.mongodb.auto-index-creation} still creates the indexes at startup when turned on.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "movies.indexes", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class MovieIndexes {
+
+    private static final String ID_INDEX = "_id_";
+
+    private final MongoOperations mongoOperations;
+
+    private final MongoMappingContext mappingContext;
+
+    private final TaskExecutor taskExecutor;
+
+    public MovieIndexes(MongoOperations mongoOperations, MongoMappingContext mappingContext, TaskExecutor taskExecutor) {
+        this.mongoOperations = mongoOperations;
+        this.mappingContext = mappingContext;
+        this.taskExecutor = taskExecutor;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskExecutor.execute(this::ensureIndexes);
+    }
+
+    void ensureIndexes() {
+        try {
+            long start = System.nanoTime();
+            IndexOperations indexOperations = mongoOperations.indexOps(Movie.class);
+            Set<String> declared = new HashSet<>();
+            int failed = 0;
+            for (IndexDefinition index : new MongoPersistentEntityIndexResolver(mappingContext).resolveIndexFor(Movie.class)) {
+                String name = index.getIndexOptions().getString("name");
+                declared.add(name);
+                try {
+                    indexOperations.ensureIndex(index);
+                } catch (Exception e) {
+                    failed++;
+                    log.error("Error creating movie index {}.", name, e);
+                }
+            }
+            for (IndexInfo index : indexOperations.getIndexInfo()) {
+                if (!declared.contains(index.getName()) && !ID_INDEX.equals(index.getName())) {
+                    log.warn("Movie index {} is not declared on the model.", index.getName());
+                }
+            }
+            log.info("Ensured {} movie indexes in {} ms, {} failed.", declared.size() - failed, (System.nanoTime() - start) / 1_000_000,
+                failed);
+        } catch (Exception e) {
+            log.error("Error creating movie indexes.", e);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.migration.LegacyMovieDocuments;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.FacetOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject.Type;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Queries shared by the blocking and the reactive repositories.
+ */
+final class MovieQueries {
+
+    private MovieQueries() {
+    }
+
+    /**
+     * Selects the movies matching {@code filter} after the id {@code after}, fetching one more movie than the page size
+     * to tell whether another page follows. Only {@code fields} are read, or every field when it is {@code null}.
+     */
+    static Query page(MovieFilter filter, ObjectId after, Pageable pageable, MovieFields fields) {
+        Query query = withFields(new Query(), fields);
+        if (after != null) {
+            query.addCriteria(where("id").gt(after));
+        }
+        criteria(filter).forEach(query::addCriteria);
+        return query.with(pageable.getSort()).limit(pageable.getPageSize() + 1);
+    }
+
+    /**
+     * Selects every movie, reading only {@code fields}, or every field when it is {@code null}.
+     */
+    static Query all(MovieFields fields) {
+        return withFields(new Query(), fields);
+    }
+
+    /**
+     * Selects the movies with the given ids, reading only {@code fields}, or every field when it is {@code null}.
+     */
+    static Query byIds(Collection<String> ids, MovieFields fields) {
+        return withFields(query(where("id").in(ids)), fields);
+    }
+
+    /**
+     * Counts the movies matching {@code filter} by facet value in a single document holding one array of
+     * {@code {_id, count}} buckets per facet.
+     */
+    static Aggregation facets(MovieFilter filter) {
+        FacetOperation facets = facet(unwind("genres"), group("genres").count().as("count")).as(MovieFacet.GENRE.getName())
+            .and(match(where("director").ne(null)), group("director").count().as("count")).as(MovieFacet.DIRECTOR.getName())
+            .and(match(where("year").type(Type.intType(), Type.longType())),
+                project().and(ArithmeticOperators.valueOf("year").subtract(ArithmeticOperators.valueOf("year").mod(10))).as("decade"),
+                group("decade").count().as("count")).as(MovieFacet.DECADE.getName())
+            .and(match(where("rated").ne(null)), group("rated").count().as("count")).as(MovieFacet.RATED.getName());
+        List<Criteria> criteria = criteria(filter);
+        return criteria.isEmpty() ? newAggregation(facets)
+            : newAggregation(match(new Criteria().andOperator(criteria.toArray(new Criteria[0]))), facets);
+    }
+
+    /**
+     * Selects the movie with the id {@code id} provided its version is one of {@code versions}, or whatever its version
+     * when they are {@code null}. Documents without a version match version {@code 0}.
+     */
+    static Query byIdAndVersion(String id, Set<Long> versions) {
+        Query query = query(where("id").is(id));
+        if (versions != null) {
+            List<Long> values = new ArrayList<>(versions);
+            if (versions.contains(0L)) {
+                values.add(null);
+            }
+            query.addCriteria(values.size() == 1 ? where("version").is(values.get(0)) : where("version").in(values));
+        }
+        return query;
+    }
+
+    /**
+     * Sets the written fields of {@code movieUpdate}, removes those without a value and increments the version.
+     */
+    static Update update(MovieUpdate movieUpdate) {
+        Update update = new Update().inc("version", 1);
+        movieUpdate.values().forEach((field, value) -> {
+            if (value == null) {
+                update.unset(field);
+            } else {
+                update.set(field, value);
+            }
+        });
+        return LegacyMovieDocuments.supersede(update);
+    }
+
+    private static Query withFields(Query query, MovieFields fields) {
+        if (fields != null) {
+            fields.getStoredFields().forEach(query.fields()::include);
+            LegacyMovieDocuments.project(query.fields());
+        }
+        return query;
+    }
+
+    static Map<MovieFacet, Map<String, Long>> facetCounts(Document result) {
+        Map<MovieFacet, Map<String, Long>> counts = new EnumMap<>(MovieFacet.class);
+        for (MovieFacet facet : MovieFacet.values()) {
+            Map<String, Long> values = new HashMap<>();
+            if (result != null) {
+                for (Document bucket : result.getList(facet.getName(), Document.class, List.of())) {
+                    Object value = bucket.get("_id");
+                    values.put(value instanceof Number ? String.valueOf(((Number) value).intValue()) : String.valueOf(value),
+                        ((Number) bucket.get("count")).longValue());
+                }
+            }
+            counts.put(facet, values);
+        }
+        return counts;
+    }
+
+    private static List<Criteria> criteria(MovieFilter filter) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (filter.getTitle() != null) {
+            criteria.add(where("title").regex(Pattern.quote(filter.getTitle()), "i"));
+        }
+        if (filter.getYearFrom() != null || filter.getYearTo() != null) {
+            Criteria year = where("year");
+            if (filter.getYearFrom() != null) {
+                year.gte(filter.getYearFrom());
+            }
+            if (filter.getYearTo() != null) {
+                year.lte(filter.getYearTo());
+            }
+            criteria.add(year);
+        }
+        if (filter.getGenre() != null) {
+            criteria.add(where("genres").is(filter.getGenre()));
+        }
+        if (filter.getMaxRuntime() != null) {
+            criteria.add(where("runtimeMinutes").lte(filter.getMaxRuntime()));
+        }
+        if (filter.getDirector() != null) {
+            criteria.add(where("director").is(filter.getDirector()));
+        }
+        return criteria;
+    }
+
+}
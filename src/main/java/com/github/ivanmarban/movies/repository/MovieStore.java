@@ -0,0 +1,89 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import org.bson.types.ObjectId;
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * The operations of the servlet stack on the stored movies, implemented by the MongoDB {@link MoviesRepository} and by
+ * the movie log of the {@code embedded} profile. Lookups by id are cached and every write evicts the movies it
+ * changes.
+ */
+@CacheConfig(cacheNames = "movies")
+public interface MovieStore {
+
+    @Cacheable
+    Optional<Movie> findById(String id);
+
+    boolean existsById(String id);
+
+    /**
+     * Inserts a movie without a version, assigning it an id if it has none, or replaces a versioned one provided it
+     * still has that version.
+     */
+    @CacheEvict(key = "#p0.id", condition = "#p0.id != null")
+    <S extends Movie> S save(S movie);
+
+    /**
+     * Returns the movies matching every criterion of {@code filter} with an id greater than {@code after}, or from the
+     * start when it is {@code null}, in id order and in pages of the size of {@code pageable}. Only {@code fields} need
+     * be read, or every field when it is {@code null}.
+     */
+    Slice<Movie> findMovies(MovieFilter filter, ObjectId after, Pageable pageable, MovieFields fields);
+
+    /**
+     * Returns the movies with the given ids, reading only {@code fields}, or every field when it is {@code null}.
+     * Movies read with a projection must not be cached.
+     */
+    List<Movie> findAllById(Collection<String> ids, MovieFields fields);
+
+    /**
+     * Streams every movie, reading {@code batchSize} at a time where the store reads in batches. Only {@code fields}
+     * need be read, or every field when it is {@code null}. The returned stream must be closed.
+     */
+    Stream<Movie> streamAll(int batchSize, MovieFields fields);
+
+    /**
+     * Inserts the movies at version {@code 0}, as {@link #save} does, a rejected one not stopping the rest. Returns the
+     * reason of every rejected movie keyed by its position in {@code movies}.
+     */
+    Map<Integer, String> insertUnordered(List<Movie> movies);
+
+    /**
+     * Counts the movies matching {@code filter} by every facet value.
+     */
+    Map<MovieFacet, Map<String, Long>> countFacets(MovieFilter filter);
+
+    /**
+     * Deletes the movie atomically, returning it so that concurrent deletes of the same id observe it only once.
+     */
+    @CacheEvict(key = "#p0")
+    Optional<Movie> removeById(String id);
+
+    /**
+     * Applies {@code update} to the movie atomically, provided its version is one of {@code expectedVersions} when not
+     * {@code null}. Returns the movie as it was before the update, or empty if no movie has that id and one of those
+     * versions.
+     */
+    @CacheEvict(key = "#p0")
+    Optional<Movie> modify(String id, MovieUpdate update, Set<Long> expectedVersions);
+
+    @CacheEvict(allEntries = true)
+    void deleteAll();
+
+}
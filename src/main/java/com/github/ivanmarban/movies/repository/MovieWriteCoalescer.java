@@ -0,0 +1,310 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimiter;
+import com.github.ivanmarban.movies.limit.StoreLatencyInterceptor;
+import com.github.ivanmarban.movies.model.Movie;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Queues the movies created one at a time and inserts them in batches from a single writer thread. Off unless
+ * {@code movies.write.coalescing-enabled} is set.
+ * <p>
+ * A batch is written once it holds {@code movies.write.max-batch-size} movies or {@code movies.write.max-delay} after
+ * its first movie was queued; the movies queued while it is written make up the next one. At most
+ * {@code movies.write.queue-capacity} movies wait, further ones are rejected rather than buffered, so that a slow
+ * database turns into quick rejections instead of a growing backlog.
+ * <p>
+ * A queued movie is claimed either by the writer, which then inserts it, or by the timeout of its caller, which then
+ * tells the caller it was not written. A caller that times out after the claim cannot know whether the movie was
+ * written; if it was, the writer publishes its {@link MovieSavedEvent} instead of the caller.
+ */
+@Slf4j
+@Component
+public class MovieWriteCoalescer implements SmartLifecycle {
+
+    static final String BATCH_SIZE = "movies.write.batch.size";
+
+    static final String QUEUE_WAIT = "movies.write.queue.wait";
+
+    static final String QUEUE_SIZE = "movies.write.queue.size";
+
+    static final String REJECTED = "movies.write.rejected";
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final MovieStore movieStore;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final MoviesProperties.Write properties;
+
+    private final BlockingQueue<Pending> queue;
+
+    private final DistributionSummary batchSize;
+
+    private final Timer queueWait;
+
+    private final Counter rejected;
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    public MovieWriteCoalescer(MovieStore movieStore, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry,
+                               MoviesProperties properties) {
+        this.movieStore = movieStore;
+        this.eventPublisher = eventPublisher;
+        this.properties = properties.getWrite();
+        this.queue = new ArrayBlockingQueue<>(this.properties.getQueueCapacity());
+        this.batchSize = DistributionSummary.builder(BATCH_SIZE)
+            .description("Movies written per coalesced insert")
+            .baseUnit("movies")
+            .register(meterRegistry);
+        this.queueWait = Timer.builder(QUEUE_WAIT)
+            .description("Time movies wait to be written once queued")
+            .register(meterRegistry);
+        this.rejected = Counter.builder(REJECTED)
+            .description("Movies rejected because the write queue was full or the writer was not running")
+            .register(meterRegistry);
+        Gauge.builder(QUEUE_SIZE, queue, BlockingQueue::size)
+            .description("Movies waiting to be written")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isCoalescingEnabled();
+    }
+
+    /**
+     * Assigns {@code movie} a new id and queues it. The future fails with a {@link RejectedExecutionException} when
+     * the queue is full and a {@link TimeoutException} when the movie was not written in time and never will be, both
+     * of which may be retried. It fails with an {@link IllegalStateException} when the database rejected the movie or
+     * the insert did not complete in time, in which case the movie may have been written.
+     * <p>
+     * The insert is measured on the permit {@linkplain StoreLatencyInterceptor#bind bound} to the current thread.
+     */
+    public CompletableFuture<Movie> insert(Movie movie) {
+        return insert(movie, StoreLatencyInterceptor.current().orElse(null));
+    }
+
+    /**
+     * Like {@link #insert(Movie)}, measuring the insert on {@code permit} unless it is {@code null}.
+     */
+    public CompletableFuture<Movie> insert(Movie movie, ConcurrencyLimiter.Permit permit) {
+        movie.setId(new ObjectId().toHexString());
+        Pending pending = new Pending(movie, permit, System.nanoTime());
+        if (!running || !queue.offer(pending)) {
+            rejected.increment();
+            String reason = running ? "Movie write queue is full" : "Movie writer is not running";
+            pending.reject(new RejectedExecutionException(reason));
+            return pending.future;
+        }
+        CompletableFuture.delayedExecutor(properties.getMaxDelay().plus(properties.getStoreTimeout()).toNanos(),
+            TimeUnit.NANOSECONDS).execute(pending::expire);
+        return pending.future;
+    }
+
+    @Override
+    public void start() {
+        if (isEnabled()) {
+            running = true;
+            writer = new Thread(this::run, "movie-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Stops accepting movies, waits for the queued ones to be written and fails any that raced the shutdown.
+     */
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectQueued("Movie writer stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops after the web server, so the movies of the requests still in flight are written.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(properties.getMaxBatchSize());
+        boolean interrupted = false;
+        while (!interrupted && (running || !queue.isEmpty())) {
+            try {
+                Pending first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                gather(batch, first.queued + properties.getMaxDelay().toNanos());
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (Throwable e) {
+                log.error("Error writing batch of {} movies.", batch.size(), e);
+                batch.forEach(pending -> pending.future.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+        if (running) {
+            log.warn("Movie writer interrupted, further movies are rejected.");
+            running = false;
+            rejectQueued("Movie writer interrupted");
+        }
+    }
+
+    private void rejectQueued(String reason) {
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(pending -> pending.reject(new RejectedExecutionException(reason)));
+    }
+
+    /**
+     * Adds the queued movies to {@code batch} until it is full or the {@code deadline} of its first movie has passed.
+     */
+    private void gather(List<Pending> batch, long deadline) throws InterruptedException {
+        int maxBatchSize = properties.getMaxBatchSize();
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        long remaining;
+        while (batch.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    /**
+     * Claims the movies of {@code batch} and inserts them. Those whose caller already timed out are dropped, their
+     * caller was told to retry.
+     */
+    private void write(List<Pending> batch) {
+        if (batch.removeIf(pending -> !pending.claim())) {
+            log.warn("Dropped movies that timed out while queued.");
+            if (batch.isEmpty()) {
+                return;
+            }
+        }
+        long started = System.nanoTime();
+        batch.forEach(pending -> queueWait.record(started - pending.queued, TimeUnit.NANOSECONDS));
+        batchSize.record(batch.size());
+        Map<Integer, String> failures;
+        try {
+            failures = movieStore.insertUnordered(batch.stream().map(pending -> pending.movie).collect(Collectors.toList()));
+        } catch (Exception e) {
+            log.error("Error inserting batch of {} movies.", batch.size(), e);
+            long elapsed = System.nanoTime() - started;
+            batch.forEach(pending -> {
+                pending.record(elapsed, e);
+                pending.future.completeExceptionally(e);
+            });
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            pending.record(elapsed, null);
+            String error = failures.get(i);
+            if (error == null) {
+                if (!pending.future.complete(pending.movie)) {
+                    eventPublisher.publishEvent(new MovieSavedEvent(pending.movie));
+                }
+            } else {
+                pending.future.completeExceptionally(new IllegalStateException(error));
+            }
+        }
+    }
+
+    private static final class Pending {
+
+        private final Movie movie;
+
+        private final ConcurrencyLimiter.Permit permit;
+
+        private final long queued;
+
+        private final CompletableFuture<Movie> future = new CompletableFuture<>();
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Pending(Movie movie, ConcurrencyLimiter.Permit permit, long queued) {
+            this.movie = movie;
+            this.permit = permit;
+            this.queued = queued;
+        }
+
+        private void record(long nanos, Throwable error) {
+            if (permit != null) {
+                StoreLatencyInterceptor.record(permit, nanos, error);
+            }
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void reject(Exception e) {
+            if (claim()) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void expire() {
+            if (claim()) {
+                future.completeExceptionally(new TimeoutException("Movie was not written in time"));
+            } else {
+                future.completeExceptionally(new IllegalStateException("Movie write did not complete in time"));
+            }
+        }
+
+    }
+
+}
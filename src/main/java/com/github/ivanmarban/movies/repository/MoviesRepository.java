@@ -1,12 +1,47 @@
 package com.github.ivanmarban.movies.repository;
 
 import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
-import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
-public interface MoviesRepository extends MongoRepository<Movie, String> {
+/**
+ * The MongoDB {@link MovieStore}. The methods {@link MovieStore} shares with {@link MongoRepository} are declared again,
+ * with the cache operations of the store.
+ */
+@CacheConfig(cacheNames = "movies")
+public interface MoviesRepository extends MongoRepository<Movie, String>, MoviesRepositoryCustom, MovieStore {
 
-    List<Movie> findByTitleContaining(String title);
+    @Override
+    @Cacheable
+    Optional<Movie> findById(String id);
+
+    @Override
+    boolean existsById(String id);
+
+    @Override
+    @CacheEvict(key = "#p0.id", condition = "#p0.id != null")
+    <S extends Movie> S save(S movie);
+
+    @Override
+    @CacheEvict(key = "#p0")
+    void deleteById(String id);
+
+    @Override
+    @CacheEvict(key = "#p0")
+    Optional<Movie> removeById(String id);
+
+    @Override
+    @CacheEvict(key = "#p0")
+    Optional<Movie> modify(String id, MovieUpdate update, Set<Long> expectedVersions);
+
+    @Override
+    @CacheEvict(allEntries = true)
+    void deleteAll();
 
 }
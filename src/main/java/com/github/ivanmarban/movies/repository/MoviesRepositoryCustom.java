@@ -0,0 +1,64 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public interface MoviesRepositoryCustom {
+
+    /**
+     * Returns the movies matching every criterion of {@code filter} with an id greater than {@code after}, or from the
+     * start when it is {@code null}, in the order and page size of {@code pageable}. Only {@code fields} are read, or
+     * every field when it is {@code null}.
+     */
+    Slice<Movie> findMovies(MovieFilter filter, ObjectId after, Pageable pageable, MovieFields fields);
+
+    /**
+     * Returns the movies with the given ids with a single query, reading only {@code fields}, or every field when it
+     * is {@code null}. Movies read with a projection must not be cached.
+     */
+    List<Movie> findAllById(Collection<String> ids, MovieFields fields);
+
+    /**
+     * Streams every movie from a server side cursor fetching {@code batchSize} documents per round trip, reading only
+     * {@code fields}, or every field when it is {@code null}. The returned stream must be closed to release the cursor.
+     */
+    Stream<Movie> streamAll(int batchSize, MovieFields fields);
+
+    /**
+     * Inserts the movies at version {@code 0} with a single unordered bulk write, so a rejected document does not stop
+     * the rest of the batch. Returns the reason of every rejected document keyed by its position in {@code movies}.
+     */
+    Map<Integer, String> insertUnordered(List<Movie> movies);
+
+    /**
+     * Counts the movies matching {@code filter} by every facet value with a single aggregation.
+     */
+    Map<MovieFacet, Map<String, Long>> countFacets(MovieFilter filter);
+
+    /**
+     * Deletes the movie with a single find and modify, returning the deleted movie so that concurrent deletes of the
+     * same id observe it only once.
+     */
+    Optional<Movie> removeById(String id);
+
+    /**
+     * Applies {@code update} to the movie with a single find and modify, provided its version is one of
+     * {@code expectedVersions} when not {@code null}. Returns the movie as it was before the update, or empty if no movie
+     * has that id and one of those versions.
+     */
+    Optional<Movie> modify(String id, MovieUpdate update, Set<Long> expectedVersions);
+
+}
@@ -0,0 +1,87 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.util.StreamUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class MoviesRepositoryImpl implements MoviesRepositoryCustom {
+
+    private final MongoOperations mongoOperations;
+
+    public MoviesRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Slice<Movie> findMovies(MovieFilter filter, ObjectId after, Pageable pageable, MovieFields fields) {
+        List<Movie> movies = mongoOperations.find(MovieQueries.page(filter, after, pageable, fields), Movie.class);
+        boolean hasNext = movies.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? movies.subList(0, pageable.getPageSize()) : movies, pageable, hasNext);
+    }
+
+    @Override
+    public List<Movie> findAllById(Collection<String> ids, MovieFields fields) {
+        return mongoOperations.find(MovieQueries.byIds(ids, fields), Movie.class);
+    }
+
+    @Override
+    public Map<MovieFacet, Map<String, Long>> countFacets(MovieFilter filter) {
+        Document result = mongoOperations.aggregate(MovieQueries.facets(filter), mongoOperations.getCollectionName(Movie.class),
+            Document.class).getUniqueMappedResult();
+        return MovieQueries.facetCounts(result);
+    }
+
+    @Override
+    public Stream<Movie> streamAll(int batchSize, MovieFields fields) {
+        return StreamUtils.createStreamFromIterator(mongoOperations.stream(MovieQueries.all(fields).cursorBatchSize(batchSize),
+            Movie.class));
+    }
+
+    @Override
+    public Map<Integer, String> insertUnordered(List<Movie> movies) {
+        movies.forEach(movie -> movie.setVersion(0L));
+        try {
+            mongoOperations.bulkOps(BulkMode.UNORDERED, Movie.class).insert(movies).execute();
+            return Collections.emptyMap();
+        } catch (BulkOperationException e) {
+            Map<Integer, String> failures = new HashMap<>();
+            e.getErrors().forEach(error -> failures.put(error.getIndex(), error.getMessage()));
+            return failures;
+        }
+    }
+
+    @Override
+    public Optional<Movie> removeById(String id) {
+        return Optional.ofNullable(mongoOperations.findAndRemove(query(where("id").is(id)), Movie.class));
+    }
+
+    @Override
+    public Optional<Movie> modify(String id, MovieUpdate update, Set<Long> expectedVersions) {
+        return Optional.ofNullable(mongoOperations.findAndModify(MovieQueries.byIdAndVersion(id, expectedVersions),
+            MovieQueries.update(update), Movie.class));
+    }
+
+}
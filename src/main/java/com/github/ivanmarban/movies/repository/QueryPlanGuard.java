@@ -0,0 +1,187 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.bson.Document;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperationContext;
+import org.springframework.data.mongodb.core.aggregation.TypeBasedAggregationOperationContext;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Explains the filtered queries made through {@link MongoOperations} before running them and reports those MongoDB
+ * plans as a collection scan, so that a new finder missing its index is caught in development and tests rather than
+ * in production. Queries without a filter read the whole collection by design and are not explained, and a deliberate
+ * scan of a filtered query is made inside {@link #allowingCollectionScans(Supplier)}.
+ * <p>
+ * Each filtered query costs an extra round trip for the explain, the guard is meant for non-production environments
+ * and only covers the blocking template. A query that cannot be explained runs unchecked.
+ */
+@Slf4j
+public class QueryPlanGuard implements MethodInterceptor {
+
+    private static final String COLLECTION_SCAN = "COLLSCAN";
+
+    private static final ThreadLocal<Boolean> SCANS_ALLOWED = new ThreadLocal<>();
+
+    private final MongoOperations mongoOperations;
+
+    private final QueryMapper queryMapper;
+
+    private final MoviesProperties.QueryGuard.Mode mode;
+
+    public QueryPlanGuard(MongoOperations mongoOperations, MoviesProperties.QueryGuard.Mode mode) {
+        this.mongoOperations = mongoOperations;
+        this.queryMapper = new QueryMapper(mongoOperations.getConverter());
+        this.mode = mode;
+    }
+
+    /**
+     * Runs {@code query}, whose collection scan is intended, without explaining it.
+     */
+    public static <T> T allowingCollectionScans(Supplier<T> query) {
+        SCANS_ALLOWED.set(Boolean.TRUE);
+        try {
+            return query.get();
+        } finally {
+            SCANS_ALLOWED.remove();
+        }
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if (mode != MoviesProperties.QueryGuard.Mode.NONE && arguments.length > 0 && SCANS_ALLOWED.get() == null) {
+            if (arguments[0] instanceof Query) {
+                check(invocation, (Query) arguments[0]);
+            } else if (arguments[0] instanceof Aggregation) {
+                check(invocation, (Aggregation) arguments[0]);
+            }
+        }
+        return invocation.proceed();
+    }
+
+    private void check(MethodInvocation invocation, Query query) {
+        String collection = collectionOf(invocation);
+        if (query.getQueryObject().isEmpty() || collection == null) {
+            return;
+        }
+        MongoPersistentEntity<?> entity = entityOf(collection);
+        Document filter = queryMapper.getMappedObject(query.getQueryObject(), entity);
+        Document find = new Document("find", collection).append("filter", filter);
+        if (!query.getSortObject().isEmpty()) {
+            find.append("sort", queryMapper.getMappedSort(query.getSortObject(), entity));
+        }
+        check(invocation, collection, find, filter);
+    }
+
+    private void check(MethodInvocation invocation, Aggregation aggregation) {
+        Class<?> inputType = inputTypeOf(invocation, aggregation);
+        Object[] arguments = invocation.getArguments();
+        String collection = arguments.length > 1 && arguments[1] instanceof String ? (String) arguments[1]
+            : inputType != null ? mongoOperations.getCollectionName(inputType) : null;
+        AggregationOperationContext context = inputType == null ? Aggregation.DEFAULT_CONTEXT
+            : new TypeBasedAggregationOperationContext(inputType, mongoOperations.getConverter().getMappingContext(), queryMapper);
+        List<Document> pipeline = aggregation.toPipeline(context);
+        Object match = pipeline.isEmpty() ? null : pipeline.get(0).get("$match");
+        if (!(match instanceof Document) || ((Document) match).isEmpty() || collection == null) {
+            return;
+        }
+        Document aggregate = new Document("aggregate", collection).append("pipeline", pipeline).append("cursor", new Document());
+        check(invocation, collection, aggregate, (Document) match);
+    }
+
+    private void check(MethodInvocation invocation, String collection, Document command, Document filter) {
+        Document explain;
+        try {
+            explain = mongoOperations.executeCommand(new Document("explain", command).append("verbosity", "queryPlanner"));
+        } catch (Exception e) {
+            log.debug("Could not explain {} on {}.", invocation.getMethod().getName(), collection, e);
+            return;
+        }
+        if (isCollectionScan(explain, false)) {
+            String message = "Collection scan planned for " + invocation.getMethod().getName() + " on " + collection
+                + " with filter " + filter.toJson();
+            if (mode == MoviesProperties.QueryGuard.Mode.FAIL) {
+                throw new InvalidDataAccessApiUsageException(message);
+            }
+            log.error("{}.", message);
+        }
+    }
+
+    /**
+     * Whether a winning plan of the explain output, wherever it is nested, has a collection scan stage. The rejected
+     * plans do not count.
+     */
+    static boolean isCollectionScan(Object node, boolean winningPlan) {
+        if (node instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+                if (winningPlan && "stage".equals(entry.getKey()) && COLLECTION_SCAN.equals(entry.getValue())) {
+                    return true;
+                }
+                if (isCollectionScan(entry.getValue(), winningPlan || "winningPlan".equals(entry.getKey()))) {
+                    return true;
+                }
+            }
+        } else if (node instanceof List) {
+            for (Object element : (List<?>) node) {
+                if (isCollectionScan(element, winningPlan)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The collection is the last string argument of the {@link MongoOperations} methods taking one, but the field
+     * name of {@code findDistinct}, otherwise the collection of the first class argument, the entity type.
+     */
+    private String collectionOf(MethodInvocation invocation) {
+        Object[] arguments = invocation.getArguments();
+        int first = "findDistinct".equals(invocation.getMethod().getName()) ? 2 : 1;
+        for (int i = arguments.length - 1; i >= first; i--) {
+            if (arguments[i] instanceof String) {
+                return (String) arguments[i];
+            }
+        }
+        for (int i = 1; i < arguments.length; i++) {
+            if (arguments[i] instanceof Class) {
+                return mongoOperations.getCollectionName((Class<?>) arguments[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The type whose property names the pipeline is mapped from, as {@link MongoOperations} does: the input type of a
+     * typed aggregation, otherwise the class following the aggregation of {@code aggregate(Aggregation, Class, Class)}.
+     * Other aggregations are rendered as written.
+     */
+    private static Class<?> inputTypeOf(MethodInvocation invocation, Aggregation aggregation) {
+        if (aggregation instanceof TypedAggregation) {
+            return ((TypedAggregation<?>) aggregation).getInputType();
+        }
+        Object[] arguments = invocation.getArguments();
+        return arguments.length > 2 && arguments[1] instanceof Class && arguments[2] instanceof Class ? (Class<?>) arguments[1] : null;
+    }
+
+    private MongoPersistentEntity<?> entityOf(String collection) {
+        return mongoOperations.getConverter().getMappingContext().getPersistentEntities().stream()
+            .filter(entity -> collection.equals(entity.getCollection()))
+            .findFirst()
+            .orElse(null);
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+/**
+ * Non-blocking counterpart of {@link MoviesRepository} used by the {@code reactive} profile. Lookups by id are not
+ * cached, as the cache abstraction does not support reactive return types.
+ */
+public interface ReactiveMoviesRepository extends ReactiveMongoRepository<Movie, String>, ReactiveMoviesRepositoryCustom {
+
+}
@@ -0,0 +1,61 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface ReactiveMoviesRepositoryCustom {
+
+    /**
+     * Emits the movies matching every criterion of {@code filter} with an id greater than {@code after}, or from the
+     * start when it is {@code null}, in the order of {@code pageable}. One movie more than the page size is emitted
+     * when another page follows. Only {@code fields} are read, or every field when it is {@code null}.
+     */
+    Flux<Movie> findMovies(MovieFilter filter, ObjectId after, Pageable pageable, MovieFields fields);
+
+    /**
+     * Emits the movies with the given ids with a single query, reading only {@code fields}, or every field when it is
+     * {@code null}.
+     */
+    Flux<Movie> findAllById(Collection<String> ids, MovieFields fields);
+
+    /**
+     * Emits every movie from a server side cursor fetching at most {@code batchSize} documents per round trip, as
+     * requested by the subscriber.
+     */
+    Flux<Movie> streamAll(int batchSize);
+
+    /**
+     * Inserts the movies at version {@code 0} with a single unordered bulk write, so a rejected document does not stop
+     * the rest of the batch. Emits the reason of every rejected document keyed by its position in {@code movies}.
+     */
+    Mono<Map<Integer, String>> insertUnordered(List<Movie> movies);
+
+    /**
+     * Counts the movies matching {@code filter} by every facet value with a single aggregation.
+     */
+    Mono<Map<MovieFacet, Map<String, Long>>> countFacets(MovieFilter filter);
+
+    /**
+     * Deletes the movie with a single find and modify, emitting the deleted movie if there was one.
+     */
+    Mono<Movie> removeById(String id);
+
+    /**
+     * Applies {@code update} to the movie with a single find and modify, provided its version is one of
+     * {@code expectedVersions} when not {@code null}, emitting the movie as it was before the update if there was one.
+     */
+    Mono<Movie> modify(String id, MovieUpdate update, Set<Long> expectedVersions);
+
+}
@@ -0,0 +1,87 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class ReactiveMoviesRepositoryImpl implements ReactiveMoviesRepositoryCustom {
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    public ReactiveMoviesRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Flux<Movie> findMovies(MovieFilter filter, ObjectId after, Pageable pageable, MovieFields fields) {
+        return mongoOperations.find(MovieQueries.page(filter, after, pageable, fields), Movie.class);
+    }
+
+    @Override
+    public Flux<Movie> findAllById(Collection<String> ids, MovieFields fields) {
+        return mongoOperations.find(MovieQueries.byIds(ids, fields), Movie.class);
+    }
+
+    @Override
+    public Flux<Movie> streamAll(int batchSize) {
+        return mongoOperations.find(new Query().cursorBatchSize(batchSize), Movie.class);
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<Movie> movies) {
+        List<Document> documents = movies.stream().map(movie -> {
+            movie.setVersion(0L);
+            Document document = new Document();
+            mongoOperations.getConverter().write(movie, document);
+            return document;
+        }).collect(Collectors.toList());
+        return mongoOperations.getCollection(mongoOperations.getCollectionName(Movie.class))
+            .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+            .map(result -> Map.<Integer, String>of())
+            .onErrorResume(MongoBulkWriteException.class, e -> {
+                Map<Integer, String> failures = new HashMap<>();
+                e.getWriteErrors().forEach(error -> failures.put(error.getIndex(), error.getMessage()));
+                return Mono.just(failures);
+            });
+    }
+
+    @Override
+    public Mono<Map<MovieFacet, Map<String, Long>>> countFacets(MovieFilter filter) {
+        return mongoOperations.aggregate(MovieQueries.facets(filter), mongoOperations.getCollectionName(Movie.class), Document.class)
+            .next()
+            .map(MovieQueries::facetCounts)
+            .defaultIfEmpty(MovieQueries.facetCounts(null));
+    }
+
+    @Override
+    public Mono<Movie> removeById(String id) {
+        return mongoOperations.findAndRemove(query(where("id").is(id)), Movie.class);
+    }
+
+    @Override
+    public Mono<Movie> modify(String id, MovieUpdate update, Set<Long> expectedVersions) {
+        return mongoOperations.findAndModify(MovieQueries.byIdAndVersion(id, expectedVersions), MovieQueries.update(update), Movie.class);
+    }
+
+}
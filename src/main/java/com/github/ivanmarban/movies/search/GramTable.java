@@ -0,0 +1,104 @@
+package com.github.ivanmarban.movies.search;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from the {@code long} key of a gram to an {@code int}, held in two primitive arrays so that
+ * the millions of grams of a large index cost no boxed keys nor entry objects. A value of {@link #NONE} marks a free
+ * slot; grams are never removed one by one, only all at once. Collisions are resolved by linear probing and the table
+ * doubles once more than {@value #MAX_LOAD_PERCENT}% of the slots are taken.
+ * <p>
+ * Not thread-safe, callers synchronize.
+ */
+final class GramTable {
+
+    static final int NONE = -1;
+
+    private static final int MAX_LOAD_PERCENT = 60;
+
+    private long[] keys;
+
+    private int[] values;
+
+    private int size;
+
+    GramTable(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity) * 2 - 1));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of {@code key}, or {@link #NONE} if it is not in the table.
+     */
+    int get(long key) {
+        for (int slot = start(key); ; slot = next(slot)) {
+            int value = values[slot];
+            if (value == NONE || keys[slot] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Maps {@code key} to {@code value}, which must not be {@link #NONE}, returning its previous value or
+     * {@link #NONE}.
+     */
+    int put(long key, int value) {
+        int slot = start(key);
+        for (; values[slot] != NONE; slot = next(slot)) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 100L > keys.length * (long) MAX_LOAD_PERCENT) {
+            resize();
+        }
+        return NONE;
+    }
+
+    void clear() {
+        allocate(16);
+    }
+
+    private void resize() {
+        long[] previousKeys = keys;
+        int[] previousValues = values;
+        allocate(keys.length * 2);
+        for (int slot = 0; slot < previousKeys.length; slot++) {
+            if (previousValues[slot] != NONE) {
+                int target = start(previousKeys[slot]);
+                while (values[target] != NONE) {
+                    target = next(target);
+                }
+                keys[target] = previousKeys[slot];
+                values[target] = previousValues[slot];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NONE);
+        size = 0;
+    }
+
+    private int start(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 31;
+        return (int) hash & (keys.length - 1);
+    }
+
+    private int next(int slot) {
+        return (slot + 1) & (keys.length - 1);
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.github.ivanmarban.movies.search;
+
+/**
+ * Open addressing hash table from movie id to document number, held in an array of ids and an array of {@code int}
+ * numbers so that no number is boxed. A {@code null} id marks a free slot and {@link #REMOVED} a removed entry, which
+ * probing skips. Collisions are resolved by linear probing and the table doubles once more than
+ * {@value #MAX_LOAD_PERCENT}% of the slots are taken.
+ * <p>
+ * Not thread-safe, callers synchronize.
+ */
+final class IdTable {
+
+    static final int NONE = -1;
+
+    private static final String REMOVED = new String();
+
+    private static final int MAX_LOAD_PERCENT = 60;
+
+    private String[] ids;
+
+    private int[] docs;
+
+    private int size;
+
+    private int used;
+
+    IdTable(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity) * 2 - 1));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the document number of {@code id}, or {@link #NONE} if it is not in the table.
+     */
+    int get(String id) {
+        for (int slot = start(id); ; slot = next(slot)) {
+            String current = ids[slot];
+            if (current == null) {
+                return NONE;
+            }
+            if (current != REMOVED && current.equals(id)) {
+                return docs[slot];
+            }
+        }
+    }
+
+    /**
+     * Maps {@code id} to {@code doc}, returning its previous document number or {@link #NONE}.
+     */
+    int put(String id, int doc) {
+        int free = -1;
+        for (int slot = start(id); ; slot = next(slot)) {
+            String current = ids[slot];
+            if (current == null) {
+                if (free < 0) {
+                    free = slot;
+                    used++;
+                }
+                break;
+            }
+            if (current == REMOVED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (current.equals(id)) {
+                int previous = docs[slot];
+                docs[slot] = doc;
+                return previous;
+            }
+        }
+        ids[free] = id;
+        docs[free] = doc;
+        size++;
+        if (used * 100L > ids.length * (long) MAX_LOAD_PERCENT) {
+            resize();
+        }
+        return NONE;
+    }
+
+    /**
+     * Removes {@code id}, returning its document number or {@link #NONE} if it was not in the table.
+     */
+    int remove(String id) {
+        for (int slot = start(id); ; slot = next(slot)) {
+            String current = ids[slot];
+            if (current == null) {
+                return NONE;
+            }
+            if (current != REMOVED && current.equals(id)) {
+                ids[slot] = REMOVED;
+                size--;
+                return docs[slot];
+            }
+        }
+    }
+
+    void clear() {
+        allocate(16);
+    }
+
+    private void resize() {
+        String[] previousIds = ids;
+        int[] previousDocs = docs;
+        allocate(Integer.highestOneBit(Math.max(16, size * 4) - 1));
+        for (int slot = 0; slot < previousIds.length; slot++) {
+            String id = previousIds[slot];
+            if (id != null && id != REMOVED) {
+                int target = start(id);
+                while (ids[target] != null) {
+                    target = next(target);
+                }
+                ids[target] = id;
+                docs[target] = previousDocs[slot];
+                size++;
+                used++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        ids = new String[capacity];
+        docs = new int[capacity];
+        size = 0;
+        used = 0;
+    }
+
+    private int start(String id) {
+        int hash = id.hashCode() * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & (ids.length - 1);
+    }
+
+    private int next(int slot) {
+        return (slot + 1) & (ids.length - 1);
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.github.ivanmarban.movies.search;
+
+import com.github.ivanmarban.movies.facet.FacetCounters;
+import com.github.ivanmarban.movies.metrics.MovieQueryMetrics;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import com.github.ivanmarban.movies.watermark.MoviesWatermark;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Answers movie listings and facet counts from the in-memory title index and facet counters when they can, and from
+ * the movie store otherwise.
+ */
+@Component
+public class MovieSearch {
+
+    private final MovieStore movieStore;
+
+    private final TitleIndex titleIndex;
+
+    private final FacetCounters facetCounters;
+
+    private final MovieQueryMetrics queryMetrics;
+
+    private final MoviesWatermark watermark;
+
+    public MovieSearch(MovieStore movieStore, TitleIndex titleIndex, FacetCounters facetCounters,
+                       MovieQueryMetrics queryMetrics, MoviesWatermark watermark) {
+        this.movieStore = movieStore;
+        this.titleIndex = titleIndex;
+        this.facetCounters = facetCounters;
+        this.queryMetrics = queryMetrics;
+        this.watermark = watermark;
+    }
+
+    /**
+     * Returns the movies matching {@code filter} with an id greater than {@code after}, as
+     * {@link MovieStore#findMovies} does, looking a title alone up in the title index once it has been loaded.
+     */
+    public Slice<Movie> findMovies(MovieFilter filter, ObjectId after, Pageable pageable, MovieFields fields) {
+        boolean indexed = filter.isTitleOnly() && titleIndex.isAvailable();
+        Slice<Movie> movies = indexed
+            ? searchTitleIndex(filter.getTitle(), after, pageable, fields)
+            : movieStore.findMovies(filter, after, pageable, fields);
+        queryMetrics.recordResults(filter, indexed, movies.getNumberOfElements());
+        return movies;
+    }
+
+    /**
+     * Counts the movies matching {@code filter} by every facet value, from the facet counters when nothing is filtered.
+     */
+    public Map<MovieFacet, Map<String, Long>> countFacets(MovieFilter filter) {
+        return filter.isEmpty() && facetCounters.isAvailable() ? facetCounters.counts() : movieStore.countFacets(filter);
+    }
+
+    /**
+     * The watermark of the collection the listings and facet counts are read from, if it is tracked.
+     */
+    public Optional<MoviesWatermark.Mark> watermark() {
+        return watermark.current();
+    }
+
+    private Slice<Movie> searchTitleIndex(String title, ObjectId after, Pageable pageable, MovieFields fields) {
+        List<String> ids = titleIndex.search(title, after == null ? null : after.toHexString(), pageable.getPageSize() + 1);
+        boolean hasNext = ids.size() > pageable.getPageSize();
+        List<String> pageIds = hasNext ? ids.subList(0, pageable.getPageSize()) : ids;
+        Map<String, Movie> found = new HashMap<>();
+        movieStore.findAllById(pageIds, fields).forEach(movie -> found.put(movie.getId(), movie));
+        List<Movie> movies = pageIds.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
+        return new SliceImpl<>(movies, pageable, hasNext);
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.github.ivanmarban.movies.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable, ascending list of document numbers backed by a primitive array.
+ */
+final class PostingList {
+
+    private int[] docs = new int[4];
+
+    private int size;
+
+    void add(int doc) {
+        if (size > 0 && docs[size - 1] == doc) {
+            return;
+        }
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, size + (size >> 1) + 1);
+        }
+        docs[size++] = doc;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return docs[index];
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(docs, size);
+    }
+
+    /**
+     * Keeps in {@code candidates} only the first {@code length} documents also present in this list and returns how
+     * many of them are left. Both sides are sorted, so this is a single merge pass.
+     */
+    int retainAll(int[] candidates, int length) {
+        int kept = 0;
+        int i = 0;
+        int j = 0;
+        while (i < length && j < size) {
+            int candidate = candidates[i];
+            int doc = docs[j];
+            if (candidate == doc) {
+                candidates[kept++] = candidate;
+                i++;
+                j++;
+            } else if (candidate < doc) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return kept;
+    }
+
+}
@@ -0,0 +1,556 @@
+package com.github.ivanmarban.movies.search;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index ranking the movies that have the most in common with a given one. Every movie gets a dense document
+ * number and is encoded into primitive features held in parallel arrays: a bitset of its genres, the dictionary codes
+ * of its director and rating, and its year. A request scores every other document against the features of the movie,
+ * keeping the best ones in a bounded heap; large indexes are split in ranges scored in parallel and merged.
+ * <p>
+ * A movie scores up to {@value #GENRE_WEIGHT} points for the share of genres in common, {@value #DIRECTOR_WEIGHT} for
+ * the same director, {@value #RATED_WEIGHT} for the same rating and {@value #YEAR_WEIGHT} for the same year, decreasing
+ * to nothing {@value #YEAR_WINDOW} years apart. Movies scoring nothing are not similar. Only the first 64 distinct
+ * genres are compared, far more than a catalog uses.
+ * <p>
+ * Like the {@link TitleIndex}, the index is loaded from the database in the background once the application is ready
+ * and kept up to date from the movie change events. When {@code movies.similar.reconcile-interval} is set it is also
+ * reconciled with the database at that interval, for the writes made by other instances. Until it has been loaded
+ * {@link #isAvailable()} returns {@code false}.
+ */
+@Slf4j
+@Component
+public class SimilarityIndex {
+
+    static final float GENRE_WEIGHT = 3;
+
+    static final float DIRECTOR_WEIGHT = 2;
+
+    static final float RATED_WEIGHT = 0.5f;
+
+    static final float YEAR_WEIGHT = 1;
+
+    static final int YEAR_WINDOW = 10;
+
+    private static final int LOAD_CHUNK = 1000;
+
+    private static final MovieFields INDEXED = MovieFields.of("year,rated,genre,director");
+
+    private static final int NONE = -1;
+
+    /**
+     * Replaces a missing code of the ranked movie so that it matches nothing, missing codes included.
+     */
+    private static final int NO_MATCH = -2;
+
+    /**
+     * Missing years are stored far enough from any year, and from the one of a ranked movie without year, to be out of
+     * the window.
+     */
+    private static final int NO_YEAR = -(1 << 20);
+
+    private static final int MAX_GENRES = Long.SIZE;
+
+    /**
+     * Scores are kept as fixed point numbers in the upper half of the heap keys.
+     */
+    private static final float SCORE_SCALE = 1 << 20;
+
+    private static final int RANGES_PER_THREAD = 4;
+
+    /**
+     * Fixed point genre score by genres in common and genres of either movie, sparing a division per document.
+     */
+    private static final int[] GENRE_SCORES = new int[(MAX_GENRES + 1) * (MAX_GENRES + 1)];
+
+    /**
+     * Fixed point year score by years apart, the last one standing for the window and beyond.
+     */
+    private static final int[] YEAR_SCORES = new int[YEAR_WINDOW + 1];
+
+    private static final int DIRECTOR_SCORE = (int) (DIRECTOR_WEIGHT * SCORE_SCALE);
+
+    private static final int RATED_SCORE = (int) (RATED_WEIGHT * SCORE_SCALE);
+
+    static {
+        for (int shared = 0; shared <= MAX_GENRES; shared++) {
+            for (int union = Math.max(1, shared); union <= MAX_GENRES; union++) {
+                GENRE_SCORES[shared * (MAX_GENRES + 1) + union] = (int) (GENRE_WEIGHT * shared / union * SCORE_SCALE);
+            }
+        }
+        for (int gap = 0; gap < YEAR_WINDOW; gap++) {
+            YEAR_SCORES[gap] = (int) (YEAR_WEIGHT * (YEAR_WINDOW - gap) / YEAR_WINDOW * SCORE_SCALE);
+        }
+    }
+
+    private final MovieStore movieStore;
+
+    private final TaskScheduler taskScheduler;
+
+    private final MoviesProperties.Similar properties;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> docsById = new HashMap<>();
+
+    private final Map<String, Integer> genreBits = new HashMap<>();
+
+    private final Map<String, Integer> directorCodes = new HashMap<>();
+
+    private final Map<String, Integer> ratedCodes = new HashMap<>();
+
+    private String[] ids = new String[1024];
+
+    private long[] genres = new long[1024];
+
+    private int[] directors = new int[1024];
+
+    private int[] ratings = new int[1024];
+
+    private int[] years = new int[1024];
+
+    private int size;
+
+    private int generation;
+
+    private Set<String> changedWhileReconciling;
+
+    private volatile boolean loaded;
+
+    public SimilarityIndex(MovieStore movieStore, TaskScheduler taskScheduler, MoviesProperties properties) {
+        this.movieStore = movieStore;
+        this.taskScheduler = taskScheduler;
+        this.properties = properties.getSimilar();
+    }
+
+    public boolean isAvailable() {
+        return properties.isEnabled() && loaded;
+    }
+
+    /**
+     * Returns the ids of at most {@code k} movies similar to the movie {@code id}, most similar first, or an empty
+     * optional if that movie is not indexed. Movies scoring the same are returned in no particular order.
+     */
+    public Optional<List<String>> similar(String id, int k) {
+        lock.readLock().lock();
+        try {
+            Integer doc = docsById.get(id);
+            if (doc == null) {
+                return Optional.empty();
+            }
+            TopK best = size < properties.getParallelThreshold() ? score(doc, 0, size, k) : scoreInParallel(doc, k);
+            long[] keys = best.sorted();
+            List<String> result = new ArrayList<>(keys.length);
+            for (long key : keys) {
+                result.add(ids[docOf(key)]);
+            }
+            return Optional.of(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (properties.getReconcileInterval() == null) {
+            taskScheduler.schedule(this::reconcile, Instant.now());
+        } else {
+            taskScheduler.scheduleWithFixedDelay(this::reconcile, properties.getReconcileInterval());
+        }
+    }
+
+    @EventListener
+    public void onMovieSaved(MovieSavedEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            put(event.getMovie());
+            if (changedWhileReconciling != null) {
+                changedWhileReconciling.add(event.getMovie().getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onMovieDeleted(MovieDeletedEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            remove(event.getId());
+            if (changedWhileReconciling != null) {
+                changedWhileReconciling.add(event.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onMoviesDeleted(MoviesDeletedEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            reset();
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every movie from the database into the index, then removes the indexed movies the database no longer has.
+     * Movies changed by an event while the cursor is open keep the state of the event, which is newer.
+     */
+    void reconcile() {
+        long start = System.nanoTime();
+        int startGeneration;
+        lock.writeLock().lock();
+        try {
+            startGeneration = generation;
+            changedWhileReconciling = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try (Stream<Movie> movies = movieStore.streamAll(properties.getLoadBatchSize(), INDEXED)) {
+            Set<String> seen = new HashSet<>();
+            int corrected = 0;
+            boolean complete = true;
+            List<Movie> chunk = new ArrayList<>(LOAD_CHUNK);
+            for (Iterator<Movie> iterator = movies.iterator(); iterator.hasNext(); ) {
+                chunk.add(iterator.next());
+                if (chunk.size() == LOAD_CHUNK || !iterator.hasNext()) {
+                    int chunkCorrected = loadChunk(chunk, startGeneration, seen);
+                    if (chunkCorrected < 0) {
+                        complete = false;
+                        break;
+                    }
+                    corrected += chunkCorrected;
+                    chunk.clear();
+                }
+            }
+            if (complete) {
+                corrected += removeUnseen(seen, startGeneration);
+            }
+            if (!loaded) {
+                loaded = true;
+                log.info("Similarity index loaded {} movies in {} ms.", size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else if (corrected > 0) {
+                log.info("Similarity index reconciled, {} movies corrected.", corrected);
+            }
+        } catch (Exception e) {
+            log.error("Error loading similarity index, similar movies will not be available until it is loaded.", e);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changedWhileReconciling = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Puts the movies read by the reconciliation cursor unless a change event already superseded them, returning how
+     * many were missing or had other features. Returns {@code -1} once every movie has been deleted in the meantime,
+     * as the rest of the cursor is stale.
+     */
+    private int loadChunk(List<Movie> chunk, int startGeneration, Set<String> seen) {
+        lock.writeLock().lock();
+        try {
+            if (generation != startGeneration) {
+                return -1;
+            }
+            int corrected = 0;
+            for (Movie movie : chunk) {
+                seen.add(movie.getId());
+                if (!changedWhileReconciling.contains(movie.getId()) && put(movie)) {
+                    corrected++;
+                }
+            }
+            return corrected;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the indexed movies the reconciliation cursor did not read, deleted through another instance, unless a
+     * change event indexed them in the meantime.
+     */
+    private int removeUnseen(Set<String> seen, int startGeneration) {
+        lock.writeLock().lock();
+        try {
+            if (generation != startGeneration) {
+                return 0;
+            }
+            List<String> unseen = new ArrayList<>();
+            for (String id : docsById.keySet()) {
+                if (!seen.contains(id) && !changedWhileReconciling.contains(id)) {
+                    unseen.add(id);
+                }
+            }
+            unseen.forEach(this::remove);
+            return unseen.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Splits the documents in a few ranges per thread of the common pool, so that a slow worker does not hold the
+     * request back, and merges the best movies of every range.
+     */
+    private TopK scoreInParallel(int doc, int k) {
+        int ranges = ForkJoinPool.getCommonPoolParallelism() * RANGES_PER_THREAD;
+        int rangeSize = (size + ranges - 1) / ranges;
+        return IntStream.range(0, ranges).parallel()
+            .mapToObj(range -> score(doc, range * rangeSize, Math.min(size, (range + 1) * rangeSize), k))
+            .reduce(TopK::merge)
+            .orElseGet(() -> new TopK(k));
+    }
+
+    /**
+     * Scores the documents without a branch on their features, which match the ranked movie too randomly for a branch
+     * predictor.
+     */
+    private TopK score(int doc, int from, int to, int k) {
+        long genre = genres[doc];
+        int director = directors[doc] == NONE ? NO_MATCH : directors[doc];
+        int rated = ratings[doc] == NONE ? NO_MATCH : ratings[doc];
+        int year = years[doc] == NO_YEAR ? -NO_YEAR : years[doc];
+        TopK best = new TopK(k);
+        for (int other = from; other < to; other++) {
+            int score = GENRE_SCORES[Long.bitCount(genre & genres[other]) * (MAX_GENRES + 1) + Long.bitCount(genre | genres[other])]
+                + (directors[other] == director ? DIRECTOR_SCORE : 0)
+                + (ratings[other] == rated ? RATED_SCORE : 0)
+                + YEAR_SCORES[Math.min(Math.abs(year - years[other]), YEAR_WINDOW)];
+            if (score > 0 && other != doc) {
+                best.offer((long) score << 32 | Integer.MAX_VALUE - other);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Indexes the features of the movie, returning {@code false} if it was indexed with those features already.
+     */
+    private boolean put(Movie movie) {
+        long genre = genresOf(movie);
+        int director = code(directorCodes, movie.getDirector());
+        int rated = code(ratedCodes, movie.getRated());
+        int year = movie.getYear() == null ? NO_YEAR : movie.getYear();
+        Integer existing = docsById.get(movie.getId());
+        int doc;
+        if (existing != null) {
+            doc = existing;
+            if (genres[doc] == genre && directors[doc] == director && ratings[doc] == rated && years[doc] == year) {
+                return false;
+            }
+        } else {
+            if (size == ids.length) {
+                grow();
+            }
+            doc = size++;
+            ids[doc] = movie.getId();
+            docsById.put(movie.getId(), doc);
+        }
+        genres[doc] = genre;
+        directors[doc] = director;
+        ratings[doc] = rated;
+        years[doc] = year;
+        return true;
+    }
+
+    /**
+     * Moves the last document into the place of the removed one, so that the arrays never have holes to skip.
+     */
+    private void remove(String id) {
+        Integer doc = docsById.remove(id);
+        if (doc == null) {
+            return;
+        }
+        int last = --size;
+        if (doc != last) {
+            ids[doc] = ids[last];
+            genres[doc] = genres[last];
+            directors[doc] = directors[last];
+            ratings[doc] = ratings[last];
+            years[doc] = years[last];
+            docsById.put(ids[doc], doc);
+        }
+        ids[last] = null;
+    }
+
+    private long genresOf(Movie movie) {
+        long bits = 0;
+        if (movie.getGenres() != null) {
+            for (String genre : movie.getGenres()) {
+                Integer bit = genreBits.get(genre);
+                if (bit == null && genreBits.size() < MAX_GENRES) {
+                    bit = genreBits.size();
+                    genreBits.put(genre, bit);
+                }
+                if (bit != null) {
+                    bits |= 1L << bit;
+                }
+            }
+        }
+        return bits;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        genres = Arrays.copyOf(genres, capacity);
+        directors = Arrays.copyOf(directors, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        years = Arrays.copyOf(years, capacity);
+    }
+
+    private void reset() {
+        docsById.clear();
+        genreBits.clear();
+        directorCodes.clear();
+        ratedCodes.clear();
+        ids = new String[1024];
+        genres = new long[1024];
+        directors = new int[1024];
+        ratings = new int[1024];
+        years = new int[1024];
+        size = 0;
+    }
+
+    private static int code(Map<String, Integer> codes, String value) {
+        return value == null ? NONE : codes.computeIfAbsent(value, key -> codes.size());
+    }
+
+    private static int docOf(long key) {
+        return Integer.MAX_VALUE - (int) key;
+    }
+
+    /**
+     * Bounded min-heap of the {@code k} largest keys offered, packing the fixed point score above the document so
+     * that no candidate allocates; equal scores favour the lower document.
+     */
+    static final class TopK {
+
+        private final long[] keys;
+
+        private int size;
+
+        TopK(int k) {
+            this.keys = new long[k];
+        }
+
+        void offer(long key) {
+            if (size < keys.length) {
+                keys[size] = key;
+                siftUp(size++);
+            } else if (size > 0 && key > keys[0]) {
+                keys[0] = key;
+                siftDown(0);
+            }
+        }
+
+        TopK merge(TopK other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.keys[i]);
+            }
+            return this;
+        }
+
+        /**
+         * Returns the keys, largest first.
+         */
+        long[] sorted() {
+            long[] sorted = Arrays.copyOf(keys, size);
+            Arrays.sort(sorted);
+            for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+                long key = sorted[i];
+                sorted[i] = sorted[j];
+                sorted[j] = key;
+            }
+            return sorted;
+        }
+
+        private void siftUp(int index) {
+            long key = keys[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[index] = keys[parent];
+                index = parent;
+            }
+            keys[index] = key;
+        }
+
+        private void siftDown(int index) {
+            long key = keys[index];
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                keys[index] = keys[child];
+                index = child;
+            }
+            keys[index] = key;
+        }
+
+    }
+
+}
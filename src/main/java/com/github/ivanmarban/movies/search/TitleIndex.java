@@ -0,0 +1,446 @@
+package com.github.ivanmarban.movies.search;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory trigram inverted index over movie titles, answering case-insensitive substring searches without scanning
+ * the collection. Every title gets a dense document number; each trigram maps to the ascending list of documents that
+ * contain it. A query intersects the lists of its trigrams and verifies the survivors against the stored title. Single
+ * characters and pairs of characters have lists as well, answering the queries too short to have a trigram without
+ * reading every title.
+ * <p>
+ * The index is loaded from the database in the background once the application is ready and then kept up to date from
+ * the movie change events. Writes made by another instance sharing the database are not seen by the events; when
+ * {@code movies.search.reconcile-interval} is set the index is reconciled with the database at that interval, adding,
+ * updating and removing the movies that changed elsewhere. Until it has been loaded {@link #isAvailable()} returns
+ * {@code false}.
+ */
+@Slf4j
+@Component
+public class TitleIndex {
+
+    private static final int LOAD_CHUNK = 1000;
+
+    private static final MovieFields INDEXED = MovieFields.of("title");
+
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    private final MovieStore movieStore;
+
+    private final TaskScheduler taskScheduler;
+
+    private final MoviesProperties.Search properties;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final IdTable docsById = new IdTable(1024);
+
+    private final GramTable grams = new GramTable(1024);
+
+    private PostingList[] postings = new PostingList[1024];
+
+    private int postingCount;
+
+    private final BitSet live = new BitSet();
+
+    private String[] ids = new String[1024];
+
+    private String[] titles = new String[1024];
+
+    private int size;
+
+    private int deleted;
+
+    private int generation;
+
+    private Set<String> changedWhileReconciling;
+
+    private volatile boolean loaded;
+
+    public TitleIndex(MovieStore movieStore, TaskScheduler taskScheduler, MoviesProperties properties) {
+        this.movieStore = movieStore;
+        this.taskScheduler = taskScheduler;
+        this.properties = properties.getSearch();
+    }
+
+    public boolean isAvailable() {
+        return properties.isIndexEnabled() && loaded;
+    }
+
+    /**
+     * Returns, in ascending order, the ids of at most {@code limit} movies whose title contains {@code text} ignoring
+     * case, starting after the id {@code after} when it is not {@code null}.
+     */
+    public List<String> search(String text, String after, int limit) {
+        String query = text.toLowerCase(Locale.ROOT);
+        PriorityQueue<String> best = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+        lock.readLock().lock();
+        try {
+            if (query.isEmpty()) {
+                for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+                    collect(doc, query, after, limit, best);
+                }
+            } else if (query.length() < 3) {
+                PostingList list = posting(gram(query, 0, query.length()));
+                for (int i = 0; list != null && i < list.size(); i++) {
+                    int doc = list.get(i);
+                    if (live.get(doc)) {
+                        collect(doc, query, after, limit, best);
+                    }
+                }
+            } else {
+                int[] candidates = candidates(query);
+                for (int doc : candidates) {
+                    if (live.get(doc)) {
+                        collect(doc, query, after, limit, best);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<String> result = new ArrayList<>(best);
+        Collections.sort(result);
+        return result;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isIndexEnabled()) {
+            return;
+        }
+        if (properties.getReconcileInterval() == null) {
+            taskScheduler.schedule(this::reconcile, Instant.now());
+        } else {
+            taskScheduler.scheduleWithFixedDelay(this::reconcile, properties.getReconcileInterval());
+        }
+    }
+
+    @EventListener
+    public void onMovieSaved(MovieSavedEvent event) {
+        if (!properties.isIndexEnabled()) {
+            return;
+        }
+        Movie movie = event.getMovie();
+        lock.writeLock().lock();
+        try {
+            put(movie.getId(), movie.getTitle());
+            if (changedWhileReconciling != null) {
+                changedWhileReconciling.add(movie.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onMovieDeleted(MovieDeletedEvent event) {
+        if (!properties.isIndexEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            remove(event.getId());
+            if (changedWhileReconciling != null) {
+                changedWhileReconciling.add(event.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onMoviesDeleted(MoviesDeletedEvent event) {
+        if (!properties.isIndexEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            reset();
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every movie from the database into the index, then removes the indexed movies the database no longer has.
+     * Movies changed by an event while the cursor is open keep the state of the event, which is newer.
+     */
+    void reconcile() {
+        long start = System.nanoTime();
+        int startGeneration;
+        lock.writeLock().lock();
+        try {
+            startGeneration = generation;
+            changedWhileReconciling = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try (Stream<Movie> movies = movieStore.streamAll(properties.getLoadBatchSize(), INDEXED)) {
+            Set<String> seen = new HashSet<>();
+            int corrected = 0;
+            boolean complete = true;
+            List<Movie> chunk = new ArrayList<>(LOAD_CHUNK);
+            for (Iterator<Movie> iterator = movies.iterator(); iterator.hasNext(); ) {
+                chunk.add(iterator.next());
+                if (chunk.size() == LOAD_CHUNK || !iterator.hasNext()) {
+                    int chunkCorrected = loadChunk(chunk, startGeneration, seen);
+                    if (chunkCorrected < 0) {
+                        complete = false;
+                        break;
+                    }
+                    corrected += chunkCorrected;
+                    chunk.clear();
+                }
+            }
+            if (complete) {
+                corrected += removeUnseen(seen, startGeneration);
+            }
+            if (!loaded) {
+                loaded = true;
+                log.info("Title index loaded {} movies in {} ms.", size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else if (corrected > 0) {
+                log.info("Title index reconciled, {} movies corrected.", corrected);
+            }
+        } catch (Exception e) {
+            log.error("Error loading title index, title searches will be served by the database until it is loaded.", e);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changedWhileReconciling = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Puts the movies read by the reconciliation cursor unless a change event already superseded them, returning how
+     * many were missing or had another title. Returns {@code -1} once every movie has been deleted in the meantime, as
+     * the rest of the cursor is stale.
+     */
+    private int loadChunk(List<Movie> chunk, int startGeneration, Set<String> seen) {
+        lock.writeLock().lock();
+        try {
+            if (generation != startGeneration) {
+                return -1;
+            }
+            int corrected = 0;
+            for (Movie movie : chunk) {
+                seen.add(movie.getId());
+                if (!changedWhileReconciling.contains(movie.getId()) && put(movie.getId(), movie.getTitle())) {
+                    corrected++;
+                }
+            }
+            return corrected;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the indexed movies the reconciliation cursor did not read, deleted through another instance, unless a
+     * change event indexed them in the meantime.
+     */
+    private int removeUnseen(Set<String> seen, int startGeneration) {
+        lock.writeLock().lock();
+        try {
+            if (generation != startGeneration) {
+                return 0;
+            }
+            List<String> unseen = new ArrayList<>();
+            for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+                String id = ids[doc];
+                if (!seen.contains(id) && !changedWhileReconciling.contains(id)) {
+                    unseen.add(id);
+                }
+            }
+            unseen.forEach(this::remove);
+            return unseen.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void collect(int doc, String query, String after, int limit, PriorityQueue<String> best) {
+        if (!titles[doc].contains(query)) {
+            return;
+        }
+        String id = ids[doc];
+        if (after != null && id.compareTo(after) <= 0) {
+            return;
+        }
+        if (best.size() < limit) {
+            best.add(id);
+        } else if (id.compareTo(best.peek()) < 0) {
+            best.poll();
+            best.add(id);
+        }
+    }
+
+    private int[] candidates(String query) {
+        List<PostingList> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            PostingList list = posting(gram(query, i, 3));
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        int[] candidates = lists.get(0).toArray();
+        int length = candidates.length;
+        for (int i = 1; i < lists.size() && length > 0; i++) {
+            length = lists.get(i).retainAll(candidates, length);
+        }
+        return Arrays.copyOf(candidates, length);
+    }
+
+    /**
+     * Indexes the title of the movie, returning {@code false} if it was indexed with that title already.
+     */
+    private boolean put(String id, String title) {
+        String normalized = title == null ? "" : title.toLowerCase(Locale.ROOT);
+        int existing = docsById.get(id);
+        if (existing != IdTable.NONE) {
+            if (Objects.equals(titles[existing], normalized)) {
+                return false;
+            }
+            delete(existing);
+        }
+        add(id, normalized);
+        compactIfNeeded();
+        return true;
+    }
+
+    private void remove(String id) {
+        int doc = docsById.remove(id);
+        if (doc != IdTable.NONE) {
+            delete(doc);
+            compactIfNeeded();
+        }
+    }
+
+    private void add(String id, String title) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            titles = Arrays.copyOf(titles, size * 2);
+        }
+        int doc = size++;
+        ids[doc] = id;
+        titles[doc] = title;
+        live.set(doc);
+        docsById.put(id, doc);
+        for (int i = 0; i < title.length(); i++) {
+            for (int length = 1; length <= 3 && i + length <= title.length(); length++) {
+                long gram = gram(title, i, length);
+                int posting = grams.get(gram);
+                if (posting == GramTable.NONE) {
+                    if (postingCount == postings.length) {
+                        postings = Arrays.copyOf(postings, postingCount * 2);
+                    }
+                    posting = postingCount++;
+                    postings[posting] = new PostingList();
+                    grams.put(gram, posting);
+                }
+                postings[posting].add(doc);
+            }
+        }
+    }
+
+    private PostingList posting(long gram) {
+        int posting = grams.get(gram);
+        return posting == GramTable.NONE ? null : postings[posting];
+    }
+
+    private void delete(int doc) {
+        live.clear(doc);
+        ids[doc] = null;
+        titles[doc] = null;
+        deleted++;
+    }
+
+    /**
+     * Deleted documents stay in the posting lists until they outnumber the live ones, then the index is rebuilt.
+     */
+    private void compactIfNeeded() {
+        if (deleted < COMPACTION_THRESHOLD || deleted < docsById.size()) {
+            return;
+        }
+        String[] liveIds = new String[docsById.size()];
+        String[] liveTitles = new String[docsById.size()];
+        int count = 0;
+        for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+            liveIds[count] = ids[doc];
+            liveTitles[count++] = titles[doc];
+        }
+        reset();
+        for (int i = 0; i < count; i++) {
+            add(liveIds[i], liveTitles[i]);
+        }
+    }
+
+    private void reset() {
+        docsById.clear();
+        grams.clear();
+        postings = new PostingList[1024];
+        postingCount = 0;
+        live.clear();
+        ids = new String[1024];
+        titles = new String[1024];
+        size = 0;
+        deleted = 0;
+    }
+
+    /**
+     * Packs the {@code length} characters of {@code text} at {@code offset}, at most three, behind their count, so that
+     * grams of different lengths never share a key.
+     */
+    private static long gram(String text, int offset, int length) {
+        long key = length;
+        for (int i = offset; i < offset + length; i++) {
+            key = key << 16 | text.charAt(i);
+        }
+        return key;
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.github.ivanmarban.movies.watermark;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Version of the movie collection as a whole, advanced by every movie change event, so that collection responses can
+ * be validated without querying the database. Only this instance's writes are seen, so it is off unless
+ * {@code movies.watermark.enabled} is set.
+ * <p>
+ * The entity tag combines the start time of this instance with a generation incremented on every change, so tags
+ * handed out before a restart never match.
+ */
+@Component
+public class MoviesWatermark {
+
+    private final MoviesProperties.Watermark properties;
+
+    private final Clock clock;
+
+    private final String epoch;
+
+    private final AtomicReference<Mark> mark;
+
+    @Autowired
+    public MoviesWatermark(MoviesProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    MoviesWatermark(MoviesProperties properties, Clock clock) {
+        this.properties = properties.getWatermark();
+        this.clock = clock;
+        this.epoch = Long.toString(clock.millis(), 36);
+        this.mark = new AtomicReference<>(new Mark(epoch, 0, clock.instant()));
+    }
+
+    /**
+     * Returns the current mark, or empty if conditional collection requests are disabled.
+     */
+    public Optional<Mark> current() {
+        return properties.isEnabled() ? Optional.of(mark.get()) : Optional.empty();
+    }
+
+    @EventListener
+    public void onMovieSaved(MovieSavedEvent event) {
+        advance();
+    }
+
+    @EventListener
+    public void onMovieDeleted(MovieDeletedEvent event) {
+        advance();
+    }
+
+    @EventListener
+    public void onMoviesDeleted(MoviesDeletedEvent event) {
+        advance();
+    }
+
+    private void advance() {
+        Instant now = clock.instant();
+        mark.updateAndGet(current -> new Mark(epoch, current.getGeneration() + 1, now));
+    }
+
+    @Value
+    public static class Mark {
+
+        String epoch;
+
+        long generation;
+
+        Instant lastModified;
+
+        /**
+         * Weak, as the same tag validates every page served from the collection. The controllers append the format of
+         * the representation, whose tags must differ.
+         */
+        public String getETag() {
+            return "W/\"" + epoch + "-" + generation + "\"";
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.github.ivanmarban.movies.config;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.connection.ConnectionPoolSettings;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MongoPoolConfig Unit Tests")
+public class MongoPoolConfigTest {
+
+    @Test
+    @DisplayName("Without settings the pool is the one of the connection string and of the driver")
+    public void defaults() {
+        ConnectionString uri = new ConnectionString("mongodb://localhost/movies?maxPoolSize=50");
+
+        ConnectionPoolSettings settings = settings(new MoviesProperties.MongoPool(), uri);
+
+        assertEquals(50, settings.getMaxSize());
+        assertEquals(0, settings.getMinSize());
+        assertEquals(ConnectionPoolSettings.builder().build().getMaxWaitTime(TimeUnit.MILLISECONDS), settings.getMaxWaitTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @DisplayName("The settings configured apply, but not over the options of the connection string")
+    public void configured() {
+        MoviesProperties.MongoPool pool = new MoviesProperties.MongoPool();
+        pool.setMaxSize(200);
+        pool.setMinSize(10);
+        pool.setMaxWaitTime(Duration.ofSeconds(2));
+
+        ConnectionPoolSettings settings = settings(pool, new ConnectionString("mongodb://localhost/movies"));
+        assertEquals(200, settings.getMaxSize());
+        assertEquals(10, settings.getMinSize());
+        assertEquals(2000, settings.getMaxWaitTime(TimeUnit.MILLISECONDS));
+
+        settings = settings(pool, new ConnectionString("mongodb://localhost/movies?maxPoolSize=50&waitQueueTimeoutMS=500"));
+        assertEquals(50, settings.getMaxSize());
+        assertEquals(10, settings.getMinSize());
+        assertEquals(500, settings.getMaxWaitTime(TimeUnit.MILLISECONDS));
+    }
+
+    private static ConnectionPoolSettings settings(MoviesProperties.MongoPool pool, ConnectionString uri) {
+        ConnectionPoolSettings.Builder builder = ConnectionPoolSettings.builder().applyConnectionString(uri);
+        MongoPoolConfig.apply(pool, uri, builder);
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs the REST API against the embedded movie log, without a MongoDB server: the scenarios of the integration tests,
+ * and a few of its own.
+ */
+@SpringBootTest
+@ActiveProfiles("embedded")
+@DisplayName("MoviesController Embedded Storage Tests")
+@AutoConfigureMockMvc
+public class MoviesControllerEmbeddedTest extends MoviesControllerScenarios {
+
+    private static final String ODYSSEY = "{\"title\": \"2001: A Space Odyssey\", \"year\": \"1968\", \"rated\": \"G\", "
+        + "\"runtime\": \"160 min\", \"genre\": \"Mystery, Sci-Fi\", \"director\": \"Stanley Kubrick\"}";
+
+    private static final String SHINING = "{\"title\": \"The Shining\", \"year\": \"1980\", \"rated\": \"R\", "
+        + "\"runtime\": \"142 min\", \"genre\": \"Horror, Mystery, Thriller\", \"director\": \"Stanley Kubrick\"}";
+
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void embeddedPath(DynamicPropertyRegistry registry) {
+        registry.add("movies.embedded.path", () -> directory.toString());
+    }
+
+    @Test
+    @DisplayName("Create, read, update and delete a movie")
+    public void crud() throws Exception {
+        String created = mvc.perform(MockMvcRequestBuilders
+            .post("/api/movies")
+            .content(SHINING)
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isCreated())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.id").exists())
+            .andReturn().getResponse().getContentAsString();
+        String id = JsonPath.read(created, "$.id");
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies/" + id))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("The Shining"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.runtime").value("142 min"))
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"0\""));
+
+        mvc.perform(MockMvcRequestBuilders
+            .patch("/api/movies/" + id)
+            .header(HttpHeaders.IF_MATCH, "\"0\"")
+            .content("{\"rated\": \"PG\"}")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.rated").value("PG"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.version").value(1));
+
+        mvc.perform(MockMvcRequestBuilders
+            .patch("/api/movies/" + id)
+            .header(HttpHeaders.IF_MATCH, "\"0\"")
+            .content("{\"rated\": \"R\"}")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isPreconditionFailed());
+
+        mvc.perform(MockMvcRequestBuilders.delete("/api/movies/" + id))
+            .andExpect(status().isNoContent());
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies/" + id))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Page through, search and count movies")
+    public void queries() throws Exception {
+        for (String movie : new String[]{ODYSSEY, SHINING, "{\"title\": \"Jaws\", \"year\": \"1975\", \"rated\": \"PG\", "
+            + "\"runtime\": \"124 min\", \"genre\": \"Adventure, Thriller\", \"director\": \"Steven Spielberg\"}"}) {
+            mvc.perform(MockMvcRequestBuilders.post("/api/movies").content(movie).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+        }
+
+        String next = mvc.perform(MockMvcRequestBuilders.get("/api/movies").param("limit", "2"))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("2001: A Space Odyssey"))
+            .andReturn().getResponse().getHeader(HttpHeaders.LINK);
+        assertNotNull(next);
+        mvc.perform(MockMvcRequestBuilders.get(next.substring(1, next.indexOf('>'))))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("Jaws"));
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies").param("title", "SHIN"))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(1)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("The Shining"));
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies").param("director", "Stanley Kubrick").param("yearFrom", "1970"))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(1)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("The Shining"));
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies/facets").param("genre", "Mystery"))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.director[0].value").value("Stanley Kubrick"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.director[0].count").value(2));
+
+        mvc.perform(MockMvcRequestBuilders.delete("/api/movies"))
+            .andExpect(status().isNoContent());
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies"))
+            .andExpect(status().isNoContent());
+    }
+
+}
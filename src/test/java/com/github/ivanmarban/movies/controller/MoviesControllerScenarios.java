@@ -0,0 +1,348 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ivanmarban.movies.model.FacetCount;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Scenarios of the REST API of the servlet stack, run by {@link MoviesControllerIT} against MongoDB and by
+ * {@link MoviesControllerEmbeddedTest} against the embedded movie log, which must behave alike. Both run a single
+ * instance, with the collection watermark on.
+ */
+@TestPropertySource(properties = "movies.watermark.enabled=true")
+abstract class MoviesControllerScenarios {
+
+    @Autowired
+    protected MoviesController moviesController;
+
+    @Autowired
+    protected MockMvc mvc;
+
+    @AfterEach
+    public void cleanDatabase() {
+        moviesController.deleteAllMovies();
+    }
+
+    @Test
+    @DisplayName("Create movie")
+    public void createMovie() throws Exception {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        mvc.perform(MockMvcRequestBuilders
+            .post("/api/movies")
+            .content(asJsonString(movie))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isCreated())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.id").exists())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.title").exists());
+    }
+
+    @Test
+    @DisplayName("Get all movies")
+    public void getMovies() {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+        moviesController.createMovie(movie1);
+        moviesController.createMovie(movie2);
+        ResponseEntity<List<Movie>> movies = moviesController.getMovies(new MovieFilter(), null, null, null, request());
+        assertNotNull(movies);
+        assertTrue(movies.getBody().size() > 0);
+        assertEquals(2, movies.getBody().size());
+    }
+
+    @Test
+    @DisplayName("Get all movies page by page")
+    public void getMoviesPageByPage() throws Exception {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+        moviesController.createMovie(movie1);
+        moviesController.createMovie(movie2);
+
+        String next = mvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .param("limit", "1")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("2001: A Space Odyssey"))
+            .andReturn().getResponse().getHeader(HttpHeaders.LINK);
+        assertNotNull(next);
+
+        mvc.perform(MockMvcRequestBuilders
+            .get(next.substring(1, next.indexOf('>')))
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LINK))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("The Shining"));
+    }
+
+    @Test
+    @DisplayName("Export movies")
+    public void exportMovies() throws Exception {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+        moviesController.createMovie(movie1);
+        moviesController.createMovie(movie2);
+
+        MvcResult result = mvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/export")
+            .accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(MockMvcResultMatchers.request().asyncStarted())
+            .andReturn();
+        String body = mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertEquals(2, body.lines().count());
+        assertTrue(body.contains("The Shining"));
+    }
+
+    @Test
+    @DisplayName("Bulk insert movies")
+    public void bulkInsertMovies() throws Exception {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+
+        mvc.perform(MockMvcRequestBuilders
+            .post("/api/movies/_bulk")
+            .content(asJsonString(movie1) + "\n" + asJsonString(movie2) + "\n")
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.inserted").value(2))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.failed").value(0));
+        assertEquals(2, moviesController.getMovies(new MovieFilter(), null, null, null, request()).getBody().size());
+    }
+
+    @Test
+    @DisplayName("Get movie by title containing 'Space'")
+    public void getMovieByTitle() {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+        moviesController.createMovie(movie1);
+        moviesController.createMovie(movie2);
+        ResponseEntity<List<Movie>> movies = moviesController.getMovies(MovieFilter.builder().title("Space").build(), null, null, null, request());
+        assertNotNull(movies);
+        assertTrue(movies.getBody().size() > 0);
+        assertEquals(1, movies.getBody().size());
+        assertEquals("2001: A Space Odyssey", movies.getBody().get(0).getTitle());
+    }
+
+    @Test
+    @DisplayName("Get movies by year, genre, runtime and director")
+    public void getMoviesFiltered() {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+        moviesController.createMovie(movie1);
+        moviesController.createMovie(movie2);
+        assertEquals(2, moviesController.getMovies(MovieFilter.builder().genre("Mystery").build(), null, null, null, request()).getBody().size());
+        assertEquals(1, moviesController.getMovies(MovieFilter.builder().yearFrom(1970).build(), null, null, null, request()).getBody().size());
+        assertEquals(1, moviesController.getMovies(MovieFilter.builder().maxRuntime(150).build(), null, null, null, request()).getBody().size());
+        assertEquals(2, moviesController.getMovies(MovieFilter.builder().director("Stanley Kubrick").yearTo(1980).build(), null, null, null, request())
+            .getBody().size());
+        assertEquals(HttpStatus.NO_CONTENT,
+            moviesController.getMovies(MovieFilter.builder().genre("Horror").yearTo(1970).build(), null, null, null, request()).getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Get facets")
+    public void getFacets() {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+        moviesController.createMovie(movie1);
+        String id = moviesController.createMovie(movie2).getBody().getId();
+
+        Map<String, List<FacetCount>> facets = moviesController.getFacets(new MovieFilter(), request()).getBody();
+        assertEquals(new FacetCount("Mystery", 2), facets.get("genre").get(0));
+        assertEquals(List.of(new FacetCount("Stanley Kubrick", 2)), facets.get("director"));
+        assertEquals(List.of(new FacetCount("1960", 1), new FacetCount("1980", 1)), facets.get("decade"));
+
+        facets = moviesController.getFacets(MovieFilter.builder().yearFrom(1970).build(), request()).getBody();
+        assertEquals(List.of(new FacetCount("R", 1)), facets.get("rated"));
+
+        moviesController.deleteMovie(id);
+        facets = moviesController.getFacets(new MovieFilter(), request()).getBody();
+        assertEquals(List.of(new FacetCount("Mystery", 1), new FacetCount("Sci-Fi", 1)), facets.get("genre"));
+    }
+
+    @Test
+    @DisplayName("Get movie by ID")
+    public void getMovieById() {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+        moviesController.createMovie(movie1);
+        ResponseEntity<Movie> movie = moviesController.createMovie(movie2);
+        String id = movie.getBody().getId();
+        ResponseEntity<Movie> searchMovie = moviesController.getMovieById(id, null, request());
+        assertNotNull(searchMovie);
+        assertEquals(id, searchMovie.getBody().getId());
+    }
+
+    @Test
+    @DisplayName("Update movie")
+    public void updateMovie() {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        ResponseEntity<Movie> m = moviesController.createMovie(movie);
+        String id = m.getBody().getId();
+        movie.setYear(0);
+        ResponseEntity<Movie> updatedMovie = moviesController.updateMovie(movie, id, null, null);
+        assertNotNull(updatedMovie);
+        assertEquals(updatedMovie.getBody().getRated(), "G");
+        assertEquals(updatedMovie.getBody().getDirector(), "Stanley Kubrick");
+        assertEquals(updatedMovie.getBody().getTitle(), "2001: A Space Odyssey");
+        assertEquals(updatedMovie.getBody().getRuntime(), "160 min");
+        assertEquals(updatedMovie.getBody().getGenre(), "Mystery, Sci-Fi");
+        assertEquals(updatedMovie.getBody().getYear(), 0);
+        assertEquals(updatedMovie.getBody().getVersion(), 1L);
+        assertEquals(updatedMovie.getBody(), moviesController.getMovieById(id, null, request()).getBody());
+    }
+
+    @Test
+    @DisplayName("Patch movie with optimistic concurrency")
+    public void patchMovie() throws Exception {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        String id = moviesController.createMovie(movie).getBody().getId();
+
+        mvc.perform(MockMvcRequestBuilders.patch("/api/movies/{id}", id)
+            .header(HttpHeaders.IF_MATCH, "\"0\"")
+            .content("{\"year\":\"1969\",\"rated\":null}")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""));
+        mvc.perform(MockMvcRequestBuilders.patch("/api/movies/{id}", id)
+            .header(HttpHeaders.IF_MATCH, "\"0\"")
+            .content("{\"title\":\"Lost update\"}")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isPreconditionFailed());
+
+        Movie patched = moviesController.getMovieById(id, null, request()).getBody();
+        assertEquals("2001: A Space Odyssey", patched.getTitle());
+        assertEquals(1969, patched.getYear());
+        assertNull(patched.getRated());
+        assertEquals(1L, patched.getVersion());
+    }
+
+    @Test
+    @DisplayName("Conditional get of movies and of a movie")
+    public void conditionalGet() throws Exception {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        String id = moviesController.createMovie(movie).getBody().getId();
+
+        String listTag = mvc.perform(MockMvcRequestBuilders.get("/api/movies")).andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies").header(HttpHeaders.IF_NONE_MATCH, listTag))
+            .andExpect(status().isNotModified());
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies/{id}", id).header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+            .andExpect(status().isNotModified());
+
+        moviesController.createMovie(movie);
+        mvc.perform(MockMvcRequestBuilders.get("/api/movies").header(HttpHeaders.IF_NONE_MATCH, listTag))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    @DisplayName("Get movies by IDs")
+    public void getMoviesByIds() throws Exception {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        String first = moviesController.createMovie(movie).getBody().getId();
+        String second = moviesController.createMovie(movie).getBody().getId();
+        moviesController.getMovieById(first, null, request());
+
+        mvc.perform(MockMvcRequestBuilders.post("/api/movies/_mget")
+            .content(format("{\"ids\":[\"%s\",\"60f6cd5366949871c415d9fe\",\"%s\"]}", second, first))
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.movies[0].id").value(second))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.movies[1].id").value(first))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.missing[0]").value("60f6cd5366949871c415d9fe"));
+    }
+
+    @Test
+    @DisplayName("Delete movie")
+    public void deleteMovie() {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        ResponseEntity<Movie> m = moviesController.createMovie(movie);
+        assertNotNull(m);
+        String id = m.getBody().getId();
+        ResponseEntity<HttpStatus> deletedMovie = moviesController.deleteMovie(id);
+        assertEquals(HttpStatus.NO_CONTENT, deletedMovie.getStatusCode());
+        ResponseEntity<Movie> searchMovie = moviesController.getMovieById(id, null, request());
+        assertNull(searchMovie.getBody());
+    }
+
+    @Test
+    @DisplayName("Delete all movies")
+    public void deleteAllMovies() {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+        moviesController.createMovie(movie1);
+        moviesController.createMovie(movie2);
+        ResponseEntity<HttpStatus> movies = moviesController.deleteAllMovies();
+        assertEquals(HttpStatus.NO_CONTENT, movies.getStatusCode());
+        ResponseEntity<List<Movie>> allMovies = moviesController.getMovies(new MovieFilter(), null, null, null, request());
+        assertEquals(HttpStatus.NO_CONTENT, allMovies.getStatusCode());
+        assertNull(allMovies.getBody());
+    }
+
+    public static String asJsonString(final Object obj) {
+        try {
+            return new ObjectMapper().writeValueAsString(obj);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static WebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/movies"), new MockHttpServletResponse());
+    }
+
+}
@@ -1,28 +1,74 @@
 package com.github.ivanmarban.movies.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.ivanmarban.movies.config.JacksonConfig;
+import com.github.ivanmarban.movies.facet.FacetCounters;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimiter;
+import com.github.ivanmarban.movies.limit.Workload;
+import com.github.ivanmarban.movies.metrics.MovieQueryMetrics;
 import com.github.ivanmarban.movies.model.Movie;
-import com.github.ivanmarban.movies.repository.MoviesRepository;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import com.github.ivanmarban.movies.repository.MovieBatchLookup;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import com.github.ivanmarban.movies.repository.MovieWriteCoalescer;
+import com.github.ivanmarban.movies.search.MovieSearch;
+import com.github.ivanmarban.movies.search.SimilarityIndex;
+import com.github.ivanmarban.movies.search.TitleIndex;
+import com.github.ivanmarban.movies.watermark.MoviesWatermark;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.BDDMockito.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @DisplayName("MoviesController Unit Tests")
+@Import({JacksonConfig.class, MovieSearch.class})
 @WebMvcTest(MoviesController.class)
 public class MoviesControllerTest {
 
@@ -30,16 +76,183 @@ public class MoviesControllerTest {
     private MockMvc mockMvc;
 
     @MockBean
-    private MoviesRepository moviesRepository;
+    private MovieStore movieStore;
+
+    @MockBean
+    private MovieBatchLookup movieBatchLookup;
+
+    @MockBean
+    private MovieWriteCoalescer writeCoalescer;
+
+    @MockBean
+    private TitleIndex titleIndex;
+
+    @MockBean
+    private SimilarityIndex similarityIndex;
+
+    @MockBean
+    private FacetCounters facetCounters;
+
+    @MockBean
+    private MovieQueryMetrics queryMetrics;
+
+    @MockBean
+    private MoviesWatermark watermark;
+
+    @MockBean
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    @Test
+    @DisplayName("Get movie by ID. Not modified.")
+    public void getMovieByIdNotModified() throws Exception {
+        Movie movie = movieList().get(0);
+        movie.setVersion(2L);
+
+        given(movieStore.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.of(movie));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+            .andExpect(status().isNotModified())
+            .andExpect(MockMvcResultMatchers.content().string(""));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"2\""))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("2001: A Space Odyssey"));
+    }
+
+    @Test
+    @DisplayName("Get movie by ID. Entity tag of each format.")
+    public void getMovieByIdFormats() throws Exception {
+        Movie movie = movieList().get(0);
+        movie.setVersion(2L);
+
+        given(movieStore.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.of(movie));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .accept(MediaType.APPLICATION_CBOR)
+            .header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"2+cbor\""))
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+            .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_CBOR));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .accept("application/x-jackson-smile")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"2+smile\""))
+            .andExpect(status().isNotModified())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .accept("application/cbor;q=0.5, application/json"))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"2\""))
+            .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    @DisplayName("Get movies by IDs")
+    public void getMoviesByIds() throws Exception {
+        Map<String, Optional<Movie>> found = new LinkedHashMap<>();
+        found.put("5effaa5662679b5af2c58829", Optional.of(movieList().get(1)));
+        found.put("60f6cd5366949871c415d9fe", Optional.empty());
+        found.put("60f6cd5366949871c415d9fd", Optional.of(movieList().get(0)));
+
+        given(movieBatchLookup.findAll(Set.of("5effaa5662679b5af2c58829", "60f6cd5366949871c415d9fe", "60f6cd5366949871c415d9fd"), null))
+            .willReturn(found);
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies/_mget")
+            .content("{\"ids\":[\"5effaa5662679b5af2c58829\",\"60f6cd5366949871c415d9fe\",\"60f6cd5366949871c415d9fd\",\"5effaa5662679b5af2c58829\"]}")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.movies[*].title").value(contains("The Shining", "2001: A Space Odyssey")))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.missing").value(contains("60f6cd5366949871c415d9fe")));
+    }
+
+    @Test
+    @DisplayName("Get similar movies")
+    public void getSimilarMovies() throws Exception {
+        Map<String, Optional<Movie>> found = new LinkedHashMap<>();
+        found.put("5effaa5662679b5af2c58829", Optional.of(movieList().get(1)));
+
+        given(similarityIndex.isAvailable()).willReturn(true);
+        given(similarityIndex.similar("60f6cd5366949871c415d9fd", 10)).willReturn(Optional.of(List.of("5effaa5662679b5af2c58829")));
+        given(similarityIndex.similar("60f6cd5366949871c415d9fe", 100)).willReturn(Optional.empty());
+        given(movieBatchLookup.findAll(List.of("5effaa5662679b5af2c58829"), null)).willReturn(found);
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}/similar", "60f6cd5366949871c415d9fd")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(1)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("The Shining"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}/similar?k=1000", "60f6cd5366949871c415d9fe"))
+            .andExpect(status().isNotFound());
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}/similar?k=0", "60f6cd5366949871c415d9fd"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Get similar movies. Index not loaded.")
+    public void getSimilarMoviesUnavailable() throws Exception {
+
+        given(similarityIndex.isAvailable()).willReturn(false);
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}/similar", "60f6cd5366949871c415d9fd"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"));
+        then(similarityIndex).should(never()).similar(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Get movie by ID. Sparse fieldset.")
+    public void getMovieByIdFields() throws Exception {
+
+        given(movieStore.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.of(movieList().get(0)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}?fields=year", "60f6cd5366949871c415d9fd")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.content().json("{\"id\":\"60f6cd5366949871c415d9fd\",\"year\":\"1968\"}", true));
+    }
+
+    @Test
+    @DisplayName("Get movies by IDs. Invalid IDs.")
+    public void getMoviesByIdsInvalid() throws Exception {
+        String tooMany = IntStream.rangeClosed(0, 1000).mapToObj(i -> "\"" + i + "\"").collect(Collectors.joining(",", "{\"ids\":[", "]}"));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/movies/_mget").content(tooMany).contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/movies/_mget").content("{\"ids\":[]}").contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/movies/_mget").content("{}").contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+
+        then(movieBatchLookup).shouldHaveNoInteractions();
+    }
 
     @Test
     @DisplayName("Create movie")
     public void createMovie() throws Exception {
 
-        Movie movie = Movie.builder().title("2001: A Space Odyssey").year("1968").rated("G").runtime("160 min").genre("Mystery, Sci-Fi")
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
             .director("Stanley Kubrick").build();
 
-        given(moviesRepository.save(movie)).willReturn(movie);
+        given(movieStore.save(movie)).willReturn(movie);
 
         mockMvc.perform(MockMvcRequestBuilders
             .post("/api/movies")
@@ -51,14 +264,130 @@ public class MoviesControllerTest {
             .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("2001: A Space Odyssey"));
     }
 
+    @Test
+    @DisplayName("Create movie. Legacy text fields.")
+    public void createMovieLegacyFields() throws Exception {
+
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(movieStore.save(movie)).willReturn(movie);
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies")
+            .content("{\"title\": \"2001: A Space Odyssey\", \"year\": \"1968\", \"rated\": \"G\", \"runtime\": \"160 min\", "
+                + "\"genre\": \"Mystery, Sci-Fi\", \"director\": \"Stanley Kubrick\"}")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isCreated())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.year").value("1968"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.runtime").value("160 min"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.genre").value("Mystery, Sci-Fi"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.runtimeMinutes").doesNotExist())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.genres").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Create movie. Unparseable year or runtime.")
+    public void createMovieUnparseable() throws Exception {
+        for (String movie : List.of("{\"title\": \"Dune\", \"year\": \"TBA\"}", "{\"title\": \"Dune\", \"year\": \"1999–2001\"}",
+            "{\"title\": \"Dune\", \"year\": 84}", "{\"title\": \"Dune\", \"runtime\": \"N/A\"}")) {
+            mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/movies")
+                .content(movie)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        }
+
+        then(movieStore).shouldHaveNoInteractions();
+    }
+
+    @Test
+    @DisplayName("Create movie. Coalesced insert.")
+    public void createMovieCoalesced() throws Exception {
+
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(writeCoalescer.isEnabled()).willReturn(true);
+        given(writeCoalescer.insert(movie)).willReturn(CompletableFuture.completedFuture(movie.copyWithId("60f6cd5366949871c415d9fd")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies")
+            .content(asJsonString(movie))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isCreated())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.id").value("60f6cd5366949871c415d9fd"));
+
+        then(movieStore).should(never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Create movie. Write queue full.")
+    public void createMovieQueueFull() throws Exception {
+
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(writeCoalescer.isEnabled()).willReturn(true);
+        given(writeCoalescer.insert(movie)).willReturn(CompletableFuture.failedFuture(new RejectedExecutionException("full")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies")
+            .content(asJsonString(movie))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
+    @Test
+    @DisplayName("Create movie. Write timed out.")
+    public void createMovieWriteTimeout() throws Exception {
+
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(writeCoalescer.isEnabled()).willReturn(true);
+        given(writeCoalescer.insert(movie)).willReturn(CompletableFuture.failedFuture(new TimeoutException()));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies")
+            .content(asJsonString(movie))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
+    @Test
+    @DisplayName("Create movie. Write outcome unknown.")
+    public void createMovieWriteOutcomeUnknown() throws Exception {
+
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(writeCoalescer.isEnabled()).willReturn(true);
+        given(writeCoalescer.insert(movie)).willReturn(CompletableFuture.failedFuture(new IllegalStateException("Movie write did not complete in time")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies")
+            .content(asJsonString(movie))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isInternalServerError())
+            .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.RETRY_AFTER));
+    }
+
     @Test
     @DisplayName("Create movie. Throws exception.")
     public void createMovieThrowsException() throws Exception {
 
-        Movie movie = Movie.builder().title("2001: A Space Odyssey").year("1968").rated("G").runtime("160 min").genre("Mystery, Sci-Fi")
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
             .director("Stanley Kubrick").build();
 
-        willThrow(new RuntimeException("horror")).given(moviesRepository).save(movie);
+        willThrow(new RuntimeException("horror")).given(movieStore).save(movie);
 
         mockMvc.perform(MockMvcRequestBuilders
             .post("/api/movies")
@@ -72,22 +401,228 @@ public class MoviesControllerTest {
     @DisplayName("Get all movies")
     public void getMovies() throws Exception {
 
-        given(moviesRepository.findAll()).willReturn(movieList());
+        given(movieStore.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), isNull())).willReturn(new SliceImpl<>(movieList()));
 
         mockMvc.perform(MockMvcRequestBuilders
             .get("/api/movies")
             .contentType(MediaType.APPLICATION_JSON)
             .accept(MediaType.APPLICATION_JSON))
             .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LINK))
             .andExpect(MockMvcResultMatchers.jsonPath("$").isArray())
             .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)));
+
+        then(queryMetrics).should().recordResults(any(MovieFilter.class), eq(false), eq(2));
+    }
+
+    @Test
+    @DisplayName("Get all movies. Sparse fieldset.")
+    public void getMoviesFields() throws Exception {
+
+        given(movieStore.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), eq(MovieFields.of("title,genre"))))
+            .willReturn(new SliceImpl<>(movieList()));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies?fields=title,genre")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value("60f6cd5366949871c415d9fd"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("2001: A Space Odyssey"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].genre").value("Mystery, Sci-Fi"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].year").doesNotExist())
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].director").doesNotExist())
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].version").doesNotExist());
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies?fields=title,plot")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Get all movies. Binary formats.")
+    public void getMoviesBinary() throws Exception {
+
+        given(movieStore.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), any())).willReturn(new SliceImpl<>(movieList()));
+
+        for (ObjectMapper binary : List.of(new ObjectMapper(new SmileFactory()), new ObjectMapper(new CBORFactory()))) {
+            MediaType mediaType = binary.getFactory() instanceof SmileFactory
+                ? MediaType.parseMediaType("application/x-jackson-smile") : MediaType.parseMediaType("application/cbor");
+            byte[] body = mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/movies?fields=title")
+                .accept(mediaType))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(mediaType))
+                .andReturn().getResponse().getContentAsByteArray();
+
+            JsonNode movies = binary.readTree(body);
+            assertEquals(2, movies.size());
+            assertEquals("2001: A Space Odyssey", movies.get(0).get("title").asText());
+            assertFalse(movies.get(0).has("year"));
+        }
+    }
+
+    @Test
+    @DisplayName("Create movie. Smile body.")
+    public void createMovieSmile() throws Exception {
+        ObjectMapper smile = new ObjectMapper(new SmileFactory());
+        Movie movie = movieList().get(0);
+
+        given(movieStore.save(any(Movie.class))).willReturn(movie);
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies")
+            .content(smile.writeValueAsBytes(Map.of("title", "2001: A Space Odyssey", "year", "1968")))
+            .contentType("application/x-jackson-smile")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isCreated())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.id").value("60f6cd5366949871c415d9fd"));
+
+        then(movieStore).should().save(argThat(saved -> "2001: A Space Odyssey".equals(saved.getTitle()) && Integer.valueOf(1968).equals(saved.getYear())));
+    }
+
+    @Test
+    @DisplayName("Get all movies. Not modified.")
+    public void getMoviesNotModified() throws Exception {
+
+        given(watermark.current()).willReturn(Optional.of(new MoviesWatermark.Mark("kri6q2tc", 7, Instant.parse("2021-07-20T10:00:00Z"))));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .header(HttpHeaders.IF_NONE_MATCH, "W/\"kri6q2tc-7\"")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isNotModified())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "W/\"kri6q2tc-7\""))
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LAST_MODIFIED, "Tue, 20 Jul 2021 10:00:00 GMT"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/facets")
+            .header(HttpHeaders.IF_MODIFIED_SINCE, "Tue, 20 Jul 2021 10:00:00 GMT"))
+            .andExpect(status().isNotModified());
+
+        then(movieStore).shouldHaveNoInteractions();
+    }
+
+    @Test
+    @DisplayName("Get all movies. Modified.")
+    public void getMoviesModified() throws Exception {
+
+        given(watermark.current()).willReturn(Optional.of(new MoviesWatermark.Mark("kri6q2tc", 8, Instant.parse("2021-07-20T10:00:00Z"))));
+        given(movieStore.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), isNull())).willReturn(new SliceImpl<>(movieList()));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .header(HttpHeaders.IF_NONE_MATCH, "W/\"kri6q2tc-7\"")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "W/\"kri6q2tc-8\""))
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    @DisplayName("Get all movies. First page.")
+    public void getMoviesFirstPage() throws Exception {
+
+        given(movieStore.findMovies(new MovieFilter(), null, PageRequest.of(0, 1, Sort.by("id")), null))
+            .willReturn(new SliceImpl<>(movieList().subList(0, 1), PageRequest.of(0, 1), true));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .param("limit", "1")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK,
+                "<http://localhost/api/movies?limit=1&after=YPbNU2aUmHHEFdn9>; rel=\"next\""))
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    @DisplayName("Get all movies. Next page.")
+    public void getMoviesNextPage() throws Exception {
+
+        given(movieStore.findMovies(new MovieFilter(), new ObjectId("60f6cd5366949871c415d9fd"), PageRequest.of(0, 1, Sort.by("id")), null))
+            .willReturn(new SliceImpl<>(movieList().subList(1, 2), PageRequest.of(0, 1), false));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .param("limit", "1")
+            .param("after", "YPbNU2aUmHHEFdn9")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LINK))
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(1)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("The Shining"));
+    }
+
+    @Test
+    @DisplayName("Get all movies. Limit is capped.")
+    public void getMoviesLimitCapped() throws Exception {
+
+        given(movieStore.findMovies(new MovieFilter(), null, PageRequest.of(0, 1000, Sort.by("id")), null)).willReturn(new SliceImpl<>(movieList()));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .param("limit", "5000")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    @DisplayName("Get movies by year, genre, runtime and director")
+    public void getMoviesFiltered() throws Exception {
+
+        MovieFilter filter = MovieFilter.builder().yearFrom(1960).yearTo(1980).genre("Horror").maxRuntime(150).director("Stanley Kubrick")
+            .build();
+
+        given(movieStore.findMovies(eq(filter), isNull(), any(Pageable.class), isNull())).willReturn(new SliceImpl<>(movieList().subList(1, 2)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .param("yearFrom", "1960")
+            .param("yearTo", "1980")
+            .param("genre", "Horror")
+            .param("maxRuntime", "150")
+            .param("director", "Stanley Kubrick")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(1)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("The Shining"));
+    }
+
+    @Test
+    @DisplayName("Get all movies. Invalid limit.")
+    public void getMoviesInvalidLimit() throws Exception {
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .param("limit", "0")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Get all movies. Invalid cursor.")
+    public void getMoviesInvalidCursor() throws Exception {
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .param("after", "not-a-cursor")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
     }
 
     @Test
     @DisplayName("Get all movies. Not found.")
     public void getMoviesNotFound() throws Exception {
 
-        given(moviesRepository.findAll()).willReturn(Collections.emptyList());
+        given(movieStore.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), isNull())).willReturn(new SliceImpl<>(Collections.emptyList()));
 
         mockMvc.perform(MockMvcRequestBuilders
             .get("/api/movies")
@@ -100,7 +635,7 @@ public class MoviesControllerTest {
     @DisplayName("Get all movies. Throws exception.")
     public void getMoviesThrowsException() throws Exception {
 
-        willThrow(new RuntimeException("horror")).given(moviesRepository).findAll();
+        willThrow(new RuntimeException("horror")).given(movieStore).findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), isNull());
 
         mockMvc.perform(MockMvcRequestBuilders
             .get("/api/movies")
@@ -109,15 +644,75 @@ public class MoviesControllerTest {
             .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    @DisplayName("Export movies")
+    public void exportMovies() throws Exception {
+
+        given(movieStore.streamAll(500, null)).willReturn(movieList().stream());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/export")
+            .accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(MockMvcResultMatchers.request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON))
+            .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+            .andExpect(MockMvcResultMatchers.content().string(movieList().stream().map(MoviesControllerTest::asJsonString)
+                .collect(Collectors.joining("\n", "", "\n"))));
+    }
+
+    @Test
+    @DisplayName("Export movies. Gzip only when accepted with a non-zero quality.")
+    public void exportMoviesAcceptEncoding() {
+        assertTrue(MoviesController.acceptsGzip("gzip"));
+        assertTrue(MoviesController.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(MoviesController.acceptsGzip("br, *"));
+        assertFalse(MoviesController.acceptsGzip(null));
+        assertFalse(MoviesController.acceptsGzip("identity"));
+        assertFalse(MoviesController.acceptsGzip("x-gzip"));
+        assertFalse(MoviesController.acceptsGzip("gzip;q=0"));
+        assertFalse(MoviesController.acceptsGzip("gzip; q=0.0, *"));
+        assertFalse(MoviesController.acceptsGzip("*;q=0"));
+        assertFalse(MoviesController.acceptsGzip("gzip;q=high"));
+    }
+
+    @Test
+    @DisplayName("Export movies. Gzip encoded.")
+    public void exportMoviesGzip() throws Exception {
+
+        given(movieStore.streamAll(500, null)).willReturn(movieList().stream());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/export")
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+            .accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(MockMvcResultMatchers.request().asyncStarted())
+            .andReturn();
+
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            List<String> lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().collect(Collectors.toList());
+            assertEquals(2, lines.size());
+            assertEquals(asJsonString(movieList().get(1)), lines.get(1));
+        }
+    }
+
     @Test
     @DisplayName("Get movie by title containing 'Space'")
     public void getMovieByTitle() throws Exception {
 
         List<Movie> movies = new ArrayList<>();
-        movies.add(Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year("1968").rated("G").runtime("160 min")
-            .genre("Mystery, Sci-Fi").director("Stanley Kubrick").build());
+        movies.add(Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160)
+            .genres(List.of("Mystery", "Sci-Fi")).director("Stanley Kubrick").build());
 
-        given(moviesRepository.findByTitleContaining("Space")).willReturn(movies);
+        given(movieStore.findMovies(eq(MovieFilter.builder().title("Space").build()), isNull(), any(Pageable.class), isNull())).willReturn(new SliceImpl<>(movies));
 
         mockMvc.perform(MockMvcRequestBuilders
             .get("/api/movies")
@@ -130,13 +725,157 @@ public class MoviesControllerTest {
             .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value("2001: A Space Odyssey"));
     }
 
+    @Test
+    @DisplayName("Bulk insert movies")
+    public void bulkInsertMovies() throws Exception {
+
+        given(movieStore.insertUnordered(anyList())).willReturn(Map.of(1, "E11000 duplicate key error"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies/_bulk")
+            .content(asJsonString(movieList()))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.inserted").value(1))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.failed").value(1))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[0].status").value(201))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[0].id").exists())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[1].status").value(500))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[1].id").doesNotExist())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[1].error").value("E11000 duplicate key error"));
+    }
+
+    @Test
+    @DisplayName("Bulk insert movies. NDJSON with invalid items.")
+    public void bulkInsertMoviesNdjson() throws Exception {
+
+        given(movieStore.insertUnordered(anyList())).willReturn(Collections.emptyMap());
+
+        String body = asJsonString(movieList().get(0)) + "\n[1, 2]\n" + asJsonString(movieList().get(1)) + "\n{\"title\": ";
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies/_bulk")
+            .content(body)
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.inserted").value(2))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.failed").value(2))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items", hasSize(4)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[1].index").value(1))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[1].status").value(400))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[2].status").value(201))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[3].index").value(3))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[3].status").value(400));
+    }
+
+    @Test
+    @DisplayName("Bulk insert movies. Throws exception.")
+    public void bulkInsertMoviesThrowsException() throws Exception {
+
+        willThrow(new RuntimeException("horror")).given(movieStore).insertUnordered(anyList());
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/movies/_bulk")
+            .content(asJsonString(movieList()))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.inserted").value(0))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.failed").value(2))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.items[0].error").value("horror"));
+    }
+
+    @Test
+    @DisplayName("Get movie by title containing 'space' from the title index")
+    public void getMovieByTitleFromIndex() throws Exception {
+
+        given(titleIndex.isAvailable()).willReturn(true);
+        given(titleIndex.search("space", null, 2)).willReturn(List.of("5effaa5662679b5af2c58829", "60f6cd5366949871c415d9fd"));
+        given(movieStore.findAllById(List.of("5effaa5662679b5af2c58829"), null)).willReturn(movieList().subList(1, 2));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies")
+            .param("title", "space")
+            .param("limit", "1")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().exists(HttpHeaders.LINK))
+            .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(1)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value("5effaa5662679b5af2c58829"));
+
+        then(movieStore).should(never()).findMovies(any(MovieFilter.class), any(), any(Pageable.class), any());
+        then(queryMetrics).should().recordResults(any(MovieFilter.class), eq(true), eq(1));
+    }
+
+    @Test
+    @DisplayName("Get facets from counters")
+    public void getFacets() throws Exception {
+        Map<MovieFacet, Map<String, Long>> counts = new EnumMap<>(MovieFacet.class);
+        counts.put(MovieFacet.GENRE, Map.of("Mystery", 2L, "Horror", 1L, "Sci-Fi", 1L));
+        counts.put(MovieFacet.DIRECTOR, Map.of("Stanley Kubrick", 2L));
+        counts.put(MovieFacet.DECADE, Map.of("1960", 1L, "1980", 1L));
+        counts.put(MovieFacet.RATED, Map.of("G", 1L, "R", 1L));
+
+        given(facetCounters.isAvailable()).willReturn(true);
+        given(facetCounters.counts()).willReturn(counts);
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/facets")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.genre", hasSize(3)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.genre[0].value").value("Mystery"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.genre[0].count").value(2))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.genre[1].value").value("Horror"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.director[0].value").value("Stanley Kubrick"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.decade[0].value").value("1960"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.rated", hasSize(2)));
+
+        then(movieStore).should(never()).countFacets(any(MovieFilter.class));
+    }
+
+    @Test
+    @DisplayName("Get facets with filters from the database")
+    public void getFacetsFiltered() throws Exception {
+        Map<MovieFacet, Map<String, Long>> counts = new EnumMap<>(MovieFacet.class);
+        counts.put(MovieFacet.GENRE, Map.of("Horror", 1L));
+
+        given(facetCounters.isAvailable()).willReturn(true);
+        given(movieStore.countFacets(MovieFilter.builder().yearFrom(1970).build())).willReturn(counts);
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/facets")
+            .param("yearFrom", "1970")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.genre", hasSize(1)))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.director", hasSize(0)));
+
+        then(facetCounters).should(never()).counts();
+    }
+
+    @Test
+    @DisplayName("Get facets. Throws exception.")
+    public void getFacetsThrowsException() throws Exception {
+
+        given(movieStore.countFacets(any(MovieFilter.class))).willThrow(new RuntimeException("horror"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/facets")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isInternalServerError());
+    }
+
     @Test
     @DisplayName("Get movie by ID")
     public void getMovieById() throws Exception {
-        Movie movie = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year("1968").rated("G").runtime("160 min")
-            .genre("Mystery, Sci-Fi").director("Stanley Kubrick").build();
+        Movie movie = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160)
+            .genres(List.of("Mystery", "Sci-Fi")).director("Stanley Kubrick").build();
 
-        given(moviesRepository.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.ofNullable(movie));
+        given(movieStore.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.ofNullable(movie));
 
         mockMvc.perform(MockMvcRequestBuilders
             .get("/api/movies/{id}", "60f6cd5366949871c415d9fd")
@@ -150,7 +889,7 @@ public class MoviesControllerTest {
     @DisplayName("Get movie by ID. Not Found.")
     public void getMovieByIdNotFound() throws Exception {
 
-        given(moviesRepository.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.empty());
+        given(movieStore.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.empty());
 
         mockMvc.perform(MockMvcRequestBuilders
             .get("/api/movies/{id}", "60f6cd5366949871c415d9fd")
@@ -159,17 +898,30 @@ public class MoviesControllerTest {
             .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Get movie by ID. Over the concurrency limit.")
+    public void getMovieByIdOverLimit() throws Exception {
+
+        given(concurrencyLimiter.isEnabled()).willReturn(true);
+        given(concurrencyLimiter.tryAcquire(Workload.READ)).willReturn(Optional.empty());
+        given(concurrencyLimiter.getRetryAfter()).willReturn("1");
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+        then(movieStore).shouldHaveNoInteractions();
+    }
+
     @Test
     @DisplayName("Update movie")
     public void updateMovie() throws Exception {
-        Movie movie = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year("1968").rated("G").runtime("160 min")
-            .genre("Mystery, Sci-Fi").director("Stanley Kubrick").build();
-
-        Movie updatedMovie = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year("0000").rated("G").runtime("160 min")
-            .genre("Mystery, Sci-Fi").director("Stanley Kubrick").build();
+        Movie movie = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year(0).rated("G").runtimeMinutes(160)
+            .genres(List.of("Mystery", "Sci-Fi")).director("Stanley Kubrick").build();
 
-        given(moviesRepository.save(movie)).willReturn(updatedMovie);
-        given(moviesRepository.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.of(movie));
+        given(movieStore.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), isNull())).willReturn(Optional.of(movieList().get(0)));
 
         mockMvc.perform(MockMvcRequestBuilders
             .put("/api/movies/{id}", "60f6cd5366949871c415d9fd")
@@ -177,30 +929,149 @@ public class MoviesControllerTest {
             .contentType(MediaType.APPLICATION_JSON)
             .accept(MediaType.APPLICATION_JSON))
             .andExpect(status().isOk())
-            .andExpect(MockMvcResultMatchers.jsonPath("$.year").value("0000"));
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""))
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.year").value("0000"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.version").value(1));
+
+        then(movieStore).should(never()).findById(any());
+        then(movieStore).should(never()).save(any());
     }
 
     @Test
     @DisplayName("Update movie. Not Found.")
     public void updateMovieNotFound() throws Exception {
-        Movie movie = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year("1968").rated("G").runtime("160 min")
-            .genre("Mystery, Sci-Fi").director("Stanley Kubrick").build();
 
-        given(moviesRepository.findById("60f6cd5366949871c415d9fd")).willReturn(Optional.empty());
+        given(movieStore.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), isNull())).willReturn(Optional.empty());
 
         mockMvc.perform(MockMvcRequestBuilders
             .put("/api/movies/{id}", "60f6cd5366949871c415d9fd")
-            .content(asJsonString(movie))
+            .content(asJsonString(movieList().get(0)))
             .contentType(MediaType.APPLICATION_JSON)
             .accept(MediaType.APPLICATION_JSON))
             .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Update movie. Version conflict.")
+    public void updateMovieVersionConflict() throws Exception {
+
+        given(movieStore.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), eq(Set.of(3L)))).willReturn(Optional.empty());
+        given(movieStore.existsById("60f6cd5366949871c415d9fd")).willReturn(true);
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .put("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "\"3\"")
+            .content(asJsonString(movieList().get(0)))
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .put("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+            .content(asJsonString(movieList().get(0)))
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    @DisplayName("Update movie. If-Match list.")
+    public void updateMovieIfMatchList() throws Exception {
+        Movie previous = movieList().get(0);
+        previous.setVersion(3L);
+
+        given(movieStore.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), eq(Set.of(2L, 3L)))).willReturn(Optional.of(previous));
+        given(movieStore.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), eq(Set.of(3L)))).willReturn(Optional.of(previous));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .put("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "\"2\", \"3+cbor\"")
+            .content(asJsonString(movieList().get(0)))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"4\""));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .put("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "\"3\", \"3+cbor\", W/\"2\"")
+            .content(asJsonString(movieList().get(0)))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Update movie. If-Match any on a missing movie.")
+    public void updateMovieIfMatchAnyNotFound() throws Exception {
+
+        given(movieStore.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), isNull())).willReturn(Optional.empty());
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .put("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "*")
+            .content(asJsonString(movieList().get(0)))
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .put("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .content(asJsonString(movieList().get(0)))
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Patch movie")
+    public void patchMovie() throws Exception {
+        Movie previous = movieList().get(0);
+        previous.setVersion(3L);
+
+        given(movieStore.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), eq(Set.of(3L)))).willReturn(Optional.of(previous));
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .patch("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "\"3\"")
+            .content("{\"runtime\":\"149 min\",\"rated\":null}")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"4\""))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("2001: A Space Odyssey"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.runtime").value("149 min"))
+            .andExpect(MockMvcResultMatchers.jsonPath("$.rated").isEmpty());
+
+        ArgumentCaptor<MovieUpdate> update = ArgumentCaptor.forClass(MovieUpdate.class);
+        then(movieStore).should().modify(eq("60f6cd5366949871c415d9fd"), update.capture(), eq(Set.of(3L)));
+        Map<String, Object> values = new HashMap<>();
+        values.put("runtimeMinutes", 149);
+        values.put("rated", null);
+        assertEquals(values, update.getValue().values());
+    }
+
+    @Test
+    @DisplayName("Patch movie. Invalid patch.")
+    public void patchMovieInvalid() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+            .patch("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .content("{\"id\":\"5effaa5662679b5af2c58829\"}")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+
+        mockMvc.perform(MockMvcRequestBuilders
+            .patch("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .content("[]")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+
+        then(movieStore).should(never()).modify(any(), any(), any());
+    }
+
     @Test
     @DisplayName("Delete movie")
     public void deleteMovie() throws Exception {
 
-        willDoNothing().given(moviesRepository).deleteById("60f6cd5366949871c415d9fd");
+        given(movieStore.removeById("60f6cd5366949871c415d9fd")).willReturn(Optional.of(movieList().get(0)));
 
         mockMvc.perform(MockMvcRequestBuilders
             .delete("/api/movies/{id}", "60f6cd5366949871c415d9fd"))
@@ -212,7 +1083,7 @@ public class MoviesControllerTest {
     @DisplayName("Delete movie. Throws exception.")
     public void deleteMovieThrowsException() throws Exception {
 
-        willThrow(new RuntimeException("horror")).given(moviesRepository).deleteById("60f6cd5366949871c415d9fd");
+        given(movieStore.removeById("60f6cd5366949871c415d9fd")).willThrow(new RuntimeException("horror"));
 
         mockMvc.perform(MockMvcRequestBuilders
             .delete("/api/movies/{id}", "60f6cd5366949871c415d9fd"))
@@ -224,7 +1095,7 @@ public class MoviesControllerTest {
     @DisplayName("Delete all movies")
     public void deleteAllMovies() throws Exception {
 
-        willDoNothing().given(moviesRepository).deleteAll();
+        willDoNothing().given(movieStore).deleteAll();
 
         mockMvc.perform(MockMvcRequestBuilders
             .delete("/api/movies"))
@@ -235,7 +1106,7 @@ public class MoviesControllerTest {
     @DisplayName("Delete all movies. Throws exception.")
     public void deleteAllMoviesThrowsException() throws Exception {
 
-        willThrow(new RuntimeException("horror")).given(moviesRepository).deleteAll();
+        willThrow(new RuntimeException("horror")).given(movieStore).deleteAll();
 
         mockMvc.perform(MockMvcRequestBuilders
             .delete("/api/movies"))
@@ -244,10 +1115,10 @@ public class MoviesControllerTest {
 
     public List<Movie> movieList() {
         List<Movie> movies = new ArrayList<>();
-        movies.add(Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year("1968").rated("G").runtime("160 min")
-            .genre("Mystery, Sci-Fi").director("Stanley Kubrick").build());
-        movies.add(Movie.builder().id("5effaa5662679b5af2c58829").title("The Shining").year("1980").rated("R").runtime("142 min")
-            .genre("Horror, Mystery, Thriller").director("Stanley Kubrick").build());
+        movies.add(Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160)
+            .genres(List.of("Mystery", "Sci-Fi")).director("Stanley Kubrick").build());
+        movies.add(Movie.builder().id("5effaa5662679b5af2c58829").title("The Shining").year(1980).rated("R").runtimeMinutes(142)
+            .genres(List.of("Horror", "Mystery", "Thriller")).director("Stanley Kubrick").build());
         return movies;
     }
 
@@ -0,0 +1,142 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.ivanmarban.movies.model.Movie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.support.TestPropertySourceUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static java.lang.String.format;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+@Testcontainers
+@ContextConfiguration(initializers = ReactiveMoviesControllerIT.Initializer.class)
+@DisplayName("ReactiveMoviesController Integration Tests")
+public class ReactiveMoviesControllerIT {
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.4.2");
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @AfterEach
+    private void cleanDatabase() {
+        webTestClient.delete().uri("/api/movies").exchange().expectStatus().isNoContent();
+    }
+
+    @Test
+    @DisplayName("Create, update, get and delete movie")
+    public void crud() {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        Movie created = webTestClient.post().uri("/api/movies")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().isCreated()
+            .expectBody(Movie.class).returnResult().getResponseBody();
+        assertNotNull(created.getId());
+
+        movie.setYear(1969);
+        webTestClient.put().uri("/api/movies/{id}", created.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().isOk();
+
+        webTestClient.get().uri("/api/movies/{id}", created.getId())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.year").isEqualTo("1969")
+            .jsonPath("$.genre").isEqualTo("Mystery, Sci-Fi");
+
+        webTestClient.delete().uri("/api/movies/{id}", created.getId()).exchange().expectStatus().isNoContent();
+        webTestClient.get().uri("/api/movies/{id}", created.getId()).exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Bulk insert, page through and export movies")
+    public void bulkPageAndExport() {
+        Movie movie1 = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+        Movie movie2 = Movie.builder().title("The Shining").year(1980).rated("R").runtimeMinutes(142).genres(List.of("Horror", "Mystery", "Thriller"))
+            .director("Stanley Kubrick").build();
+
+        webTestClient.post().uri("/api/movies/_bulk")
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .bodyValue(asJsonString(movie1) + "\n" + asJsonString(movie2) + "\n")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.inserted").isEqualTo(2)
+            .jsonPath("$.failed").isEqualTo(0);
+
+        String next = webTestClient.get().uri("/api/movies?limit=1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$[0].title").isEqualTo("2001: A Space Odyssey")
+            .returnResult().getResponseHeaders().getFirst(HttpHeaders.LINK);
+        assertNotNull(next);
+
+        webTestClient.get().uri(next.substring(1, next.indexOf('>')))
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().doesNotExist(HttpHeaders.LINK)
+            .expectBody()
+            .jsonPath("$[0].title").isEqualTo("The Shining");
+
+        String body = webTestClient.get().uri("/api/movies/export")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(String.class).returnResult().getResponseBody();
+        assertEquals(2, body.lines().count());
+
+        webTestClient.get().uri("/api/movies/facets?genre=Horror")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.genre").value(hasSize(3))
+            .jsonPath("$.decade[0].value").isEqualTo("1980");
+    }
+
+    static class Initializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext configurableApplicationContext) {
+            TestPropertySourceUtils.addInlinedPropertiesToEnvironment(configurableApplicationContext,
+                format("spring.data.mongodb.uri=mongodb://%s:%s/movies", mongoDBContainer.getContainerIpAddress(),
+                    mongoDBContainer.getMappedPort(27017)));
+        }
+    }
+
+    public static String asJsonString(final Object obj) {
+        try {
+            return new ObjectMapper().writeValueAsString(obj);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,687 @@
+package com.github.ivanmarban.movies.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.ivanmarban.movies.config.ConcurrencyLimitConfig;
+import com.github.ivanmarban.movies.config.JacksonConfig;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.facet.FacetCounters;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimiter;
+import com.github.ivanmarban.movies.limit.Workload;
+import com.github.ivanmarban.movies.metrics.MovieQueryMetrics;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import com.github.ivanmarban.movies.repository.MovieWriteCoalescer;
+import com.github.ivanmarban.movies.repository.ReactiveMoviesRepository;
+import com.github.ivanmarban.movies.search.SimilarityIndex;
+import com.github.ivanmarban.movies.search.TitleIndex;
+import com.github.ivanmarban.movies.watermark.MoviesWatermark;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.BDDMockito.*;
+
+@DisplayName("ReactiveMoviesController Unit Tests")
+@Import({JacksonConfig.class, ConcurrencyLimitConfig.class, ReactiveMoviesControllerTest.EventThreads.class})
+@WebFluxTest(ReactiveMoviesController.class)
+@ActiveProfiles("reactive")
+public class ReactiveMoviesControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveMoviesRepository moviesRepository;
+
+    @MockBean
+    private MovieWriteCoalescer writeCoalescer;
+
+    @MockBean
+    private TitleIndex titleIndex;
+
+    @MockBean
+    private SimilarityIndex similarityIndex;
+
+    @MockBean
+    private FacetCounters facetCounters;
+
+    @MockBean
+    private MovieQueryMetrics queryMetrics;
+
+    @MockBean
+    private MoviesWatermark watermark;
+
+    @MockBean
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private EventThreads eventThreads;
+
+    @Test
+    @DisplayName("Get movies by IDs")
+    public void getMoviesByIds() {
+
+        given(moviesRepository.findAllById(Set.of("5effaa5662679b5af2c58829", "60f6cd5366949871c415d9fe", "60f6cd5366949871c415d9fd"), null))
+            .willReturn(Flux.fromIterable(movieList()));
+
+        webTestClient.post().uri("/api/movies/_mget")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"ids\":[\"5effaa5662679b5af2c58829\",\"60f6cd5366949871c415d9fe\",\"60f6cd5366949871c415d9fd\"]}")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.movies[0].title").isEqualTo("The Shining")
+            .jsonPath("$.movies[1].title").isEqualTo("2001: A Space Odyssey")
+            .jsonPath("$.missing[0]").isEqualTo("60f6cd5366949871c415d9fe");
+
+        webTestClient.post().uri("/api/movies/_mget")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"ids\":[]}")
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Create movie")
+    public void createMovie() {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(moviesRepository.save(movie)).willReturn(Mono.just(movie));
+
+        webTestClient.post().uri("/api/movies")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().isCreated()
+            .expectBody()
+            .jsonPath("$.title").isEqualTo("2001: A Space Odyssey")
+            .jsonPath("$.runtime").isEqualTo("160 min");
+    }
+
+    @Test
+    @DisplayName("Movie events are published off the event loop")
+    public void eventsPublishedOffEventLoop() {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(writeCoalescer.isEnabled()).willReturn(true);
+        given(writeCoalescer.insert(eq(movie), any())).willReturn(CompletableFuture.completedFuture(movie.copyWithId("60f6cd5366949871c415d9fd")));
+        given(moviesRepository.removeById("60f6cd5366949871c415d9fd")).willReturn(Mono.just(movie.copyWithId("60f6cd5366949871c415d9fd")));
+        given(moviesRepository.deleteAll()).willReturn(Mono.empty());
+        eventThreads.names.clear();
+
+        webTestClient.post().uri("/api/movies")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().isCreated();
+        webTestClient.delete().uri("/api/movies/60f6cd5366949871c415d9fd")
+            .exchange()
+            .expectStatus().isNoContent();
+        webTestClient.delete().uri("/api/movies")
+            .exchange()
+            .expectStatus().isNoContent();
+
+        assertEquals(3, eventThreads.names.size());
+        assertTrue(eventThreads.names.stream().allMatch(name -> name.startsWith("boundedElastic")), eventThreads.names::toString);
+    }
+
+    @Test
+    @DisplayName("Create movie. Coalesced insert.")
+    public void createMovieCoalesced() {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(writeCoalescer.isEnabled()).willReturn(true);
+        given(writeCoalescer.insert(eq(movie), any())).willReturn(CompletableFuture.completedFuture(movie.copyWithId("60f6cd5366949871c415d9fd")));
+
+        webTestClient.post().uri("/api/movies")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().isCreated()
+            .expectBody()
+            .jsonPath("$.id").isEqualTo("60f6cd5366949871c415d9fd");
+
+        given(writeCoalescer.insert(eq(movie), any())).willReturn(CompletableFuture.failedFuture(new RejectedExecutionException("full")));
+
+        webTestClient.post().uri("/api/movies")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+            .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+
+        given(writeCoalescer.insert(eq(movie), any())).willReturn(CompletableFuture.failedFuture(new TimeoutException()));
+
+        webTestClient.post().uri("/api/movies")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+            .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+
+        given(writeCoalescer.insert(eq(movie), any())).willReturn(CompletableFuture.failedFuture(new IllegalStateException("Movie write did not complete in time")));
+
+        webTestClient.post().uri("/api/movies")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR)
+            .expectHeader().doesNotExist(HttpHeaders.RETRY_AFTER);
+    }
+
+    @Test
+    @DisplayName("Create movie. Throws exception.")
+    public void createMovieThrowsException() {
+        Movie movie = Movie.builder().title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160).genres(List.of("Mystery", "Sci-Fi"))
+            .director("Stanley Kubrick").build();
+
+        given(moviesRepository.save(movie)).willReturn(Mono.error(new RuntimeException("horror")));
+
+        webTestClient.post().uri("/api/movies")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movie))
+            .exchange()
+            .expectStatus().is5xxServerError();
+    }
+
+    @Test
+    @DisplayName("Get all movies. Sparse fieldset.")
+    public void getMoviesFields() {
+
+        given(moviesRepository.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), eq(MovieFields.of("title"))))
+            .willReturn(Flux.fromIterable(movieList()));
+
+        webTestClient.get().uri("/api/movies?fields=title")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$[0].id").isEqualTo("60f6cd5366949871c415d9fd")
+            .jsonPath("$[0].title").isEqualTo("2001: A Space Odyssey")
+            .jsonPath("$[0].year").doesNotExist()
+            .jsonPath("$[0].rated").doesNotExist()
+            .jsonPath("$[0].version").doesNotExist();
+
+        webTestClient.get().uri("/api/movies?fields=plot")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Get all movies. Binary formats.")
+    public void getMoviesBinary() throws Exception {
+
+        given(moviesRepository.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), any())).willReturn(Flux.fromIterable(movieList()));
+
+        for (ObjectMapper binary : List.of(new ObjectMapper(new SmileFactory()), new ObjectMapper(new CBORFactory()))) {
+            MediaType mediaType = binary.getFactory() instanceof SmileFactory
+                ? MediaType.parseMediaType("application/x-jackson-smile") : MediaType.parseMediaType("application/cbor");
+            byte[] body = webTestClient.get().uri("/api/movies?fields=title")
+                .accept(mediaType)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(mediaType)
+                .expectBody().returnResult().getResponseBody();
+
+            JsonNode movies = binary.readTree(body);
+            assertEquals(2, movies.size());
+            assertEquals("2001: A Space Odyssey", movies.get(0).get("title").asText());
+            assertFalse(movies.get(0).has("year"));
+        }
+    }
+
+    @Test
+    @DisplayName("Get all movies. First page.")
+    public void getMoviesFirstPage() {
+
+        given(moviesRepository.findMovies(new MovieFilter(), null, PageRequest.of(0, 1, Sort.by("id")), null)).willReturn(Flux.fromIterable(movieList()));
+
+        webTestClient.get().uri("/api/movies?limit=1")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueMatches(HttpHeaders.LINK, "<(http://[^/]+)?/api/movies\\?limit=1&after=YPbNU2aUmHHEFdn9>; rel=\"next\"")
+            .expectBody()
+            .jsonPath("$").value(hasSize(1))
+            .jsonPath("$[0].title").isEqualTo("2001: A Space Odyssey");
+
+        then(queryMetrics).should().recordResults(new MovieFilter(), false, 1);
+    }
+
+    @Test
+    @DisplayName("Get all movies. Not modified.")
+    public void getMoviesNotModified() {
+
+        given(watermark.current()).willReturn(Optional.of(new MoviesWatermark.Mark("kri6q2tc", 7, Instant.parse("2021-07-20T10:00:00Z"))));
+
+        webTestClient.get().uri("/api/movies?title=Shin")
+            .header(HttpHeaders.IF_NONE_MATCH, "W/\"kri6q2tc-7\"")
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"kri6q2tc-7\"");
+        then(moviesRepository).shouldHaveNoInteractions();
+        then(titleIndex).shouldHaveNoInteractions();
+    }
+
+    @Test
+    @DisplayName("Get all movies. Not modified in a binary format.")
+    public void getMoviesNotModifiedBinary() {
+
+        given(watermark.current()).willReturn(Optional.of(new MoviesWatermark.Mark("kri6q2tc", 7, Instant.parse("2021-07-20T10:00:00Z"))));
+
+        webTestClient.get().uri("/api/movies?title=Shin")
+            .accept(MediaType.APPLICATION_CBOR)
+            .header(HttpHeaders.IF_NONE_MATCH, "W/\"kri6q2tc-7+cbor\"")
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"kri6q2tc-7+cbor\"")
+            .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        then(moviesRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    @DisplayName("Get movie by ID. Not modified.")
+    public void getMovieByIdNotModified() {
+
+        given(moviesRepository.findById("60f6cd5366949871c415d9fd")).willReturn(Mono.just(movieList().get(0)));
+
+        webTestClient.get().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectBody().isEmpty();
+    }
+
+    @Test
+    @DisplayName("Get all movies. Next page.")
+    public void getMoviesNextPage() {
+
+        given(moviesRepository.findMovies(new MovieFilter(), new ObjectId("60f6cd5366949871c415d9fd"), PageRequest.of(0, 1, Sort.by("id")), null))
+            .willReturn(Flux.fromIterable(movieList().subList(1, 2)));
+
+        webTestClient.get().uri("/api/movies?limit=1&after=YPbNU2aUmHHEFdn9")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().doesNotExist(HttpHeaders.LINK)
+            .expectBody()
+            .jsonPath("$[0].title").isEqualTo("The Shining");
+    }
+
+    @Test
+    @DisplayName("Get all movies. Invalid limit and cursor.")
+    public void getMoviesInvalidParameters() {
+        webTestClient.get().uri("/api/movies?limit=0").exchange().expectStatus().isBadRequest();
+        webTestClient.get().uri("/api/movies?after=not-a-cursor").exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Get all movies. Not found.")
+    public void getMoviesNotFound() {
+
+        given(moviesRepository.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), isNull())).willReturn(Flux.empty());
+
+        webTestClient.get().uri("/api/movies").exchange().expectStatus().isNoContent();
+    }
+
+    @Test
+    @DisplayName("Get all movies. Throws exception.")
+    public void getMoviesThrowsException() {
+
+        given(moviesRepository.findMovies(any(MovieFilter.class), isNull(), any(Pageable.class), isNull())).willReturn(Flux.error(new RuntimeException("horror")));
+
+        webTestClient.get().uri("/api/movies").exchange().expectStatus().is5xxServerError();
+    }
+
+    @Test
+    @DisplayName("Get movies by title from the title index")
+    public void getMoviesFromTitleIndex() {
+
+        given(titleIndex.isAvailable()).willReturn(true);
+        List<String> searchThread = new ArrayList<>();
+        given(titleIndex.search("Shin", null, 101)).willAnswer(invocation -> {
+            searchThread.add(Thread.currentThread().getName());
+            return List.of("5effaa5662679b5af2c58829");
+        });
+        given(moviesRepository.findAllById(List.of("5effaa5662679b5af2c58829"), null)).willReturn(Flux.just(movieList().get(1)));
+
+        webTestClient.get().uri("/api/movies?title=Shin")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$").value(hasSize(1))
+            .jsonPath("$[0].title").isEqualTo("The Shining");
+        then(moviesRepository).should(never()).findMovies(any(MovieFilter.class), any(), any(Pageable.class), any());
+        then(queryMetrics).should().recordResults(any(MovieFilter.class), eq(true), eq(1));
+        assertTrue(searchThread.get(0).startsWith("boundedElastic"));
+    }
+
+    @Test
+    @DisplayName("Get similar movies")
+    public void getSimilarMovies() {
+
+        given(similarityIndex.isAvailable()).willReturn(true);
+        given(similarityIndex.similar("60f6cd5366949871c415d9fd", 2))
+            .willReturn(Optional.of(List.of("5effaa5662679b5af2c58829", "60f6cd5366949871c415d9fe")));
+        given(similarityIndex.similar("60f6cd5366949871c415d9fe", 10)).willReturn(Optional.empty());
+        given(moviesRepository.findAllById(List.of("5effaa5662679b5af2c58829", "60f6cd5366949871c415d9fe"), null))
+            .willReturn(Flux.just(movieList().get(1)));
+
+        webTestClient.get().uri("/api/movies/60f6cd5366949871c415d9fd/similar?k=2")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$").value(hasSize(1))
+            .jsonPath("$[0].title").isEqualTo("The Shining");
+
+        webTestClient.get().uri("/api/movies/60f6cd5366949871c415d9fe/similar").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Export movies")
+    public void exportMovies() {
+
+        given(moviesRepository.streamAll(500)).willReturn(Flux.fromIterable(movieList()));
+
+        webTestClient.get().uri("/api/movies/export")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+            .expectBody(String.class)
+            .isEqualTo(movieList().stream().map(ReactiveMoviesControllerTest::asJsonString).collect(Collectors.joining("\n", "", "\n")));
+    }
+
+    @Test
+    @DisplayName("Bulk insert movies. Invalid items are rejected.")
+    public void bulkInsertMovies() {
+
+        given(moviesRepository.insertUnordered(anyList())).willReturn(Mono.just(Map.of(1, "E11000 duplicate key error")));
+
+        webTestClient.post().uri("/api/movies/_bulk")
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .bodyValue("{\"title\": \"2001: A Space Odyssey\"}\n{\"title\": \"Lolita\", \"year\": {}}\n{\"title\": \"The Shining\"}\n")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.items").value(hasSize(3))
+            .jsonPath("$.items[0].status").isEqualTo(201)
+            .jsonPath("$.items[1].status").isEqualTo(400)
+            .jsonPath("$.items[2].status").isEqualTo(500)
+            .jsonPath("$.items[2].error").isEqualTo("E11000 duplicate key error")
+            .jsonPath("$.inserted").isEqualTo(1)
+            .jsonPath("$.failed").isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Bulk insert movies. Malformed payload.")
+    public void bulkInsertMoviesMalformed() {
+
+        given(moviesRepository.insertUnordered(anyList())).willReturn(Mono.just(Map.of()));
+
+        webTestClient.post().uri("/api/movies/_bulk")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("[{\"title\": \"2001: A Space Odyssey\"}, {\"title\": ")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.items").value(hasSize(2))
+            .jsonPath("$.items[1].index").isEqualTo(1)
+            .jsonPath("$.items[1].status").isEqualTo(400)
+            .jsonPath("$.inserted").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Get facets from counters")
+    public void getFacets() {
+        Map<MovieFacet, Map<String, Long>> counts = new EnumMap<>(MovieFacet.class);
+        counts.put(MovieFacet.GENRE, Map.of("Mystery", 2L, "Horror", 1L));
+
+        given(facetCounters.isAvailable()).willReturn(true);
+        given(facetCounters.counts()).willReturn(counts);
+
+        webTestClient.get().uri("/api/movies/facets")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.genre[0].value").isEqualTo("Mystery")
+            .jsonPath("$.genre[0].count").isEqualTo(2)
+            .jsonPath("$.director").value(hasSize(0));
+        then(moviesRepository).should(never()).countFacets(any(MovieFilter.class));
+    }
+
+    @Test
+    @DisplayName("Get movie by ID")
+    public void getMovieById() {
+
+        given(moviesRepository.findById("60f6cd5366949871c415d9fd")).willReturn(Mono.just(movieList().get(0)));
+        given(moviesRepository.findById("60f6cd5366949871c415d9fe")).willReturn(Mono.empty());
+
+        webTestClient.get().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.id").isEqualTo("60f6cd5366949871c415d9fd");
+        webTestClient.get().uri("/api/movies/{id}", "60f6cd5366949871c415d9fe").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Get movie by ID. Over the concurrency limit.")
+    public void getMovieByIdOverLimit() {
+
+        given(concurrencyLimiter.isEnabled()).willReturn(true);
+        given(concurrencyLimiter.tryAcquire(Workload.READ)).willReturn(Optional.empty());
+        given(concurrencyLimiter.getRetryAfter()).willReturn("1");
+
+        webTestClient.get().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+            .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+
+        then(moviesRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    @DisplayName("Update movie")
+    public void updateMovie() {
+        Movie updatedMovie = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year(1969).rated("G").runtimeMinutes(160)
+            .genres(List.of("Mystery", "Sci-Fi")).director("Stanley Kubrick").build();
+
+        given(moviesRepository.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), isNull())).willReturn(Mono.just(movieList().get(0)));
+
+        webTestClient.put().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(updatedMovie))
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+            .expectBody()
+            .jsonPath("$.year").isEqualTo("1969");
+        then(moviesRepository).should(never()).findById(anyString());
+    }
+
+    @Test
+    @DisplayName("Update movie. Not Found.")
+    public void updateMovieNotFound() {
+
+        given(moviesRepository.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), isNull())).willReturn(Mono.empty());
+
+        webTestClient.put().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movieList().get(0)))
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Update movie. If-Match any on a missing movie.")
+    public void updateMovieIfMatchAnyNotFound() {
+
+        given(moviesRepository.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), isNull())).willReturn(Mono.empty());
+
+        webTestClient.put().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "*")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(asJsonString(movieList().get(0)))
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    @DisplayName("Patch movie. If-Match list.")
+    public void patchMovieIfMatchList() {
+        Movie previous = movieList().get(0);
+        previous.setVersion(3L);
+
+        given(moviesRepository.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), eq(Set.of(3L)))).willReturn(Mono.just(previous));
+
+        webTestClient.patch().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "\"3\", \"3+cbor\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"year\":\"1969\"}")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals(HttpHeaders.ETAG, "\"4\"");
+    }
+
+    @Test
+    @DisplayName("Patch movie. Version conflict.")
+    public void patchMovieVersionConflict() {
+
+        given(moviesRepository.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), eq(Set.of(3L)))).willReturn(Mono.empty());
+        given(moviesRepository.existsById("60f6cd5366949871c415d9fd")).willReturn(Mono.just(true));
+
+        webTestClient.patch().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "\"3\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"year\":\"1969\"}")
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        webTestClient.patch().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "\"3+smile\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"year\":\"1969\"}")
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    @DisplayName("Patch movie")
+    public void patchMovie() {
+        Movie previous = movieList().get(0);
+        previous.setVersion(3L);
+
+        given(moviesRepository.modify(eq("60f6cd5366949871c415d9fd"), any(MovieUpdate.class), eq(Set.of(3L)))).willReturn(Mono.just(previous));
+
+        webTestClient.patch().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .header(HttpHeaders.IF_MATCH, "\"3\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"year\":\"1969\"}")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals(HttpHeaders.ETAG, "\"4\"")
+            .expectBody()
+            .jsonPath("$.year").isEqualTo("1969")
+            .jsonPath("$.title").isEqualTo("2001: A Space Odyssey");
+
+        webTestClient.patch().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"version\":7}")
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Delete movie")
+    public void deleteMovie() {
+
+        given(moviesRepository.removeById("60f6cd5366949871c415d9fd")).willReturn(Mono.just(movieList().get(0)));
+        given(moviesRepository.removeById("60f6cd5366949871c415d9fe")).willReturn(Mono.error(new RuntimeException("horror")));
+
+        webTestClient.delete().uri("/api/movies/{id}", "60f6cd5366949871c415d9fd").exchange().expectStatus().isNoContent();
+        webTestClient.delete().uri("/api/movies/{id}", "60f6cd5366949871c415d9fe").exchange().expectStatus().is5xxServerError();
+    }
+
+    @Test
+    @DisplayName("Delete all movies")
+    public void deleteAllMovies() {
+
+        given(moviesRepository.deleteAll()).willReturn(Mono.empty());
+
+        webTestClient.delete().uri("/api/movies").exchange().expectStatus().isNoContent();
+    }
+
+    public List<Movie> movieList() {
+        List<Movie> movies = new ArrayList<>();
+        movies.add(Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160)
+            .genres(List.of("Mystery", "Sci-Fi")).director("Stanley Kubrick").build());
+        movies.add(Movie.builder().id("5effaa5662679b5af2c58829").title("The Shining").year(1980).rated("R").runtimeMinutes(142)
+            .genres(List.of("Horror", "Mystery", "Thriller")).director("Stanley Kubrick").build());
+        return movies;
+    }
+
+    public static String asJsonString(final Object obj) {
+        try {
+            return new ObjectMapper().writeValueAsString(obj);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static class EventThreads {
+
+        private final List<String> names = new CopyOnWriteArrayList<>();
+
+        @EventListener({MovieSavedEvent.class, MovieDeletedEvent.class, MoviesDeletedEvent.class})
+        public void onEvent() {
+            names.add(Thread.currentThread().getName());
+        }
+
+    }
+
+}
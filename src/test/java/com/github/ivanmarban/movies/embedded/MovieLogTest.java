@@ -0,0 +1,200 @@
+package com.github.ivanmarban.movies.embedded;
+
+import com.github.ivanmarban.movies.model.Movie;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("MovieLog Unit Tests")
+public class MovieLogTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private MovieLog movieLog;
+
+    @AfterEach
+    public void close() throws IOException {
+        movieLog.close();
+    }
+
+    @Test
+    @DisplayName("Movies are read back, replaced and deleted")
+    public void putGetRemove() throws IOException {
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        Movie movie = movie("2001: A Space Odyssey");
+
+        assertNull(movieLog.update(movie.getId(), current -> movie));
+        assertEquals(movie, movieLog.get(movie.getId()));
+
+        Movie updated = movie.copyWithId(movie.getId());
+        updated.setRated("PG");
+        assertEquals(movie, movieLog.update(movie.getId(), current -> updated));
+        assertEquals("PG", movieLog.get(movie.getId()).getRated());
+        assertEquals(1, movieLog.size());
+
+        assertEquals(updated, movieLog.update(movie.getId(), current -> null));
+        assertNull(movieLog.get(movie.getId()));
+        assertNull(movieLog.get("not an id"));
+        assertEquals(0, movieLog.size());
+    }
+
+    @Test
+    @DisplayName("Movies are recovered when the log is reopened")
+    public void reopen() throws IOException {
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Movie movie = movie("Movie " + i);
+            movieLog.update(movie.getId(), current -> movie);
+            movies.add(movie);
+        }
+        Movie deleted = movies.remove(10);
+        movieLog.update(deleted.getId(), current -> null);
+        movieLog.close();
+
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+
+        assertEquals(4999, movieLog.size());
+        assertNull(movieLog.get(deleted.getId()));
+        assertEquals(movies.get(4998), movieLog.get(movies.get(4998).getId()));
+        assertEquals(movies.stream().map(Movie::getId).collect(Collectors.toList()), movieLog.ids());
+    }
+
+    @Test
+    @DisplayName("A half written record is discarded when the log is reopened")
+    public void recoverTornRecord() throws IOException {
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        Movie first = movie("2001: A Space Odyssey");
+        Movie second = movie("The Shining");
+        movieLog.update(first.getId(), current -> first);
+        movieLog.update(second.getId(), current -> second);
+        movieLog.close();
+        try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            int secondRecord = 8 + 8 + 1 + MovieRecords.encode(first).length;
+            channel.write(ByteBuffer.wrap(new byte[]{0x5A, 0x5A, 0x5A, 0x5A}), secondRecord + 20);
+        }
+
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        assertEquals(first, movieLog.get(first.getId()));
+        assertNull(movieLog.get(second.getId()));
+
+        Movie third = movie("Barry Lyndon");
+        movieLog.update(third.getId(), current -> third);
+        movieLog.close();
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        assertEquals(List.of(first.getId(), third.getId()), movieLog.ids());
+    }
+
+    @Test
+    @DisplayName("Compaction deletes the segments left with few live records")
+    public void compact() throws IOException {
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        Movie kept = movie("2001: A Space Odyssey");
+        Movie deleted = movie("The Shining");
+        movieLog.update(kept.getId(), current -> kept);
+        movieLog.update(deleted.getId(), current -> deleted);
+        movieLog.update(deleted.getId(), current -> null);
+        for (int i = 0; i < 500; i++) {
+            int rating = i;
+            movieLog.update(kept.getId(), current -> {
+                Movie updated = current.copyWithId(current.getId());
+                updated.setRated("R" + rating);
+                return updated;
+            });
+        }
+        int before = segments().size();
+        assertTrue(before > 2);
+
+        assertTrue(movieLog.compact(0.5) > 0);
+
+        assertTrue(segments().size() < before);
+        assertEquals("R499", movieLog.get(kept.getId()).getRated());
+        movieLog.close();
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        assertEquals("R499", movieLog.get(kept.getId()).getRated());
+        assertNull(movieLog.get(deleted.getId()));
+        assertEquals(1, movieLog.size());
+    }
+
+    @Test
+    @DisplayName("Movies copied by a compaction survive without syncing writes or closing the log")
+    public void compactWithoutSyncWrites(@TempDir Path copy) throws IOException {
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        List<Movie> kept = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Movie movie = movie("Movie " + i);
+            movieLog.update(movie.getId(), current -> movie);
+            if (i % 10 == 0) {
+                kept.add(movie);
+            } else {
+                movieLog.update(movie.getId(), current -> null);
+            }
+        }
+        Movie latest = movie("2001: A Space Odyssey");
+        movieLog.update(latest.getId(), current -> latest);
+
+        assertTrue(movieLog.compact(0.5) > 0);
+
+        for (Path segment : segments()) {
+            Files.copy(segment, copy.resolve(segment.getFileName()));
+        }
+        try (MovieLog reopened = MovieLog.open(copy, SEGMENT_SIZE, false)) {
+            assertEquals(kept.size() + 1, reopened.size());
+            for (Movie movie : kept) {
+                assertEquals(movie.getTitle(), reopened.get(movie.getId()).getTitle());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Clearing the log deletes every movie for good")
+    public void clear() throws IOException {
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        for (int i = 0; i < 100; i++) {
+            Movie movie = movie("Movie " + i);
+            movieLog.update(movie.getId(), current -> movie);
+        }
+
+        movieLog.clear();
+
+        assertEquals(0, movieLog.size());
+        assertEquals(1, segments().size());
+        Movie movie = movie("2001: A Space Odyssey");
+        movieLog.update(movie.getId(), current -> movie);
+        movieLog.close();
+        movieLog = MovieLog.open(directory, SEGMENT_SIZE, false);
+        assertEquals(List.of(movie.getId()), movieLog.ids());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(MovieLog.SUFFIX)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Movie movie(String title) {
+        return Movie.builder().id(new ObjectId().toHexString()).title(title).year(1968).rated("G").runtimeMinutes(160)
+            .genres(List.of("Mystery", "Sci-Fi")).director("Stanley Kubrick").version(0L).build();
+    }
+
+}
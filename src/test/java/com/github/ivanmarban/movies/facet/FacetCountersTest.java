@@ -0,0 +1,177 @@
+package com.github.ivanmarban.movies.facet;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFacet;
+import com.github.ivanmarban.movies.model.MovieFilter;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@DisplayName("FacetCounters Unit Tests")
+public class FacetCountersTest {
+
+    private MovieStore movieStore;
+
+    private TaskScheduler taskScheduler;
+
+    private FacetCounters facetCounters;
+
+    private Map<MovieFacet, Map<String, Long>> counts;
+
+    @BeforeEach
+    public void createCounters() {
+        movieStore = mock(MovieStore.class);
+        taskScheduler = mock(TaskScheduler.class);
+        counts = new EnumMap<>(MovieFacet.class);
+        counts.put(MovieFacet.GENRE, Map.of("Mystery", 2L, "Sci-Fi", 1L, "Horror", 1L, "Thriller", 1L));
+        counts.put(MovieFacet.DIRECTOR, Map.of("Stanley Kubrick", 2L));
+        counts.put(MovieFacet.DECADE, Map.of("1960", 1L, "1980", 1L));
+        counts.put(MovieFacet.RATED, Map.of("G", 1L, "R", 1L));
+        given(movieStore.countFacets(any(MovieFilter.class))).willReturn(counts);
+        facetCounters = new FacetCounters(movieStore, taskScheduler, new MoviesProperties());
+    }
+
+    @Test
+    @DisplayName("Reconciliation is scheduled once ready")
+    public void start() {
+        facetCounters.start();
+        then(taskScheduler).should().scheduleWithFixedDelay(any(Runnable.class), eq(Duration.ofHours(6)));
+    }
+
+    @Test
+    @DisplayName("Unavailable until computed")
+    public void unavailableUntilComputed() {
+        assertFalse(facetCounters.isAvailable());
+        facetCounters.reconcile();
+        assertTrue(facetCounters.isAvailable());
+        assertEquals(2L, facetCounters.counts().get(MovieFacet.GENRE).get("Mystery"));
+        assertEquals(Map.of("1960", 1L, "1980", 1L), facetCounters.counts().get(MovieFacet.DECADE));
+    }
+
+    @Test
+    @DisplayName("Created movies are counted")
+    public void movieCreated() {
+        facetCounters.reconcile();
+        facetCounters.onMovieSaved(new MovieSavedEvent(movie(1975, "PG", "Drama", "War")));
+        Map<MovieFacet, Map<String, Long>> counts = facetCounters.counts();
+        assertEquals(1L, counts.get(MovieFacet.GENRE).get("Drama"));
+        assertEquals(3L, counts.get(MovieFacet.DIRECTOR).get("Stanley Kubrick"));
+        assertEquals(1L, counts.get(MovieFacet.DECADE).get("1970"));
+        assertEquals(1L, counts.get(MovieFacet.RATED).get("PG"));
+    }
+
+    @Test
+    @DisplayName("Updated movies move between values")
+    public void movieUpdated() {
+        facetCounters.reconcile();
+        facetCounters.onMovieSaved(new MovieSavedEvent(movie(1969, "G", "Mystery", "Sci-Fi"), movie(1968, "G", "Mystery", "Sci-Fi")));
+        facetCounters.onMovieSaved(new MovieSavedEvent(movie(1980, "PG", "Horror"), movie(1980, "R", "Horror", "Thriller")));
+        Map<MovieFacet, Map<String, Long>> counts = facetCounters.counts();
+        assertEquals(Map.of("1960", 1L, "1980", 1L), counts.get(MovieFacet.DECADE));
+        assertEquals(Map.of("G", 1L, "PG", 1L), counts.get(MovieFacet.RATED));
+        assertFalse(counts.get(MovieFacet.GENRE).containsKey("Thriller"));
+        assertEquals(2L, counts.get(MovieFacet.GENRE).get("Mystery"));
+    }
+
+    @Test
+    @DisplayName("Deleted movies are no longer counted")
+    public void movieDeleted() {
+        facetCounters.reconcile();
+        facetCounters.onMovieDeleted(new MovieDeletedEvent("5effaa5662679b5af2c58829", movie(1980, "R", "Horror", "Mystery", "Thriller")));
+        Map<MovieFacet, Map<String, Long>> counts = facetCounters.counts();
+        assertEquals(Map.of("Mystery", 1L, "Sci-Fi", 1L), counts.get(MovieFacet.GENRE));
+        assertEquals(Map.of("1960", 1L), counts.get(MovieFacet.DECADE));
+        facetCounters.onMoviesDeleted(new MoviesDeletedEvent());
+        assertTrue(facetCounters.counts().values().stream().allMatch(Map::isEmpty));
+    }
+
+    @Test
+    @DisplayName("Reconciliation replaces drifted counts")
+    public void reconcile() {
+        facetCounters.reconcile();
+        facetCounters.onMovieSaved(new MovieSavedEvent(movie(1999, "R", "Drama")));
+        facetCounters.reconcile();
+        assertFalse(facetCounters.counts().get(MovieFacet.GENRE).containsKey("Drama"));
+        assertEquals(2L, facetCounters.counts().get(MovieFacet.DIRECTOR).get("Stanley Kubrick"));
+        then(movieStore).should(times(2)).countFacets(new MovieFilter());
+    }
+
+    @Test
+    @DisplayName("A change counted while the aggregation runs is not counted twice when the aggregation saw it")
+    public void reconcileConcurrentChangeSeen() {
+        Map<MovieFacet, Map<String, Long>> withDrama = new EnumMap<>(MovieFacet.class);
+        withDrama.put(MovieFacet.GENRE, Map.of("Mystery", 2L, "Sci-Fi", 1L, "Horror", 1L, "Thriller", 1L, "Drama", 1L));
+        withDrama.put(MovieFacet.DIRECTOR, Map.of("Stanley Kubrick", 3L));
+        withDrama.put(MovieFacet.DECADE, Map.of("1960", 1L, "1980", 1L, "1970", 1L));
+        withDrama.put(MovieFacet.RATED, Map.of("G", 1L, "R", 1L, "PG", 1L));
+        given(movieStore.countFacets(any(MovieFilter.class))).willAnswer(invocation -> {
+            facetCounters.onMovieSaved(new MovieSavedEvent(movie(1975, "PG", "Drama")));
+            return withDrama;
+        }).willReturn(withDrama);
+        facetCounters.reconcile();
+        assertTrue(facetCounters.isAvailable());
+        assertEquals(withDrama, facetCounters.counts());
+        then(movieStore).should(times(2)).countFacets(new MovieFilter());
+    }
+
+    @Test
+    @DisplayName("The counts kept by the events stay when movies keep changing while the aggregation runs")
+    public void reconcileWhileChanging() {
+        facetCounters.reconcile();
+        given(movieStore.countFacets(any(MovieFilter.class))).willAnswer(invocation -> {
+            facetCounters.onMovieSaved(new MovieSavedEvent(movie(1975, "PG", "Drama")));
+            return counts;
+        });
+        facetCounters.reconcile();
+        assertEquals(Map.of("Mystery", 2L, "Sci-Fi", 1L, "Horror", 1L, "Thriller", 1L, "Drama", 3L),
+            facetCounters.counts().get(MovieFacet.GENRE));
+        assertEquals(Map.of("Stanley Kubrick", 5L), facetCounters.counts().get(MovieFacet.DIRECTOR));
+        then(movieStore).should(times(4)).countFacets(new MovieFilter());
+        then(taskScheduler).should(never()).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    @DisplayName("Movies deleted while the aggregation runs are not counted")
+    public void reconcileConcurrentDeleteAll() {
+        given(movieStore.countFacets(any(MovieFilter.class))).willAnswer(invocation -> {
+            facetCounters.onMoviesDeleted(new MoviesDeletedEvent());
+            facetCounters.onMovieSaved(new MovieSavedEvent(movie(1975, "PG", "Drama")));
+            return counts;
+        }).willReturn(Map.of(MovieFacet.GENRE, Map.of("Drama", 1L), MovieFacet.DECADE, Map.of("1970", 1L)));
+        facetCounters.reconcile();
+        assertEquals(Map.of("Drama", 1L), facetCounters.counts().get(MovieFacet.GENRE));
+        assertEquals(Map.of("1970", 1L), facetCounters.counts().get(MovieFacet.DECADE));
+    }
+
+    @Test
+    @DisplayName("The first load is retried later when movies keep changing while it runs")
+    public void loadRetriedWhileChanging() {
+        given(movieStore.countFacets(any(MovieFilter.class))).willAnswer(invocation -> {
+            facetCounters.onMovieSaved(new MovieSavedEvent(movie(1975, "PG", "Drama")));
+            return counts;
+        });
+        facetCounters.reconcile();
+        assertFalse(facetCounters.isAvailable());
+        then(taskScheduler).should().schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    private Movie movie(int year, String rated, String... genres) {
+        return Movie.builder().title("Untitled").year(year).rated(rated).genres(List.of(genres)).director("Stanley Kubrick").build();
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.github.ivanmarban.movies.limit;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ConcurrencyLimiter Unit Tests")
+public class ConcurrencyLimiterTest {
+
+    private static final long THRESHOLD = Duration.ofMillis(100).toNanos();
+
+    private MeterRegistry meterRegistry;
+
+    private ConcurrencyLimiter limiter;
+
+    @BeforeEach
+    public void createLimiter() {
+        MoviesProperties properties = new MoviesProperties();
+        MoviesProperties.Limit read = properties.getConcurrency().getRead();
+        read.setInitialLimit(4);
+        read.setMinLimit(1);
+        read.setMaxLimit(8);
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new ConcurrencyLimiter(meterRegistry, properties);
+    }
+
+    @Test
+    @DisplayName("Requests over the limit are rejected and counted, each workload having its own limit")
+    public void rejectsOverLimit() {
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(limiter.tryAcquire(Workload.READ).orElseThrow());
+        }
+
+        assertEquals(Optional.empty(), limiter.tryAcquire(Workload.READ));
+        assertTrue(limiter.tryAcquire(Workload.WRITE).isPresent());
+        assertEquals(1, meterRegistry.get(ConcurrencyLimiter.REJECTED).tag("workload", "read").counter().count());
+        assertEquals(4, meterRegistry.get(ConcurrencyLimiter.IN_FLIGHT).tag("workload", "read").gauge().value());
+
+        permits.get(0).cancel();
+        assertTrue(limiter.tryAcquire(Workload.READ).isPresent());
+    }
+
+    @Test
+    @DisplayName("Slow bulk loads decrease their own limit, not the limit of the expensive queries")
+    public void bulkLoadsHaveTheirOwnLimit() throws InterruptedException {
+        MoviesProperties properties = new MoviesProperties();
+        MoviesProperties.Limit bulk = properties.getConcurrency().getBulk();
+        bulk.setInitialLimit(4);
+        bulk.setMinLimit(1);
+        bulk.setLatencyThreshold(Duration.ofNanos(1));
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(meterRegistry, properties);
+
+        ConcurrencyLimiter.Permit load = limiter.tryAcquire(Workload.BULK).orElseThrow();
+        Thread.sleep(1);
+        load.recordStoreCall(2, false);
+        load.release();
+
+        assertTrue(meterRegistry.get(ConcurrencyLimiter.LIMIT).tag("workload", "bulk").gauge().value() < 4);
+        assertEquals(8, meterRegistry.get(ConcurrencyLimiter.LIMIT).tag("workload", "expensive").gauge().value());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(limiter.tryAcquire(Workload.EXPENSIVE).isPresent());
+        }
+    }
+
+    @Test
+    @DisplayName("Only the store calls drive the limit, requests answered without one leave it as it is")
+    public void adaptsToStoreCalls() {
+        ConcurrencyLimiter.Permit cached = limiter.tryAcquire(Workload.READ).orElseThrow();
+        cached.release();
+        assertEquals(4, meterRegistry.get(ConcurrencyLimiter.LIMIT).tag("workload", "read").gauge().value());
+
+        ConcurrencyLimiter.Permit timedOut = limiter.tryAcquire(Workload.READ).orElseThrow();
+        timedOut.recordStoreCall(1, false);
+        timedOut.recordStoreCall(1, true);
+        timedOut.release();
+        assertEquals(3, meterRegistry.get(ConcurrencyLimiter.LIMIT).tag("workload", "read").gauge().value());
+        assertEquals(0, meterRegistry.get(ConcurrencyLimiter.IN_FLIGHT).tag("workload", "read").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Timeouts and unavailable stores are failures, rejected data is not")
+    public void classifiesStoreFailures() {
+        assertTrue(StoreLatencyInterceptor.isFailure(new QueryTimeoutException("Timed out")));
+        assertTrue(StoreLatencyInterceptor.isFailure(new DataAccessResourceFailureException("Unreachable")));
+        assertTrue(StoreLatencyInterceptor.isFailure(new UncheckedIOException(new IOException("Closed"))));
+        assertFalse(StoreLatencyInterceptor.isFailure(new DuplicateKeyException("Duplicate")));
+        assertFalse(StoreLatencyInterceptor.isFailure(new OptimisticLockingFailureException("Conflict")));
+    }
+
+    @Test
+    @DisplayName("Slow requests decrease the limit once per round trip, fast ones grow it back while it is in use")
+    public void adaptsToLatency() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 20, THRESHOLD, 0.5);
+        long start = System.nanoTime() + 1;
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+
+        limit.release(start, start + 2 * THRESHOLD, 2 * THRESHOLD, false);
+        limit.release(start, start + 2 * THRESHOLD, 2 * THRESHOLD, false);
+        assertEquals(5, limit.getLimit());
+
+        limit.release(start + 3 * THRESHOLD, start + 5 * THRESHOLD, 2 * THRESHOLD, true);
+        assertEquals(2, limit.getLimit());
+
+        limit.release(start + 6 * THRESHOLD, start + 6 * THRESHOLD + 1, 1, false);
+        assertEquals(0, limit.getInFlight());
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.tryAcquire());
+            assertTrue(limit.tryAcquire());
+            limit.release(start, start + 1, 1, false);
+            limit.release(start, start + 1, 1, false);
+        }
+        assertTrue(limit.getLimit() > 2);
+    }
+
+    @Test
+    @DisplayName("The limit stays within its bounds")
+    public void staysWithinBounds() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 2, 3, THRESHOLD, 0.1);
+        long start = System.nanoTime() + 1;
+
+        assertTrue(limit.tryAcquire());
+        limit.release(start, start + 2 * THRESHOLD, 2 * THRESHOLD, true);
+        assertEquals(2, limit.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limit.tryAcquire());
+            assertTrue(limit.tryAcquire());
+            limit.release(start, start + 1, 1, false);
+            limit.release(start, start + 1, 1, false);
+        }
+        assertEquals(3, limit.getLimit());
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.github.ivanmarban.movies.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DisplayName("ConnectionPoolWaitListener Unit Tests")
+public class ConnectionPoolWaitListenerTest {
+
+    private static final ServerId SERVER = new ServerId(new ClusterId("movies"), new ServerAddress("mongo", 27017));
+
+    private MeterRegistry meterRegistry;
+
+    private ConnectionPoolWaitListener listener;
+
+    @BeforeEach
+    public void createListener() {
+        meterRegistry = new SimpleMeterRegistry();
+        listener = new ConnectionPoolWaitListener(meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Check outs are timed by outcome")
+    public void checkOutsAreTimed() {
+        listener.connectionCheckOutStarted(new ConnectionCheckOutStartedEvent(SERVER));
+        listener.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(SERVER)));
+        listener.connectionCheckOutStarted(new ConnectionCheckOutStartedEvent(SERVER));
+        listener.connectionCheckOutFailed(new ConnectionCheckOutFailedEvent(SERVER, ConnectionCheckOutFailedEvent.Reason.TIMEOUT));
+
+        assertEquals(1, meterRegistry.get(ConnectionPoolWaitListener.WAIT)
+            .tags("cluster.id", SERVER.getClusterId().getValue(), "server.address", "mongo:27017", "outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get(ConnectionPoolWaitListener.WAIT).tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    @DisplayName("Check outs completed on another thread are not timed")
+    public void checkOutsOnAnotherThreadAreNotTimed() throws InterruptedException {
+        listener.connectionCheckOutStarted(new ConnectionCheckOutStartedEvent(SERVER));
+        Thread thread = new Thread(() -> listener.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(SERVER))));
+        thread.start();
+        thread.join();
+
+        assertNull(meterRegistry.find(ConnectionPoolWaitListener.WAIT).timer());
+    }
+
+    @Test
+    @DisplayName("The maximum pool size is published while the pool is open")
+    public void maxSizeIsPublished() {
+        listener.connectionPoolCreated(new ConnectionPoolCreatedEvent(SERVER, ConnectionPoolSettings.builder().maxSize(250).build()));
+
+        assertEquals(250, meterRegistry.get(ConnectionPoolWaitListener.MAX_SIZE).tag("server.address", "mongo:27017").gauge().value());
+
+        listener.connectionPoolClosed(new ConnectionPoolClosedEvent(SERVER));
+
+        assertNull(meterRegistry.find(ConnectionPoolWaitListener.MAX_SIZE).gauge());
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.github.ivanmarban.movies.metrics;
+
+import com.github.ivanmarban.movies.model.MovieFilter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("MovieQueryMetrics Unit Tests")
+public class MovieQueryMetricsTest {
+
+    @Test
+    @DisplayName("Results are recorded by query and source")
+    public void recordResults() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MovieQueryMetrics queryMetrics = new MovieQueryMetrics(meterRegistry);
+
+        queryMetrics.recordResults(new MovieFilter(), false, 100);
+        queryMetrics.recordResults(new MovieFilter(), false, 20);
+        queryMetrics.recordResults(MovieFilter.builder().title("space").build(), true, 3);
+        queryMetrics.recordResults(MovieFilter.builder().title("space").yearFrom(1960).build(), false, 1);
+
+        DistributionSummary all = meterRegistry.get(MovieQueryMetrics.RESULTS).tags("query", "all", "source", "database").summary();
+        assertEquals(2, all.count());
+        assertEquals(120, all.totalAmount());
+        assertEquals(3, meterRegistry.get(MovieQueryMetrics.RESULTS).tags("query", "title", "source", "index").summary().totalAmount());
+        assertEquals(1, meterRegistry.get(MovieQueryMetrics.RESULTS).tags("query", "filter", "source", "database").summary().count());
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.github.ivanmarban.movies.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("SlowQueryListener Unit Tests")
+public class SlowQueryListenerTest {
+
+    private static final ConnectionDescription CONNECTION = new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    @Test
+    @DisplayName("Find commands are described with their namespace and filter fields")
+    public void describeFind() {
+        BsonDocument command = BsonDocument.parse("{find: 'movies', filter: {director: 'Stanley Kubrick', year: {$gte: 1970}}, limit: 101, $db: 'movies'}");
+
+        String description = SlowQueryListener.describe(new CommandStartedEvent(1, CONNECTION, "movies", "find", command));
+
+        assertEquals("find movies.movies filter [director, year]", description);
+    }
+
+    @Test
+    @DisplayName("Inserted documents are not described")
+    public void describeInsert() {
+        BsonDocument command = BsonDocument.parse("{insert: 'movies', ordered: false, documents: [{title: 'The Shining'}]}");
+
+        String description = SlowQueryListener.describe(new CommandStartedEvent(1, CONNECTION, "movies", "insert", command));
+
+        assertEquals("insert movies.movies", description);
+    }
+
+    @Test
+    @DisplayName("Aggregations are described with their stages")
+    public void describeAggregate() {
+        BsonDocument command = BsonDocument.parse("{aggregate: 'movies', pipeline: [{$match: {rated: 'R'}}, {$group: {_id: '$director'}}]}");
+
+        String description = SlowQueryListener.describe(new CommandStartedEvent(1, CONNECTION, "movies", "aggregate", command));
+
+        assertEquals("aggregate movies.movies pipeline [$match, $group]", description);
+    }
+
+    @Test
+    @DisplayName("Completed commands are forgotten")
+    public void completedCommandsAreForgotten() {
+        SlowQueryListener listener = new SlowQueryListener(Duration.ofMillis(100));
+        BsonDocument command = BsonDocument.parse("{count: 'movies', query: {}}");
+
+        listener.commandStarted(new CommandStartedEvent(1, CONNECTION, "movies", "count", command));
+        listener.commandStarted(new CommandStartedEvent(2, CONNECTION, "movies", "count", command));
+        assertEquals(2, listener.inFlight());
+
+        listener.commandSucceeded(new CommandSucceededEvent(1, CONNECTION, "count", new BsonDocument(), TimeUnit.MILLISECONDS.toNanos(250)));
+        listener.commandFailed(new CommandFailedEvent(2, CONNECTION, "count", 10, new RuntimeException("horror")));
+        assertEquals(0, listener.inFlight());
+    }
+
+}
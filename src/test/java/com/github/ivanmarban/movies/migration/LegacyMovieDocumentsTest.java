@@ -0,0 +1,76 @@
+package com.github.ivanmarban.movies.migration;
+
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Field;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LegacyMovieDocuments Unit Tests")
+public class LegacyMovieDocumentsTest {
+
+    @Test
+    @DisplayName("Upgrade legacy document")
+    public void upgrade() {
+        Document document = new Document("title", "2001: A Space Odyssey").append("year", "1968").append("runtime", "160 min")
+            .append("genre", "Mystery, Sci-Fi");
+
+        assertTrue(LegacyMovieDocuments.isLegacy(document));
+        LegacyMovieDocuments.upgrade(document);
+
+        assertFalse(LegacyMovieDocuments.isLegacy(document));
+        assertEquals(1968, document.get("year"));
+        assertEquals(160, document.get("runtimeMinutes"));
+        assertEquals(List.of("Mystery", "Sci-Fi"), document.get("genres"));
+        assertFalse(document.containsKey("runtime"));
+        assertFalse(document.containsKey("genre"));
+    }
+
+    @Test
+    @DisplayName("Upgrade legacy document with unparseable values")
+    public void upgradeUnparseable() {
+        Document document = new Document("year", "1999–2001").append("runtime", "N/A");
+
+        LegacyMovieDocuments.upgrade(document);
+
+        assertFalse(LegacyMovieDocuments.isLegacy(document));
+        assertEquals(new Document("legacyYear", "1999–2001").append("legacyRuntime", "N/A"), document);
+        assertEquals(new Document("$unset", new Document("runtime", 1).append("genre", 1).append("year", 1))
+                .append("$set", new Document("legacyYear", "1999–2001").append("legacyRuntime", "N/A")),
+            LegacyMovieDocuments.toUpdate(document).getUpdateObject());
+    }
+
+    @Test
+    @DisplayName("Typed document is not legacy")
+    public void typedDocument() {
+        Document document = new Document("year", 1968).append("runtimeMinutes", 160).append("genres", List.of("Mystery", "Sci-Fi"));
+
+        assertFalse(LegacyMovieDocuments.isLegacy(document));
+        assertEquals(new Document("$unset", new Document("runtime", 1).append("genre", 1))
+                .append("$set", new Document("year", 1968).append("runtimeMinutes", 160).append("genres", List.of("Mystery", "Sci-Fi"))),
+            LegacyMovieDocuments.toUpdate(document).getUpdateObject());
+    }
+
+    @Test
+    @DisplayName("Supersede legacy fields of written typed fields")
+    public void supersede() {
+        Update update = LegacyMovieDocuments.supersede(new Update().set("title", "The Shining").set("year", 1980).unset("runtimeMinutes"));
+
+        assertEquals(new Document("$set", new Document("title", "The Shining").append("year", 1980))
+            .append("$unset", new Document("runtimeMinutes", 1).append("legacyYear", 1).append("runtime", 1).append("legacyRuntime", 1)),
+            update.getUpdateObject());
+    }
+
+    @Test
+    @DisplayName("Project legacy counterparts")
+    public void project() {
+        Field fields = LegacyMovieDocuments.project(new Field().include("title").include("genres"));
+
+        assertEquals(new Document("title", 1).append("genres", 1).append("genre", 1), fields.getFieldsObject());
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.github.ivanmarban.movies.migration;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.support.TestPropertySourceUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@SpringBootTest(properties = "movies.migration.batch-size=2")
+@Testcontainers
+@ContextConfiguration(initializers = MovieSchemaMigrationIT.Initializer.class)
+@DisplayName("MovieSchemaMigration Integration Tests")
+public class MovieSchemaMigrationIT {
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.4.2");
+
+    @Autowired
+    private MovieSchemaMigration migration;
+
+    @Autowired
+    private MovieStore movieStore;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @AfterEach
+    private void cleanDatabase() {
+        movieStore.deleteAll();
+        mongoTemplate.dropCollection(MovieSchemaMigration.CHECKPOINTS);
+    }
+
+    @Test
+    @DisplayName("Legacy documents are read as typed movies")
+    public void readLegacyDocument() {
+        Document legacy = legacyDocument("The Shining", "1980", "142 min", "Horror, Mystery, Thriller");
+        mongoTemplate.insert(legacy, "movies");
+
+        Movie movie = movieStore.findById(legacy.getObjectId("_id").toHexString()).orElseThrow();
+        assertEquals(1980, movie.getYear());
+        assertEquals(142, movie.getRuntimeMinutes());
+        assertEquals(List.of("Horror", "Mystery", "Thriller"), movie.getGenres());
+    }
+
+    @Test
+    @DisplayName("Migrate legacy documents")
+    public void migrate() {
+        for (int i = 0; i < 5; i++) {
+            mongoTemplate.insert(legacyDocument("Movie " + i, "19" + (70 + i), (100 + i) + " min", "Drama, War"), "movies");
+        }
+
+        migration.run();
+
+        assertEquals("completed", migration.status().get("state"));
+        assertEquals(5L, migration.status().get("migrated"));
+        for (Document document : mongoTemplate.findAll(Document.class, "movies")) {
+            assertFalse(LegacyMovieDocuments.isLegacy(document));
+            assertTrue(document.get("year") instanceof Integer);
+            assertTrue(document.get("runtimeMinutes") instanceof Integer);
+            assertEquals(List.of("Drama", "War"), document.get("genres"));
+            assertEquals(1L, document.get("version"));
+        }
+        Document checkpoint = mongoTemplate.findById(MovieSchemaMigration.NAME, Document.class, MovieSchemaMigration.CHECKPOINTS);
+        assertNotNull(checkpoint.get("completedAt"));
+    }
+
+    @Test
+    @DisplayName("Migration resumes after the checkpoint")
+    public void resume() {
+        Document first = legacyDocument("First", "1970", "100 min", "Drama");
+        Document second = legacyDocument("Second", "1971", "101 min", "Drama");
+        mongoTemplate.insert(first, "movies");
+        mongoTemplate.insert(second, "movies");
+        mongoTemplate.insert(new Document("_id", MovieSchemaMigration.NAME).append("lastId", first.getObjectId("_id")).append("migrated", 1L),
+            MovieSchemaMigration.CHECKPOINTS);
+
+        migration.run();
+
+        assertEquals(2L, migration.status().get("migrated"));
+        assertTrue(LegacyMovieDocuments.isLegacy(mongoTemplate.findById(first.get("_id"), Document.class, "movies")));
+        assertFalse(LegacyMovieDocuments.isLegacy(mongoTemplate.findById(second.get("_id"), Document.class, "movies")));
+    }
+
+    @Test
+    @DisplayName("Documents written since they were read are not upgraded")
+    public void upgradeWrittenMeanwhile() {
+        Document legacy = legacyDocument("The Shining", "1980", "142 min", "Horror, Mystery, Thriller");
+        mongoTemplate.insert(legacy, "movies");
+        Document read = mongoTemplate.findById(legacy.get("_id"), Document.class, "movies");
+        mongoTemplate.updateFirst(new Query(where("_id").is(legacy.get("_id"))), new Update().set("year", 1981).inc("version", 1L), "movies");
+
+        assertEquals(0L, migration.upgrade(List.of(read)));
+
+        Document stored = mongoTemplate.findById(legacy.get("_id"), Document.class, "movies");
+        assertEquals(1981, stored.get("year"));
+        assertEquals(1L, stored.get("version"));
+    }
+
+    private static Document legacyDocument(String title, String year, String runtime, String genre) {
+        return new Document("title", title).append("year", year).append("rated", "R").append("runtime", runtime).append("genre", genre)
+            .append("director", "Stanley Kubrick");
+    }
+
+    static class Initializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext configurableApplicationContext) {
+            TestPropertySourceUtils.addInlinedPropertiesToEnvironment(configurableApplicationContext,
+                format("spring.data.mongodb.uri=mongodb://%s:%s/movies", mongoDBContainer.getContainerIpAddress(),
+                    mongoDBContainer.getMappedPort(27017)));
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFields;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@DisplayName("MovieBatchLookup Unit Tests")
+public class MovieBatchLookupTest {
+
+    private static final Movie ODYSSEY = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").build();
+
+    private static final Movie SHINING = Movie.builder().id("5effaa5662679b5af2c58829").title("The Shining").build();
+
+    private static final String UNKNOWN = "60f6cd5366949871c415d9fe";
+
+    private MovieStore movieStore;
+
+    private Cache cache;
+
+    private MovieBatchLookup movieBatchLookup;
+
+    @BeforeEach
+    public void createLookup() {
+        movieStore = mock(MovieStore.class);
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(MovieBatchLookup.CACHE);
+        cache = cacheManager.getCache(MovieBatchLookup.CACHE);
+        movieBatchLookup = new MovieBatchLookup(movieStore, cacheManager);
+    }
+
+    @Test
+    @DisplayName("Only cache misses are queried")
+    public void onlyMissesAreQueried() {
+        cache.put(ODYSSEY.getId(), ODYSSEY);
+        given(movieStore.findAllById(List.of(SHINING.getId(), UNKNOWN), null)).willReturn(List.of(SHINING));
+
+        Map<String, Optional<Movie>> movies = movieBatchLookup.findAll(List.of(SHINING.getId(), ODYSSEY.getId(), UNKNOWN), null);
+
+        assertEquals(List.of(SHINING.getId(), ODYSSEY.getId(), UNKNOWN), List.copyOf(movies.keySet()));
+        assertEquals(Optional.of(SHINING), movies.get(SHINING.getId()));
+        assertEquals(Optional.of(ODYSSEY), movies.get(ODYSSEY.getId()));
+        assertEquals(Optional.empty(), movies.get(UNKNOWN));
+    }
+
+    @Test
+    @DisplayName("Found and unknown movies are cached")
+    public void resultsAreCached() {
+        given(movieStore.findAllById(List.of(SHINING.getId(), UNKNOWN), null)).willReturn(List.of(SHINING));
+
+        movieBatchLookup.findAll(List.of(SHINING.getId(), UNKNOWN), null);
+        Map<String, Optional<Movie>> movies = movieBatchLookup.findAll(List.of(UNKNOWN, SHINING.getId()), null);
+
+        assertEquals(Optional.empty(), movies.get(UNKNOWN));
+        assertEquals(Optional.of(SHINING), movies.get(SHINING.getId()));
+        assertSame(SHINING, cache.get(SHINING.getId()).get());
+        assertNull(cache.get(UNKNOWN).get());
+        then(movieStore).should(times(1)).findAllById(any(), isNull());
+    }
+
+    @Test
+    @DisplayName("Movies cached during the query are not replaced")
+    public void newerEntriesAreKept() {
+        Movie renamed = Movie.builder().id(SHINING.getId()).title("Shining").build();
+        given(movieStore.findAllById(List.of(SHINING.getId()), null)).willAnswer(invocation -> {
+            cache.put(SHINING.getId(), renamed);
+            return List.of(SHINING);
+        });
+
+        movieBatchLookup.findAll(List.of(SHINING.getId()), null);
+
+        assertSame(renamed, cache.get(SHINING.getId()).get());
+    }
+
+    @Test
+    @DisplayName("Movies read with a projection are not cached")
+    public void projectedMoviesAreNotCached() {
+        MovieFields fields = MovieFields.of("title");
+        Movie shining = Movie.builder().id(SHINING.getId()).title(SHINING.getTitle()).build();
+        given(movieStore.findAllById(List.of(SHINING.getId(), UNKNOWN), fields)).willReturn(List.of(shining));
+
+        Map<String, Optional<Movie>> movies = movieBatchLookup.findAll(List.of(SHINING.getId(), UNKNOWN), fields);
+
+        assertEquals(Optional.of(shining), movies.get(SHINING.getId()));
+        assertNull(cache.get(SHINING.getId()));
+        assertNull(cache.get(UNKNOWN).get());
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@DisplayName("MovieIndexes Unit Tests")
+public class MovieIndexesTest {
+
+    private IndexOperations indexOperations;
+
+    private MovieIndexes movieIndexes;
+
+    @BeforeEach
+    public void createIndexes() {
+        MongoOperations mongoOperations = mock(MongoOperations.class);
+        indexOperations = mock(IndexOperations.class);
+        given(mongoOperations.indexOps(Movie.class)).willReturn(indexOperations);
+        given(indexOperations.getIndexInfo()).willReturn(List.of());
+        movieIndexes = new MovieIndexes(mongoOperations, new MongoMappingContext(), new SyncTaskExecutor());
+    }
+
+    @Test
+    @DisplayName("The indexes declared on Movie are ensured once the application is ready")
+    public void ensuresDeclaredIndexes() {
+        movieIndexes.start();
+
+        ArgumentCaptor<IndexDefinition> indexes = ArgumentCaptor.forClass(IndexDefinition.class);
+        then(indexOperations).should(times(6)).ensureIndex(indexes.capture());
+        Set<String> names = indexes.getAllValues().stream()
+            .map(index -> index.getIndexOptions().getString("name"))
+            .collect(Collectors.toSet());
+        assertEquals(Set.of("title", "genres_id", "director_id", "director_year_id", "year_runtimeMinutes_id",
+            "runtimeMinutes_id"), names);
+    }
+
+    @Test
+    @DisplayName("A failure to create an index does not prevent the others nor propagate")
+    public void failureIsLogged() {
+        given(indexOperations.ensureIndex(any())).willThrow(new IllegalStateException("Index options conflict"));
+
+        assertDoesNotThrow(movieIndexes::start);
+        then(indexOperations).should(times(6)).ensureIndex(any());
+    }
+
+}
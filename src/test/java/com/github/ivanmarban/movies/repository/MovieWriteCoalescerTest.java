@@ -0,0 +1,274 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.limit.ConcurrencyLimiter;
+import com.github.ivanmarban.movies.limit.StoreLatencyInterceptor;
+import com.github.ivanmarban.movies.limit.Workload;
+import com.github.ivanmarban.movies.model.Movie;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.BDDMockito.*;
+
+@DisplayName("MovieWriteCoalescer Unit Tests")
+public class MovieWriteCoalescerTest {
+
+    private final MovieStore movieStore = mock(MovieStore.class);
+
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MoviesProperties properties = new MoviesProperties();
+
+    private MovieWriteCoalescer writeCoalescer;
+
+    @BeforeEach
+    public void setUp() {
+        properties.getWrite().setCoalescingEnabled(true);
+        properties.getWrite().setMaxBatchSize(3);
+        properties.getWrite().setMaxDelay(Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        writeCoalescer.stop();
+    }
+
+    @Test
+    @DisplayName("Movies queued within the window are written with a single insert")
+    public void insertCoalesced() {
+        given(movieStore.insertUnordered(anyList())).willReturn(Map.of());
+        start();
+
+        CompletableFuture<Movie> first = writeCoalescer.insert(movie("2001: A Space Odyssey"));
+        CompletableFuture<Movie> second = writeCoalescer.insert(movie("The Shining"));
+        CompletableFuture<Movie> third = writeCoalescer.insert(movie("Barry Lyndon"));
+
+        assertEquals("2001: A Space Odyssey", first.join().getTitle());
+        assertEquals("The Shining", second.join().getTitle());
+        assertEquals("Barry Lyndon", third.join().getTitle());
+        assertNotEquals(first.join().getId(), second.join().getId());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Movie>> batch = ArgumentCaptor.forClass(List.class);
+        then(movieStore).should(times(1)).insertUnordered(batch.capture());
+        assertEquals(3, batch.getValue().size());
+        assertEquals(1, meterRegistry.get(MovieWriteCoalescer.BATCH_SIZE).summary().count());
+        assertEquals(3, meterRegistry.get(MovieWriteCoalescer.BATCH_SIZE).summary().totalAmount());
+        assertEquals(3, meterRegistry.get(MovieWriteCoalescer.QUEUE_WAIT).timer().count());
+    }
+
+    @Test
+    @DisplayName("A partial batch is written once the delay has passed")
+    public void insertAfterDelay() {
+        properties.getWrite().setMaxDelay(Duration.ofMillis(10));
+        given(movieStore.insertUnordered(anyList())).willReturn(Map.of());
+        start();
+
+        assertEquals("2001: A Space Odyssey", writeCoalescer.insert(movie("2001: A Space Odyssey")).join().getTitle());
+
+        then(movieStore).should(times(1)).insertUnordered(anyList());
+    }
+
+    @Test
+    @DisplayName("Every caller gets the outcome of its own movie")
+    public void insertPartialFailure() {
+        given(movieStore.insertUnordered(anyList())).willReturn(Map.of(1, "E11000 duplicate key error"));
+        start();
+
+        CompletableFuture<Movie> first = writeCoalescer.insert(movie("2001: A Space Odyssey"));
+        CompletableFuture<Movie> second = writeCoalescer.insert(movie("The Shining"));
+        CompletableFuture<Movie> third = writeCoalescer.insert(movie("Barry Lyndon"));
+
+        assertEquals("2001: A Space Odyssey", first.join().getTitle());
+        CompletionException e = assertThrows(CompletionException.class, second::join);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals("E11000 duplicate key error", e.getCause().getMessage());
+        assertEquals("Barry Lyndon", third.join().getTitle());
+    }
+
+    @Test
+    @DisplayName("A failed batch fails every caller")
+    public void insertBatchFailure() {
+        given(movieStore.insertUnordered(anyList())).willThrow(new RuntimeException("horror"));
+        start();
+
+        CompletableFuture<Movie> first = writeCoalescer.insert(movie("2001: A Space Odyssey"));
+        CompletableFuture<Movie> second = writeCoalescer.insert(movie("The Shining"));
+        CompletableFuture<Movie> third = writeCoalescer.insert(movie("Barry Lyndon"));
+
+        for (CompletableFuture<Movie> future : List.of(first, second, third)) {
+            assertEquals("horror", assertThrows(CompletionException.class, future::join).getCause().getMessage());
+        }
+    }
+
+    @Test
+    @DisplayName("The insert of a batch is measured on the permit of every request in it")
+    public void insertMeasured() {
+        for (MoviesProperties.Limit limit : List.of(properties.getConcurrency().getWrite(), properties.getConcurrency().getBulk())) {
+            limit.setInitialLimit(4);
+            limit.setMinLimit(1);
+        }
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(meterRegistry, properties);
+        given(movieStore.insertUnordered(anyList())).willThrow(new DataAccessResourceFailureException("unreachable"));
+        properties.getWrite().setMaxBatchSize(2);
+        start();
+
+        ConcurrencyLimiter.Permit first = limiter.tryAcquire(Workload.WRITE).orElseThrow();
+        ConcurrencyLimiter.Permit second = limiter.tryAcquire(Workload.BULK).orElseThrow();
+        CompletableFuture<Movie> explicit = writeCoalescer.insert(movie("2001: A Space Odyssey"), first);
+        CompletableFuture<Movie> bound;
+        StoreLatencyInterceptor.bind(second);
+        try {
+            bound = writeCoalescer.insert(movie("The Shining"));
+        } finally {
+            StoreLatencyInterceptor.unbind();
+        }
+        assertThrows(CompletionException.class, explicit::join);
+        assertThrows(CompletionException.class, bound::join);
+        first.release();
+        second.release();
+
+        assertTrue(meterRegistry.get("movies.concurrency.limit").tag("workload", "write").gauge().value() < 4);
+        assertTrue(meterRegistry.get("movies.concurrency.limit").tag("workload", "bulk").gauge().value() < 4);
+        then(movieStore).should(times(1)).insertUnordered(anyList());
+    }
+
+    @Test
+    @DisplayName("The writer keeps running after a batch fails with an error")
+    public void insertBatchError() {
+        given(movieStore.insertUnordered(anyList())).willThrow(new LinkageError("horror")).willReturn(Map.of());
+        start();
+
+        CompletableFuture<Movie> failed = writeCoalescer.insert(movie("2001: A Space Odyssey"));
+        assertEquals("horror", assertThrows(CompletionException.class, failed::join).getCause().getMessage());
+
+        assertEquals("The Shining", writeCoalescer.insert(movie("The Shining")).join().getTitle());
+    }
+
+    @Test
+    @DisplayName("Movies whose insert outlasts the store timeout fail without a retry and are still published")
+    public void insertTimeout() {
+        properties.getWrite().setMaxDelay(Duration.ofMillis(10));
+        properties.getWrite().setStoreTimeout(Duration.ofMillis(50));
+        CountDownLatch release = new CountDownLatch(1);
+        given(movieStore.insertUnordered(anyList())).willAnswer(invocation -> {
+            release.await();
+            return Map.of();
+        });
+        start();
+
+        CompletableFuture<Movie> timedOut = writeCoalescer.insert(movie("2001: A Space Odyssey"));
+
+        assertTrue(assertThrows(CompletionException.class, timedOut::join).getCause() instanceof IllegalStateException);
+        then(eventPublisher).shouldHaveNoInteractions();
+        release.countDown();
+
+        ArgumentCaptor<MovieSavedEvent> saved = ArgumentCaptor.forClass(MovieSavedEvent.class);
+        then(eventPublisher).should(timeout(10_000)).publishEvent(saved.capture());
+        assertEquals("2001: A Space Odyssey", saved.getValue().getMovie().getTitle());
+    }
+
+    @Test
+    @DisplayName("Movies that timed out while queued are not written")
+    public void insertTimeoutQueued() throws InterruptedException {
+        properties.getWrite().setMaxBatchSize(1);
+        properties.getWrite().setMaxDelay(Duration.ofMillis(10));
+        properties.getWrite().setStoreTimeout(Duration.ofMillis(50));
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(movieStore.insertUnordered(anyList())).willAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return Map.of();
+        }).willReturn(Map.of());
+        start();
+
+        writeCoalescer.insert(movie("2001: A Space Odyssey"));
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Movie> timedOut = writeCoalescer.insert(movie("The Shining"));
+        assertTrue(assertThrows(CompletionException.class, timedOut::join).getCause() instanceof TimeoutException);
+        release.countDown();
+
+        assertEquals("Barry Lyndon", writeCoalescer.insert(movie("Barry Lyndon")).join().getTitle());
+        ArgumentCaptor<Object> published = ArgumentCaptor.forClass(Object.class);
+        then(eventPublisher).should(atMost(1)).publishEvent(published.capture());
+        published.getAllValues().forEach(event ->
+            assertEquals("2001: A Space Odyssey", ((MovieSavedEvent) event).getMovie().getTitle()));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Movie>> batches = ArgumentCaptor.forClass(List.class);
+        then(movieStore).should(times(2)).insertUnordered(batches.capture());
+        assertEquals("Barry Lyndon", batches.getAllValues().get(1).get(0).getTitle());
+    }
+
+    @Test
+    @DisplayName("Movies are rejected once the queue is full")
+    public void insertQueueFull() throws InterruptedException {
+        properties.getWrite().setMaxBatchSize(1);
+        properties.getWrite().setQueueCapacity(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(movieStore.insertUnordered(anyList())).willAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return Map.of();
+        });
+        start();
+
+        CompletableFuture<Movie> written = writeCoalescer.insert(movie("2001: A Space Odyssey"));
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Movie> queued = writeCoalescer.insert(movie("The Shining"));
+        CompletableFuture<Movie> rejected = writeCoalescer.insert(movie("Barry Lyndon"));
+
+        assertTrue(assertThrows(CompletionException.class, rejected::join).getCause() instanceof RejectedExecutionException);
+        assertEquals(1, meterRegistry.get(MovieWriteCoalescer.REJECTED).counter().count());
+        release.countDown();
+        assertEquals("2001: A Space Odyssey", written.join().getTitle());
+        assertEquals("The Shining", queued.join().getTitle());
+    }
+
+    @Test
+    @DisplayName("Movies are rejected when coalescing is disabled")
+    public void insertDisabled() {
+        properties.getWrite().setCoalescingEnabled(false);
+        start();
+
+        CompletableFuture<Movie> rejected = writeCoalescer.insert(movie("2001: A Space Odyssey"));
+
+        assertTrue(assertThrows(CompletionException.class, rejected::join).getCause() instanceof RejectedExecutionException);
+        then(movieStore).shouldHaveNoInteractions();
+    }
+
+    private void start() {
+        writeCoalescer = new MovieWriteCoalescer(movieStore, eventPublisher, meterRegistry, properties);
+        writeCoalescer.start();
+    }
+
+    private Movie movie(String title) {
+        return Movie.builder().title(title).year(1968).rated("G").runtimeMinutes(160).director("Stanley Kubrick").build();
+    }
+
+}
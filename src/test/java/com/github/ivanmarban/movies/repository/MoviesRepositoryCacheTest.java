@@ -0,0 +1,151 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieUpdate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.BDDMockito.*;
+
+@DisplayName("MoviesRepository Cache Tests")
+@SpringJUnitConfig
+public class MoviesRepositoryCacheTest {
+
+    private static final String ID = "60f6cd5366949871c415d9fd";
+
+    @Autowired
+    private MoviesRepository moviesRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    public void resetCache() {
+        cacheManager.getCache("movies").clear();
+        Mockito.reset(target());
+    }
+
+    @Test
+    @DisplayName("Find by ID is served from cache")
+    public void findByIdCached() {
+        given(target().findById(ID)).willReturn(Optional.of(movie()));
+
+        assertEquals("2001: A Space Odyssey", moviesRepository.findById(ID).get().getTitle());
+        assertEquals("2001: A Space Odyssey", moviesRepository.findById(ID).get().getTitle());
+
+        then(target()).should(times(1)).findById(ID);
+    }
+
+    @Test
+    @DisplayName("Unknown ID is cached as a negative entry")
+    public void findByIdNegativeEntry() {
+        given(target().findById(ID)).willReturn(Optional.empty());
+
+        assertTrue(moviesRepository.findById(ID).isEmpty());
+        assertTrue(moviesRepository.findById(ID).isEmpty());
+
+        then(target()).should(times(1)).findById(ID);
+    }
+
+    @Test
+    @DisplayName("Save evicts the saved movie")
+    public void saveEvicts() {
+        given(target().findById(ID)).willReturn(Optional.of(movie()));
+
+        moviesRepository.findById(ID);
+        moviesRepository.save(movie());
+        moviesRepository.findById(ID);
+
+        then(target()).should(times(2)).findById(ID);
+    }
+
+    @Test
+    @DisplayName("Delete by ID evicts the deleted movie")
+    public void deleteByIdEvicts() {
+        given(target().findById(ID)).willReturn(Optional.of(movie()));
+
+        moviesRepository.findById(ID);
+        moviesRepository.deleteById(ID);
+        moviesRepository.findById(ID);
+
+        then(target()).should(times(2)).findById(ID);
+    }
+
+    @Test
+    @DisplayName("Remove by ID evicts the removed movie")
+    public void removeByIdEvicts() {
+        given(target().findById(ID)).willReturn(Optional.of(movie()));
+
+        moviesRepository.findById(ID);
+        moviesRepository.removeById(ID);
+        moviesRepository.findById(ID);
+
+        then(target()).should(times(2)).findById(ID);
+    }
+
+    @Test
+    @DisplayName("Modify evicts the modified movie")
+    public void modifyEvicts() {
+        given(target().findById(ID)).willReturn(Optional.of(movie()));
+
+        moviesRepository.findById(ID);
+        moviesRepository.modify(ID, MovieUpdate.replace(movie()), null);
+        moviesRepository.findById(ID);
+
+        then(target()).should(times(2)).findById(ID);
+    }
+
+    @Test
+    @DisplayName("Delete all evicts every movie")
+    public void deleteAllEvicts() {
+        given(target().findById(ID)).willReturn(Optional.of(movie()));
+
+        moviesRepository.findById(ID);
+        moviesRepository.deleteAll();
+        moviesRepository.findById(ID);
+
+        then(target()).should(times(2)).findById(ID);
+    }
+
+    private MoviesRepository target() {
+        return Config.TARGET;
+    }
+
+    private Movie movie() {
+        return Movie.builder().id(ID).title("2001: A Space Odyssey").year(1968).rated("G").runtimeMinutes(160)
+            .genres(List.of("Mystery", "Sci-Fi")).director("Stanley Kubrick").build();
+    }
+
+    @Configuration
+    @EnableCaching
+    static class Config {
+
+        static final MoviesRepository TARGET = mock(MoviesRepository.class);
+
+        @Bean
+        public MoviesRepository moviesRepository() {
+            return TARGET;
+        }
+
+        @Bean
+        public CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager("movies");
+        }
+
+    }
+
+}
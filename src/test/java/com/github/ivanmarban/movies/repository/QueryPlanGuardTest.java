@@ -0,0 +1,116 @@
+package com.github.ivanmarban.movies.repository;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.model.Movie;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@DisplayName("QueryPlanGuard Unit Tests")
+public class QueryPlanGuardTest {
+
+    private static final Document COLLECTION_SCAN = Document.parse("{queryPlanner: {winningPlan: {stage: 'SORT', "
+        + "inputStage: {stage: 'COLLSCAN', direction: 'forward'}}, rejectedPlans: []}}");
+
+    private static final Document INDEX_SCAN = Document.parse("{queryPlanner: {winningPlan: {stage: 'FETCH', "
+        + "inputStage: {stage: 'IXSCAN', indexName: 'director_id'}}, rejectedPlans: [{stage: 'COLLSCAN'}]}}");
+
+    private MongoOperations mongoOperations;
+
+    @BeforeEach
+    public void createOperations() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(Movie.class));
+        mappingContext.afterPropertiesSet();
+        mongoOperations = mock(MongoOperations.class);
+        given(mongoOperations.getConverter()).willReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext));
+        given(mongoOperations.getCollectionName(Movie.class)).willReturn("movies");
+    }
+
+    @Test
+    @DisplayName("A filtered query planned as a collection scan fails without running")
+    public void collectionScanFails() {
+        given(mongoOperations.executeCommand(any(Document.class))).willReturn(COLLECTION_SCAN);
+        Query query = new Query(where("runtimeMinutes").lte(120).and("id").gt(new ObjectId("60f6cd5366949871c415d9fd")))
+            .with(Sort.by("id"));
+
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> guarded(MoviesProperties.QueryGuard.Mode.FAIL).find(query, Movie.class));
+
+        ArgumentCaptor<Document> explain = ArgumentCaptor.forClass(Document.class);
+        then(mongoOperations).should().executeCommand(explain.capture());
+        Document find = explain.getValue().get("explain", Document.class);
+        assertEquals("movies", find.getString("find"));
+        assertTrue(find.get("filter", Document.class).containsKey("_id"));
+        assertEquals(new Document("_id", 1), find.get("sort"));
+        then(mongoOperations).should(never()).find(query, Movie.class);
+    }
+
+    @Test
+    @DisplayName("Queries using an index, logged scans, unfiltered and allowed queries run")
+    public void otherQueriesRun() {
+        given(mongoOperations.executeCommand(any(Document.class))).willReturn(INDEX_SCAN, COLLECTION_SCAN);
+        Query query = new Query(where("director").is("Stanley Kubrick"));
+
+        guarded(MoviesProperties.QueryGuard.Mode.FAIL).find(query, Movie.class);
+        guarded(MoviesProperties.QueryGuard.Mode.LOG).find(query, Document.class, "movies");
+        guarded(MoviesProperties.QueryGuard.Mode.FAIL).find(new Query(), Movie.class);
+        QueryPlanGuard.allowingCollectionScans(() -> guarded(MoviesProperties.QueryGuard.Mode.FAIL).exists(query, "movies"));
+
+        then(mongoOperations).should(times(2)).executeCommand(any(Document.class));
+        then(mongoOperations).should(times(2)).find(any(Query.class), any());
+        then(mongoOperations).should().find(query, Document.class, "movies");
+        then(mongoOperations).should().exists(query, "movies");
+    }
+
+    @Test
+    @DisplayName("The pipeline of a typed aggregation is explained with the stored field names")
+    public void typedAggregationMapped() {
+        given(mongoOperations.executeCommand(any(Document.class))).willReturn(INDEX_SCAN);
+        TypedAggregation<Movie> aggregation = newAggregation(Movie.class,
+            match(where("id").is("60f6cd5366949871c415d9fd")), group("director").count().as("count"));
+
+        guarded(MoviesProperties.QueryGuard.Mode.FAIL).aggregate(aggregation, Document.class);
+
+        ArgumentCaptor<Document> explain = ArgumentCaptor.forClass(Document.class);
+        then(mongoOperations).should().executeCommand(explain.capture());
+        Document aggregate = explain.getValue().get("explain", Document.class);
+        assertEquals("movies", aggregate.getString("aggregate"));
+        Document match = aggregate.getList("pipeline", Document.class).get(0).get("$match", Document.class);
+        assertEquals(new Document("_id", new ObjectId("60f6cd5366949871c415d9fd")), match);
+    }
+
+    @Test
+    @DisplayName("Only collection scans of the winning plan are reported")
+    public void winningPlanOnly() {
+        assertTrue(QueryPlanGuard.isCollectionScan(COLLECTION_SCAN, false));
+        assertFalse(QueryPlanGuard.isCollectionScan(INDEX_SCAN, false));
+        assertTrue(QueryPlanGuard.isCollectionScan(new Document("stages", List.of(new Document("$cursor", COLLECTION_SCAN))), false));
+    }
+
+    private MongoOperations guarded(MoviesProperties.QueryGuard.Mode mode) {
+        ProxyFactory proxyFactory = new ProxyFactory(mongoOperations);
+        proxyFactory.addAdvice(new QueryPlanGuard(mongoOperations, mode));
+        return (MongoOperations) proxyFactory.getProxy();
+    }
+
+}
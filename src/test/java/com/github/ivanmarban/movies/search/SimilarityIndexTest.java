@@ -0,0 +1,158 @@
+package com.github.ivanmarban.movies.search;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@DisplayName("SimilarityIndex Unit Tests")
+public class SimilarityIndexTest {
+
+    private static final String ODYSSEY = "60f6cd5366949871c415d9fd";
+
+    private static final String SHINING = "5effaa5662679b5af2c58829";
+
+    private static final String ALIEN = "60f6cd5366949871c415d9fe";
+
+    private static final String JAWS = "60f6cd5366949871c415d9ff";
+
+    private MovieStore movieStore;
+
+    private TaskScheduler taskScheduler;
+
+    private SimilarityIndex similarityIndex;
+
+    @BeforeEach
+    public void createIndex() {
+        movieStore = mock(MovieStore.class);
+        given(movieStore.streamAll(anyInt(), any())).willReturn(Stream.of(
+            movie(ODYSSEY, 1968, "G", "Stanley Kubrick", "Mystery", "Sci-Fi"),
+            movie(SHINING, 1980, "R", "Stanley Kubrick", "Horror", "Mystery", "Thriller"),
+            movie(ALIEN, 1979, "R", "Ridley Scott", "Horror", "Sci-Fi"),
+            movie(JAWS, 1975, "PG", "Steven Spielberg", "Adventure", "Thriller")));
+        taskScheduler = mock(TaskScheduler.class);
+        similarityIndex = new SimilarityIndex(movieStore, taskScheduler, new MoviesProperties());
+    }
+
+    @Test
+    @DisplayName("Loaded once when ready, reading only the compared fields")
+    public void start() {
+        similarityIndex.start();
+        then(taskScheduler).should().schedule(any(Runnable.class), any(Instant.class));
+        then(taskScheduler).shouldHaveNoMoreInteractions();
+
+        similarityIndex.reconcile();
+        then(movieStore).should().streamAll(1000, MovieFields.of("year,rated,genre,director"));
+    }
+
+    @Test
+    @DisplayName("Reconciliation is scheduled once ready when an interval is set")
+    public void startReconciling() {
+        MoviesProperties properties = new MoviesProperties();
+        properties.getSimilar().setReconcileInterval(Duration.ofHours(1));
+        new SimilarityIndex(movieStore, taskScheduler, properties).start();
+        then(taskScheduler).should().scheduleWithFixedDelay(any(Runnable.class), eq(Duration.ofHours(1)));
+    }
+
+    @Test
+    @DisplayName("Unavailable until loaded")
+    public void unavailableUntilLoaded() {
+        assertFalse(similarityIndex.isAvailable());
+        similarityIndex.reconcile();
+        assertTrue(similarityIndex.isAvailable());
+        assertEquals(4, similarityIndex.size());
+    }
+
+    @Test
+    @DisplayName("Movies are ranked by genres, director, rating and year")
+    public void similar() {
+        similarityIndex.reconcile();
+        assertEquals(Optional.of(List.of(ODYSSEY, ALIEN, JAWS)), similarityIndex.similar(SHINING, 10));
+        assertEquals(Optional.of(List.of(ODYSSEY)), similarityIndex.similar(SHINING, 1));
+        assertEquals(Optional.empty(), similarityIndex.similar("60f6cd5366949871c415da00", 10));
+    }
+
+    @Test
+    @DisplayName("Movies sharing nothing are not similar")
+    public void nothingInCommon() {
+        similarityIndex.reconcile();
+        similarityIndex.onMovieSaved(new MovieSavedEvent(movie("60f6cd5366949871c415da00", null, null, null)));
+        assertEquals(Optional.of(List.of()), similarityIndex.similar("60f6cd5366949871c415da00", 10));
+    }
+
+    @Test
+    @DisplayName("Saved and deleted movies are indexed")
+    public void incrementalUpdates() {
+        similarityIndex.reconcile();
+        similarityIndex.onMovieSaved(new MovieSavedEvent(movie(JAWS, 1980, "R", "Stanley Kubrick", "Horror", "Mystery", "Thriller")));
+        assertEquals(JAWS, similarityIndex.similar(SHINING, 1).orElseThrow().get(0));
+
+        similarityIndex.onMovieDeleted(new MovieDeletedEvent(ODYSSEY, null));
+        assertEquals(Optional.empty(), similarityIndex.similar(ODYSSEY, 10));
+        assertEquals(Optional.of(List.of(JAWS, ALIEN)), similarityIndex.similar(SHINING, 10));
+        assertEquals(3, similarityIndex.size());
+
+        similarityIndex.onMoviesDeleted(new MoviesDeletedEvent());
+        assertEquals(0, similarityIndex.size());
+        assertEquals(Optional.empty(), similarityIndex.similar(SHINING, 10));
+    }
+
+    @Test
+    @DisplayName("Reconciliation picks up the movies written through other instances")
+    public void reconcile() {
+        similarityIndex.reconcile();
+        given(movieStore.streamAll(anyInt(), any())).willReturn(Stream.of(
+            movie(SHINING, 1980, "R", "Stanley Kubrick", "Horror", "Mystery", "Thriller"),
+            movie(ALIEN, 1979, "R", "Ridley Scott", "Horror", "Sci-Fi"),
+            movie(JAWS, 1980, "R", "Stanley Kubrick", "Horror", "Mystery", "Thriller")));
+        similarityIndex.reconcile();
+        assertEquals(Optional.empty(), similarityIndex.similar(ODYSSEY, 10));
+        assertEquals(Optional.of(List.of(JAWS, ALIEN)), similarityIndex.similar(SHINING, 10));
+        assertEquals(3, similarityIndex.size());
+    }
+
+    @Test
+    @DisplayName("Parallel scoring ranks like sequential scoring")
+    public void parallelScoring() {
+        MoviesProperties sequentialProperties = new MoviesProperties();
+        MoviesProperties parallelProperties = new MoviesProperties();
+        parallelProperties.getSimilar().setParallelThreshold(1);
+        SimilarityIndex sequential = new SimilarityIndex(null, null, sequentialProperties);
+        SimilarityIndex parallel = new SimilarityIndex(null, null, parallelProperties);
+        String[] genres = {"Action", "Comedy", "Drama", "Horror", "Mystery", "Sci-Fi", "Thriller", "Western"};
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            Movie movie = movie(String.format("60f6cd5366949871c4%06x", i), 1950 + random.nextInt(70), "R" + random.nextInt(4),
+                "Director " + random.nextInt(200), genres[random.nextInt(genres.length)], genres[random.nextInt(genres.length)]);
+            sequential.onMovieSaved(new MovieSavedEvent(movie));
+            parallel.onMovieSaved(new MovieSavedEvent(movie));
+        }
+
+        for (int i = 0; i < 5000; i += 499) {
+            String id = String.format("60f6cd5366949871c4%06x", i);
+            assertEquals(sequential.similar(id, 20), parallel.similar(id, 20));
+        }
+    }
+
+    private Movie movie(String id, Integer year, String rated, String director, String... genres) {
+        return Movie.builder().id(id).title(id).year(year).rated(rated).director(director).genres(List.of(genres)).build();
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.github.ivanmarban.movies.search;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import com.github.ivanmarban.movies.model.MovieFields;
+import com.github.ivanmarban.movies.repository.MovieStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+@DisplayName("TitleIndex Unit Tests")
+public class TitleIndexTest {
+
+    private MovieStore movieStore;
+
+    private TaskScheduler taskScheduler;
+
+    private TitleIndex titleIndex;
+
+    @BeforeEach
+    public void createIndex() {
+        movieStore = mock(MovieStore.class);
+        given(movieStore.streamAll(anyInt(), any())).willReturn(Stream.of(
+            movie("60f6cd5366949871c415d9fd", "2001: A Space Odyssey"),
+            movie("5effaa5662679b5af2c58829", "The Shining"),
+            movie("60f6cd5366949871c415d9fe", "Spaceballs")));
+        taskScheduler = mock(TaskScheduler.class);
+        titleIndex = new TitleIndex(movieStore, taskScheduler, new MoviesProperties());
+    }
+
+    @Test
+    @DisplayName("Loaded once when ready, reading only the titles")
+    public void start() {
+        titleIndex.start();
+        then(taskScheduler).should().schedule(any(Runnable.class), any(Instant.class));
+        then(taskScheduler).shouldHaveNoMoreInteractions();
+
+        titleIndex.reconcile();
+        then(movieStore).should().streamAll(1000, MovieFields.of("title"));
+    }
+
+    @Test
+    @DisplayName("Reconciliation is scheduled once ready when an interval is set")
+    public void startReconciling() {
+        MoviesProperties properties = new MoviesProperties();
+        properties.getSearch().setReconcileInterval(Duration.ofHours(1));
+        new TitleIndex(movieStore, taskScheduler, properties).start();
+        then(taskScheduler).should().scheduleWithFixedDelay(any(Runnable.class), eq(Duration.ofHours(1)));
+    }
+
+    @Test
+    @DisplayName("Unavailable until loaded")
+    public void unavailableUntilLoaded() {
+        assertFalse(titleIndex.isAvailable());
+        titleIndex.reconcile();
+        assertTrue(titleIndex.isAvailable());
+        assertEquals(3, titleIndex.size());
+    }
+
+    @Test
+    @DisplayName("Search ignores case and sorts by id")
+    public void search() {
+        titleIndex.reconcile();
+        assertEquals(List.of("60f6cd5366949871c415d9fd", "60f6cd5366949871c415d9fe"), titleIndex.search("SPACE", null, 10));
+        assertEquals(List.of("5effaa5662679b5af2c58829"), titleIndex.search("shin", null, 10));
+        assertEquals(List.of(), titleIndex.search("odyssey 2", null, 10));
+    }
+
+    @Test
+    @DisplayName("Search matches whole substrings only")
+    public void searchVerifiesCandidates() {
+        titleIndex.reconcile();
+        assertEquals(List.of(), titleIndex.search("space shining", null, 10));
+        assertEquals(List.of("60f6cd5366949871c415d9fd"), titleIndex.search("a space", null, 10));
+    }
+
+    @Test
+    @DisplayName("Search shorter than a trigram")
+    public void searchShortQuery() {
+        titleIndex.reconcile();
+        assertEquals(List.of("60f6cd5366949871c415d9fd", "60f6cd5366949871c415d9fe"), titleIndex.search("Sp", null, 10));
+        assertEquals(List.of("5effaa5662679b5af2c58829"), titleIndex.search("H", null, 10));
+        assertEquals(List.of("60f6cd5366949871c415d9fd"), titleIndex.search(": ", null, 10));
+        assertEquals(List.of(), titleIndex.search("z", null, 10));
+        titleIndex.onMovieDeleted(new MovieDeletedEvent("5effaa5662679b5af2c58829", movie("5effaa5662679b5af2c58829", "The Shining")));
+        assertEquals(List.of(), titleIndex.search("h", null, 10));
+    }
+
+    @Test
+    @DisplayName("Search among many movies")
+    public void searchMany() {
+        titleIndex.reconcile();
+        for (int i = 0; i < 5000; i++) {
+            String id = String.format("%024x", i);
+            titleIndex.onMovieSaved(new MovieSavedEvent(movie(id, "Movie " + i)));
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            String id = String.format("%024x", i);
+            titleIndex.onMovieSaved(new MovieSavedEvent(movie(id, "Film " + i)));
+        }
+        assertEquals(5003, titleIndex.size());
+        assertEquals(List.of(String.format("%024x", 4999)), titleIndex.search("movie 4999", null, 10));
+        assertEquals(List.of(), titleIndex.search("movie 4998", null, 10));
+        assertEquals(List.of(String.format("%024x", 4998)), titleIndex.search("film 4998", null, 10));
+        assertEquals(2500, titleIndex.search("mo", null, 5000).size());
+    }
+
+    @Test
+    @DisplayName("Search pages by id")
+    public void searchPages() {
+        titleIndex.reconcile();
+        assertEquals(List.of("60f6cd5366949871c415d9fd"), titleIndex.search("space", null, 1));
+        assertEquals(List.of("60f6cd5366949871c415d9fe"), titleIndex.search("space", "60f6cd5366949871c415d9fd", 1));
+        assertEquals(List.of(), titleIndex.search("space", "60f6cd5366949871c415d9fe", 1));
+    }
+
+    @Test
+    @DisplayName("Saved movies are indexed")
+    public void movieSaved() {
+        titleIndex.reconcile();
+        titleIndex.onMovieSaved(new MovieSavedEvent(movie("60f6cd5366949871c415d9ff", "Barry Lyndon")));
+        titleIndex.onMovieSaved(new MovieSavedEvent(movie("5effaa5662679b5af2c58829", "The Shining (Extended)")));
+        assertEquals(List.of("60f6cd5366949871c415d9ff"), titleIndex.search("lyndon", null, 10));
+        assertEquals(List.of("5effaa5662679b5af2c58829"), titleIndex.search("extended", null, 10));
+        assertEquals(4, titleIndex.size());
+    }
+
+    @Test
+    @DisplayName("Updated titles replace the old ones")
+    public void movieRenamed() {
+        titleIndex.reconcile();
+        titleIndex.onMovieSaved(new MovieSavedEvent(movie("60f6cd5366949871c415d9fe", "Barry Lyndon")));
+        assertEquals(List.of("60f6cd5366949871c415d9fd"), titleIndex.search("space", null, 10));
+        assertEquals(List.of("60f6cd5366949871c415d9fe"), titleIndex.search("barry", null, 10));
+    }
+
+    @Test
+    @DisplayName("Deleted movies are removed")
+    public void movieDeleted() {
+        titleIndex.reconcile();
+        titleIndex.onMovieDeleted(new MovieDeletedEvent("60f6cd5366949871c415d9fd",
+            movie("60f6cd5366949871c415d9fd", "2001: A Space Odyssey")));
+        assertEquals(List.of("60f6cd5366949871c415d9fe"), titleIndex.search("space", null, 10));
+        titleIndex.onMoviesDeleted(new MoviesDeletedEvent());
+        assertEquals(List.of(), titleIndex.search("space", null, 10));
+        assertEquals(0, titleIndex.size());
+    }
+
+    @Test
+    @DisplayName("Reconciliation picks up the movies written through other instances")
+    public void reconcile() {
+        titleIndex.reconcile();
+        given(movieStore.streamAll(anyInt(), any())).willReturn(Stream.of(
+            movie("60f6cd5366949871c415d9fd", "2001: A Space Odyssey"),
+            movie("5effaa5662679b5af2c58829", "The Shining (Extended)"),
+            movie("60f6cd5366949871c415d9ff", "Barry Lyndon")));
+        titleIndex.reconcile();
+        assertEquals(List.of("60f6cd5366949871c415d9fd"), titleIndex.search("space", null, 10));
+        assertEquals(List.of("5effaa5662679b5af2c58829"), titleIndex.search("extended", null, 10));
+        assertEquals(List.of("60f6cd5366949871c415d9ff"), titleIndex.search("lyndon", null, 10));
+        assertEquals(3, titleIndex.size());
+    }
+
+    @Test
+    @DisplayName("Deleted movies are compacted away")
+    public void compaction() {
+        titleIndex.reconcile();
+        for (int i = 0; i < 5000; i++) {
+            String id = String.format("%024x", i);
+            titleIndex.onMovieSaved(new MovieSavedEvent(movie(id, "Space " + i)));
+            titleIndex.onMovieDeleted(new MovieDeletedEvent(id, movie(id, "Space " + i)));
+        }
+        assertEquals(3, titleIndex.size());
+        assertEquals(List.of("60f6cd5366949871c415d9fd", "60f6cd5366949871c415d9fe"), titleIndex.search("space", null, 10));
+    }
+
+    @Test
+    @DisplayName("Disabled index ignores events")
+    public void disabled() {
+        MoviesProperties properties = new MoviesProperties();
+        properties.getSearch().setIndexEnabled(false);
+        titleIndex = new TitleIndex(movieStore, taskScheduler, properties);
+        titleIndex.start();
+        titleIndex.onMovieSaved(new MovieSavedEvent(movie("60f6cd5366949871c415d9ff", "Barry Lyndon")));
+        assertFalse(titleIndex.isAvailable());
+        assertEquals(0, titleIndex.size());
+        then(taskScheduler).shouldHaveNoInteractions();
+    }
+
+    private static Movie movie(String id, String title) {
+        return Movie.builder().id(id).title(title).build();
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.github.ivanmarban.movies.watermark;
+
+import com.github.ivanmarban.movies.config.MoviesProperties;
+import com.github.ivanmarban.movies.event.MovieDeletedEvent;
+import com.github.ivanmarban.movies.event.MovieSavedEvent;
+import com.github.ivanmarban.movies.event.MoviesDeletedEvent;
+import com.github.ivanmarban.movies.model.Movie;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MoviesWatermark Unit Tests")
+public class MoviesWatermarkTest {
+
+    private static final Instant START = Instant.parse("2021-07-20T10:00:00Z");
+
+    @Test
+    @DisplayName("Every change advances the watermark")
+    public void advance() {
+        MoviesWatermark watermark = new MoviesWatermark(enabled(), Clock.fixed(START, ZoneOffset.UTC));
+        MoviesWatermark.Mark initial = watermark.current().orElseThrow();
+        Movie movie = Movie.builder().id("60f6cd5366949871c415d9fd").title("2001: A Space Odyssey").build();
+
+        watermark.onMovieSaved(new MovieSavedEvent(movie));
+        watermark.onMovieDeleted(new MovieDeletedEvent(movie.getId(), movie));
+        watermark.onMoviesDeleted(new MoviesDeletedEvent());
+
+        MoviesWatermark.Mark current = watermark.current().orElseThrow();
+        assertEquals(3, current.getGeneration());
+        assertEquals("W/\"" + Long.toString(START.toEpochMilli(), 36) + "-3\"", current.getETag());
+        assertNotEquals(initial.getETag(), current.getETag());
+    }
+
+    @Test
+    @DisplayName("Tags of a previous run never match")
+    public void restart() {
+        MoviesWatermark before = new MoviesWatermark(enabled(), Clock.fixed(START, ZoneOffset.UTC));
+        MoviesWatermark after = new MoviesWatermark(enabled(), Clock.fixed(START.plus(Duration.ofMinutes(1)), ZoneOffset.UTC));
+
+        assertNotEquals(before.current().orElseThrow().getETag(), after.current().orElseThrow().getETag());
+    }
+
+    @Test
+    @DisplayName("Disabled by default")
+    public void disabled() {
+        assertTrue(new MoviesWatermark(new MoviesProperties()).current().isEmpty());
+    }
+
+    private static MoviesProperties enabled() {
+        MoviesProperties properties = new MoviesProperties();
+        properties.getWatermark().setEnabled(true);
+        return properties;
+    }
+
+}